@@ -0,0 +1,306 @@
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A Class that represents a growable list of generic values backed by a single array, standing in for LList where
+ * values are appended once and then read in order or by position. Appending is amortized O(1), as the array
+ * doubles when full, and reading any position is O(1); walking the list reads one contiguous array rather than
+ * following a Node per value.
+ *
+ * @param <T> A generic type of values.
+ * @author Brian Limaye
+ */
+public class AList<T> implements Iterable<T> {
+
+    /**
+     * The default capacity used when no capacity is given.
+     */
+    final static private int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The array storing the values, in order, from index 0 to size - 1.
+     */
+    private Object[] elements;
+
+    /**
+     * The number of values in the list.
+     */
+    private int size;
+
+    /**
+     * The number of structural changes, so an iterator can detect the list changing under it.
+     */
+    private int modifications;
+
+    /**
+     * Default constructor used to initialize an empty list.
+     */
+    public AList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * One-argument constructor used to initialize an empty list.
+     *
+     * @param capacity The number of values the list holds before it first grows.
+     * @throws RuntimeException Thrown when the capacity is negative.
+     */
+    public AList(int capacity) {
+
+        if (capacity < 0) {
+            throw new RuntimeException("Illegal capacity: " + capacity);
+        }
+        this.elements = new Object[capacity];
+    }
+
+    /**
+     * Gets the number of values in the list.
+     *
+     * @return Returns the size of the list.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Determines whether the list holds no values.
+     *
+     * @return Returns true if the list is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Helper method responsible for making room for more values, at least doubling the array when it grows.
+     *
+     * @param required The number of values the array must be able to hold.
+     */
+    private void ensureCapacity(int required) {
+
+        if (required > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(required, Math.max(2 * elements.length, DEFAULT_CAPACITY)));
+        }
+    }
+
+    /**
+     * Appends a value to the end of the list.
+     *
+     * @param value A generic value to be appended.
+     */
+    public void add(T value) {
+
+        ensureCapacity(size + 1);
+        elements[size++] = value;
+        ++modifications;
+    }
+
+    /**
+     * Appends every value of another list, in order, growing the array at most once.
+     *
+     * @param other The list whose values are appended.
+     */
+    public void addAll(AList<? extends T> other) {
+
+        int count = other.size;
+        ensureCapacity(size + count);
+
+        //Copying the values before changing the size keeps a list appended to itself correct.
+        System.arraycopy(other.elements, 0, elements, size, count);
+        size += count;
+        ++modifications;
+    }
+
+    /**
+     * Appends every value of a Linked List, in order.
+     *
+     * @param list The Linked List whose values are appended.
+     */
+    public void addAll(LList<? extends T> list) {
+
+        for (Node<? extends T> curr = list.getFirst(); curr != null; curr = curr.getNext()) {
+            add(curr.getValue());
+        }
+    }
+
+    /**
+     * Helper method responsible for checking that a position is within the list.
+     *
+     * @param index The position being checked.
+     * @throws IndexOutOfBoundsException Thrown when the position is outside the list.
+     */
+    private void checkIndex(int index) {
+
+        if ((index < 0) || (index >= size)) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+    }
+
+    /**
+     * Gets the value at a position.
+     *
+     * @param index The position, from 0 to size - 1.
+     * @return Returns the value at the position.
+     * @throws IndexOutOfBoundsException Thrown when the position is outside the list.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+
+        checkIndex(index);
+        return (T) elements[index];
+    }
+
+    /**
+     * Replaces the value at a position.
+     *
+     * @param index The position, from 0 to size - 1.
+     * @param value The new value.
+     * @return Returns the value previously at the position.
+     * @throws IndexOutOfBoundsException Thrown when the position is outside the list.
+     */
+    @SuppressWarnings("unchecked")
+    public T set(int index, T value) {
+
+        checkIndex(index);
+        T previous = (T) elements[index];
+        elements[index] = value;
+        return previous;
+    }
+
+    /**
+     * Removes every value, keeping the current capacity.
+     */
+    public void clear() {
+
+        Arrays.fill(elements, 0, size, null);
+        size = 0;
+        ++modifications;
+    }
+
+    /**
+     * Gets an iterator over the values, in order. The iterator fails fast if the list is structurally changed
+     * while iterating.
+     *
+     * @return Returns the iterator.
+     */
+    @Override
+    public Iterator<T> iterator() {
+
+        return new Iterator<T>() {
+
+            /**
+             * The position of the next value.
+             */
+            private int cursor;
+            /**
+             * The number of structural changes expected of the list.
+             */
+            private final int expected = modifications;
+
+            /**
+             * Determines whether another value remains.
+             *
+             * @return Returns true if there is another value, false otherwise.
+             */
+            @Override
+            public boolean hasNext() {
+                return cursor < size;
+            }
+
+            /**
+             * Gets the next value.
+             *
+             * @return Returns the next value.
+             * @throws ConcurrentModificationException Thrown when the list changed since the iterator was created.
+             */
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+
+                if (modifications != expected) {
+                    throw new ConcurrentModificationException();
+                }
+                if (cursor >= size) {
+                    throw new NoSuchElementException();
+                }
+                return (T) elements[cursor++];
+            }
+        };
+    }
+
+    /**
+     * Returns the representation of the list, with only its values being outputted, as LList does.
+     *
+     * @return Returns the list of values, delimited by spaces.
+     */
+    public String listToString() {
+
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < size; i++) {
+
+            if (i > 0) {
+                sb.append(" ");
+            }
+            sb.append(elements[i]);
+        }
+
+        return sb.toString().trim();
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the AList class.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     */
+    public static void main(String[] args) {
+
+        AList<Integer> list = new AList<>(0);
+        for (int i = 0; i < 100000; i++) {
+            list.add(i);
+        }
+
+        boolean correct = list.size() == 100000;
+        for (int i = 0; i < list.size(); i++) {
+            correct &= list.get(i) == i;
+        }
+        if (correct) {
+            System.out.println("Yay1");
+        }
+
+        long sum = 0;
+        for (int value : list) {
+            sum += value;
+        }
+        list.addAll(list);
+        if ((sum == 99999L * 100000 / 2) && (list.size() == 200000) && (list.get(150000) == 50000)) {
+            System.out.println("Yay2");
+        }
+
+        //A list built from a Linked List prints the same.
+        LList<Instruction> linked = new LList<>();
+        linked.insertLast(new Node<>(new Instruction("0: iconst_2")));
+        linked.insertLast(new Node<>(new Instruction("1: istore_1")));
+        AList<Instruction> instructions = new AList<>();
+        instructions.addAll(linked);
+        if (instructions.listToString().equals(linked.listToString())) {
+            System.out.println("Yay3");
+        }
+
+        try {
+            for (Instruction instruction : instructions) {
+                instructions.add(instruction);
+            }
+        } catch (ConcurrentModificationException e) {
+            System.out.println("Yay4");
+        }
+
+        try {
+            instructions.get(3);
+        } catch (IndexOutOfBoundsException e) {
+            System.out.println("Yay5");
+        }
+    }
+}
@@ -0,0 +1,356 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A class that runs a batch of program files concurrently. Every execution gets its own Interpreter, and so its own
+ * operand Stack, local variables and output buffer, while the prepared programs themselves are shared through the
+ * ProgramCache, a file appearing many times in a batch being loaded once.
+ * <p>
+ * Each program runs on its own virtual thread when the JVM provides them (Java 21 or later), found by reflection so
+ * the class still compiles and runs on older JVMs, where a fixed pool of platform threads is used instead. Either
+ * way, no more programs than the configured parallelism run at once.
+ *
+ * @author Brian Limaye
+ */
+public class BatchExecutor {
+
+    /**
+     * A class representing the outcome of running one program.
+     */
+    public static class Result {
+
+        /**
+         * The program file that was run.
+         */
+        private final String filename;
+        /**
+         * Everything the program printed.
+         */
+        private final String output;
+        /**
+         * The reason the program failed, null if it succeeded.
+         */
+        private final String error;
+
+        /**
+         * Three-argument constructor used to create a Result instance.
+         *
+         * @param filename The program file that was run.
+         * @param output   Everything the program printed.
+         * @param error    The reason the program failed, null if it succeeded.
+         */
+        Result(String filename, String output, String error) {
+            this.filename = filename;
+            this.output = output;
+            this.error = error;
+        }
+
+        /**
+         * Gets the program file that was run.
+         *
+         * @return Returns the filename.
+         */
+        public String getFilename() {
+            return filename;
+        }
+
+        /**
+         * Gets everything the program printed, up to any failure.
+         *
+         * @return Returns the output of the program.
+         */
+        public String getOutput() {
+            return output;
+        }
+
+        /**
+         * Gets the reason the program failed.
+         *
+         * @return Returns the failure message, null if the program succeeded.
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Gets the human interpreted form of the result.
+         *
+         * @return Returns the filename followed by the output or the failure.
+         */
+        @Override
+        public String toString() {
+            return filename + ": " + ((error == null) ? output : output + "ERR " + error);
+        }
+    }
+
+    /**
+     * The largest number of programs run at once.
+     */
+    private final int parallelism;
+    /**
+     * Whether hot programs are compiled to JVM bytecode.
+     */
+    private boolean jitEnabled = true;
+    /**
+     * Whether programs are optimized when prepared.
+     */
+    private boolean optimize;
+    /**
+     * The engine used for programs that have not been compiled.
+     */
+    private Interpreter.Engine engine = Interpreter.Engine.SWITCH;
+    /**
+     * Whether the last batch ran on virtual threads.
+     */
+    private boolean virtual;
+    /**
+     * The time the last batch took, in nanoseconds.
+     */
+    private long elapsedNanos;
+
+    /**
+     * One-argument constructor used to create a BatchExecutor instance.
+     *
+     * @param parallelism The largest number of programs run at once.
+     */
+    public BatchExecutor(int parallelism) {
+        this.parallelism = Math.max(parallelism, 1);
+    }
+
+    /**
+     * Enables or disables compiling hot programs to JVM bytecode.
+     *
+     * @param jitEnabled True to compile hot programs, false to always interpret.
+     */
+    public void setJitEnabled(boolean jitEnabled) {
+        this.jitEnabled = jitEnabled;
+    }
+
+    /**
+     * Enables or disables the load-time optimization passes.
+     *
+     * @param optimize True to optimize programs when they are prepared, false otherwise.
+     */
+    public void setOptimize(boolean optimize) {
+        this.optimize = optimize;
+    }
+
+    /**
+     * Sets the engine used for programs that have not been compiled to JVM bytecode.
+     *
+     * @param engine The engine to be used.
+     */
+    public void setEngine(Interpreter.Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Runs every program file of a batch, waiting for all of them to finish.
+     *
+     * @param filenames The program files, which may repeat.
+     * @return Returns the result of each program, in the order given.
+     */
+    public List<Result> run(List<String> filenames) {
+
+        Semaphore permits = new Semaphore(parallelism);
+        ExecutorService executor = newExecutor();
+        ArrayList<Future<Result>> futures = new ArrayList<>(filenames.size());
+        ArrayList<Result> results = new ArrayList<>(filenames.size());
+
+        long start = System.nanoTime();
+
+        try {
+            for (String filename : filenames) {
+
+                futures.add(executor.submit(() -> {
+
+                    permits.acquire();
+                    try {
+                        return execute(filename);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Batch interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Batch failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        elapsedNanos = System.nanoTime() - start;
+        return results;
+    }
+
+    /**
+     * Helper method responsible for running a single program on a fresh Interpreter.
+     *
+     * @param filename The program file.
+     * @return Returns the result of the program.
+     */
+    private Result execute(String filename) {
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setJitEnabled(jitEnabled);
+        interpreter.setOptimize(optimize);
+        interpreter.setEngine(engine);
+        interpreter.setCache(ProgramCache.getShared());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        String error = null;
+
+        try (PrintStream output = new PrintStream(bytes, false, StandardCharsets.UTF_8)) {
+
+            interpreter.setOutput(output);
+
+            try {
+                interpreter.evaluateProgram(interpreter.load(filename));
+            } catch (IOException | RuntimeException e) {
+                error = String.valueOf(e.getMessage());
+            }
+            output.flush();
+        }
+
+        return new Result(filename, bytes.toString(StandardCharsets.UTF_8), error);
+    }
+
+    /**
+     * Helper method responsible for creating the executor of a batch: one virtual thread per program if the JVM
+     * has them, otherwise a pool of as many platform threads as the parallelism.
+     *
+     * @return Returns the executor.
+     */
+    private ExecutorService newExecutor() {
+
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            virtual = true;
+            return executor;
+        } catch (ReflectiveOperationException e) {
+
+            virtual = false;
+            return Executors.newFixedThreadPool(parallelism);
+        }
+    }
+
+    /**
+     * Gets the human interpreted report of the last batch.
+     *
+     * @param programs The number of programs in the batch.
+     * @return Returns the throughput of the batch.
+     */
+    public String report(int programs) {
+
+        double seconds = elapsedNanos / 1e9;
+        return String.format("batch: %d programs in %.1f ms, %,.0f programs/sec on %s (parallelism %d)", programs,
+                seconds * 1000, programs / seconds, (virtual) ? "virtual threads" : "platform threads", parallelism);
+    }
+
+    /**
+     * The main method used to run a batch of program files, printing each result followed by the throughput, or
+     * to test the BatchExecutor when no files are given.
+     *
+     * @param args The command-line arguments: [-parallelism=N] [-repeat=N] [-O] [-nojit] [files...].
+     * @throws IOException Thrown when a temporary program file is unable to be written.
+     */
+    public static void main(String[] args) throws IOException {
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int repeat = 1;
+        ArrayList<String> files = new ArrayList<>();
+        boolean optimize = false;
+        boolean jit = true;
+
+        for (String arg : args) {
+
+            if (arg.startsWith("-parallelism=")) {
+                parallelism = Integer.parseInt(arg.substring("-parallelism=".length()));
+            } else if (arg.startsWith("-repeat=")) {
+                repeat = Integer.parseInt(arg.substring("-repeat=".length()));
+            } else if (arg.equals("-O")) {
+                optimize = true;
+            } else if (arg.equals("-nojit")) {
+                jit = false;
+            } else {
+                files.add(arg);
+            }
+        }
+
+        BatchExecutor executor = new BatchExecutor(parallelism);
+        executor.setOptimize(optimize);
+        executor.setJitEnabled(jit);
+
+        if (!files.isEmpty()) {
+
+            ArrayList<String> batch = new ArrayList<>();
+            for (int i = 0; i < repeat; i++) {
+                batch.addAll(files);
+            }
+
+            for (Result result : executor.run(batch)) {
+                System.out.println(result);
+            }
+            System.err.println(executor.report(batch.size()));
+            return;
+        }
+
+        //Every program prints its own constant, so outputs crossing between executions would be caught.
+        ArrayList<String> batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+
+            File file = File.createTempFile("batch", ".txt");
+            file.deleteOnExit();
+
+            try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+                writer.print("0: bipush " + (i + 1) + "\n2: istore_1\n3: iload_1\n4: print\n5: iinc 1, -1\n8: iload_1\n"
+                        + "9: ifne 3\n12: return\n");
+            }
+            batch.add(file.getPath());
+        }
+
+        ArrayList<String> repeated = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            repeated.add(batch.get(i % batch.size()));
+        }
+
+        List<Result> results = executor.run(repeated);
+        boolean correct = true;
+
+        for (int i = 0; i < results.size(); i++) {
+
+            StringBuilder expected = new StringBuilder();
+            for (int k = i % batch.size() + 1; k > 0; k--) {
+                expected.append(k).append(" ");
+            }
+            correct &= results.get(i).getOutput().equals(expected.toString());
+        }
+
+        if (correct) {
+            System.out.println("Yay1");
+        }
+        System.out.println(executor.report(repeated.size()));
+
+        if (executor.run(List.of("/nonexistent/program.txt")).get(0).getError().equals("File not Found...")) {
+            System.out.println("Yay2");
+        }
+    }
+}
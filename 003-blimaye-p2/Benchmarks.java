@@ -0,0 +1,332 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/**
+ * A class that measures the throughput of the Interpreter and of the data structures it is built on, sweeping the
+ * size of every workload. Each benchmark is warmed up so the JVM has compiled it, then timed over several
+ * iterations, each repeating the workload for a fixed time; the mean throughput and its spread across iterations
+ * are reported. Every workload returns a value that is folded into a field, so the JVM cannot discard the work.
+ *
+ * @author Brian Limaye
+ */
+public class Benchmarks {
+
+    /**
+     * A workload being measured.
+     */
+    private interface Workload {
+
+        /**
+         * Runs the workload once.
+         *
+         * @return Returns a value derived from the work, so it cannot be discarded.
+         * @throws Exception Thrown when the workload fails.
+         */
+        int run() throws Exception;
+    }
+
+    /**
+     * The value every workload result is folded into.
+     */
+    private static int sink;
+
+    /**
+     * The number of untimed iterations before measuring.
+     */
+    private int warmups = 3;
+    /**
+     * The number of timed iterations.
+     */
+    private int iterations = 5;
+    /**
+     * The least time each iteration repeats its workload for, in milliseconds.
+     */
+    private long iterationMillis = 200;
+    /**
+     * The text a benchmark name must contain to be run, empty to run every benchmark.
+     */
+    private String filter = "";
+
+    /**
+     * Helper method responsible for measuring one workload and printing its throughput.
+     *
+     * @param name     The name of the benchmark.
+     * @param size     The size of the workload, such as its number of Instructions.
+     * @param workload The workload.
+     * @throws Exception Thrown when the workload fails.
+     */
+    private void measure(String name, int size, Workload workload) throws Exception {
+
+        if (!name.contains(filter)) {
+            return;
+        }
+
+        double[] scores = new double[iterations];
+
+        for (int i = -warmups; i < iterations; i++) {
+
+            long operations = 0;
+            long start = System.nanoTime();
+            long deadline = start + iterationMillis * 1_000_000;
+            long now;
+
+            do {
+                sink += workload.run();
+                ++operations;
+            } while ((now = System.nanoTime()) < deadline);
+
+            if (i >= 0) {
+                scores[i] = operations / ((now - start) / 1e9);
+            }
+        }
+
+        double mean = 0;
+        for (double score : scores) {
+            mean += score;
+        }
+        mean /= scores.length;
+
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        double deviation = (scores.length > 1) ? Math.sqrt(variance / (scores.length - 1)) : 0;
+
+        System.out.printf("%-30s %9d %14.1f ops/s +- %5.1f%% %14.3f us/op%n", name, size, mean,
+                100 * deviation / mean, 1e6 / mean);
+    }
+
+    /**
+     * Helper method responsible for creating an Interpreter whose output is discarded.
+     *
+     * @param engine The engine used for programs that have not been compiled.
+     * @param jit    Whether hot programs are compiled to JVM bytecode.
+     * @return Returns the Interpreter.
+     */
+    private static Interpreter interpreter(Interpreter.Engine engine, boolean jit) {
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setEngine(engine);
+        interpreter.setJitEnabled(jit);
+        interpreter.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        return interpreter;
+    }
+
+    /**
+     * Measures parsing, reading and loading a program of a given size.
+     *
+     * @param size The number of Instructions.
+     * @throws Exception Thrown when a program is unable to be written or read.
+     */
+    private void loading(int size) throws Exception {
+
+        String program = ProgramGenerator.arithmetic(size, size);
+        String[] lines = ProgramGenerator.lines(program);
+        String filename = ProgramGenerator.write(program).getPath();
+
+        measure("parse.Instruction", size, () -> {
+
+            int offsets = 0;
+            for (String line : lines) {
+                offsets += new Instruction(line).getOffset();
+            }
+            return offsets;
+        });
+        measure("readFile", size, () -> Interpreter.readFile(filename).getFirst().getValue().getOffset());
+        measure("readInstructions", size, () -> Interpreter.readInstructions(filename).size());
+        measure("ProgramLoader.load", size, () -> ProgramLoader.load(filename).length());
+    }
+
+    /**
+     * Measures evaluating arithmetic-heavy and loop-heavy programs of a given size on every engine, along with
+     * loading and compiling them. Each evaluated program is loaded and prepared once, before it is timed.
+     *
+     * @param size The number of Instructions of the arithmetic program, and loop iterations of the loop program.
+     * @throws Exception Thrown when a program is unable to be written or evaluated.
+     */
+    private void evaluation(int size) throws Exception {
+
+        String[] kinds = {"arithmetic", "loop"};
+        String[] programs = {ProgramGenerator.arithmetic(size, size), ProgramGenerator.loop(size, 16, size)};
+
+        for (int k = 0; k < kinds.length; k++) {
+
+            String filename = ProgramGenerator.write(programs[k]).getPath();
+
+            for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+
+                Interpreter interpreter = interpreter(engine, false);
+                DecodedProgram program = interpreter.prepare(ProgramLoader.load(filename));
+                measure("evaluate." + kinds[k] + "." + engine.name().toLowerCase(), size, () -> {
+                    interpreter.evaluateProgram(program);
+                    return 1;
+                });
+            }
+
+            //Evaluated past the invocation threshold first, so every timed evaluation runs the compiled program.
+            Interpreter jit = interpreter(Interpreter.Engine.SWITCH, true);
+            DecodedProgram program = jit.prepare(ProgramLoader.load(filename));
+            while ((program.getCompiled() == null) && (!program.isUncompilable())) {
+                jit.evaluateProgram(program);
+            }
+            measure("evaluate." + kinds[k] + ".jit", size, () -> {
+                jit.evaluateProgram(program);
+                return 1;
+            });
+
+            measure("prepare." + kinds[k], size, () -> jit.prepare(ProgramLoader.load(filename)).length());
+            measure("compile." + kinds[k] + ".jit", size, () -> (JitCompiler.compile(program) != null) ? 1 : 0);
+        }
+    }
+
+    /**
+     * Measures the data structures the Interpreter is built on, with a given number of elements.
+     *
+     * @param size The number of elements.
+     * @throws Exception Thrown when a workload fails.
+     */
+    private void structures(int size) throws Exception {
+
+        measure("HashMap.put", size, () -> {
+
+            HashMap<Integer, Integer> map = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                map.put(i, i);
+            }
+            return map.size();
+        });
+
+        HashMap<Integer, Integer> filled = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            filled.put(i, i);
+        }
+        measure("HashMap.get", size, () -> {
+
+            int sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += filled.get(i);
+            }
+            return sum;
+        });
+
+        measure("IntIntMap.put", size, () -> {
+
+            IntIntMap map = new IntIntMap();
+            for (int i = 0; i < size; i++) {
+                map.put(i, i);
+            }
+            return map.size();
+        });
+
+        IntIntMap ints = new IntIntMap();
+        for (int i = 0; i < size; i++) {
+            ints.put(i, i);
+        }
+        measure("IntIntMap.get", size, () -> {
+
+            int sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += ints.get(i, 0);
+            }
+            return sum;
+        });
+
+        measure("Stack.push/pop", size, () -> {
+
+            Stack<Integer> stack = new Stack<>();
+            for (int i = 0; i < size; i++) {
+                stack.push(i);
+            }
+
+            int sum = 0;
+            while (!stack.isEmpty()) {
+                sum += stack.pop();
+            }
+            return sum;
+        });
+
+        measure("LList.insertLast", size, () -> {
+
+            LList<Integer> list = new LList<>();
+            for (int i = 0; i < size; i++) {
+                list.insertLast(new Node<>(i));
+            }
+            return list.getFirst().getValue();
+        });
+
+        measure("AList.add", size, () -> {
+
+            AList<Integer> list = new AList<>();
+            for (int i = 0; i < size; i++) {
+                list.add(i);
+            }
+            return list.size();
+        });
+    }
+
+    /**
+     * The main method used to run the benchmarks, every group over every size unless told otherwise.
+     *
+     * @param args The command-line arguments: [-sizes=N,N,...] [-warmups=N] [-iterations=N] [-millis=N]
+     *             [-filter=TEXT] [loading] [evaluation] [structures].
+     * @throws Exception Thrown when a benchmark fails.
+     */
+    public static void main(String[] args) throws Exception {
+
+        Benchmarks benchmarks = new Benchmarks();
+        int[] sizes = {1000, 10000};
+        ArrayList<String> groups = new ArrayList<>();
+
+        for (String arg : args) {
+
+            if (arg.startsWith("-sizes=")) {
+
+                String[] values = arg.substring("-sizes=".length()).split(",");
+                sizes = new int[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    sizes[i] = Integer.parseInt(values[i].trim());
+                }
+            } else if (arg.startsWith("-warmups=")) {
+                benchmarks.warmups = Integer.parseInt(arg.substring("-warmups=".length()));
+            } else if (arg.startsWith("-iterations=")) {
+                benchmarks.iterations = Math.max(Integer.parseInt(arg.substring("-iterations=".length())), 1);
+            } else if (arg.startsWith("-millis=")) {
+                benchmarks.iterationMillis = Long.parseLong(arg.substring("-millis=".length()));
+            } else if (arg.startsWith("-filter=")) {
+                benchmarks.filter = arg.substring("-filter=".length());
+            } else if ((arg.equals("loading")) || (arg.equals("evaluation")) || (arg.equals("structures"))) {
+                groups.add(arg);
+            } else {
+                System.out.println("Usage: java Benchmarks [-sizes=N,N,...] [-warmups=N] [-iterations=N] [-millis=N] [-filter=TEXT] [loading] [evaluation] [structures]");
+                System.exit(0);
+            }
+        }
+
+        if (groups.isEmpty()) {
+            groups.add("loading");
+            groups.add("evaluation");
+            groups.add("structures");
+        }
+
+        System.out.printf("%-30s %9s %14s %16s %17s%n", "benchmark", "size", "throughput", "error", "time");
+
+        for (String group : groups) {
+            for (int size : sizes) {
+
+                if (group.equals("loading")) {
+                    benchmarks.loading(size);
+                } else if (group.equals("evaluation")) {
+                    benchmarks.evaluation(size);
+                } else {
+                    benchmarks.structures(size);
+                }
+            }
+        }
+
+        //The folded results are used, so no workload is ever dead code.
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,381 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A class that reads and writes the compact binary form of a DecodedProgram, so a program executed many times is
+ * parsed only once. The file starts with a 20-byte header:
+ * <pre>
+ *  0  magic "JBIN"
+ *  4  version (2 bytes), then 2 reserved bytes
+ *  8  number of Instructions
+ * 12  length of the body in bytes
+ * 16  CRC32 of the body
+ * </pre>
+ * The body holds one record per Instruction: its opcode byte, the difference from the previous offset as a
+ * zigzag varint, then its operands as zigzag varints, a jump holding the index it transfers control to (already
+ * resolved, so no offset is looked up when loading).
+ *
+ * @author Brian Limaye
+ */
+public final class BinaryProgram {
+
+    /**
+     * The first four bytes of every binary program, "JBIN".
+     */
+    static final int MAGIC = 0x4A42494E;
+    /**
+     * The version of the format written.
+     */
+    static final int VERSION = 1;
+    /**
+     * The number of bytes before the first Instruction record.
+     */
+    static final int HEADER_SIZE = 20;
+
+    /**
+     * Private constructor, as the class only holds static methods.
+     */
+    private BinaryProgram() {
+    }
+
+    /**
+     * Determines whether a buffer holds a binary program, from its first four bytes.
+     *
+     * @param buffer The bytes of a program file.
+     * @return Returns true if the buffer starts with the binary magic number, false otherwise.
+     */
+    static boolean isBinary(ByteBuffer buffer) {
+        return (buffer.limit() - buffer.position() >= 4) && (buffer.getInt(buffer.position()) == MAGIC);
+    }
+
+    /**
+     * Writes the binary form of a program.
+     *
+     * @param program The decoded program to be written.
+     * @param out     The stream the binary form is written to.
+     * @throws IOException Thrown when the stream is unable to be written.
+     */
+    public static void write(DecodedProgram program, OutputStream out) throws IOException {
+
+        int[] opcodes = program.getOpcodes();
+        int[] params1 = program.getParams1();
+        int[] params2 = program.getParams2();
+        int[] targets = program.getTargets();
+        int[] offsets = program.getOffsets();
+        int length = opcodes.length;
+
+        //Every record takes at most one opcode byte and three varints of five bytes.
+        ByteBuffer body = ByteBuffer.allocate(16 * length);
+        int previous = 0;
+
+        for (int i = 0; i < length; i++) {
+
+            int opcode = opcodes[i];
+            body.put((byte) opcode);
+            putVarint(body, zigzag(offsets[i] - previous));
+            previous = offsets[i];
+
+            if (Opcodes.isBranch(opcode)) {
+                putVarint(body, targets[i]);
+            } else if ((opcode == Opcodes.ICONST) || (opcode == Opcodes.BIPUSH)) {
+                putVarint(body, zigzag(params1[i]));
+            } else if ((opcode == Opcodes.ILOAD) || (opcode == Opcodes.ISTORE)) {
+                //Slots are written as the program names them, and numbered densely again when read.
+                putVarint(body, zigzag(program.getSlotName(params1[i])));
+            } else if (opcode == Opcodes.IINC) {
+                putVarint(body, zigzag(program.getSlotName(params1[i])));
+                putVarint(body, zigzag(params2[i]));
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, body.position());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0).putInt(length).putInt(body.position())
+                .putInt((int) crc.getValue());
+
+        out.write(header.array());
+        out.write(body.array(), 0, body.position());
+    }
+
+    /**
+     * Reads the binary form of a program, from the position of a buffer.
+     *
+     * @param buffer The bytes of the binary program, such as a memory-mapped file.
+     * @return Returns the decoded program.
+     * @throws IOException Thrown when the buffer is not a valid binary program of this version.
+     */
+    public static DecodedProgram read(ByteBuffer buffer) throws IOException {
+
+        int start = buffer.position();
+
+        if ((buffer.limit() - start < HEADER_SIZE) || (buffer.getInt(start) != MAGIC)) {
+            throw new IOException("Not a binary program");
+        }
+
+        int version = buffer.getShort(start + 4);
+        int length = buffer.getInt(start + 8);
+        int bodyLength = buffer.getInt(start + 12);
+        int checksum = buffer.getInt(start + 16);
+
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary program version " + version + ", expected " + VERSION);
+        }
+        if ((length < 0) || (bodyLength < 0) || (bodyLength > buffer.limit() - start - HEADER_SIZE)) {
+            throw new IOException("Truncated binary program");
+        }
+
+        //The checksum is computed over a view of the body, so a mapped file is never copied.
+        ByteBuffer body = buffer.duplicate();
+        body.position(start + HEADER_SIZE).limit(start + HEADER_SIZE + bodyLength);
+
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Binary program checksum mismatch");
+        }
+
+        //Each record takes at least two bytes, so a count beyond that is corrupt rather than an allocation to try.
+        if (length > bodyLength / 2) {
+            throw new IOException("Truncated binary program");
+        }
+
+        int[] opcodes = new int[length];
+        int[] params1 = new int[length];
+        int[] params2 = new int[length];
+        int[] targets = new int[length];
+        int[] offsets = new int[length];
+        int previous = 0;
+
+        for (int i = 0; i < length; i++) {
+
+            if (!body.hasRemaining()) {
+                throw new IOException("Truncated binary program");
+            }
+
+            int opcode = body.get();
+            if ((opcode < Opcodes.NOP) || (opcode > Opcodes.IFNE)) {
+                throw new IOException("Illegal opcode " + opcode + " in binary program");
+            }
+
+            opcodes[i] = opcode;
+            offsets[i] = previous + unzigzag(getVarint(body));
+            previous = offsets[i];
+            targets[i] = -1;
+
+            if (Opcodes.isBranch(opcode)) {
+
+                targets[i] = getVarint(body);
+                if ((targets[i] < 0) || (targets[i] > length)) {
+                    throw new IOException("Illegal jump index " + targets[i] + " in binary program");
+                }
+            } else if ((opcode == Opcodes.ICONST) || (opcode == Opcodes.BIPUSH) || (opcode == Opcodes.ILOAD)
+                    || (opcode == Opcodes.ISTORE)) {
+                params1[i] = unzigzag(getVarint(body));
+            } else if (opcode == Opcodes.IINC) {
+                params1[i] = unzigzag(getVarint(body));
+                params2[i] = unzigzag(getVarint(body));
+            }
+
+            if ((DecodedProgram.usesLocal(opcode)) && (params1[i] < 0)) {
+                throw new IOException("Illegal variable index " + params1[i] + " at offset " + offsets[i] + " in binary program");
+            }
+        }
+
+        return new DecodedProgram(opcodes, params1, params2, targets, offsets);
+    }
+
+    /**
+     * Helper method responsible for mapping a signed value onto an unsigned one, small magnitudes staying small.
+     *
+     * @param value The signed value.
+     * @return Returns the zigzag encoding of the value.
+     */
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Helper method responsible for reversing the zigzag encoding.
+     *
+     * @param value The zigzag encoded value.
+     * @return Returns the signed value.
+     */
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Helper method responsible for writing an unsigned varint, seven bits per byte with the high bit set on every
+     * byte but the last.
+     *
+     * @param buffer The buffer being written.
+     * @param value  The value, treated as unsigned.
+     */
+    private static void putVarint(ByteBuffer buffer, int value) {
+
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Helper method responsible for reading an unsigned varint.
+     *
+     * @param buffer The buffer being read.
+     * @return Returns the value.
+     * @throws IOException Thrown when the varint runs past the end of the buffer or is longer than five bytes.
+     */
+    private static int getVarint(ByteBuffer buffer) throws IOException {
+
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Truncated binary program");
+            }
+
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+
+            if (b >= 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint in binary program");
+    }
+
+    /**
+     * Converts a text program into its binary form.
+     *
+     * @param input  The text program file to be read.
+     * @param output The binary program file to be written.
+     * @throws IOException Thrown when a file is unable to be read or written.
+     */
+    public static void convert(String input, String output) throws IOException {
+
+        DecodedProgram program = ProgramLoader.load(input);
+
+        try (OutputStream out = new FileOutputStream(output)) {
+            write(program, out);
+        }
+    }
+
+    /**
+     * The main method used to convert a text program into its binary form, given the input and output files, or
+     * otherwise to test the format and measure how long a large program takes to load in either form.
+     *
+     * @param args The command-line arguments, the text program and binary program files when converting.
+     * @throws IOException Thrown when a file is unable to be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length == 2) {
+            convert(args[0], args[1]);
+            return;
+        }
+        if (args.length != 0) {
+            System.out.println("Usage: java BinaryProgram [input.txt output.bin]");
+            System.exit(0);
+        }
+
+        File text = File.createTempFile("binary", ".txt");
+        File binary = File.createTempFile("binary", ".bin");
+        text.deleteOnExit();
+        binary.deleteOnExit();
+
+        int lines = 200000;
+        try (PrintWriter writer = new PrintWriter(new FileWriter(text))) {
+
+            for (int i = 0; i < lines; i++) {
+                writer.println((3 * i) + ": " + ((i % 5 == 0) ? "bipush " + (i % 100 - 50) : (i % 5 == 1) ? "istore_1"
+                        : (i % 5 == 2) ? "iinc 1, -1" : (i % 5 == 3) ? "iload 300" : "if_icmplt " + (3 * i - 30)));
+            }
+        }
+
+        convert(text.getPath(), binary.getPath());
+
+        DecodedProgram fromText = ProgramLoader.load(text.getPath());
+        DecodedProgram fromBinary = ProgramLoader.load(binary.getPath());
+
+        if ((fromText.toString().equals(fromBinary.toString())) && (Arrays.equals(fromText.getParams2(), fromBinary.getParams2()))) {
+            System.out.println("Yay1");
+        }
+
+        if (binary.length() < text.length() / 3) {
+            System.out.println("Yay2");
+        }
+
+        //A single corrupted byte of the body is caught by the checksum.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(fromText, bytes);
+        byte[] corrupt = bytes.toByteArray();
+        corrupt[HEADER_SIZE + 7] ^= 1;
+
+        try {
+            read(ByteBuffer.wrap(corrupt));
+        } catch (IOException e) {
+            System.out.println("Yay3");
+        }
+
+        //A negative local variable passes the checksum, but is rejected as the text form rejects it.
+        bytes.reset();
+        write(new DecodedProgram(new int[]{Opcodes.ICONST, Opcodes.ISTORE}, new int[]{1, -1}, new int[2],
+                new int[]{-1, -1}, new int[]{0, 1}), bytes);
+
+        try {
+            read(ByteBuffer.wrap(bytes.toByteArray()));
+        } catch (IOException e) {
+            System.out.println("Yay4");
+        }
+
+        //Sparse, high slots are numbered densely in the frame, and written back as the program named them.
+        DecodedProgram sparse = ProgramLoader.load(ByteBuffer.wrap(
+                "0: bipush 7\n2: istore 2000000000\n5: iload 2000000000\n8: print\n".getBytes()));
+        bytes.reset();
+        write(sparse, bytes);
+        DecodedProgram reread = read(ByteBuffer.wrap(bytes.toByteArray()));
+
+        if ((sparse.getLocalCount() == 1) && (reread.getLocalCount() == 1) && (reread.toString().equals(sparse.toString()))
+                && (sparse.toString().contains("istore 2000000000"))) {
+            System.out.println("Yay5");
+        }
+
+        //Each form is warmed up before it is timed.
+        for (int round = 0; round < 2; round++) {
+
+            int runs = (round == 0) ? 3 : 10;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                ProgramLoader.load(text.getPath());
+            }
+            double textMillis = (System.nanoTime() - start) / 1e6 / runs;
+
+            start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                ProgramLoader.load(binary.getPath());
+            }
+            double binaryMillis = (System.nanoTime() - start) / 1e6 / runs;
+
+            if (round == 1) {
+                System.out.printf("text:   %,d bytes, %.1f ms per load%n", text.length(), textMillis);
+                System.out.printf("binary: %,d bytes, %.1f ms per load (%.1fx)%n", binary.length(), binaryMillis, textMillis / binaryMillis);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
+/**
+ * A class implementing an OutputSink that formats each value straight into a byte buffer, writing the buffer to its
+ * stream only when it fills up or is flushed. It is not synchronized, so each evaluation must have its own.
+ *
+ * @author Brian Limaye
+ */
+public class BufferedSink implements OutputSink {
+
+    /**
+     * The default size of the buffer, in bytes.
+     */
+    final static private int DEFAULT_SIZE = 8192;
+    /**
+     * The largest number of bytes a single print writes: a sign, ten digits and a space.
+     */
+    final static private int MAX_PRINT = 12;
+
+    /**
+     * The stream the buffer is written to.
+     */
+    private final OutputStream out;
+    /**
+     * The bytes printed but not yet written.
+     */
+    private final byte[] buffer;
+    /**
+     * The number of bytes in the buffer.
+     */
+    private int count;
+
+    /**
+     * One-argument constructor used to create a BufferedSink with the default buffer size.
+     *
+     * @param out The stream the buffer is written to.
+     */
+    public BufferedSink(OutputStream out) {
+        this(out, DEFAULT_SIZE);
+    }
+
+    /**
+     * Two-argument constructor used to create a BufferedSink with a given buffer size.
+     *
+     * @param out  The stream the buffer is written to.
+     * @param size The size of the buffer, at least large enough for a single print.
+     */
+    public BufferedSink(OutputStream out, int size) {
+        this.out = out;
+        this.buffer = new byte[Math.max(size, MAX_PRINT)];
+    }
+
+    /**
+     * Prints a value followed by a space, formatting its digits straight into the buffer.
+     *
+     * @param value The value to be printed.
+     */
+    @Override
+    public void print(int value) {
+
+        if (count > buffer.length - MAX_PRINT) {
+            drain();
+        }
+
+        //Digits are produced from the last, so they are written backwards from the end of the value's space.
+        long magnitude = Math.abs((long) value);
+        int digits = 1;
+        for (long rest = magnitude / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+
+        int pos = count;
+        if (value < 0) {
+            buffer[pos++] = '-';
+        }
+
+        int end = pos + digits;
+        for (int k = end - 1; k >= pos; k--) {
+            buffer[k] = (byte) ('0' + (magnitude % 10));
+            magnitude /= 10;
+        }
+
+        buffer[end] = ' ';
+        count = end + 1;
+    }
+
+    /**
+     * Writes the buffer to the stream and flushes the stream.
+     */
+    @Override
+    public void flush() {
+
+        drain();
+
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Helper method responsible for writing the buffer to the stream, emptying it.
+     */
+    private void drain() {
+
+        if (count == 0) {
+            return;
+        }
+
+        try {
+            out.write(buffer, 0, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count = 0;
+    }
+
+    /**
+     * The main method used to test the BufferedSink against String formatting, then to compare printing a million
+     * values through each.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     */
+    public static void main(String[] args) {
+
+        int[] values = {0, 7, -7, 10, -10, 99, 100, 123456789, Integer.MAX_VALUE, Integer.MIN_VALUE, -1};
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedSink sink = new BufferedSink(bytes, 16);
+        StringBuilder expected = new StringBuilder();
+
+        for (int value : values) {
+            sink.print(value);
+            expected.append(value).append(" ");
+        }
+        sink.flush();
+
+        if (bytes.toString().equals(expected.toString())) {
+            System.out.println("Yay1");
+        }
+
+        //Nothing reaches the stream until the buffer fills or is flushed.
+        bytes.reset();
+        sink = new BufferedSink(bytes);
+        sink.print(5);
+        if (bytes.size() == 0) {
+            sink.flush();
+            if (bytes.toString().equals("5 ")) {
+                System.out.println("Yay2");
+            }
+        }
+
+        int n = 1000000;
+        for (int round = 0; round < 2; round++) {
+
+            PrintStream stream = new PrintStream(new ByteArrayOutputStream(16 * n));
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                stream.print(i + " ");
+            }
+            stream.flush();
+            long printStream = System.nanoTime() - start;
+
+            sink = new BufferedSink(new ByteArrayOutputStream(16 * n));
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                sink.print(i);
+            }
+            sink.flush();
+            long buffered = System.nanoTime() - start;
+
+            if (round == 1) {
+                System.out.printf("PrintStream.print(value + \" \"): %.1f ms, BufferedSink.print(value): %.1f ms%n",
+                        printStream / 1e6, buffered / 1e6);
+            }
+        }
+    }
+}
@@ -0,0 +1,366 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A class that compiles a DecodedProgram into a graph of pre-bound node objects, one per Instruction.
+ * Each node carries its own operands along with direct references to its successor and branch target, so
+ * running a program never decodes an Instruction or looks up the target of a jump.
+ * <p>
+ * Within a straight run of Instructions each node calls its successor itself, so every node class has its own
+ * call site and the JVM sees far fewer receiver types at each than at a single shared dispatch loop. Java never
+ * eliminates tail calls, so a jump always returns its target to run() instead, and a long run hands control back
+ * every CHAIN_LENGTH nodes, bounding how deep the Java stack grows.
+ *
+ * @author Brian Limaye
+ */
+public class ClosureCompiler {
+
+    /**
+     * Private constructor, as the class only holds static methods.
+     */
+    private ClosureCompiler() {
+    }
+
+    /**
+     * The most nodes called one from another before control returns to run().
+     */
+    private static final int CHAIN_LENGTH = 32;
+
+    /**
+     * A class representing a single compiled Instruction.
+     */
+    abstract static class ExecNode {
+
+        /**
+         * The node executed after this one when no jump is performed, null at the end of the program.
+         */
+        ExecNode next;
+
+        /**
+         * Whether the node calls its successor itself rather than returning it to run().
+         */
+        boolean chained;
+
+        /**
+         * Executes the Instruction.
+         *
+         * @param stack  The operand Stack.
+         * @param locals The local variables.
+         * @param out    The sink that print writes to.
+         * @return Returns the node to be executed next, null when the program ends.
+         */
+        abstract ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out);
+    }
+
+    /**
+     * A class representing a compiled jump, whose target is bound once every node exists.
+     */
+    abstract static class BranchNode extends ExecNode {
+
+        /**
+         * The node jumped to, null if the jump ends the program.
+         */
+        ExecNode target;
+    }
+
+    /**
+     * Compiles a program into a graph of nodes.
+     *
+     * @param program The decoded program to be compiled.
+     * @return Returns the first node to be executed, null if the program executes nothing.
+     */
+    public static ExecNode compile(DecodedProgram program) {
+
+        int[] opcodes = program.getOpcodes();
+        int[] params1 = program.getParams1();
+        int[] params2 = program.getParams2();
+        int[] targets = program.getTargets();
+        int length = opcodes.length;
+
+        ExecNode[] nodes = new ExecNode[length];
+
+        for (int i = 0; i < length; i++) {
+            nodes[i] = createNode(opcodes[i], params1[i], params2[i]);
+        }
+
+        //Instructions without a node (nop, return) resolve to the next node that exists.
+        ExecNode[] resolved = new ExecNode[length + 1];
+
+        for (int i = length - 1; i >= 0; i--) {
+            resolved[i] = (nodes[i] != null) ? nodes[i] : resolved[i + 1];
+        }
+
+        //Counts the nodes since control last returned to run(), which every jump does.
+        int chain = 0;
+
+        for (int i = 0; i < length; i++) {
+
+            if (nodes[i] == null) {
+                continue;
+            }
+
+            nodes[i].next = resolved[i + 1];
+
+            if (nodes[i] instanceof BranchNode) {
+                ((BranchNode) nodes[i]).target = resolved[Math.min(targets[i], length)];
+                chain = 0;
+            } else {
+                chain = (chain + 1) % CHAIN_LENGTH;
+                nodes[i].chained = (nodes[i].next != null) && (chain != 0);
+            }
+        }
+
+        return resolved[0];
+    }
+
+    /**
+     * Runs a compiled program until it ends.
+     *
+     * @param entry  The first node to be executed.
+     * @param stack  The operand Stack.
+     * @param locals The local variables.
+     * @param out    The sink that print writes to.
+     */
+    public static void run(ExecNode entry, IntStack stack, LocalFrame locals, OutputSink out) {
+
+        ExecNode node = entry;
+
+        while (node != null) {
+            node = node.execute(stack, locals, out);
+        }
+    }
+
+    /**
+     * Helper method responsible for creating the unlinked node of a single Instruction.
+     *
+     * @param opcode The opcode of the Instruction.
+     * @param param1 The first operand.
+     * @param param2 The second operand.
+     * @return Returns the node, null for Instructions that do nothing.
+     */
+    private static ExecNode createNode(int opcode, final int param1, final int param2) {
+
+        switch (opcode) {
+
+            case Opcodes.ICONST:
+            case Opcodes.BIPUSH:
+                return new ExecNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        stack.push(param1);
+                        return (chained) ? next.execute(stack, locals, out) : next;
+                    }
+                };
+            case Opcodes.IADD:
+                return new ExecNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        int value2 = stack.pop();
+                        stack.push(stack.pop() + value2);
+                        return (chained) ? next.execute(stack, locals, out) : next;
+                    }
+                };
+            case Opcodes.ISUB:
+                return new ExecNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        int value2 = stack.pop();
+                        stack.push(stack.pop() - value2);
+                        return (chained) ? next.execute(stack, locals, out) : next;
+                    }
+                };
+            case Opcodes.IMUL:
+                return new ExecNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        int value2 = stack.pop();
+                        stack.push(stack.pop() * value2);
+                        return (chained) ? next.execute(stack, locals, out) : next;
+                    }
+                };
+            case Opcodes.IDIV:
+                return new ExecNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        int value2 = stack.pop();
+                        stack.push(stack.pop() / value2);
+                        return (chained) ? next.execute(stack, locals, out) : next;
+                    }
+                };
+            case Opcodes.IREM:
+                return new ExecNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        int value2 = stack.pop();
+                        stack.push(stack.pop() % value2);
+                        return (chained) ? next.execute(stack, locals, out) : next;
+                    }
+                };
+            case Opcodes.PRINT:
+                return new ExecNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        out.print(stack.pop());
+                        return (chained) ? next.execute(stack, locals, out) : next;
+                    }
+                };
+            case Opcodes.ILOAD:
+                return new ExecNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        stack.push(locals.load(param1));
+                        return (chained) ? next.execute(stack, locals, out) : next;
+                    }
+                };
+            case Opcodes.ISTORE:
+                return new ExecNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        locals.store(param1, stack.pop());
+                        return (chained) ? next.execute(stack, locals, out) : next;
+                    }
+                };
+            case Opcodes.IINC:
+                return new ExecNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        locals.increment(param1, param2);
+                        return (chained) ? next.execute(stack, locals, out) : next;
+                    }
+                };
+            case Opcodes.GOTO:
+                return new BranchNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        return target;
+                    }
+                };
+            case Opcodes.IF_ICMPEQ:
+                return new BranchNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        int value2 = stack.pop();
+                        return (stack.pop() == value2) ? target : next;
+                    }
+                };
+            case Opcodes.IF_ICMPNE:
+                return new BranchNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        int value2 = stack.pop();
+                        return (stack.pop() != value2) ? target : next;
+                    }
+                };
+            case Opcodes.IF_ICMPGE:
+                return new BranchNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        int value2 = stack.pop();
+                        return (stack.pop() >= value2) ? target : next;
+                    }
+                };
+            case Opcodes.IF_ICMPGT:
+                return new BranchNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        int value2 = stack.pop();
+                        return (stack.pop() > value2) ? target : next;
+                    }
+                };
+            case Opcodes.IF_ICMPLE:
+                return new BranchNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        int value2 = stack.pop();
+                        return (stack.pop() <= value2) ? target : next;
+                    }
+                };
+            case Opcodes.IF_ICMPLT:
+                return new BranchNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        int value2 = stack.pop();
+                        return (stack.pop() < value2) ? target : next;
+                    }
+                };
+            case Opcodes.IFNE:
+                return new BranchNode() {
+                    ExecNode execute(IntStack stack, LocalFrame locals, OutputSink out) {
+                        return (stack.pop() != 0) ? target : next;
+                    }
+                };
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Helper method responsible for evaluating a program on one engine, capturing what it prints and how it fails.
+     *
+     * @param engine The engine evaluating the program.
+     * @param text   The text of the program.
+     * @return Returns the output, followed by the failure message if the evaluation failed.
+     */
+    private static String evaluate(Interpreter.Engine engine, String text) {
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setJitEnabled(false);
+        interpreter.setEngine(engine);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        interpreter.setSink(new BufferedSink(bytes));
+
+        try {
+            interpreter.evaluateProgram(interpreter.prepare(ProgramLoader.load(ByteBuffer.wrap(text.getBytes()))));
+        } catch (RuntimeException e) {
+            return bytes + "failed: " + e.getMessage();
+        }
+        return bytes.toString();
+    }
+
+    /**
+     * Helper method responsible for checking that the closure engine evaluates a program as the switch engine does.
+     *
+     * @param text     The text of the program.
+     * @param expected The output (and failure) both engines should produce.
+     * @return Returns whether both engines produced the expected result.
+     */
+    private static boolean agrees(String text, String expected) {
+        return (evaluate(Interpreter.Engine.SWITCH, text).equals(expected))
+                && (evaluate(Interpreter.Engine.CLOSURE, text).equals(expected));
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the ClosureCompiler class, every program
+     * printing and failing exactly as it does on the switch engine.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     */
+    public static void main(String[] args) {
+
+        //A loop, whose jumps return to run() on every iteration.
+        String sum = "0: iconst_0\n1: istore_1\n2: iconst_0\n3: istore_2\n4: iload_2\n5: bipush 100\n"
+                + "7: if_icmpge 20\n10: iload_1\n11: iload_2\n12: iadd\n13: istore_1\n14: iinc 2, 1\n"
+                + "17: goto 4\n20: iload_1\n21: print\n22: return\n";
+        if (agrees(sum, "4950 ")) {
+            System.out.println("Yay1");
+        }
+
+        //Dividing by zero fails after the same output, from inside a chain of nodes.
+        if (agrees("0: bipush 7\n2: print\n3: iconst_1\n4: iconst_0\n5: idiv\n6: print\n", "7 failed: / by zero")) {
+            System.out.println("Yay2");
+        }
+
+        //Reading a local before storing it fails with the same message.
+        if (agrees("0: bipush 7\n2: print\n3: iload_1\n4: print\n5: return\n",
+                "7 failed: local variable 1 is read before it is stored")) {
+            System.out.println("Yay3");
+        }
+
+        //A straight run far longer than one chain hands control back to run() and carries on.
+        StringBuilder straight = new StringBuilder("0: iconst_0\n");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            straight.append(1 + 3 * i).append(": iconst_1\n").append(2 + 3 * i).append(": iadd\n");
+            straight.append(3 + 3 * i).append(": nop\n");
+        }
+        straight.append("3001: print\n");
+        if (agrees(straight.toString(), "1000 ")) {
+            System.out.println("Yay4");
+        }
+
+        //Generated programs print the same on both engines.
+        boolean agrees = true;
+        for (long seed = 0; seed < 50; seed++) {
+
+            String text = (seed % 2 == 0) ? ProgramGenerator.loop(500, 24, seed) : ProgramGenerator.arithmetic(200, seed);
+            agrees &= evaluate(Interpreter.Engine.CLOSURE, text).equals(evaluate(Interpreter.Engine.SWITCH, text));
+        }
+        if (agrees) {
+            System.out.println("Yay5");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A class representing a program that has been compiled into a hidden JVM class by the JitCompiler.
+ *
+ * @author Brian Limaye
+ */
+public class CompiledProgram {
+
+    /**
+     * The static run(OutputSink, int[], int) method of the generated class.
+     */
+    private final MethodHandle run;
+
+    /**
+     * Whether execution may enter the compiled code at each Instruction index (index 0 and loop headers).
+     */
+    private final boolean[] entries;
+
+    /**
+     * The size of the class file the generated class was defined from, in bytes.
+     */
+    private final int classBytes;
+
+    /**
+     * Three-argument constructor used to create a CompiledProgram instance.
+     *
+     * @param run        The handle of the generated run method.
+     * @param entries    The Instruction indexes at which the compiled code may be entered.
+     * @param classBytes The size of the class file the generated class was defined from.
+     */
+    CompiledProgram(MethodHandle run, boolean[] entries, int classBytes) {
+        this.run = run;
+        this.entries = entries;
+        this.classBytes = classBytes;
+    }
+
+    /**
+     * Estimates the memory held by the compiled program, the generated class itself living outside the heap.
+     *
+     * @return Returns the estimated number of bytes.
+     */
+    long estimateBytes() {
+
+        //A loaded class holds its bytecode along with about as much again of metadata, plus a fixed overhead.
+        return 1024 + 2L * classBytes + 16 + entries.length;
+    }
+
+    /**
+     * Determines whether the compiled code may be entered at an Instruction index with an empty operand Stack.
+     *
+     * @param index The Instruction index being examined.
+     * @return Returns true if the index is an entry point, false otherwise.
+     */
+    public boolean canEnterAt(int index) {
+        return (index >= 0) && (index < entries.length) && entries[index];
+    }
+
+    /**
+     * Runs the compiled code until the program ends.
+     *
+     * @param out    The sink that print writes to.
+     * @param locals The starting value of every local variable slot.
+     * @param entry  The Instruction index to start at, which must be an entry point.
+     */
+    public void execute(OutputSink out, int[] locals, int entry) {
+
+        try {
+            run.invokeExact(out, locals, entry);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Support method called by the generated code for print, writing the value exactly as the Interpreter does.
+     *
+     * @param value The value to be printed.
+     * @param out   The sink being printed to.
+     */
+    public static void print(int value, OutputSink out) {
+        out.print(value);
+    }
+}
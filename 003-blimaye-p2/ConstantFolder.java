@@ -0,0 +1,233 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A class representing a static optimization pass over a DecodedProgram, run before it is evaluated:
+ * <ul>
+ * <li>Constant arithmetic on iconst/bipush operands within a basic block is folded into a single push
+ * (idiv/irem only when the divisor is non-zero, so the ArithmeticException is preserved).</li>
+ * <li>Blocks the control-flow graph cannot reach from the first Instruction are dropped.</li>
+ * </ul>
+ *
+ * @author Brian Limaye
+ */
+public class ConstantFolder {
+
+    /**
+     * The number of arithmetic Instructions replaced by a constant.
+     */
+    private int folded;
+    /**
+     * The number of constant pushes removed by folding.
+     */
+    private int pushesRemoved;
+    /**
+     * The number of unreachable blocks dropped.
+     */
+    private int blocksRemoved;
+    /**
+     * The number of Instructions in the unreachable blocks dropped.
+     */
+    private int unreachableRemoved;
+
+    /**
+     * Folds constant arithmetic and drops unreachable blocks of a program.
+     *
+     * @param program The decoded program to be optimized.
+     * @return Returns the optimized program, or the original program if nothing changed.
+     */
+    public DecodedProgram optimize(DecodedProgram program) {
+
+        ControlFlowGraph cfg = new ControlFlowGraph(program);
+        int[] opcodes = program.getOpcodes().clone();
+        int[] params1 = program.getParams1().clone();
+        int length = opcodes.length;
+        boolean[] keep = new boolean[length];
+        boolean changed = false;
+
+        //The constant (if known) and producing Instruction of each value pushed within the current block.
+        boolean[] known = new boolean[length];
+        int[] values = new int[length];
+        int[] producers = new int[length];
+
+        for (ControlFlowGraph.Block block : cfg.getBlocks()) {
+
+            if (!block.isReachable()) {
+
+                ++blocksRemoved;
+                unreachableRemoved += block.getEnd() - block.getStart();
+                changed = true;
+                continue;
+            }
+
+            int sp = 0;
+
+            for (int i = block.getStart(); i < block.getEnd(); i++) {
+
+                int opcode = opcodes[i];
+                keep[i] = true;
+
+                if ((opcode == Opcodes.ICONST) || (opcode == Opcodes.BIPUSH)) {
+
+                    known[sp] = true;
+                    values[sp] = params1[i];
+                    producers[sp++] = i;
+                } else if ((Opcodes.isArithmetic(opcode)) && (sp >= 2) && (known[sp - 1]) && (known[sp - 2])
+                        && (!(((opcode == Opcodes.IDIV) || (opcode == Opcodes.IREM)) && (values[sp - 1] == 0)))) {
+
+                    //Both operands are constants pushed within this block, so the pushes are removed.
+                    keep[producers[sp - 1]] = false;
+                    keep[producers[sp - 2]] = false;
+                    sp -= 2;
+
+                    opcodes[i] = Opcodes.BIPUSH;
+                    params1[i] = Opcodes.arithmetic(opcode, values[sp], values[sp + 1]);
+                    known[sp] = true;
+                    values[sp] = params1[i];
+                    producers[sp++] = i;
+
+                    ++folded;
+                    pushesRemoved += 2;
+                    changed = true;
+                } else {
+
+                    //Values pushed before the block started are unknown, so the symbolic Stack stops at 0.
+                    sp = Math.max(sp - Opcodes.pops(opcode), 0);
+                    for (int j = 0; j < Opcodes.pushes(opcode); j++) {
+                        known[sp++] = false;
+                    }
+                }
+            }
+        }
+
+        if (!changed) {
+            return program;
+        }
+
+        DecodedProgram folded = new DecodedProgram(opcodes, params1, program.getParams2(), program.getTargets(),
+                program.getOffsets()).withSlotNamesOf(program);
+        return folded.retain(keep);
+    }
+
+    /**
+     * Gets the total number of Instructions removed from the program.
+     *
+     * @return Returns the number of Instructions removed.
+     */
+    public int getInstructionsRemoved() {
+        return pushesRemoved + unreachableRemoved;
+    }
+
+    /**
+     * Gets the human interpreted report of the pass.
+     *
+     * @return Returns the report of the pass.
+     */
+    @Override
+    public String toString() {
+        return "constant folding: " + folded + " operations folded (" + pushesRemoved + " pushes removed), "
+                + blocksRemoved + " unreachable blocks (" + unreachableRemoved + " Instructions) dropped";
+    }
+
+    /**
+     * Helper method responsible for evaluating a program on the switch engine, capturing what it prints.
+     *
+     * @param text     The text of the program.
+     * @param optimize Whether the program is optimized when prepared, as with -O.
+     * @return Returns the output, followed by the failure message if the evaluation failed.
+     */
+    private static String evaluate(String text, boolean optimize) {
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setJitEnabled(false);
+        interpreter.setOptimize(optimize);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        interpreter.setSink(new BufferedSink(bytes));
+
+        try {
+            interpreter.evaluateProgram(interpreter.prepare(ProgramLoader.load(ByteBuffer.wrap(text.getBytes()))));
+        } catch (RuntimeException e) {
+            return bytes + "failed: " + e.getMessage();
+        }
+        return bytes.toString();
+    }
+
+    /**
+     * Helper method responsible for checking that a program prints the same with and without -O.
+     *
+     * @param text     The text of the program.
+     * @param expected The output (and failure) expected either way.
+     * @return Returns whether both evaluations produced the expected result.
+     */
+    private static boolean unchanged(String text, String expected) {
+        return (evaluate(text, false).equals(expected)) && (evaluate(text, true).equals(expected));
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the ConstantFolder class.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     */
+    public static void main(String[] args) {
+
+        //A chain of constant operations folds into a single push.
+        String chain = "0: iconst_2\n1: iconst_3\n2: iadd\n3: iconst_4\n4: imul\n5: print\n";
+        ConstantFolder folder = new ConstantFolder();
+        DecodedProgram program = folder.optimize(ProgramLoader.load(ByteBuffer.wrap(chain.getBytes())));
+
+        if ((folder.toString().equals("constant folding: 2 operations folded (4 pushes removed), 0 unreachable blocks "
+                + "(0 Instructions) dropped")) && (program.getOpcodes().length == 2)
+                && (program.getParams1()[0] == 20) && (unchanged(chain, "20 "))) {
+            System.out.println("Yay1");
+        }
+
+        //Dividing by zero is left to fail when evaluated.
+        String divide = "0: bipush 7\n2: print\n3: iconst_1\n4: iconst_0\n5: idiv\n6: print\n";
+        String remainder = "0: bipush 7\n2: print\n3: iconst_1\n4: iconst_0\n5: irem\n6: print\n";
+        folder = new ConstantFolder();
+        DecodedProgram original = ProgramLoader.load(ByteBuffer.wrap(divide.getBytes()));
+        boolean kept = folder.optimize(original) == original;
+        original = ProgramLoader.load(ByteBuffer.wrap(remainder.getBytes()));
+        kept &= folder.optimize(original) == original;
+
+        if ((kept) && (folder.getInstructionsRemoved() == 0) && (unchanged(divide, "7 failed: / by zero"))
+                && (unchanged(remainder, "7 failed: / by zero"))) {
+            System.out.println("Yay2");
+        }
+
+        //The block jumped over is unreachable and dropped.
+        String skip = "0: goto 5\n3: iconst_1\n4: print\n5: iconst_2\n6: print\n";
+        folder = new ConstantFolder();
+        program = folder.optimize(ProgramLoader.load(ByteBuffer.wrap(skip.getBytes())));
+
+        if ((folder.toString().equals("constant folding: 0 operations folded (0 pushes removed), 1 unreachable blocks "
+                + "(2 Instructions) dropped")) && (program.getOpcodes().length == 3) && (program.getTargets()[0] == 1)
+                && (unchanged(skip, "2 "))) {
+            System.out.println("Yay3");
+        }
+
+        //The back edge targets a push that is folded away, so it is retargeted to the folded push.
+        String loop = "0: iconst_0\n1: istore_1\n2: iconst_2\n3: iconst_3\n4: iadd\n5: print\n6: iinc 1, 1\n"
+                + "9: iload_1\n10: iconst_3\n11: if_icmplt 2\n14: return\n";
+        folder = new ConstantFolder();
+        program = folder.optimize(ProgramLoader.load(ByteBuffer.wrap(loop.getBytes())));
+
+        if ((folder.getInstructionsRemoved() == 2) && (program.getTargets()[7] == 2)
+                && (program.getOpcodes()[2] == Opcodes.BIPUSH) && (program.getParams1()[2] == 5)
+                && (unchanged(loop, "5 5 5 "))) {
+            System.out.println("Yay4");
+        }
+
+        //Generated programs print the same with and without -O.
+        boolean agrees = true;
+        for (long seed = 0; seed < 50; seed++) {
+
+            String text = (seed % 2 == 0) ? ProgramGenerator.loop(500, 24, seed) : ProgramGenerator.arithmetic(200, seed);
+            agrees &= evaluate(text, true).equals(evaluate(text, false));
+        }
+        if (agrees) {
+            System.out.println("Yay5");
+        }
+    }
+}
@@ -0,0 +1,523 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * A class representing the control-flow graph of a DecodedProgram: its Instructions partitioned into basic
+ * blocks, each block starting at a leader (the first Instruction, a jump target, or the Instruction following a
+ * jump) and linked to the blocks control may reach next. The natural loops of the graph are found from its
+ * back edges, edges whose target dominates their source.
+ *
+ * @author Brian Limaye
+ */
+public class ControlFlowGraph {
+
+    /**
+     * A class representing a basic block, a run of Instructions always executed from first to last.
+     */
+    public static class Block {
+
+        /**
+         * The position of the block within the graph.
+         */
+        private final int id;
+        /**
+         * The index of the first Instruction of the block.
+         */
+        private final int start;
+        /**
+         * The index one past the last Instruction of the block.
+         */
+        private final int end;
+        /**
+         * The blocks control may continue to, excluding the end of the program.
+         */
+        private final ArrayList<Block> successors = new ArrayList<>();
+        /**
+         * The blocks that may continue to this block.
+         */
+        private final ArrayList<Block> predecessors = new ArrayList<>();
+        /**
+         * Whether the block can be reached from the first Instruction.
+         */
+        private boolean reachable;
+
+        /**
+         * Three-argument constructor used to create a Block instance.
+         *
+         * @param id    The position of the block within the graph.
+         * @param start The index of the first Instruction.
+         * @param end   The index one past the last Instruction.
+         */
+        Block(int id, int start, int end) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Gets the position of the block within the graph.
+         *
+         * @return Returns the position of the block.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Gets the index of the first Instruction of the block.
+         *
+         * @return Returns the index of the first Instruction.
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Gets the index one past the last Instruction of the block.
+         *
+         * @return Returns the index one past the last Instruction.
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * Gets the blocks control may continue to.
+         *
+         * @return Returns the successors of the block.
+         */
+        public ArrayList<Block> getSuccessors() {
+            return successors;
+        }
+
+        /**
+         * Gets the blocks that may continue to this block.
+         *
+         * @return Returns the predecessors of the block.
+         */
+        public ArrayList<Block> getPredecessors() {
+            return predecessors;
+        }
+
+        /**
+         * Determines whether the block can be reached from the first Instruction.
+         *
+         * @return Returns true if the block is reachable, false otherwise.
+         */
+        public boolean isReachable() {
+            return reachable;
+        }
+
+        /**
+         * Gets the human interpreted representation of the block.
+         *
+         * @return Returns the human interpreted representation of the block.
+         */
+        @Override
+        public String toString() {
+            return "B" + id + "[" + start + ", " + end + ")";
+        }
+    }
+
+    /**
+     * A class representing a natural loop: a header block and every block that can reach one of the loop's back
+     * edges without passing through the header.
+     */
+    public static class Loop {
+
+        /**
+         * The block every iteration starts at.
+         */
+        private final Block header;
+        /**
+         * The blocks of the loop, including the header, ordered by their first Instruction.
+         */
+        private final ArrayList<Block> blocks = new ArrayList<>();
+        /**
+         * The blocks ending with a back edge to the header.
+         */
+        private final ArrayList<Block> latches = new ArrayList<>();
+        /**
+         * The ids of the blocks of the loop.
+         */
+        private final BitSet members = new BitSet();
+
+        /**
+         * One-argument constructor used to create a Loop instance.
+         *
+         * @param header The header of the loop.
+         */
+        Loop(Block header) {
+            this.header = header;
+        }
+
+        /**
+         * Gets the block every iteration starts at.
+         *
+         * @return Returns the header of the loop.
+         */
+        public Block getHeader() {
+            return header;
+        }
+
+        /**
+         * Gets the blocks of the loop, including the header.
+         *
+         * @return Returns the blocks of the loop.
+         */
+        public ArrayList<Block> getBlocks() {
+            return blocks;
+        }
+
+        /**
+         * Gets the blocks ending with a back edge to the header.
+         *
+         * @return Returns the latches of the loop.
+         */
+        public ArrayList<Block> getLatches() {
+            return latches;
+        }
+
+        /**
+         * Determines whether a block belongs to the loop.
+         *
+         * @param block The block being examined.
+         * @return Returns true if the block belongs to the loop, false otherwise.
+         */
+        public boolean contains(Block block) {
+            return members.get(block.id);
+        }
+
+        /**
+         * Gets the number of Instructions in the loop.
+         *
+         * @return Returns the number of Instructions in the loop.
+         */
+        public int size() {
+
+            int size = 0;
+            for (Block block : blocks) {
+                size += block.end - block.start;
+            }
+            return size;
+        }
+
+        /**
+         * Gets the human interpreted representation of the loop.
+         *
+         * @return Returns the human interpreted representation of the loop.
+         */
+        @Override
+        public String toString() {
+            return "loop " + header + " " + blocks + " latches " + latches;
+        }
+    }
+
+    /**
+     * The program the graph was built from.
+     */
+    private final DecodedProgram program;
+    /**
+     * Every block, ordered by their first Instruction.
+     */
+    private final ArrayList<Block> blocks = new ArrayList<>();
+    /**
+     * The block containing each Instruction, indexed by Instruction.
+     */
+    private final Block[] blockOf;
+    /**
+     * The dominators of every block, indexed by block id, null for unreachable blocks.
+     */
+    private BitSet[] dominators;
+    /**
+     * The natural loops of the graph, ordered by their header.
+     */
+    private final ArrayList<Loop> loops = new ArrayList<>();
+
+    /**
+     * One-argument constructor used to build the control-flow graph of a program.
+     *
+     * @param program The decoded program being analyzed.
+     */
+    public ControlFlowGraph(DecodedProgram program) {
+
+        this.program = program;
+
+        int[] opcodes = program.getOpcodes();
+        int[] targets = program.getTargets();
+        int length = opcodes.length;
+        boolean[] leaders = new boolean[length + 1];
+
+        //Every jump target, and every Instruction following a jump, starts a new block.
+        leaders[0] = true;
+        for (int i = 0; i < length; i++) {
+
+            if (Opcodes.isBranch(opcodes[i])) {
+                leaders[targets[i]] = true;
+                leaders[i + 1] = true;
+            }
+        }
+
+        blockOf = new Block[length];
+        int start = 0;
+
+        for (int i = 1; i <= length; i++) {
+
+            if ((leaders[i]) || (i == length)) {
+
+                if (start < i) {
+                    Block block = new Block(blocks.size(), start, i);
+                    blocks.add(block);
+
+                    for (int j = start; j < i; j++) {
+                        blockOf[j] = block;
+                    }
+                }
+                start = i;
+            }
+        }
+
+        for (Block block : blocks) {
+
+            int last = block.end - 1;
+
+            if (opcodes[last] != Opcodes.GOTO) {
+                link(block, block.end);
+            }
+            if (Opcodes.isBranch(opcodes[last])) {
+                link(block, targets[last]);
+            }
+        }
+
+        markReachable();
+        computeDominators();
+        findLoops();
+    }
+
+    /**
+     * Helper method responsible for adding an edge to the block starting at an Instruction index.
+     *
+     * @param from  The block control leaves.
+     * @param index The index control continues at, the program length meaning the end of the program.
+     */
+    private void link(Block from, int index) {
+
+        if (index >= blockOf.length) {
+            return;
+        }
+
+        Block to = blockOf[index];
+
+        if (!from.successors.contains(to)) {
+            from.successors.add(to);
+            to.predecessors.add(from);
+        }
+    }
+
+    /**
+     * Helper method responsible for marking every block reachable from the first block.
+     */
+    private void markReachable() {
+
+        if (blocks.isEmpty()) {
+            return;
+        }
+
+        Stack<Block> work = new Stack<>();
+        blocks.get(0).reachable = true;
+        work.push(blocks.get(0));
+
+        while (!work.isEmpty()) {
+
+            for (Block succ : work.pop().successors) {
+
+                if (!succ.reachable) {
+                    succ.reachable = true;
+                    work.push(succ);
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method responsible for computing the dominators of every reachable block, iterating until no set
+     * changes: the entry dominates only itself, and any other block is dominated by itself along with every
+     * block dominating all of its reachable predecessors.
+     */
+    private void computeDominators() {
+
+        int count = blocks.size();
+        dominators = new BitSet[count];
+
+        for (Block block : blocks) {
+
+            if (block.reachable) {
+                dominators[block.id] = new BitSet(count);
+                dominators[block.id].set(0, count);
+            }
+        }
+
+        if (count == 0) {
+            return;
+        }
+
+        dominators[0].clear();
+        dominators[0].set(0);
+
+        boolean changed = true;
+
+        while (changed) {
+
+            changed = false;
+
+            for (int i = 1; i < count; i++) {
+
+                if (dominators[i] == null) {
+                    continue;
+                }
+
+                BitSet next = new BitSet(count);
+                next.set(0, count);
+
+                for (Block pred : blocks.get(i).predecessors) {
+
+                    if (pred.reachable) {
+                        next.and(dominators[pred.id]);
+                    }
+                }
+                next.set(i);
+
+                if (!next.equals(dominators[i])) {
+                    dominators[i] = next;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method responsible for finding every natural loop, loops sharing a header being merged into one.
+     */
+    private void findLoops() {
+
+        Loop[] byHeader = new Loop[blocks.size()];
+
+        for (Block latch : blocks) {
+
+            if (!latch.reachable) {
+                continue;
+            }
+
+            for (Block header : latch.successors) {
+
+                if (!dominates(header, latch)) {
+                    continue;
+                }
+
+                Loop loop = byHeader[header.id];
+                if (loop == null) {
+                    loop = new Loop(header);
+                    loop.members.set(header.id);
+                    byHeader[header.id] = loop;
+                }
+                loop.latches.add(latch);
+
+                //Walks backwards from the latch, stopping at the header, collecting the body of the loop.
+                Stack<Block> work = new Stack<>();
+                if (!loop.members.get(latch.id)) {
+                    loop.members.set(latch.id);
+                    work.push(latch);
+                }
+
+                while (!work.isEmpty()) {
+
+                    for (Block pred : work.pop().predecessors) {
+
+                        if ((pred.reachable) && (!loop.members.get(pred.id))) {
+                            loop.members.set(pred.id);
+                            work.push(pred);
+                        }
+                    }
+                }
+            }
+        }
+
+        for (Loop loop : byHeader) {
+
+            if (loop != null) {
+
+                for (int id = loop.members.nextSetBit(0); id >= 0; id = loop.members.nextSetBit(id + 1)) {
+                    loop.blocks.add(blocks.get(id));
+                }
+                loops.add(loop);
+            }
+        }
+    }
+
+    /**
+     * Determines whether every path from the first Instruction to a block passes through another block.
+     *
+     * @param dominator The block that may dominate.
+     * @param block     The block that may be dominated.
+     * @return Returns true if dominator dominates block, false otherwise (or if either is unreachable).
+     */
+    public boolean dominates(Block dominator, Block block) {
+        return (dominators[block.id] != null) && (dominators[block.id].get(dominator.id));
+    }
+
+    /**
+     * Gets the natural loops of the graph, ordered by their header.
+     *
+     * @return Returns the loops of the graph.
+     */
+    public ArrayList<Loop> getLoops() {
+        return loops;
+    }
+
+    /**
+     * Gets the program the graph was built from.
+     *
+     * @return Returns the decoded program.
+     */
+    public DecodedProgram getProgram() {
+        return program;
+    }
+
+    /**
+     * Gets every block, ordered by their first Instruction.
+     *
+     * @return Returns the blocks of the graph.
+     */
+    public ArrayList<Block> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Gets the block containing an Instruction.
+     *
+     * @param index The index of the Instruction.
+     * @return Returns the block containing the Instruction.
+     */
+    public Block blockAt(int index) {
+        return blockOf[index];
+    }
+
+    /**
+     * Gets the human interpreted representation of the graph, one block and its successors per line.
+     *
+     * @return Returns the human interpreted representation of the graph.
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder();
+
+        for (Block block : blocks) {
+
+            sb.append(block).append(block.reachable ? "" : " (unreachable)").append(" -> ").append(block.successors);
+            sb.append("\n");
+        }
+
+        return sb.toString();
+    }
+}
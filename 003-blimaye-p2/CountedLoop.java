@@ -0,0 +1,255 @@
+/**
+ * A class representing a counted loop recognized by the LoopCollapser, along with the closed form of every local
+ * variable its body updates. The switch engine runs the loop through execute() at its header, in place of the
+ * header's own test, and continues at the loop exit with every local variable holding the value it would have after
+ * the last iteration.
+ * <p>
+ * Every closed form is exact in int arithmetic: each update is linear in the loop index, and linear combinations
+ * wrap around modulo 2^32 exactly as the same sums computed one iteration at a time do.
+ *
+ * @author Brian Limaye
+ */
+final class CountedLoop {
+
+    /**
+     * The local variable counting the iterations.
+     */
+    private final int counter;
+    /**
+     * The amount added to the counter by each iteration, never 0.
+     */
+    private final int step;
+    /**
+     * The if_icmp* opcode of the header, jumping to the exit when the loop is done.
+     */
+    private final int comparison;
+    /**
+     * The local variable the counter is compared with, -1 when it is compared with a constant.
+     */
+    private final int boundSlot;
+    /**
+     * The constant the counter is compared with, when boundSlot is -1.
+     */
+    private final int bound;
+    /**
+     * The index of the first Instruction of the body.
+     */
+    private final int body;
+    /**
+     * The index execution continues at once the loop is done.
+     */
+    private final int exit;
+    /**
+     * The local variables the body reads before writing them, which must hold a value for the body to run.
+     */
+    private final int[] reads;
+    /**
+     * The local variables the body updates, other than the counter.
+     */
+    private final int[] slots;
+    /**
+     * Whether each update adds to the previous value of its local variable, rather than replacing it.
+     */
+    private final boolean[] accumulates;
+    /**
+     * The constant term of each update.
+     */
+    private final int[] constants;
+    /**
+     * The coefficient of the counter, as it was at the start of the iteration, in each update.
+     */
+    private final int[] counterCoefficients;
+    /**
+     * The local variables, unchanged by the body, appearing in each update.
+     */
+    private final int[][] invariantSlots;
+    /**
+     * The coefficient of each invariant local variable in each update.
+     */
+    private final int[][] invariantCoefficients;
+
+    /**
+     * Constructor used to create a CountedLoop from the analysis of the LoopCollapser.
+     *
+     * @param counter               The local variable counting the iterations.
+     * @param step                  The amount added to the counter by each iteration, never 0.
+     * @param comparison            The if_icmp* opcode of the header.
+     * @param boundSlot             The local variable the counter is compared with, -1 for a constant.
+     * @param bound                 The constant the counter is compared with.
+     * @param body                  The index of the first Instruction of the body.
+     * @param exit                  The index execution continues at once the loop is done.
+     * @param reads                 The local variables the body reads before writing them.
+     * @param slots                 The local variables the body updates, other than the counter.
+     * @param accumulates           Whether each update adds to the previous value of its local variable.
+     * @param constants             The constant term of each update.
+     * @param counterCoefficients   The coefficient of the counter in each update.
+     * @param invariantSlots        The invariant local variables appearing in each update.
+     * @param invariantCoefficients The coefficient of each invariant local variable in each update.
+     */
+    CountedLoop(int counter, int step, int comparison, int boundSlot, int bound, int body, int exit, int[] reads,
+                int[] slots, boolean[] accumulates, int[] constants, int[] counterCoefficients,
+                int[][] invariantSlots, int[][] invariantCoefficients) {
+
+        this.counter = counter;
+        this.step = step;
+        this.comparison = comparison;
+        this.boundSlot = boundSlot;
+        this.bound = bound;
+        this.body = body;
+        this.exit = exit;
+        this.reads = reads;
+        this.slots = slots;
+        this.accumulates = accumulates;
+        this.constants = constants;
+        this.counterCoefficients = counterCoefficients;
+        this.invariantSlots = invariantSlots;
+        this.invariantCoefficients = invariantCoefficients;
+    }
+
+    /**
+     * Determines whether a counted loop comparing its counter this way, stepping by this amount, always reaches its
+     * exit before the counter could wrap around.
+     *
+     * @param comparison The if_icmp* opcode of the header.
+     * @param step       The amount added to the counter by each iteration.
+     * @return Returns true if the trip count has a closed form, false otherwise.
+     */
+    static boolean isCountable(int comparison, int step) {
+
+        switch (comparison) {
+
+            case Opcodes.IF_ICMPGE:
+            case Opcodes.IF_ICMPGT:
+                return step > 0;
+            case Opcodes.IF_ICMPLE:
+            case Opcodes.IF_ICMPLT:
+                return step < 0;
+            case Opcodes.IF_ICMPEQ:
+                //Stepping by one reaches every int, wrapping around if it must.
+                return (step == 1) || (step == -1);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Gets the number of iterations the loop runs from a given counter, exactly as evaluating it would.
+     *
+     * @param start The counter on reaching the header.
+     * @param limit The value the counter is compared with.
+     * @return Returns the trip count, -1 if the counter would wrap around before the loop is done.
+     */
+    long trips(int start, int limit) {
+
+        long trips;
+        long last;
+
+        switch (comparison) {
+
+            case Opcodes.IF_ICMPGE:
+                trips = (start >= limit) ? 0 : ((long) limit - start + step - 1) / step;
+                break;
+            case Opcodes.IF_ICMPGT:
+                trips = (start > limit) ? 0 : ((long) limit - start) / step + 1;
+                break;
+            case Opcodes.IF_ICMPLE:
+                trips = (start <= limit) ? 0 : ((long) start - limit - step - 1) / -step;
+                break;
+            case Opcodes.IF_ICMPLT:
+                trips = (start < limit) ? 0 : ((long) start - limit) / -step + 1;
+                break;
+            default:
+                //if_icmpeq, stepping by one: the distance to the limit, going the long way around if need be.
+                return Integer.toUnsignedLong((step == 1) ? limit - start : start - limit);
+        }
+
+        //A counter stepping past the end of the int range wraps around and keeps looping, so it is left to run.
+        last = start + trips * step;
+        return ((last > Integer.MAX_VALUE) || (last < Integer.MIN_VALUE)) ? -1 : trips;
+    }
+
+    /**
+     * Runs the loop from its header, either all at once or, when no closed form applies, by evaluating just the
+     * header test so the body runs one iteration at a time.
+     *
+     * @param locals The local variables of the evaluation, updated in place.
+     * @return Returns the index of the next Instruction to be evaluated.
+     * @throws RuntimeException Thrown when the counter or the bound has never been stored to.
+     */
+    int execute(LocalFrame locals) {
+
+        int start = locals.load(counter);
+        int limit = (boundSlot < 0) ? bound : locals.load(boundSlot);
+        long trips = trips(start, limit);
+
+        if (trips == 0) {
+            return exit;
+        }
+
+        //Without a closed form, or with a body that would fail reading a local, the loop runs as written.
+        boolean stored = trips > 0;
+        for (int i = 0; (stored) && (i < reads.length); i++) {
+            stored = locals.isStored(reads[i]);
+        }
+        if (!stored) {
+            return (Opcodes.compare(comparison, start, limit)) ? exit : body;
+        }
+
+        //The counter takes the values start + k * step for k from 0 to n - 1; their sum uses n(n - 1) / 2, halving
+        //whichever factor is even before wrapping around.
+        int n = (int) trips;
+        int triangle = ((trips & 1) == 0) ? (int) (trips / 2) * (int) (trips - 1) : n * (int) ((trips - 1) / 2);
+        int counterSum = n * start + step * triangle;
+        int lastCounter = start + (n - 1) * step;
+
+        for (int u = 0; u < slots.length; u++) {
+
+            int base = constants[u];
+            for (int j = 0; j < invariantSlots[u].length; j++) {
+                base += invariantCoefficients[u][j] * locals.load(invariantSlots[u][j]);
+            }
+
+            if (accumulates[u]) {
+                locals.store(slots[u], locals.load(slots[u]) + n * base + counterCoefficients[u] * counterSum);
+            } else {
+                locals.store(slots[u], base + counterCoefficients[u] * lastCounter);
+            }
+        }
+
+        locals.store(counter, start + n * step);
+        return exit;
+    }
+
+    /**
+     * Estimates the heap memory held by the loop and its closed forms.
+     *
+     * @return Returns the estimated number of bytes.
+     */
+    long estimateBytes() {
+
+        //Each array costs a 16-byte header plus 4 bytes an element (1 for accumulates).
+        long bytes = 72 + 7 * 16 + 4L * reads.length + 13L * slots.length;
+        for (int u = 0; u < slots.length; u++) {
+            bytes += 2 * 16 + 8L * invariantSlots[u].length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the human interpreted form of the loop.
+     *
+     * @return Returns the counter, its step and the locals updated in closed form.
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder("counted loop on local ").append(counter).append(" step ").append(step)
+                .append(" while !").append(Opcodes.name(comparison)).append(" ")
+                .append((boundSlot < 0) ? String.valueOf(bound) : "local " + boundSlot);
+
+        for (int u = 0; u < slots.length; u++) {
+            sb.append((u == 0) ? ": " : ", ").append((accumulates[u]) ? "accumulates " : "assigns ").append(slots[u]);
+        }
+        return sb.toString();
+    }
+}
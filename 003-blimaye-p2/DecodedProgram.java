@@ -0,0 +1,723 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A class representing a program whose Instructions have been decoded once, at load time, into dense arrays of
+ * integer opcodes and pre-parsed operands, with every jump already resolved to an array index.
+ *
+ * @author Brian Limaye
+ */
+public class DecodedProgram {
+
+    /**
+     * The integer opcode of each Instruction, as defined by Opcodes.
+     */
+    private final int[] opcodes;
+    /**
+     * The opcodes dispatched on by the switch engine: the same as opcodes, except where the PeepholeOptimizer
+     * replaced the first Instruction of a sequence with a superinstruction. The remaining Instructions of the
+     * sequence are left untouched, so jumps into the middle of a sequence still behave correctly.
+     */
+    private final int[] dispatchOpcodes;
+    /**
+     * The counted loop headed by each Instruction dispatched as counted_loop, null if the LoopCollapser found none.
+     */
+    private final CountedLoop[] countedLoops;
+    /**
+     * The first operand of each Instruction (constant, variable index), 0 if unused.
+     */
+    private final int[] params1;
+    /**
+     * The second operand of each Instruction (the iinc increment), 0 if unused.
+     */
+    private final int[] params2;
+    /**
+     * The resolved array index each jump transfers control to, -1 for non-jumps.
+     * A jump to an offset that does not exist resolves to the program length, ending execution.
+     */
+    private final int[] targets;
+    /**
+     * The original offset of each Instruction, kept for diagnostics.
+     */
+    private final int[] offsets;
+    /**
+     * The number of local variable slots a frame of the program holds.
+     */
+    private final int localCount;
+    /**
+     * The slot named by the program for each frame slot, null when frame slots are the slots the program names.
+     */
+    private int[] slotNames;
+
+    /**
+     * The highest slot a program may name while its frames are still indexed by the slots it names; a program naming
+     * a higher slot has the slots it uses numbered densely instead, so its frames never grow with the slot numbers.
+     */
+    static final int DENSE_SLOTS = 4096;
+
+    /**
+     * The number of times the program has been evaluated, used to decide when to compile it. Atomic, as a shared
+     * program may be evaluated on many threads at once.
+     */
+    private final AtomicInteger invocations = new AtomicInteger();
+    /**
+     * The compiled form of the program, null until the JitCompiler has compiled it.
+     */
+    private CompiledProgram compiled;
+    /**
+     * Whether the JitCompiler has already failed to compile the program, so it is never attempted again.
+     */
+    private boolean uncompilable;
+    /**
+     * The first node of the program compiled by the ClosureCompiler, valid once closuresBuilt is set.
+     */
+    private ClosureCompiler.ExecNode closures;
+    /**
+     * Whether the ClosureCompiler has already compiled the program.
+     */
+    private boolean closuresBuilt;
+    /**
+     * The program translated by the RegisterTranslator, valid once registersBuilt is set.
+     */
+    private RegisterProgram registers;
+    /**
+     * Whether the RegisterTranslator has already translated the program.
+     */
+    private boolean registersBuilt;
+    /**
+     * The operand Stack depth before every Instruction, null until the StackVerifier has verified the program.
+     */
+    private int[] stackDepths;
+    /**
+     * The largest number of values the program may hold on its operand Stack, valid once stackDepths is set.
+     */
+    private int maxStackDepth;
+
+    /**
+     * Five-argument constructor used to create a DecodedProgram from already decoded arrays.
+     *
+     * @param opcodes  The integer opcodes.
+     * @param params1  The first operands.
+     * @param params2  The second operands.
+     * @param targets  The resolved jump indexes.
+     * @param offsets  The original offsets.
+     */
+    DecodedProgram(int[] opcodes, int[] params1, int[] params2, int[] targets, int[] offsets) {
+        this(opcodes, opcodes, params1, params2, targets, offsets);
+    }
+
+    /**
+     * Six-argument constructor used to create a DecodedProgram whose switch engine dispatches on superinstructions.
+     *
+     * @param opcodes         The integer opcodes.
+     * @param dispatchOpcodes The opcodes dispatched on by the switch engine.
+     * @param params1         The first operands.
+     * @param params2         The second operands.
+     * @param targets         The resolved jump indexes.
+     * @param offsets         The original offsets.
+     */
+    DecodedProgram(int[] opcodes, int[] dispatchOpcodes, int[] params1, int[] params2, int[] targets, int[] offsets) {
+        this(opcodes, dispatchOpcodes, params1, params2, targets, offsets, null);
+    }
+
+    /**
+     * Seven-argument constructor used to create a DecodedProgram whose switch engine also runs collapsed loops.
+     *
+     * @param opcodes         The integer opcodes.
+     * @param dispatchOpcodes The opcodes dispatched on by the switch engine.
+     * @param params1         The first operands.
+     * @param params2         The second operands.
+     * @param targets         The resolved jump indexes.
+     * @param offsets         The original offsets.
+     * @param countedLoops    The counted loop headed by each Instruction dispatched as counted_loop.
+     */
+    DecodedProgram(int[] opcodes, int[] dispatchOpcodes, int[] params1, int[] params2, int[] targets, int[] offsets,
+                   CountedLoop[] countedLoops) {
+        int highest = -1;
+        for (int i = 0; i < opcodes.length; i++) {
+
+            if (usesLocal(opcodes[i])) {
+                highest = Math.max(highest, params1[i]);
+            }
+        }
+
+        //A program naming sparse, high slots has them numbered densely, in order, in a copy of its operands.
+        int count = highest + 1;
+        if (highest >= DENSE_SLOTS) {
+
+            slotNames = usedSlots(opcodes, params1);
+            IntIntMap dense = new IntIntMap(slotNames.length);
+            for (int i = 0; i < slotNames.length; i++) {
+                dense.put(slotNames[i], i);
+            }
+
+            params1 = params1.clone();
+            for (int i = 0; i < opcodes.length; i++) {
+
+                if ((usesLocal(opcodes[i])) && (params1[i] >= 0)) {
+                    params1[i] = dense.get(params1[i], -1);
+                }
+            }
+            count = slotNames.length;
+        }
+
+        this.opcodes = opcodes;
+        this.dispatchOpcodes = dispatchOpcodes;
+        this.countedLoops = countedLoops;
+        this.params1 = params1;
+        this.params2 = params2;
+        this.targets = targets;
+        this.offsets = offsets;
+        this.localCount = count;
+    }
+
+    /**
+     * Helper method responsible for listing the slots a program names.
+     *
+     * @param opcodes The integer opcodes.
+     * @param params1 The first operands.
+     * @return Returns every slot named by iload/istore/iinc, once each, in ascending order.
+     */
+    private static int[] usedSlots(int[] opcodes, int[] params1) {
+
+        IntIntMap seen = new IntIntMap();
+        for (int i = 0; i < opcodes.length; i++) {
+
+            if ((usesLocal(opcodes[i])) && (params1[i] >= 0)) {
+                seen.put(params1[i], 0);
+            }
+        }
+
+        int[] slots = new int[seen.size()];
+        int next = 0;
+        for (int i = 0; i < opcodes.length; i++) {
+
+            if ((usesLocal(opcodes[i])) && (params1[i] >= 0) && (seen.remove(params1[i]))) {
+                slots[next++] = params1[i];
+            }
+        }
+        java.util.Arrays.sort(slots);
+        return slots;
+    }
+
+    /**
+     * Gives the program the slot names of the program it was derived from, its operands already being numbered as
+     * that program's are.
+     *
+     * @param source The program the operands were taken from.
+     * @return Returns this program.
+     */
+    DecodedProgram withSlotNamesOf(DecodedProgram source) {
+
+        if (source.slotNames != null) {
+            slotNames = source.slotNames;
+        }
+        return this;
+    }
+
+    /**
+     * Gets the slot the program names for a frame slot.
+     *
+     * @param slot The frame slot, as held in the operands of iload/istore/iinc.
+     * @return Returns the slot as written in the program.
+     */
+    public int getSlotName(int slot) {
+        return ((slotNames == null) || (slot < 0) || (slot >= slotNames.length)) ? slot : slotNames[slot];
+    }
+
+    /**
+     * Creates the local variables of a fresh evaluation of the program.
+     *
+     * @return Returns an empty frame, reporting the slots as the program names them.
+     */
+    public LocalFrame newLocalFrame() {
+        return new LocalFrame(localCount, slotNames);
+    }
+
+    /**
+     * Determines whether an opcode reads or writes the local variable held in its first operand.
+     *
+     * @param opcode The opcode being examined.
+     * @return Returns true for iload, istore and iinc, false otherwise.
+     */
+    static boolean usesLocal(int opcode) {
+        return (opcode == Opcodes.ILOAD) || (opcode == Opcodes.ISTORE) || (opcode == Opcodes.IINC);
+    }
+
+    /**
+     * Gets the number of decoded Instructions.
+     *
+     * @return Returns the number of decoded Instructions.
+     */
+    public int length() {
+        return opcodes.length;
+    }
+
+    /**
+     * Gets the number of local variable slots needed to run the program.
+     *
+     * @return Returns one more than the highest slot used, or the number of slots used when they are numbered densely.
+     */
+    public int getLocalCount() {
+        return localCount;
+    }
+
+    /**
+     * Records one more evaluation of the program.
+     *
+     * @return Returns the number of evaluations so far, including this one.
+     */
+    int recordInvocation() {
+        return invocations.incrementAndGet();
+    }
+
+    /**
+     * Gets the compiled form of the program, compiling it first if that has not been attempted yet.
+     *
+     * @return Returns the compiled program, null if it cannot be compiled.
+     */
+    synchronized CompiledProgram compile() {
+
+        if ((compiled == null) && (!uncompilable)) {
+            compiled = JitCompiler.compile(this);
+            uncompilable = (compiled == null);
+        }
+        return compiled;
+    }
+
+    /**
+     * Gets the program compiled into pre-bound nodes, compiling it on first use.
+     *
+     * @return Returns the first node to be executed, null if the program executes nothing.
+     */
+    synchronized ClosureCompiler.ExecNode getClosures() {
+
+        if (!closuresBuilt) {
+            closures = ClosureCompiler.compile(this);
+            closuresBuilt = true;
+        }
+        return closures;
+    }
+
+    /**
+     * Gets the program translated into register Instructions, translating it on first use.
+     *
+     * @return Returns the register program, null if the program cannot be translated.
+     */
+    synchronized RegisterProgram getRegisters() {
+
+        if (!registersBuilt) {
+            registers = RegisterTranslator.translate(this);
+            registersBuilt = true;
+        }
+        return registers;
+    }
+
+    /**
+     * Gets the operand Stack depth before every Instruction, verifying the program on first use.
+     *
+     * @return Returns the depth before each Instruction, -1 if the Instruction is unreachable.
+     * @throws RuntimeException Thrown when the StackVerifier rejects the program.
+     */
+    public synchronized int[] getStackDepths() {
+
+        if (stackDepths == null) {
+            int[] depths = StackVerifier.verify(this);
+            maxStackDepth = StackVerifier.maxDepth(this, depths);
+            stackDepths = depths;
+        }
+        return stackDepths;
+    }
+
+    /**
+     * Gets the largest number of values the program may hold on its operand Stack, verifying it on first use.
+     *
+     * @return Returns the maximum Stack depth of the program.
+     * @throws RuntimeException Thrown when the StackVerifier rejects the program.
+     */
+    public synchronized int getMaxStackDepth() {
+
+        getStackDepths();
+        return maxStackDepth;
+    }
+
+    /**
+     * Gets the compiled form of the program, without attempting to compile it.
+     *
+     * @return Returns the compiled program, null if it has not been compiled.
+     */
+    CompiledProgram getCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Determines whether compiling the program has already failed.
+     *
+     * @return Returns true if the program cannot be compiled, false otherwise.
+     */
+    boolean isUncompilable() {
+        return uncompilable;
+    }
+
+    /**
+     * Estimates the memory held by the program: its decoded arrays and collapsed loops, along with every form built
+     * for it so far (Stack depths, closures, register program and compiled class). The estimate grows as those are
+     * built, so a cache charging it must charge it again later.
+     *
+     * @return Returns the estimated number of bytes.
+     */
+    public synchronized long estimateBytes() {
+
+        //Each int array costs a 16-byte header plus 4 bytes an element.
+        long array = 16 + 4L * opcodes.length;
+        int arrays = (dispatchOpcodes != opcodes) ? 6 : 5;
+        long bytes = 64 + arrays * array + ((stackDepths != null) ? array : 0);
+
+        if (countedLoops != null) {
+
+            bytes += array;
+            for (CountedLoop loop : countedLoops) {
+                bytes += (loop != null) ? loop.estimateBytes() : 0;
+            }
+        }
+
+        //A closure node holds its header, operands and two links, about 32 bytes, and there is at most one each.
+        if (closures != null) {
+            bytes += 32L * opcodes.length;
+        }
+        if (registers != null) {
+            bytes += registers.estimateBytes();
+        }
+        if (compiled != null) {
+            bytes += compiled.estimateBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the array of integer opcodes.
+     *
+     * @return Returns the opcodes, indexed by Instruction.
+     */
+    public int[] getOpcodes() {
+        return opcodes;
+    }
+
+    /**
+     * Gets the array of opcodes dispatched on by the switch engine, which may contain superinstructions.
+     *
+     * @return Returns the dispatch opcodes, indexed by Instruction.
+     */
+    public int[] getDispatchOpcodes() {
+        return dispatchOpcodes;
+    }
+
+    /**
+     * Gets the counted loops collapsed by the LoopCollapser.
+     *
+     * @return Returns the counted loop headed by each Instruction dispatched as counted_loop, null if there are none.
+     */
+    CountedLoop[] getCountedLoops() {
+        return countedLoops;
+    }
+
+    /**
+     * Gets the array of first operands.
+     *
+     * @return Returns the first operands, indexed by Instruction.
+     */
+    public int[] getParams1() {
+        return params1;
+    }
+
+    /**
+     * Gets the array of second operands.
+     *
+     * @return Returns the second operands, indexed by Instruction.
+     */
+    public int[] getParams2() {
+        return params2;
+    }
+
+    /**
+     * Gets the array of resolved jump indexes.
+     *
+     * @return Returns the jump indexes, indexed by Instruction.
+     */
+    public int[] getTargets() {
+        return targets;
+    }
+
+    /**
+     * Gets the array of original offsets.
+     *
+     * @return Returns the original offsets, indexed by Instruction.
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Creates a copy of the program containing only some of its Instructions, re-resolving every jump.
+     * A jump to a removed Instruction continues at the next Instruction that is kept, so only Instructions whose
+     * removal does not change the meaning of such a jump (folded constants, unreachable blocks) may be dropped.
+     *
+     * @param keep Whether each Instruction is kept, indexed by Instruction.
+     * @return Returns the smaller program, dispatching on its plain opcodes.
+     */
+    DecodedProgram retain(boolean[] keep) {
+
+        int length = opcodes.length;
+        int[] newIndex = new int[length + 1];
+        int kept = 0;
+
+        for (int i = 0; i < length; i++) {
+            newIndex[i] = keep[i] ? kept++ : -1;
+        }
+
+        newIndex[length] = kept;
+        for (int i = length - 1; i >= 0; i--) {
+            newIndex[i] = keep[i] ? newIndex[i] : newIndex[i + 1];
+        }
+
+        int[] newOpcodes = new int[kept];
+        int[] newParams1 = new int[kept];
+        int[] newParams2 = new int[kept];
+        int[] newTargets = new int[kept];
+        int[] newOffsets = new int[kept];
+
+        for (int i = 0; i < length; i++) {
+
+            if (keep[i]) {
+
+                int j = newIndex[i];
+                newOpcodes[j] = opcodes[i];
+                newParams1[j] = params1[i];
+                newParams2[j] = params2[i];
+                newTargets[j] = Opcodes.isBranch(opcodes[i]) ? newIndex[Math.min(targets[i], length)] : -1;
+                newOffsets[j] = offsets[i];
+            }
+        }
+
+        return new DecodedProgram(newOpcodes, newParams1, newParams2, newTargets, newOffsets).withSlotNamesOf(this);
+    }
+
+    /**
+     * Helper function responsible for parsing the value following the underscore of an Instruction name.
+     *
+     * @param opCode The Instruction name used for parsing the value.
+     * @return Returns the parsed value, -1 if unsuccessful.
+     */
+    private static int parseValue(String opCode) {
+
+        int value = -1;
+        int index = opCode.indexOf("_");        //Locates the index where an _ is found, if possible.
+
+        if (index < opCode.length() - 1) {    //A value is able to be parsed if the index is NOT the last character of opCode.
+
+            //A check to determine if the parsed value is a numerical value.
+            try {
+                value = Integer.parseInt(opCode.substring(index + 1));
+            } catch (NumberFormatException mfe) {
+
+            }
+        }
+
+        return ((value >= 0) && (value <= 5)) ? value : -1;    //Validation that the parsed value is between 0 and 5, inclusive.
+    }
+
+    /**
+     * Decodes a Linked List of Instructions, performing all of the string handling exactly once.
+     *
+     * @param list The Linked List of Instruction nodes to be decoded.
+     * @return Returns the decoded program.
+     */
+    public static DecodedProgram decode(LList<Instruction> list) {
+
+        AList<Instruction> instructions = new AList<>();
+        instructions.addAll(list);
+        return decode(instructions);
+    }
+
+    /**
+     * Decodes a list of Instructions, performing all of the string handling exactly once.
+     *
+     * @param list The Instructions to be decoded, in program order.
+     * @return Returns the decoded program.
+     */
+    public static DecodedProgram decode(AList<Instruction> list) {
+
+        int length = list.size();
+
+        int[] opcodes = new int[length];
+        int[] params1 = new int[length];
+        int[] params2 = new int[length];
+        int[] offsets = new int[length];
+
+        //Converts each Instruction name into an opcode, a jump keeping its target offset until every offset is known.
+        for (int i = 0; i < length; i++) {
+
+            Instruction inst = list.get(i);
+            String opCode = inst.getOpcode();
+            offsets[i] = inst.getOffset();
+
+            if (opCode == null) {
+                opcodes[i] = Opcodes.NOP;
+                continue;
+            }
+
+            //A missing suffix defaults to 0 (as in a bare "iconst"), while a malformed one is -1.
+            int suffix = 0;
+            boolean hasSuffix = false;
+
+            if ((opCode.contains("_")) && (!opCode.startsWith("if"))) {
+
+                suffix = parseValue(opCode);
+                opCode = opCode.substring(0, opCode.indexOf("_"));
+                hasSuffix = true;
+            }
+
+            int numParams = inst.getNumParameters();
+            int param1 = (numParams >= 1) ? inst.getParam1() : 0;
+            int param2 = (numParams >= 2) ? inst.getParam2() : 0;
+
+            opcodes[i] = decodeOperands(Opcodes.lookup(opCode), suffix, hasSuffix, numParams, param1, param2,
+                    i, params1, params2);
+
+            if ((usesLocal(opcodes[i])) && (params1[i] < 0)) {
+                throw new RuntimeException("Illegal variable index at offset " + offsets[i] + ": " + inst);
+            }
+        }
+
+        return new DecodedProgram(opcodes, params1, params2, resolveJumps(opcodes, params1, offsets), offsets);
+    }
+
+    /**
+     * Stores the operands of one Instruction, shared by every loader so they all decode a line identically.
+     *
+     * @param opcode    The opcode named by the Instruction, ignoring any suffix.
+     * @param suffix    The value following the underscore of the name, -1 if malformed.
+     * @param hasSuffix Whether the name had an underscore.
+     * @param numParams The number of parameters following the name.
+     * @param param1    The first parameter, if any.
+     * @param param2    The second parameter, if any.
+     * @param i         The index of the Instruction.
+     * @param params1   The first operands being decoded; a jump stores its target offset here.
+     * @param params2   The second operands being decoded.
+     * @return Returns the opcode to be executed, nop if the Instruction was never executed.
+     * @throws RuntimeException Thrown when a required parameter is missing.
+     */
+    static int decodeOperands(int opcode, int suffix, boolean hasSuffix, int numParams, int param1, int param2,
+                              int i, int[] params1, int[] params2) {
+
+        switch (opcode) {
+
+            case Opcodes.ICONST:
+                params1[i] = suffix;
+                break;
+            case Opcodes.ILOAD:
+            case Opcodes.ISTORE:
+                //A bare name takes its slot from the parameter, as does a malformed suffix.
+                int slot = hasSuffix ? suffix : -1;
+                params1[i] = ((slot == -1) && (numParams == 1)) ? param1 : slot;
+                break;
+            case Opcodes.IINC:
+                params1[i] = requireParam(1, numParams, param1);
+                params2[i] = requireParam(2, numParams, param2);
+                break;
+            case Opcodes.BIPUSH:
+            case Opcodes.GOTO:
+            case Opcodes.IF_ICMPEQ:
+            case Opcodes.IF_ICMPNE:
+            case Opcodes.IF_ICMPGE:
+            case Opcodes.IF_ICMPGT:
+            case Opcodes.IF_ICMPLE:
+            case Opcodes.IF_ICMPLT:
+            case Opcodes.IFNE:
+                params1[i] = requireParam(1, numParams, param1);
+                break;
+            default:
+                break;
+        }
+
+        //Phase1 Instructions with a malformed suffix (such as iconst_9) were never executed.
+        return ((suffix == -1) && (opcode < Opcodes.ILOAD)) ? Opcodes.NOP : opcode;
+    }
+
+    /**
+     * Helper method responsible for checking that an Instruction has a parameter.
+     *
+     * @param position  The position of the parameter, 1 or 2.
+     * @param numParams The number of parameters of the Instruction.
+     * @param param     The parameter.
+     * @return Returns the parameter.
+     * @throws RuntimeException Thrown when the Instruction has too few parameters.
+     */
+    private static int requireParam(int position, int numParams, int param) {
+
+        if (numParams < position) {
+            throw new RuntimeException((position == 1) ? "instruction takes zero parameters"
+                    : "instruction takes zero or one parameters");
+        }
+        return param;
+    }
+
+    /**
+     * Resolves the target offset of every jump into the index of the Instruction at that offset.
+     *
+     * @param opcodes The decoded opcodes.
+     * @param params1 The first operands, holding the target offset of every jump.
+     * @param offsets The offset of every Instruction, a later duplicate offset replacing an earlier one.
+     * @return Returns the index each jump transfers control to, the program length for a missing offset.
+     */
+    static int[] resolveJumps(int[] opcodes, int[] params1, int[] offsets) {
+
+        int length = opcodes.length;
+        int[] targets = new int[length];
+        IntIntMap indexOf = new IntIntMap(length);
+
+        for (int i = 0; i < length; i++) {
+            indexOf.put(offsets[i], i);
+        }
+
+        for (int i = 0; i < length; i++) {
+
+            targets[i] = -1;
+
+            if (Opcodes.isBranch(opcodes[i])) {
+
+                targets[i] = indexOf.get(params1[i], length);    //Jumping to a missing offset ends execution.
+            }
+        }
+
+        return targets;
+    }
+
+    /**
+     * Gets the human interpreted form of the decoded program, one Instruction per line.
+     *
+     * @return Returns the human interpreted form of the decoded program.
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < opcodes.length; i++) {
+
+            sb.append(i).append(" (").append(offsets[i]).append("): ").append(Opcodes.name(opcodes[i]));
+
+            if (Opcodes.isBranch(opcodes[i])) {
+                sb.append(" -> ").append(targets[i]);
+            } else if ((opcodes[i] == Opcodes.ICONST) || (opcodes[i] == Opcodes.BIPUSH)) {
+                sb.append(" ").append(params1[i]);
+            } else if ((opcodes[i] == Opcodes.ILOAD) || (opcodes[i] == Opcodes.ISTORE)) {
+                sb.append(" ").append(getSlotName(params1[i]));
+            } else if (opcodes[i] == Opcodes.IINC) {
+                sb.append(" ").append(getSlotName(params1[i])).append(", ").append(params2[i]);
+            }
+            sb.append("\n");
+        }
+
+        return sb.toString();
+    }
+}
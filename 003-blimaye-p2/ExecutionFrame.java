@@ -0,0 +1,133 @@
+/**
+ * A class representing the complete state of one evaluation on the switch engine: the program counter, the operand
+ * Stack and the local variables. An evaluation suspended when its instruction budget runs out is resumed from its
+ * frame, on any Interpreter and any thread, exactly where it stopped.
+ *
+ * @author Brian Limaye
+ */
+public class ExecutionFrame {
+
+    /**
+     * The program being evaluated.
+     */
+    private final DecodedProgram program;
+    /**
+     * The operand Stack, sized to the maximum depth of the verified program.
+     */
+    private final int[] stack;
+    /**
+     * The local variables.
+     */
+    private final LocalFrame locals;
+    /**
+     * The number of values on the operand Stack.
+     */
+    private int sp;
+    /**
+     * The index of the next Instruction to be evaluated.
+     */
+    private int pc;
+    /**
+     * Whether the evaluation has run to completion.
+     */
+    private boolean finished;
+
+    /**
+     * One-argument constructor used to create the frame of a fresh evaluation, starting at the first Instruction.
+     *
+     * @param program The prepared (verified) program to be evaluated.
+     */
+    public ExecutionFrame(DecodedProgram program) {
+        this(program, new int[program.getMaxStackDepth()], program.newLocalFrame());
+    }
+
+    /**
+     * Three-argument constructor used to create the frame of a fresh evaluation over existing storage.
+     *
+     * @param program The prepared (verified) program to be evaluated.
+     * @param stack   The operand Stack, holding at least the maximum depth of the program.
+     * @param locals  The local variables.
+     */
+    ExecutionFrame(DecodedProgram program, int[] stack, LocalFrame locals) {
+
+        this.program = program;
+        this.stack = stack;
+        this.locals = locals;
+    }
+
+    /**
+     * Gets the program being evaluated.
+     *
+     * @return Returns the decoded program.
+     */
+    public DecodedProgram getProgram() {
+        return program;
+    }
+
+    /**
+     * Gets the operand Stack.
+     *
+     * @return Returns the array holding the operand Stack.
+     */
+    int[] getStack() {
+        return stack;
+    }
+
+    /**
+     * Gets the local variables.
+     *
+     * @return Returns the local variables.
+     */
+    LocalFrame getLocals() {
+        return locals;
+    }
+
+    /**
+     * Gets the number of values on the operand Stack.
+     *
+     * @return Returns the Stack pointer.
+     */
+    int getSp() {
+        return sp;
+    }
+
+    /**
+     * Gets the index of the next Instruction to be evaluated.
+     *
+     * @return Returns the program counter.
+     */
+    public int getPc() {
+        return pc;
+    }
+
+    /**
+     * Determines whether the evaluation has run to completion.
+     *
+     * @return Returns true if the evaluation is finished, false if it may be resumed.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Records where a suspended evaluation resumes.
+     *
+     * @param pc The index of the next Instruction to be evaluated.
+     * @param sp The number of values on the operand Stack.
+     */
+    void suspend(int pc, int sp) {
+
+        this.pc = pc;
+        this.sp = sp;
+    }
+
+    /**
+     * Records that the evaluation has run to completion.
+     */
+    void finish() {
+
+        this.pc = program.length();
+        this.sp = 0;
+        this.finished = true;
+    }
+}
@@ -0,0 +1,356 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * A class recording where the switch engine spends its time on a DecodedProgram: how often each Instruction
+ * executes, how often each conditional jump is taken, and so the count of every opcode and the deepest the operand
+ * Stack grew. Only the per-Instruction counts are kept at runtime; everything else is derived when reporting, the
+ * Stack high-water mark coming from the depths the StackVerifier proved for every executed Instruction.
+ * Counts accumulate over every evaluation of the program.
+ *
+ * @author Brian Limaye
+ */
+public class ExecutionProfile {
+
+    /**
+     * The number of hot offsets listed by the reports.
+     */
+    final static private int HOT_SPOTS = 20;
+
+    /**
+     * The program being profiled.
+     */
+    private final DecodedProgram program;
+    /**
+     * The number of times each Instruction executed, indexed by Instruction.
+     */
+    private final long[] executions;
+    /**
+     * The number of times each conditional jump was taken, indexed by Instruction.
+     */
+    private final long[] taken;
+    /**
+     * The number of evaluations of the program.
+     */
+    private int runs;
+
+    /**
+     * One-argument constructor used to create an empty profile of a program.
+     *
+     * @param program The decoded program being profiled.
+     */
+    public ExecutionProfile(DecodedProgram program) {
+
+        this.program = program;
+        this.executions = new long[program.length()];
+        this.taken = new long[program.length()];
+    }
+
+    /**
+     * Gets the program being profiled.
+     *
+     * @return Returns the decoded program.
+     */
+    public DecodedProgram getProgram() {
+        return program;
+    }
+
+    /**
+     * Gets the execution counts, updated by the switch engine.
+     *
+     * @return Returns the number of times each Instruction executed.
+     */
+    long[] getExecutions() {
+        return executions;
+    }
+
+    /**
+     * Gets the taken counts, updated by the switch engine.
+     *
+     * @return Returns the number of times each conditional jump was taken.
+     */
+    long[] getTaken() {
+        return taken;
+    }
+
+    /**
+     * Records the start of one evaluation of the program.
+     */
+    void recordRun() {
+        ++runs;
+    }
+
+    /**
+     * Gets the total number of Instructions executed.
+     *
+     * @return Returns the number of Instructions executed.
+     */
+    public long getTotal() {
+
+        long total = 0;
+        for (long count : executions) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the number of times each opcode executed.
+     *
+     * @return Returns the execution counts, indexed by opcode.
+     */
+    public long[] getOpcodeCounts() {
+
+        long[] counts = new long[Opcodes.count()];
+        int[] opcodes = program.getOpcodes();
+
+        for (int i = 0; i < executions.length; i++) {
+            counts[opcodes[i]] += executions[i];
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the deepest the operand Stack grew over every Instruction executed.
+     *
+     * @return Returns the Stack high-water mark.
+     */
+    public int getStackHighWater() {
+
+        int[] depths = program.getStackDepths();
+        int[] opcodes = program.getOpcodes();
+        int highWater = 0;
+
+        for (int i = 0; i < executions.length; i++) {
+
+            if (executions[i] > 0) {
+                highWater = Math.max(highWater, depths[i] - Opcodes.pops(opcodes[i]) + Opcodes.pushes(opcodes[i]));
+            }
+        }
+        return highWater;
+    }
+
+    /**
+     * Helper method responsible for ordering indexes by descending count, dropping those that never ran.
+     *
+     * @param counts The counts being sorted by.
+     * @param limit  The largest number of indexes returned.
+     * @return Returns the indexes of the highest counts.
+     */
+    private static ArrayList<Integer> hottest(long[] counts, int limit) {
+
+        ArrayList<Integer> indexes = new ArrayList<>();
+
+        for (int i = 0; i < counts.length; i++) {
+
+            if (counts[i] > 0) {
+                indexes.add(i);
+            }
+        }
+
+        indexes.sort(Comparator.comparingLong((Integer i) -> counts[i]).reversed().thenComparingInt(i -> i));
+        return new ArrayList<>(indexes.subList(0, Math.min(limit, indexes.size())));
+    }
+
+    /**
+     * Helper method responsible for listing the conditional jumps that executed, in program order.
+     *
+     * @return Returns the indexes of the executed conditional jumps.
+     */
+    private ArrayList<Integer> branches() {
+
+        ArrayList<Integer> branches = new ArrayList<>();
+        int[] opcodes = program.getOpcodes();
+
+        for (int i = 0; i < executions.length; i++) {
+
+            if ((Opcodes.isConditional(opcodes[i])) && (executions[i] > 0)) {
+                branches.add(i);
+            }
+        }
+        return branches;
+    }
+
+    /**
+     * Helper method responsible for formatting a count as a percentage of a total.
+     *
+     * @param count The count.
+     * @param total The total, 0 giving 0%.
+     * @return Returns the percentage, to one decimal place.
+     */
+    private static String percent(long count, long total) {
+        return String.format("%.1f%%", (total == 0) ? 0.0 : 100.0 * count / total);
+    }
+
+    /**
+     * Writes the profile as a JSON object.
+     *
+     * @param filename The file to be written.
+     * @throws IOException Thrown when the file is unable to be written.
+     */
+    public void export(String filename) throws IOException {
+
+        try (PrintWriter writer = new PrintWriter(filename, "UTF-8")) {
+            writer.println(toJson());
+        }
+    }
+
+    /**
+     * Gets the profile as a JSON object: the totals, then every opcode, the hottest offsets and every executed
+     * conditional jump.
+     *
+     * @return Returns the JSON form of the profile.
+     */
+    public String toJson() {
+
+        int[] opcodes = program.getOpcodes();
+        int[] offsets = program.getOffsets();
+        long[] opcodeCounts = getOpcodeCounts();
+
+        StringBuilder sb = new StringBuilder("{\"runs\":").append(runs).append(",\"instructions\":").append(getTotal())
+                .append(",\"stackHighWater\":").append(getStackHighWater()).append(",\"opcodes\":[");
+
+        String separator = "";
+        for (int op : hottest(opcodeCounts, opcodeCounts.length)) {
+            sb.append(separator).append("{\"name\":\"").append(Opcodes.name(op)).append("\",\"count\":")
+                    .append(opcodeCounts[op]).append("}");
+            separator = ",";
+        }
+
+        sb.append("],\"hotSpots\":[");
+        separator = "";
+        for (int i : hottest(executions, HOT_SPOTS)) {
+            sb.append(separator).append("{\"offset\":").append(offsets[i]).append(",\"opcode\":\"")
+                    .append(Opcodes.name(opcodes[i])).append("\",\"count\":").append(executions[i]).append("}");
+            separator = ",";
+        }
+
+        sb.append("],\"branches\":[");
+        separator = "";
+        for (int i : branches()) {
+            sb.append(separator).append("{\"offset\":").append(offsets[i]).append(",\"opcode\":\"")
+                    .append(Opcodes.name(opcodes[i])).append("\",\"taken\":").append(taken[i])
+                    .append(",\"notTaken\":").append(executions[i] - taken[i]).append("}");
+            separator = ",";
+        }
+
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Gets the human interpreted report of the profile: the opcodes and offsets by descending count, followed by
+     * every executed conditional jump.
+     *
+     * @return Returns the report of the profile.
+     */
+    @Override
+    public String toString() {
+
+        int[] opcodes = program.getOpcodes();
+        int[] offsets = program.getOffsets();
+        long[] opcodeCounts = getOpcodeCounts();
+        long total = getTotal();
+
+        StringBuilder sb = new StringBuilder("profile: ").append(total).append(" Instructions over ").append(runs)
+                .append(" runs, Stack high-water mark ").append(getStackHighWater());
+
+        sb.append("\n  opcodes:");
+        for (int op : hottest(opcodeCounts, opcodeCounts.length)) {
+            sb.append(String.format("%n    %-10s %12d %7s", Opcodes.name(op), opcodeCounts[op], percent(opcodeCounts[op], total)));
+        }
+
+        sb.append("\n  hot offsets:");
+        for (int i : hottest(executions, HOT_SPOTS)) {
+            sb.append(String.format("%n    %6d %-10s %12d %7s", offsets[i], Opcodes.name(opcodes[i]), executions[i],
+                    percent(executions[i], total)));
+        }
+
+        sb.append("\n  branches:");
+        for (int i : branches()) {
+            sb.append(String.format("%n    %6d %-10s %12d taken, %12d not taken (%s taken)", offsets[i],
+                    Opcodes.name(opcodes[i]), taken[i], executions[i] - taken[i], percent(taken[i], executions[i])));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Helper method responsible for profiling two evaluations of a program on the switch engine.
+     *
+     * @param text     The text of the program.
+     * @param optimize Whether the program is optimized when prepared, as with -O.
+     * @return Returns the profile of both evaluations.
+     */
+    private static ExecutionProfile profile(String text, boolean optimize) {
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setJitEnabled(false);
+        interpreter.setOptimize(optimize);
+        interpreter.setProfiling(true);
+        interpreter.setSink(new BufferedSink(new ByteArrayOutputStream()));
+
+        DecodedProgram program = interpreter.prepare(ProgramLoader.load(ByteBuffer.wrap(text.getBytes())));
+        interpreter.evaluateProgram(program);
+        interpreter.evaluateProgram(program);
+        return interpreter.getProfile();
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the ExecutionProfile class.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     * @throws IOException Thrown when the exported profile is unable to be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+
+        //The loop test multiplies two constants, which -O folds into a single push.
+        String sum = "0: iconst_0\n1: istore_1\n2: iconst_0\n3: istore_2\n4: iload_2\n5: iconst_2\n6: iconst_5\n"
+                + "7: imul\n8: if_icmpge 21\n11: iload_1\n12: iload_2\n13: iadd\n14: istore_1\n15: iinc 2, 1\n"
+                + "18: goto 4\n21: iload_1\n22: print\n23: return\n";
+        String branches = "\"branches\":[{\"offset\":8,\"opcode\":\"if_icmpge\",\"taken\":2,\"notTaken\":20}]";
+
+        ExecutionProfile profile = profile(sum, false);
+        String json = profile.toJson();
+
+        if ((json.startsWith("{\"runs\":2,\"instructions\":244,\"stackHighWater\":3,"))
+                && (json.contains("{\"offset\":7,\"opcode\":\"imul\",\"count\":22}"))
+                && (json.contains("{\"offset\":0,\"opcode\":\"iconst\",\"count\":2}"))
+                && (json.endsWith(branches + "}"))) {
+            System.out.println("Yay1");
+        }
+
+        if ((profile.getOpcodeCounts()[Opcodes.IINC] == 20) && (profile.toString().contains("(9.1% taken)"))) {
+            System.out.println("Yay2");
+        }
+
+        //Optimized, the folded push replaces the multiplication while the branch counts are unchanged.
+        json = profile(sum, true).toJson();
+
+        if ((json.startsWith("{\"runs\":2,\"instructions\":200,\"stackHighWater\":2,"))
+                && (json.contains("{\"offset\":7,\"opcode\":\"bipush\",\"count\":22}"))
+                && (!json.contains("imul")) && (json.endsWith(branches + "}"))) {
+            System.out.println("Yay3");
+        }
+
+        //Either way, the exported file holds exactly the JSON form of the profile.
+        File file = File.createTempFile("profile", ".json");
+        file.deleteOnExit();
+        boolean exported = true;
+
+        for (ExecutionProfile exporting : new ExecutionProfile[]{profile, profile(sum, true)}) {
+
+            exporting.export(file.getPath());
+            exported &= Files.readAllLines(file.toPath()).equals(Collections.singletonList(exporting.toJson()));
+        }
+        if (exported) {
+            System.out.println("Yay4");
+        }
+    }
+}
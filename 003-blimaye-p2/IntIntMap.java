@@ -0,0 +1,345 @@
+import java.util.Arrays;
+
+/**
+ * A class representing a map from primitive int keys to primitive int values, used where the HashMap would box both.
+ * Keys and values live in two flat arrays probed linearly from the spread hash of the key, the capacity being a
+ * power of two so a slot is found by masking rather than division. A key of 0 marks a free slot, so the key 0 itself
+ * is held outside the arrays.
+ * <p>
+ * Memory: 8 bytes per slot, and the arrays double once half full, so each entry costs 16 to 32 bytes. A
+ * HashMap&lt;Integer, Integer&gt; spends about 80: a 32-byte Pair, two 16-byte Integers (beyond the small values Java
+ * caches) and its reference from the bucket array.
+ *
+ * @author Brian Limaye
+ */
+public class IntIntMap {
+
+    /**
+     * The number of entries expected when none is given.
+     */
+    final static private int DEFAULT_EXPECTED = 8;
+
+    /**
+     * The key of every slot, 0 for a free slot.
+     */
+    private int[] keys;
+    /**
+     * The value of every slot.
+     */
+    private int[] values;
+    /**
+     * The number of entries held in the arrays, the key 0 excluded.
+     */
+    private int used;
+    /**
+     * Whether the key 0 is present.
+     */
+    private boolean hasZero;
+    /**
+     * The value of the key 0, if present.
+     */
+    private int zeroValue;
+
+    /**
+     * Default constructor used to initialize an IntIntMap instance.
+     */
+    public IntIntMap() {
+        this(DEFAULT_EXPECTED);
+    }
+
+    /**
+     * One-argument constructor used to initialize an IntIntMap instance.
+     *
+     * @param expected The number of entries expected, so the map never grows before holding that many.
+     */
+    public IntIntMap(int expected) {
+
+        int capacity = Integer.highestOneBit(Math.max(2 * expected, 4) - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * Helper method responsible for finding the first slot to probe for a key.
+     *
+     * @param key  The key, never 0.
+     * @param mask The capacity minus one.
+     * @return Returns the home slot of the key.
+     */
+    private static int slot(int key, int mask) {
+
+        //Multiplying by the golden ratio spreads clustered keys, such as consecutive offsets, across the arrays.
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Helper method responsible for finding the slot holding a key, or the free slot ending its probe.
+     *
+     * @param key The key, never 0.
+     * @return Returns the slot of the key, or of the free slot where it would go.
+     */
+    private int find(int key) {
+
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+
+        while ((keys[i] != 0) && (keys[i] != key)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return Returns the number of entries.
+     */
+    public int size() {
+        return used + ((hasZero) ? 1 : 0);
+    }
+
+    /**
+     * Determines whether the map holds no entries.
+     *
+     * @return Returns true if the map is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Determines whether the map holds a key.
+     *
+     * @param key The key used for lookup.
+     * @return Returns true if the key is present, false otherwise.
+     */
+    public boolean containsKey(int key) {
+        return (key == 0) ? hasZero : keys[find(key)] != 0;
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key     The key used for lookup.
+     * @param missing The value returned when the key is absent.
+     * @return Returns the value associated with the key, or the missing value if the key is absent.
+     */
+    public int get(int key, int missing) {
+
+        if (key == 0) {
+            return (hasZero) ? zeroValue : missing;
+        }
+
+        int i = find(key);
+        return (keys[i] != 0) ? values[i] : missing;
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value.
+     *
+     * @param key   The key.
+     * @param value The value.
+     */
+    public void put(int key, int value) {
+
+        if (key == 0) {
+            hasZero = true;
+            zeroValue = value;
+            return;
+        }
+
+        int i = find(key);
+
+        if (keys[i] == 0) {
+
+            keys[i] = key;
+            ++used;
+
+            //The arrays stay at most half full, keeping probe sequences short.
+            if (2 * used > keys.length) {
+                values[i] = value;
+                grow();
+                return;
+            }
+        }
+        values[i] = value;
+    }
+
+    /**
+     * Removes a key, along with its value.
+     *
+     * @param key The key to be removed.
+     * @return Returns true if the key was present, false otherwise.
+     */
+    public boolean remove(int key) {
+
+        if (key == 0) {
+
+            boolean present = hasZero;
+            hasZero = false;
+            return present;
+        }
+
+        int i = find(key);
+        if (keys[i] == 0) {
+            return false;
+        }
+
+        //Later entries of the probe sequence shift back into the gap, so no deleted markers are left behind.
+        int mask = keys.length - 1;
+        int j = i;
+
+        while (true) {
+
+            j = (j + 1) & mask;
+            if (keys[j] == 0) {
+                break;
+            }
+
+            //An entry may fill the gap unless its home slot lies cyclically after the gap, up to its own slot.
+            int home = slot(keys[j], mask);
+            if (((j > i) && ((home <= i) || (home > j))) || ((j < i) && (home <= i) && (home > j))) {
+
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+
+        keys[i] = 0;
+        --used;
+        return true;
+    }
+
+    /**
+     * Removes every entry, keeping the current capacity.
+     */
+    public void clear() {
+
+        Arrays.fill(keys, 0);
+        used = 0;
+        hasZero = false;
+    }
+
+    /**
+     * Helper method responsible for doubling the arrays, reinserting every entry.
+     */
+    private void grow() {
+
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+
+            if (oldKeys[i] != 0) {
+
+                int j = find(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Gets the human interpreted form of the map.
+     *
+     * @return Returns every entry, in no particular order.
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder("{");
+        String separator = "";
+
+        if (hasZero) {
+            sb.append("0=").append(zeroValue);
+            separator = ", ";
+        }
+        for (int i = 0; i < keys.length; i++) {
+
+            if (keys[i] != 0) {
+                sb.append(separator).append(keys[i]).append("=").append(values[i]);
+                separator = ", ";
+            }
+        }
+        return sb.append("}").toString();
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the IntIntMap class.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     */
+    public static void main(String[] args) {
+
+        IntIntMap map = new IntIntMap();
+        for (int i = -1000; i <= 1000; i++) {
+            map.put(i, 2 * i);
+        }
+
+        boolean correct = map.size() == 2001;
+        for (int i = -1000; i <= 1000; i++) {
+            correct &= map.get(i, -1) == 2 * i;
+        }
+        if ((correct) && (map.get(1001, -1) == -1) && (map.containsKey(0)) && (!map.containsKey(-1001))) {
+            System.out.println("Yay1");
+        }
+
+        //Random puts and removes agree with java.util.HashMap, so removal never breaks a probe sequence.
+        java.util.Random random = new java.util.Random(1);
+        java.util.HashMap<Integer, Integer> reference = new java.util.HashMap<>();
+        IntIntMap tested = new IntIntMap(0);
+        boolean agrees = true;
+
+        for (int i = 0; i < 200000; i++) {
+
+            int key = random.nextInt(4000) - 2000;
+            if (random.nextInt(3) == 0) {
+                agrees &= tested.remove(key) == (reference.remove(key) != null);
+            } else {
+                tested.put(key, i);
+                reference.put(key, i);
+            }
+            agrees &= (tested.get(-key, Integer.MIN_VALUE) == reference.getOrDefault(-key, Integer.MIN_VALUE))
+                    && (tested.size() == reference.size());
+        }
+        if (agrees) {
+            System.out.println("Yay2");
+        }
+
+        //Lookups of a million keys, against the HashMap they replace.
+        int count = 1000000;
+        for (int round = 0; round < 3; round++) {
+
+            long start = System.nanoTime();
+            IntIntMap ints = new IntIntMap();
+            long sum = 0;
+            for (int i = 0; i < count; i++) {
+                ints.put(i * 7, i);
+            }
+            for (int i = 0; i < count; i++) {
+                sum += ints.get(i * 7, 0);
+            }
+            long intMillis = (System.nanoTime() - start) / 1000000;
+
+            start = System.nanoTime();
+            HashMap<Integer, Integer> boxed = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                boxed.put(i * 7, i);
+            }
+            for (int i = 0; i < count; i++) {
+                sum -= boxed.get(i * 7);
+            }
+            long boxedMillis = (System.nanoTime() - start) / 1000000;
+
+            if ((round == 2) && (sum == 0)) {
+                System.out.println("Yay3");
+                System.out.println(count + " puts and gets: IntIntMap " + intMillis + " ms, HashMap " + boxedMillis + " ms");
+            }
+        }
+    }
+}
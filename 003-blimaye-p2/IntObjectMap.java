@@ -0,0 +1,287 @@
+import java.util.Arrays;
+
+/**
+ * A class representing a map from primitive int keys to object values, used where the HashMap would box every key.
+ * Keys and values live in two flat arrays probed linearly from the spread hash of the key, the capacity being a
+ * power of two so a slot is found by masking rather than division. A null value marks a free slot, so null values
+ * are never stored, as with the HashMap.
+ * <p>
+ * Memory: 8 bytes per slot (an int key and a compressed reference), and the arrays double once half full, so each
+ * entry costs 16 to 32 bytes besides the value itself. A HashMap&lt;Integer, V&gt; spends about 64: a 32-byte Pair,
+ * a 16-byte Integer key and its reference from the bucket array.
+ *
+ * @param <V> The type of the values.
+ * @author Brian Limaye
+ */
+public class IntObjectMap<V> {
+
+    /**
+     * The number of entries expected when none is given.
+     */
+    final static private int DEFAULT_EXPECTED = 8;
+
+    /**
+     * The key of every slot, meaningful only where a value is present.
+     */
+    private int[] keys;
+    /**
+     * The value of every slot, null for a free slot.
+     */
+    private Object[] values;
+    /**
+     * The number of entries.
+     */
+    private int size;
+
+    /**
+     * Default constructor used to initialize an IntObjectMap instance.
+     */
+    public IntObjectMap() {
+        this(DEFAULT_EXPECTED);
+    }
+
+    /**
+     * One-argument constructor used to initialize an IntObjectMap instance.
+     *
+     * @param expected The number of entries expected, so the map never grows before holding that many.
+     */
+    public IntObjectMap(int expected) {
+
+        int capacity = Integer.highestOneBit(Math.max(2 * expected, 4) - 1) << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Helper method responsible for finding the first slot to probe for a key.
+     *
+     * @param key  The key.
+     * @param mask The capacity minus one.
+     * @return Returns the home slot of the key.
+     */
+    private static int slot(int key, int mask) {
+
+        //Multiplying by the golden ratio spreads clustered keys, such as consecutive offsets, across the arrays.
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Helper method responsible for finding the slot holding a key, or the free slot ending its probe.
+     *
+     * @param key The key.
+     * @return Returns the slot of the key, or of the free slot where it would go.
+     */
+    private int find(int key) {
+
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+
+        while ((values[i] != null) && (keys[i] != key)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return Returns the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Determines whether the map holds no entries.
+     *
+     * @return Returns true if the map is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Determines whether the map holds a key.
+     *
+     * @param key The key used for lookup.
+     * @return Returns true if the key is present, false otherwise.
+     */
+    public boolean containsKey(int key) {
+        return values[find(key)] != null;
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key The key used for lookup.
+     * @return Returns the value associated with the key, null if the key is absent.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        return (V) values[find(key)];
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value.
+     *
+     * @param key   The key.
+     * @param value The value, ignored if null.
+     * @return Returns the value previously associated with the key, null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+
+        //Validation for a null value, which would free the slot.
+        if (value == null) {
+            return null;
+        }
+
+        int i = find(key);
+        V previous = (V) values[i];
+
+        keys[i] = key;
+        values[i] = value;
+
+        //The arrays stay at most half full, keeping probe sequences short.
+        if ((previous == null) && (2 * ++size > keys.length)) {
+            grow();
+        }
+        return previous;
+    }
+
+    /**
+     * Removes a key, along with its value.
+     *
+     * @param key The key to be removed.
+     * @return Returns the value that was associated with the key, null if the key was not present.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+
+        int i = find(key);
+        V removed = (V) values[i];
+
+        if (removed == null) {
+            return null;
+        }
+
+        //Later entries of the probe sequence shift back into the gap, so no deleted markers are left behind.
+        int mask = keys.length - 1;
+        int j = i;
+
+        while (true) {
+
+            j = (j + 1) & mask;
+            if (values[j] == null) {
+                break;
+            }
+
+            //An entry may fill the gap unless its home slot lies cyclically after the gap, up to its own slot.
+            int home = slot(keys[j], mask);
+            if (((j > i) && ((home <= i) || (home > j))) || ((j < i) && (home <= i) && (home > j))) {
+
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+
+        values[i] = null;
+        --size;
+        return removed;
+    }
+
+    /**
+     * Removes every entry, keeping the current capacity.
+     */
+    public void clear() {
+
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Helper method responsible for doubling the arrays, reinserting every entry.
+     */
+    private void grow() {
+
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+
+            if (oldValues[i] != null) {
+
+                int j = find(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Gets the human interpreted form of the map.
+     *
+     * @return Returns every entry, in no particular order.
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder("{");
+        String separator = "";
+
+        for (int i = 0; i < keys.length; i++) {
+
+            if (values[i] != null) {
+                sb.append(separator).append(keys[i]).append("=").append(values[i]);
+                separator = ", ";
+            }
+        }
+        return sb.append("}").toString();
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the IntObjectMap class.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     */
+    public static void main(String[] args) {
+
+        IntObjectMap<String> map = new IntObjectMap<>();
+        for (int i = -1000; i <= 1000; i++) {
+            map.put(i, "Val" + i);
+        }
+
+        boolean correct = map.size() == 2001;
+        for (int i = -1000; i <= 1000; i++) {
+            correct &= map.get(i).equals("Val" + i);
+        }
+        if ((correct) && (map.get(1001) == null) && (map.containsKey(0)) && (map.put(5, null) == null)) {
+            System.out.println("Yay1");
+        }
+
+        //Random puts and removes agree with java.util.HashMap, so removal never breaks a probe sequence.
+        java.util.Random random = new java.util.Random(1);
+        java.util.HashMap<Integer, Integer> reference = new java.util.HashMap<>();
+        IntObjectMap<Integer> tested = new IntObjectMap<>(0);
+        boolean agrees = true;
+
+        for (int i = 0; i < 200000; i++) {
+
+            int key = random.nextInt(4000) - 2000;
+            if (random.nextInt(3) == 0) {
+                agrees &= java.util.Objects.equals(tested.remove(key), reference.remove(key));
+            } else {
+                agrees &= java.util.Objects.equals(tested.put(key, i), reference.put(key, i));
+            }
+            agrees &= java.util.Objects.equals(tested.get(-key), reference.get(-key)) && (tested.size() == reference.size());
+        }
+        if (agrees) {
+            System.out.println("Yay2");
+        }
+    }
+}
@@ -0,0 +1,242 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * A class representing a Stack of primitive ints backed by an array, used as the Interpreter's operand Stack.
+ * Unlike Stack&lt;Integer&gt;, pushing and popping never box a value or allocate a Node.
+ *
+ * @author Brian Limaye
+ */
+public class IntStack {
+
+    /**
+     * The default capacity used when no capacity is given.
+     */
+    final static private int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The array used to internally store the contents of the Stack, the top being at index size - 1.
+     */
+    private int[] elements;
+
+    /**
+     * Stores the current size of the Stack.
+     */
+    private int size;
+
+    /**
+     * Default constructor used to initialize an IntStack instance.
+     */
+    public IntStack() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * One-argument constructor used to initialize an IntStack instance.
+     *
+     * @param capacity The initial capacity, such as the number of pushes a program can perform.
+     */
+    public IntStack(int capacity) {
+
+        this.elements = new int[Math.max(capacity, 1)];
+        this.size = 0;
+    }
+
+    /**
+     * Helper method responsible for doubling the capacity of the Stack once it is full.
+     */
+    private void grow() {
+
+        int[] larger = new int[elements.length * 2];
+        System.arraycopy(elements, 0, larger, 0, size);
+        elements = larger;
+    }
+
+    /**
+     * Adds a value to the top of the Stack, growing the array geometrically if necessary.
+     *
+     * @param value The value to be added to the Stack.
+     */
+    public void push(int value) {
+
+        if (size == elements.length) {
+            grow();
+        }
+
+        elements[size++] = value;
+    }
+
+    /**
+     * Removes the top-most value from the Stack.
+     *
+     * @return Returns the top element from the Stack.
+     * @throws RuntimeException Thrown when the Stack is empty.
+     */
+    public int pop() {
+
+        if (size == 0) {
+            throw new RuntimeException("pop from an empty operand stack");
+        }
+
+        return elements[--size];
+    }
+
+    /**
+     * Obtains the top-most value from the Stack, without removing it.
+     *
+     * @return Returns the top element from the Stack.
+     * @throws RuntimeException Thrown when the Stack is empty.
+     */
+    public int peek() {
+
+        if (size == 0) {
+            throw new RuntimeException("peek at an empty operand stack");
+        }
+
+        return elements[size - 1];
+    }
+
+    /**
+     * Duplicates the top-most value of the Stack.
+     *
+     * @throws RuntimeException Thrown when the Stack is empty.
+     */
+    public void dup() {
+        push(peek());
+    }
+
+    /**
+     * Removes every value from the Stack, keeping its capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Determines whether or not the Stack is empty.
+     *
+     * @return Returns true if the Stack is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the current size of the Stack.
+     *
+     * @return Returns the current size of the Stack.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the human interpreted representation of the current IntStack instance, from the top down.
+     *
+     * @return Returns the human interpreted representation of the Stack.
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = size - 1; i >= 0; i--) {
+
+            sb.append(elements[i]);
+
+            if (i > 0) {
+                sb.append(" ");
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Helper method responsible for reading the number of bytes allocated so far by the current thread.
+     *
+     * @return Returns the allocated bytes, -1 if the JVM does not report them.
+     */
+    private static long allocatedBytes() {
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Main method primarily used for testing the functionality of the IntStack class, along with an
+     * allocation comparison against Stack&lt;Integer&gt; for the push/push/add/pop pattern of arithmetic Instructions.
+     *
+     * @param args Command-line arguments primarily used for testing functionality at runtime.
+     */
+    public static void main(String[] args) {
+
+        IntStack s = new IntStack(1);
+        s.push(100);
+        s.push(200);
+
+        if ((s.getSize() == 2) && (s.peek() == 200)) {
+            System.out.println("Yay1");
+        }
+
+        s.dup();
+        if (s.toString().equals("200 200 100")) {
+            System.out.println("Yay2");
+        }
+
+        if ((s.pop() == 200) && (s.pop() == 200) && (s.pop() == 100) && (s.isEmpty())) {
+            System.out.println("Yay3");
+        }
+
+        try {
+            s.pop();
+        } catch (RuntimeException e) {
+            System.out.println("Yay4");
+        }
+
+        final int operations = 1000000;
+        long sum = 0;
+
+        //Warms up both Stacks, so the comparison measures steady-state execution.
+        Stack<Integer> boxed = new Stack<>();
+        for (int round = 0; round < 3; round++) {
+
+            for (int i = 0; i < operations; i++) {
+                boxed.push(i);
+                boxed.push(i + 1);
+                boxed.push(boxed.pop() + boxed.pop());
+                sum += boxed.pop();
+                s.push(i);
+                s.push(i + 1);
+                s.push(s.pop() + s.pop());
+                sum += s.pop();
+            }
+        }
+
+        long before = allocatedBytes();
+        for (int i = 0; i < operations; i++) {
+            boxed.push(i);
+            boxed.push(i + 1);
+            boxed.push(boxed.pop() + boxed.pop());
+            sum += boxed.pop();
+        }
+        long boxedBytes = allocatedBytes() - before;
+
+        before = allocatedBytes();
+        for (int i = 0; i < operations; i++) {
+            s.push(i);
+            s.push(i + 1);
+            s.push(s.pop() + s.pop());
+            sum += s.pop();
+        }
+        long primitiveBytes = allocatedBytes() - before;
+
+        if (before != -1) {
+            System.out.println("Stack<Integer>: " + (boxedBytes / (3.0 * operations)) + " bytes/push, "
+                    + "IntStack: " + (primitiveBytes / (3.0 * operations)) + " bytes/push (checksum " + sum + ")");
+        }
+    }
+}
@@ -1,5 +1,7 @@
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.File;
+import java.nio.LongBuffer;
 import java.util.Scanner;
 
 /**
@@ -10,305 +12,865 @@ import java.util.Scanner;
 public class Interpreter {
 
     /**
-     * A Stack used for the entirety of Phase1, pushing/popping values on/from the Stack.
+     * The execution engines able to evaluate a decoded program.
      */
-    private Stack<Integer> intStack = new Stack<>();
+    public enum Engine {
+        /**
+         * A loop dispatching on the integer opcode of each Instruction.
+         */
+        SWITCH,
+        /**
+         * A graph of pre-bound nodes built by the ClosureCompiler.
+         */
+        CLOSURE,
+        /**
+         * A register VM running the program translated by the RegisterTranslator, falling back to the switch
+         * engine for programs that cannot be translated.
+         */
+        REGISTER
+    }
+
+    /**
+     * A primitive Stack used by the closure engine, pushing/popping values on/from the Stack without boxing.
+     */
+    private IntStack intStack = new IntStack();
+    /**
+     * The local variables used in Phase2, stored in an array indexed by slot for lookup/updating.
+     */
+    private LocalFrame locals;
+    /**
+     * The operand Stack of the switch engine, preallocated to the maximum depth of the verified program evaluated.
+     */
+    private int[] operands = new int[16];
+
     /**
-     * A HashMap used in Phase2 to store values internally with their respective keys for lookup/updating.
+     * The default number of evaluations of a program after which it is compiled to JVM bytecode.
      */
-    private HashMap<Integer, Integer> indexMap = new HashMap<>();
+    final static private int DEFAULT_INVOCATION_THRESHOLD = 10;
     /**
-     * A HashMap also used in Phase2 to match the offset of an Instruction with its corresponding Instruction, stored as a value in a Node.
+     * The default number of backward jumps within one evaluation after which the program is compiled, execution
+     * continuing in the compiled code from the loop header that was jumped to.
      */
-    private HashMap<Integer, Node<Instruction>> instMap = new HashMap<>();
+    final static private int DEFAULT_BACK_EDGE_THRESHOLD = 10000;
+    /**
+     * The instruction budget of an evaluation that is never suspended.
+     */
+    final static private long UNLIMITED = Long.MAX_VALUE;
 
     /**
-     * Helper method responsible for filling the Instruction map, after reading the inputted file at runtime.
+     * Whether hot programs are compiled to JVM bytecode by the JitCompiler.
+     */
+    private boolean jitEnabled = true;
+    /**
+     * The number of evaluations of a program after which it is compiled.
+     */
+    private int invocationThreshold = DEFAULT_INVOCATION_THRESHOLD;
+    /**
+     * The number of backward jumps within one evaluation after which the program is compiled.
+     */
+    private int backEdgeThreshold = DEFAULT_BACK_EDGE_THRESHOLD;
+    /**
+     * The engine used for programs that have not been compiled to JVM bytecode.
+     */
+    private Engine engine = Engine.SWITCH;
+    /**
+     * Whether programs are optimized by the ConstantFolder and PeepholeOptimizer when prepared.
+     */
+    private boolean optimize;
+    /**
+     * Whether reports from load-time passes are written to System.err.
+     */
+    private boolean verbose;
+    /**
+     * Whether the switch engine counts the edges into every loop header, for every program.
+     */
+    private boolean loopProfiling;
+    /**
+     * The loop counts of the program last evaluated while loop profiling, null if none.
+     */
+    private LoopProfile loopProfile;
+    /**
+     * Whether the switch engine counts the executions of every Instruction, for every program.
+     */
+    private boolean profiling;
+    /**
+     * The execution counts of the program last evaluated while profiling, null if none.
+     */
+    private ExecutionProfile profile;
+    /**
+     * The ring recording every jump taken by the switch engine, and the Instruction an evaluation failed at, null
+     * when not tracing.
+     */
+    private ExecutionTrace trace;
+    /**
+     * The cache of prepared programs consulted by load(), null to always load afresh.
+     */
+    private ProgramCache cache;
+    /**
+     * The stream that print writes to, null for System.out.
+     */
+    private PrintStream output;
+    /**
+     * The sink that print writes to, null to buffer output to the stream.
+     */
+    private OutputSink sink;
+    /**
+     * The buffer of output to the stream, reused by every evaluation writing to the same stream.
+     */
+    private BufferedSink buffered;
+    /**
+     * The stream buffered writes to.
+     */
+    private PrintStream bufferedStream;
+
+    /**
+     * Sets the stream that print writes to, such as one capturing the output of a single evaluation. Output is
+     * buffered, and written to the stream when the buffer fills, on return, and at the end of every evaluation.
+     *
+     * @param output The stream to be written to, or null for System.out.
+     */
+    public void setOutput(PrintStream output) {
+        this.output = output;
+    }
+
+    /**
+     * Sets the sink that print writes to, replacing the buffered stream.
+     *
+     * @param sink The sink to be written to, or null to buffer output to the stream.
+     */
+    public void setSink(OutputSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Helper method responsible for getting the sink of the next evaluation.
      *
-     * @param list The newly created Linked List of Instructions used to fill the HashMap with its corresponding offset as a key.
+     * @return Returns the sink that was set, or else a buffer of output to the stream.
      */
-    private void fillInstMap(LList<Instruction> list) {
+    private OutputSink sink() {
 
-        Node<Instruction> curr = list.getFirst();
+        if (sink != null) {
+            return sink;
+        }
 
-        while (curr != null) {    //Iterates through all Instruction nodes for the HashMap.
+        PrintStream stream = (output != null) ? output : System.out;
 
-            Instruction instr = curr.getValue();
-            instMap.put(instr.getOffset(), curr);    //Stores the Instruction node into the HashMap, using its offset as the key.
-            curr = curr.getNext();
+        if ((buffered == null) || (bufferedStream != stream)) {
+            buffered = new BufferedSink(stream);
+            bufferedStream = stream;
         }
+        return buffered;
     }
 
     /**
-     * Helper method responsible for evaluating the arithmetic operation on two numbers, based on the Instruction name.
+     * Sets the cache of prepared programs consulted when loading a program file.
      *
-     * @param opCode The Instruction name used to determine the corresponding operation.
-     * @param first  The "second" operand of the expression, as the operation is flipped.
-     * @param second The "first" operand of the expression, as the operation is flipped.
-     * @return Returns the output from the corresponding operation, 0 if inconclusive.
+     * @param cache The cache to be used, such as ProgramCache.getShared(), or null to disable caching.
      */
-    private int evaluateResult(String opCode, int first, int second) {
+    public void setCache(ProgramCache cache) {
+        this.cache = cache;
+    }
 
-        int result = 0;
+    /**
+     * Enables or disables counting loop entries and back edges. While enabled, every program runs on the switch
+     * engine and is never compiled, so every edge is counted.
+     *
+     * @param loopProfiling True to count loop edges, false otherwise.
+     */
+    public void setLoopProfiling(boolean loopProfiling) {
+        this.loopProfiling = loopProfiling;
+    }
 
-        switch (opCode) {
+    /**
+     * Gets the loop counts of the program last evaluated while loop profiling.
+     *
+     * @return Returns the loop profile, null if no program was evaluated while loop profiling.
+     */
+    public LoopProfile getLoopProfile() {
+        return loopProfile;
+    }
 
-            case "iadd":
-                result = second + first;
-                break;
-            case "imul":
-                result = second * first;
-                break;
-            case "idiv":
-                result = second / first;
-                break;
-            case "isub":
-                result = second - first;
-                break;
-            case "irem":
-                result = second % first;
-                break;
-            default:
-                break;
-        }
+    /**
+     * Enables or disables counting the executions of every Instruction and the outcome of every conditional jump.
+     * While enabled, every program runs on the switch engine and is never compiled, so every Instruction is counted.
+     *
+     * @param profiling True to count executions, false otherwise.
+     */
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
 
-        return result;
+    /**
+     * Gets the execution counts of the program last evaluated while profiling.
+     *
+     * @return Returns the execution profile, null if no program was evaluated while profiling.
+     */
+    public ExecutionProfile getProfile() {
+        return profile;
     }
 
     /**
-     * Helper function responsible for parsing the value for Phase1 Instructions including an underscore.
+     * Enables or disables recording every jump taken, and the Instruction an evaluation fails at, into a ring
+     * buffer, each evaluation starting the ring afresh; the TraceReplayer recovers every step in between. While
+     * enabled, every program runs on a traced copy of the switch engine, one Instruction per dispatch, and is never
+     * compiled or profiled.
      *
-     * @param opCode The Instruction name used for parsing the value, -1 if not found.
-     * @return Returns the parsed value, -1 if unsuccessful.
+     * @param trace The ring the jumps are recorded into, null to stop tracing.
      */
-    private int parseValue(String opCode) {
+    public void setTrace(ExecutionTrace trace) {
+        this.trace = trace;
+    }
 
-        int value = -1;
-        int index = opCode.indexOf("_");        //Locates the index where an _ is found, if possible.
+    /**
+     * Gets the ring steps are recorded into.
+     *
+     * @return Returns the execution trace, null if not tracing.
+     */
+    public ExecutionTrace getTrace() {
+        return trace;
+    }
 
-        if (index < opCode.length() - 1) {    //A value is able to be parsed if the index is non-negative and NOT the last character of opCode.
+    /**
+     * Enables or disables the load-time optimization passes.
+     *
+     * @param optimize True to optimize programs when they are prepared, false otherwise.
+     */
+    public void setOptimize(boolean optimize) {
+        this.optimize = optimize;
+    }
 
-            //A check to determine if the parsed value is a numerical value.
-            try {
-                value = Integer.parseInt(opCode.substring(index + 1));
-            } catch (NumberFormatException mfe) {
+    /**
+     * Enables or disables writing reports from load-time passes to System.err.
+     *
+     * @param verbose True to write reports, false otherwise.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
 
-            }
-        }
+    /**
+     * Sets the engine used for programs that have not been compiled to JVM bytecode.
+     *
+     * @param engine The engine to be used.
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
 
-        return ((value >= 0) && (value <= 5)) ? value : -1;    //Validation that the parsed value is between 0 and 5, inclusive.
+    /**
+     * Enables or disables compiling hot programs to JVM bytecode.
+     *
+     * @param jitEnabled True to compile hot programs, false to always interpret.
+     */
+    public void setJitEnabled(boolean jitEnabled) {
+        this.jitEnabled = jitEnabled;
     }
 
     /**
-     * Helper function responsible for evaluating a Phase1 Instruction.
+     * Sets the thresholds after which a program is compiled to JVM bytecode.
      *
-     * @param inst   The next Instruction to be evaluated, while determining if it belongs to Phase1.
-     * @param opCode The Instruction name for the current Instruction being evaluated.
-     * @return Returns true if successfully evaluated, false otherwise.
+     * @param invocations The number of evaluations after which a program is compiled, 0 to compile immediately.
+     * @param backEdges   The number of backward jumps within one evaluation after which a program is compiled.
      */
-    private boolean evaluatePhaseOne(Instruction inst, String opCode) {
+    public void setJitThresholds(int invocations, int backEdges) {
+        this.invocationThreshold = invocations;
+        this.backEdgeThreshold = backEdges;
+    }
 
-        if (opCode == null) {
-            return false;
+    /**
+     * Responsible for reading the inputted file, while creating a Linked List of Instruction nodes.
+     *
+     * @param filename The filename to be read from, if possible.
+     * @return Returns the Linked List of Instruction nodes represented by the inputted file.
+     * @throws IOException Thrown when the file is unable to be read/processed.
+     */
+    public static LList<Instruction> readFile(String filename) throws IOException {
+
+        LList<Instruction> instr = new LList<>();
+
+        for (Instruction instruction : readInstructions(filename)) {
+            instr.insertLast(new Node<Instruction>(instruction));            //Inserts the Instruction node into the Linked List.
         }
+        return instr;
+    }
+
+    /**
+     * Responsible for reading the inputted file into a list of Instructions, stored contiguously in program order.
+     *
+     * @param filename The filename to be read from, if possible.
+     * @return Returns the list of Instructions represented by the inputted file.
+     * @throws IOException Thrown when the file is unable to be read/processed.
+     */
+    public static AList<Instruction> readInstructions(String filename) throws IOException {
 
-        int result;
-        int value = 0;
+        AList<Instruction> instr = new AList<>();
 
-        if (opCode.contains("_")) {
+        File file = new File(filename);
 
-            //Parses the value following the _ , if possible.
-            value = parseValue(opCode);
-            opCode = opCode.substring(0, opCode.indexOf("_"));
+        //Validation that the file exists and/or is a legitimate file.
+        if ((!file.isFile()) || (!file.exists())) {
+            throw new IOException("File not Found...");
         }
 
-        //Rare case where the value cannot be parsed successfully.
-        if (value == -1) {
-            return false;
+        Scanner sc = new Scanner(file, "UTF-8");
+
+        //Reads the file line by line, until a newline is found.
+        while (sc.hasNext()) {
+            instr.add(new Instruction(sc.nextLine()));        //Creates a new Instruction based on the read line.
         }
 
-        switch (opCode) {
+        sc.close();
+        return instr;
+    }
 
-            case "iconst":
-                intStack.push(value);
-                break;
-            case "bipush":
-                intStack.push(inst.getParam1());
-                break;
-            case "iadd":
-            case "imul":
-            case "idiv":
-            case "isub":
-            case "irem":
-                int firstVal = intStack.pop();
-                int secondVal = intStack.pop();
-                result = evaluateResult(opCode, firstVal, secondVal);
-                intStack.push(result);
-                break;
-            case "print":
-                System.out.print(intStack.pop() + " ");
-                break;
-            case "return":
-                break;
-            default:
-                return false;
+    /**
+     * Responsible for loading and preparing a program file, text or binary, answered from the cache if one is set.
+     *
+     * @param filename The filename to be read from, if possible.
+     * @return Returns the prepared program, ready to be evaluated any number of times.
+     * @throws IOException Thrown when the file is unable to be read/processed.
+     */
+    public DecodedProgram load(String filename) throws IOException {
+
+        if (cache == null) {
+            return prepare(ProgramLoader.load(filename));
         }
 
-        return true;
+        //Only optimization changes the prepared program, so it is the only option in the key.
+        return cache.get(filename, (optimize) ? "-O" : "", (file) -> prepare(ProgramLoader.load(file)));
     }
 
     /**
-     * Helper function responsible for evaluating a Phase2 Instruction.
+     * Responsible for evaluating ALL Instructions from the Linked List, whether they are Phase1 or Phase2 Instructions.
      *
-     * @param inst   The next Instruction to be evaluated, while determining if it belongs to Phase2.
-     * @param opCode The Instruction name for the current Instruction being evaluated.
-     * @return Returns the next offset when a non-conditional/conditional jump is performed, -1 to indicate moving to the next Instruction.
+     * @param list The Linked List of Instruction nodes containing all Instructions to be evaluated.
      */
-    private int evaluatePhaseTwo(Instruction inst, String opCode) {
+    public void evaluateInstructions(LList<Instruction> list) {
 
-        if (opCode == null) {
-            return -1;
+        //Initial check for a null list.
+        if (list == null) {
+            return;
         }
 
-        /*
-         *Default values for the varIndex and offsetNo.
-         */
-        int varIndex = -1;
-        int offsetNo = -1;
+        evaluateProgram(prepare(list));
+    }
+
+    /**
+     * Responsible for evaluating ALL Instructions from a list, whether they are Phase1 or Phase2 Instructions.
+     *
+     * @param list The list containing all Instructions to be evaluated.
+     */
+    public void evaluateInstructions(AList<Instruction> list) {
+
+        //Initial check for a null list.
+        if (list == null) {
+            return;
+        }
+
+        evaluateProgram(prepare(list));
+    }
+
+    /**
+     * Responsible for decoding a Linked List of Instructions, applying every enabled load-time pass.
+     *
+     * @param list The Linked List of Instruction nodes to be prepared.
+     * @return Returns the decoded program, ready to be evaluated any number of times.
+     */
+    public DecodedProgram prepare(LList<Instruction> list) {
+        return prepare(DecodedProgram.decode(list));
+    }
+
+    /**
+     * Responsible for decoding a list of Instructions, applying every enabled load-time pass.
+     *
+     * @param list The list of Instructions to be prepared.
+     * @return Returns the decoded program, ready to be evaluated any number of times.
+     */
+    public DecodedProgram prepare(AList<Instruction> list) {
+        return prepare(DecodedProgram.decode(list));
+    }
+
+    /**
+     * Responsible for applying every enabled load-time pass to an already decoded program.
+     *
+     * @param program The decoded program to be prepared, such as one loaded by the ProgramLoader.
+     * @return Returns the decoded program, ready to be evaluated any number of times.
+     */
+    public DecodedProgram prepare(DecodedProgram program) {
+
+        //Rejects a program that may underflow its Stack before anything is evaluated.
+        program.getStackDepths();
 
-        int numParams = inst.getNumParameters();
+        if (optimize) {
 
-        //Parses value following the _ , IF the Instruction is NOT a conditional check.
-        if ((opCode.contains("_")) && (!opCode.startsWith("if"))) {
+            ConstantFolder folder = new ConstantFolder();
+            program = folder.optimize(program);
+            report(folder);
 
-            varIndex = parseValue(opCode);
-            opCode = opCode.substring(0, opCode.indexOf("_"));
+            PeepholeOptimizer peephole = new PeepholeOptimizer();
+            program = peephole.optimize(program);
+            report(peephole);
+
+            LoopCollapser collapser = new LoopCollapser();
+            program = collapser.optimize(program);
+            report(collapser);
         }
 
-        switch (opCode) {
+        if ((verbose) && (engine == Engine.REGISTER) && (program.getRegisters() != null)) {
+            report(program.getRegisters().report());
+        }
 
-            case "iload":
-                if ((varIndex == -1) && (numParams == 1)) {
-                    //Variation of iload where there is an index parameter, rather than an index following an underscore.
-                    varIndex = inst.getParam1();
-                }
+        return program;
+    }
 
-                Integer val = indexMap.get(varIndex);
-                intStack.push(val);
-                break;
-            case "istore":
-                Integer value = intStack.pop();
+    /**
+     * Helper method responsible for writing the report of a load-time pass, if verbose.
+     *
+     * @param pass The pass whose toString() describes what it did.
+     */
+    private void report(Object pass) {
 
-                if ((varIndex == -1) && (numParams == 1)) {
-                    //Variation of istore where there is an index parameter, rather than an index following an underscore.
-                    varIndex = inst.getParam1();
-                }
-                indexMap.put(varIndex, value);
-                break;
-            case "goto":
-                offsetNo = inst.getParam1();
-                break;
-            case "iinc":
-                //Increments the current value at the indicated key by the second parameter.
-                indexMap.put(inst.getParam1(), indexMap.get(inst.getParam1()) + inst.getParam2());
-                break;
-            case "if_icmpeq":
-                //If value1 and value2 are equal, a conditional jump is performed at the first parameter of the Instruction.
-                offsetNo = (intStack.pop() == intStack.pop()) ? inst.getParam1() : offsetNo;
-                break;
-            case "if_icmpne":
-                offsetNo = (intStack.pop() != intStack.pop()) ? inst.getParam1() : offsetNo;
-                break;
-            case "if_icmpge":
-                //If value1 <= value2, a conditional jump is performed at the first parameter of the Instruction.
-                offsetNo = (intStack.pop() <= intStack.pop()) ? inst.getParam1() : offsetNo;
-                break;
-            case "if_icmpgt":
-                offsetNo = (intStack.pop() < intStack.pop()) ? inst.getParam1() : offsetNo;
-                break;
-            case "if_icmple":
-                //If value1 >= value2, a conditional jump is performed at the first parameter of the Instruction.
-                offsetNo = (intStack.pop() >= intStack.pop()) ? inst.getParam1() : offsetNo;
-                break;
-            case "if_icmplt":
-                offsetNo = (intStack.pop() > intStack.pop()) ? inst.getParam1() : offsetNo;
-                break;
-            case "ifne":
-                //If value1 != 0, a conditional jump is performed at the first parameter of the Instruction.
-                offsetNo = (intStack.pop() != 0) ? inst.getParam1() : offsetNo;
-                break;
-            default:
-                return -1;
+        if (verbose) {
+            System.err.println(pass);
         }
-        return offsetNo;
     }
 
+    /**
+     * Responsible for evaluating an already decoded program, dispatching on a single integer opcode per Instruction.
+     *
+     * @param program The decoded program to be evaluated.
+     */
+    public void evaluateProgram(DecodedProgram program) {
+
+        OutputSink out = sink();
+
+        //Output is flushed even when the program fails, so everything printed before the failure appears.
+        try {
+            run(program, out);
+        } finally {
+            out.flush();
+        }
+    }
 
     /**
-     * Responsible for reading the inputted file, while creating a Linked List of Instruction nodes.
+     * Helper method responsible for choosing the engine that evaluates a program.
      *
-     * @param filename The filename to be read from, if possible.
-     * @return Returns the Linked List of Instruction nodes represented by the inputted file.
-     * @throws IOException Thrown when the file is unable to be read/processed.
+     * @param program The decoded program to be evaluated.
+     * @param out     The sink that print writes to.
      */
-    public static LList<Instruction> readFile(String filename) throws IOException {
+    private void run(DecodedProgram program, OutputSink out) {
 
-        LList<Instruction> instr = new LList<>();
+        //A trace holds only the latest evaluation.
+        if (trace != null) {
 
-        File file = new File(filename);
+            trace.start(program);
+            locals = program.newLocalFrame();
+            interpretTraced(program, out);
+            return;
+        }
 
-        //Validation that the file exists and/or is a legitimate file.
-        if ((!file.isFile()) || (!file.exists())) {
-            throw new IOException("File not Found...");
+        if ((loopProfiling) || (profiling)) {
+
+            //Counts accumulate over every evaluation of the same program.
+            if ((loopProfiling) && ((loopProfile == null) || (loopProfile.getProgram() != program))) {
+                loopProfile = new LoopProfile(new ControlFlowGraph(program));
+            }
+            if ((profiling) && ((profile == null) || (profile.getProgram() != program))) {
+                profile = new ExecutionProfile(program);
+            }
+            if (loopProfiling) {
+                loopProfile.recordRun();
+            }
+            if (profiling) {
+                profile.recordRun();
+            }
+
+            locals = program.newLocalFrame();
+            interpret(program, out);
+            return;
         }
 
-        Scanner sc = new Scanner(file, "UTF-8");
+        if (jitEnabled) {
 
-        //Reads the file line by line, until a newline is found.
-        while (sc.hasNext()) {
+            //Once a program is hot (or already compiled), the compiled code runs it from the start instead.
+            CompiledProgram compiled = (program.recordInvocation() > invocationThreshold) ? program.compile() : program.getCompiled();
 
-            Instruction instruction = new Instruction(sc.nextLine());        //Creates a new Instruction based on the read line.
-            instr.insertLast(new Node<Instruction>(instruction));            //Inserts the Instruction node into the Linked List.
+            if (compiled != null) {
+                compiled.execute(out, new int[program.getLocalCount()], 0);
+                return;
+            }
         }
 
-        sc.close();
-        return instr;
+        locals = program.newLocalFrame();
+
+        switch (engine) {
+
+            case CLOSURE:
+                //The Stack is shared by every evaluation, so whatever one leaves behind, finished or failed, is dropped.
+                intStack.clear();
+                try {
+                    ClosureCompiler.run(program.getClosures(), intStack, locals, out);
+                } finally {
+                    intStack.clear();
+                }
+                break;
+            case REGISTER:
+                RegisterProgram registers = program.getRegisters();
+
+                if (registers != null) {
+                    registers.execute(out);
+                } else {
+                    interpret(program, out);
+                }
+                break;
+            default:
+                interpret(program, out);
+                break;
+        }
     }
 
     /**
-     * Responsible for evaluating ALL Instructions from the Linked List, whether they are Phase1 or Phase2 Instructions.
+     * Resumes an evaluation on the switch engine from its frame, suspending it again once its instruction budget is
+     * spent. The budget is only charged on backward jumps, each charging the Instructions of the loop it closes, so
+     * straight-line code pays nothing and a program without loops always runs to completion. A budgeted evaluation
+     * is never compiled, as compiled code cannot be suspended.
      *
-     * @param list The Linked List of Instruction nodes containing all Instructions to be evaluated.
+     * @param frame  The frame of the evaluation, updated in place.
+     * @param out    The sink that print writes to.
+     * @param budget The number of Instructions the evaluation may run before being suspended.
+     * @return Returns true if the evaluation finished, false if it was suspended.
      */
-    public void evaluateInstructions(LList<Instruction> list) {
+    public boolean resume(ExecutionFrame frame, OutputSink out, long budget) {
+        return (frame.isFinished()) || (interpret(frame, out, Math.max(budget, 1)));
+    }
 
-        //Initial check for a null list.
-        if (list == null) {
-            return;
+    /**
+     * Helper method responsible for running a program to completion on the switch engine.
+     *
+     * @param program The decoded program to be evaluated.
+     * @param out     The sink that print writes to.
+     */
+    private void interpret(DecodedProgram program, OutputSink out) {
+
+        int maxDepth = program.getMaxStackDepth();
+        if (operands.length < maxDepth) {
+            operands = new int[maxDepth];
         }
 
-        int offsetNo = -1;
+        interpret(new ExecutionFrame(program, operands, locals), out, UNLIMITED);
+    }
 
-        //Gets the head of the Linked List of Instruction nodes.
-        Node<Instruction> curr = list.getFirst();
-        fillInstMap(list);
+    /**
+     * Helper method responsible for running a program on the switch engine, dispatching on its integer opcodes.
+     * The program is verified first, so its operand Stack lives in a plain array with no bounds checks.
+     *
+     * @param frame  The frame the evaluation starts from, updated when it is suspended or finishes.
+     * @param out    The sink that print writes to.
+     * @param budget The number of Instructions that may run before suspending, UNLIMITED to run to completion.
+     * @return Returns true if the evaluation finished, false if it was suspended.
+     */
+    private boolean interpret(ExecutionFrame frame, OutputSink out, long budget) {
+
+        //Local copies of the decoded arrays and the frame, so the loop performs no field or method lookups.
+        DecodedProgram program = frame.getProgram();
+        int[] opcodes = program.getOpcodes();
+        //Profiles see every Instruction, so collapsed loops run iteration by iteration while they are on.
+        int[] dispatch = ((profiling) || (loopProfiling)) ? opcodes : program.getDispatchOpcodes();
+        int[] params1 = program.getParams1();
+        int[] params2 = program.getParams2();
+        int[] targets = program.getTargets();
+        CountedLoop[] loops = program.getCountedLoops();
+        int length = opcodes.length;
+
+        LocalFrame locals = frame.getLocals();
+        int[] stack = frame.getStack();
+        int sp = frame.getSp();
+
+        int pc = frame.getPc();
+        int value1;
+        int backEdges = ((budget == UNLIMITED) && (jitEnabled) && (!loopProfiling) && (!profiling) && (!program.isUncompilable())) ? Math.max(backEdgeThreshold, 1) : 0;
+        boolean[] headers = (loopProfiling) ? loopProfile.getHeaders() : null;
+        long[] edgeCounts = (loopProfiling) ? loopProfile.getEdgeCounts() : null;
+        long[] executions = (profiling) ? profile.getExecutions() : null;
+        long[] taken = (profiling) ? profile.getTaken() : null;
+        while (pc < length) {
+
+            int next = pc + 1;
+
+            switch (dispatch[pc]) {
+
+                case Opcodes.ICONST:
+                case Opcodes.BIPUSH:
+                    stack[sp++] = params1[pc];
+                    break;
+                case Opcodes.IADD:
+                    //value2 is on top of the Stack, so the result replaces value1 below it.
+                    sp--;
+                    stack[sp - 1] += stack[sp];
+                    break;
+                case Opcodes.ISUB:
+                    sp--;
+                    stack[sp - 1] -= stack[sp];
+                    break;
+                case Opcodes.IMUL:
+                    sp--;
+                    stack[sp - 1] *= stack[sp];
+                    break;
+                case Opcodes.IDIV:
+                    sp--;
+                    stack[sp - 1] /= stack[sp];
+                    break;
+                case Opcodes.IREM:
+                    sp--;
+                    stack[sp - 1] %= stack[sp];
+                    break;
+                case Opcodes.PRINT:
+                    out.print(stack[--sp]);
+                    break;
+                case Opcodes.ILOAD:
+                    stack[sp++] = locals.load(params1[pc]);
+                    break;
+                case Opcodes.ISTORE:
+                    locals.store(params1[pc], stack[--sp]);
+                    break;
+                case Opcodes.IINC:
+                    //Increments the current value at the indicated slot by the second parameter.
+                    locals.increment(params1[pc], params2[pc]);
+                    break;
+                case Opcodes.GOTO:
+                    next = targets[pc];
+                    break;
+                case Opcodes.IF_ICMPEQ:
+                    sp -= 2;
+                    next = (stack[sp] == stack[sp + 1]) ? targets[pc] : next;
+                    break;
+                case Opcodes.IF_ICMPNE:
+                    sp -= 2;
+                    next = (stack[sp] != stack[sp + 1]) ? targets[pc] : next;
+                    break;
+                case Opcodes.IF_ICMPGE:
+                    sp -= 2;
+                    next = (stack[sp] >= stack[sp + 1]) ? targets[pc] : next;
+                    break;
+                case Opcodes.IF_ICMPGT:
+                    sp -= 2;
+                    next = (stack[sp] > stack[sp + 1]) ? targets[pc] : next;
+                    break;
+                case Opcodes.IF_ICMPLE:
+                    sp -= 2;
+                    next = (stack[sp] <= stack[sp + 1]) ? targets[pc] : next;
+                    break;
+                case Opcodes.IF_ICMPLT:
+                    sp -= 2;
+                    next = (stack[sp] < stack[sp + 1]) ? targets[pc] : next;
+                    break;
+                case Opcodes.IFNE:
+                    next = (stack[--sp] != 0) ? targets[pc] : next;
+                    break;
+                case Opcodes.ILOAD_ILOAD_ARITH_ISTORE:
+                    value1 = locals.load(params1[pc]);
+                    locals.store(params1[pc + 3], Opcodes.arithmetic(opcodes[pc + 2], value1, locals.load(params1[pc + 1])));
+                    next = pc + 4;
+                    break;
+                case Opcodes.ILOAD_PUSH_IF_ICMP:
+                    value1 = locals.load(params1[pc]);
+                    next = (Opcodes.compare(opcodes[pc + 2], value1, params1[pc + 1])) ? targets[pc + 2] : pc + 3;
+                    break;
+                case Opcodes.IINC_GOTO:
+                    locals.increment(params1[pc], params2[pc]);
+                    next = targets[pc + 1];
+                    break;
+                case Opcodes.COUNTED_LOOP:
+                    //Runs every iteration at once, or only the header test when the loop has no closed form here.
+                    next = loops[pc].execute(locals);
+                    break;
+                case Opcodes.RETURN:
+                    //return continues with the next Instruction, but is a natural point to write out the output.
+                    out.flush();
+                    break;
+                default:
+                    //nop continues with the next Instruction.
+                    break;
+            }
 
-        while (curr != null) {
+            //A fused sequence counts as every Instruction it covers, its jump being the last of them.
+            if (executions != null) {
 
-            String opCode = curr.getValue().getOpcode();
+                int last = pc + Opcodes.width(dispatch[pc]) - 1;
+                for (int i = pc; i <= last; i++) {
+                    executions[i]++;
+                }
+                if ((next != last + 1) && (Opcodes.isConditional(opcodes[last]))) {
+                    taken[last]++;
+                }
+            }
+
+            //An edge into a loop header is counted against the last Instruction executed, even within a fused sequence.
+            if ((headers != null) && (headers[next])) {
+
+                int last = pc + Opcodes.width(dispatch[pc]) - 1;
+                edgeCounts[2 * last + ((next == last + 1) ? 0 : 1)]++;
+            }
 
-            if (opCode != null) {
+            if (next <= pc) {
 
-                //Attempts to evaluate the Phase1 Instruction, if possible.
-                if (!evaluatePhaseOne(curr.getValue(), opCode)) {
+                //A hot loop is compiled, and execution moves into the compiled code at the loop header if possible.
+                if ((backEdges > 0) && (--backEdges == 0)) {
 
-                    offsetNo = evaluatePhaseTwo(curr.getValue(), opCode);        //Attempts the Phase2 Instruction if the Phase1 Instruction had been unsuccessful.
+                    CompiledProgram compiled = program.compile();
+
+                    if ((compiled != null) && (compiled.canEnterAt(next))) {
+                        compiled.execute(out, locals.getValues(), next);
+                        frame.finish();
+                        return true;
+                    }
+                }
+
+                //Only a backward jump is charged, for every Instruction from the loop header to the jump.
+                budget -= pc + Opcodes.width(dispatch[pc]) - next;
+                if (budget <= 0) {
+                    frame.suspend(next, sp);
+                    return false;
                 }
             }
 
-            //Gets the next Instruction if offsetNo hasn't been changed, otherwise the conditional/unconditional jump is performed to that Instruction.
-            curr = (offsetNo != -1) ? instMap.get(offsetNo) : curr.getNext();
-            offsetNo = -1;
+            pc = next;
+        }
+
+        frame.finish();
+        return true;
+    }
+
+    /**
+     * Helper method responsible for running a program to completion on the switch engine while recording every jump
+     * taken into the trace. It is a copy of the loop of interpret(), so an evaluation that is not traced never tests
+     * for a trace; it dispatches on the unfused opcodes and keeps its position in the ring in a local, writing it
+     * back once the evaluation ends.
+     *
+     * @param program The decoded program to be evaluated.
+     * @param out     The sink that print writes to.
+     */
+    private void interpretTraced(DecodedProgram program, OutputSink out) {
+
+        int[] opcodes = program.getOpcodes();
+        int[] params1 = program.getParams1();
+        int[] params2 = program.getParams2();
+        int[] targets = program.getTargets();
+        int[] depths = program.getStackDepths();
+        int length = opcodes.length;
+
+        int maxDepth = program.getMaxStackDepth();
+        if (operands.length < maxDepth) {
+            operands = new int[maxDepth];
+        }
+
+        LocalFrame locals = this.locals;
+        int[] stack = operands;
+        int sp = 0;
+        int pc = 0;
+
+        LongBuffer ring = trace.getRing();
+        long[] heads = trace.getHeads();
+        int mask = trace.getCapacity() - 1;
+        long count = 0;
+
+        try {
+            while (pc < length) {
+
+                int next = pc + 1;
+
+                switch (opcodes[pc]) {
+
+                    case Opcodes.ICONST:
+                    case Opcodes.BIPUSH:
+                        stack[sp++] = params1[pc];
+                        break;
+                    case Opcodes.IADD:
+                        sp--;
+                        stack[sp - 1] += stack[sp];
+                        break;
+                    case Opcodes.ISUB:
+                        sp--;
+                        stack[sp - 1] -= stack[sp];
+                        break;
+                    case Opcodes.IMUL:
+                        sp--;
+                        stack[sp - 1] *= stack[sp];
+                        break;
+                    case Opcodes.IDIV:
+                        sp--;
+                        stack[sp - 1] /= stack[sp];
+                        break;
+                    case Opcodes.IREM:
+                        sp--;
+                        stack[sp - 1] %= stack[sp];
+                        break;
+                    case Opcodes.PRINT:
+                        out.print(stack[--sp]);
+                        break;
+                    case Opcodes.ILOAD:
+                        stack[sp++] = locals.load(params1[pc]);
+                        break;
+                    case Opcodes.ISTORE:
+                        locals.store(params1[pc], stack[--sp]);
+                        break;
+                    case Opcodes.IINC:
+                        locals.increment(params1[pc], params2[pc]);
+                        break;
+                    case Opcodes.GOTO:
+                        next = targets[pc];
+                        break;
+                    case Opcodes.IF_ICMPEQ:
+                        sp -= 2;
+                        next = (stack[sp] == stack[sp + 1]) ? targets[pc] : next;
+                        break;
+                    case Opcodes.IF_ICMPNE:
+                        sp -= 2;
+                        next = (stack[sp] != stack[sp + 1]) ? targets[pc] : next;
+                        break;
+                    case Opcodes.IF_ICMPGE:
+                        sp -= 2;
+                        next = (stack[sp] >= stack[sp + 1]) ? targets[pc] : next;
+                        break;
+                    case Opcodes.IF_ICMPGT:
+                        sp -= 2;
+                        next = (stack[sp] > stack[sp + 1]) ? targets[pc] : next;
+                        break;
+                    case Opcodes.IF_ICMPLE:
+                        sp -= 2;
+                        next = (stack[sp] <= stack[sp + 1]) ? targets[pc] : next;
+                        break;
+                    case Opcodes.IF_ICMPLT:
+                        sp -= 2;
+                        next = (stack[sp] < stack[sp + 1]) ? targets[pc] : next;
+                        break;
+                    case Opcodes.IFNE:
+                        next = (stack[--sp] != 0) ? targets[pc] : next;
+                        break;
+                    case Opcodes.RETURN:
+                        out.flush();
+                        break;
+                    default:
+                        break;
+                }
+
+                //Every jump taken is recorded, with the top of the Stack before it; a branch falling through is
+                //implied. Popped values stay in the array, so the top before the jump is still at its depth.
+                if (next != pc + 1) {
+                    int depth = depths[pc];
+                    ring.put((int) count++ & mask, heads[pc] | ((depth > 0) ? stack[depth - 1] & 0xFFFFFFFFL : 0));
+                }
+
+                pc = next;
+            }
+        } catch (RuntimeException e) {
+
+            //The Instruction that failed is recorded last, so the trace ends where the evaluation stopped.
+            int depth = depths[pc];
+            ring.put((int) count++ & mask, heads[pc] | ((depth > 0) ? stack[depth - 1] & 0xFFFFFFFFL : 0));
+            throw e;
+        } finally {
+            trace.setCount(count);
         }
     }
 
@@ -320,14 +882,102 @@ public class Interpreter {
     public static void main(String[] args) {
 
 
-        if (args.length != 1) {
-            System.out.println("Usage: java Interpreter [filename]");
+        Interpreter interpreter = new Interpreter();
+        String filename = null;
+        int repeat = 1;
+        String loopsFile = null;
+        boolean profileReport = false;
+        String profileFile = null;
+        String traceFile = null;
+
+        for (String arg : args) {
+
+            if (arg.equals("-jit")) {
+                interpreter.setJitThresholds(0, 1);     //Compiles on the first evaluation.
+            } else if (arg.equals("-nojit")) {
+                interpreter.setJitEnabled(false);
+            } else if (arg.equals("-O")) {
+                interpreter.setOptimize(true);
+            } else if (arg.equals("-loops")) {
+                interpreter.setLoopProfiling(true);
+            } else if (arg.startsWith("-loops=")) {
+                interpreter.setLoopProfiling(true);
+                loopsFile = arg.substring("-loops=".length());
+            } else if (arg.equals("-profile")) {
+                interpreter.setProfiling(true);
+                profileReport = true;
+            } else if (arg.startsWith("-profile=")) {
+                interpreter.setProfiling(true);
+                profileFile = arg.substring("-profile=".length());
+            } else if (arg.startsWith("-trace=")) {
+                interpreter.setTrace(new ExecutionTrace());
+                traceFile = arg.substring("-trace=".length());
+            } else if (arg.equals("-cache")) {
+                interpreter.setCache(ProgramCache.getShared());
+            } else if (arg.equals("-verbose")) {
+                interpreter.setVerbose(true);
+            } else if (arg.startsWith("-engine=")) {
+                interpreter.setEngine(Engine.valueOf(arg.substring("-engine=".length()).toUpperCase()));
+            } else if (arg.startsWith("-repeat=")) {
+                repeat = Integer.parseInt(arg.substring("-repeat=".length()));
+            } else if ((filename == null) && (!arg.startsWith("-"))) {
+                filename = arg;
+            } else {
+                filename = null;
+                break;
+            }
+        }
+
+        if (filename == null) {
+            System.out.println("Usage: java Interpreter [-jit | -nojit] [-engine=switch|closure|register] [-O] [-loops[=FILE]] [-profile[=FILE]] [-trace=FILE] [-cache] [-verbose] [-repeat=N] [filename]");
             System.exit(0);
         }
 
         try {
-            LList<Instruction> input = readFile(args[0]);
-            new Interpreter().evaluateInstructions(input);
+            DecodedProgram program = interpreter.load(filename);
+
+            //Repeated evaluations of the same decoded program let it reach the compilation threshold.
+            try {
+                for (int i = 0; i < repeat; i++) {
+
+                    //With a cache, every evaluation looks the file up again, as a long-running service would.
+                    if ((i > 0) && (interpreter.cache != null)) {
+                        program = interpreter.load(filename);
+                    }
+                    interpreter.evaluateProgram(program);
+                }
+            } finally {
+
+                //The trace of the last evaluation is written even when it fails, as that is when it is wanted.
+                if (traceFile != null) {
+                    interpreter.getTrace().dump(traceFile);
+                }
+            }
+
+            if ((interpreter.verbose) && (interpreter.cache != null)) {
+                System.err.println(interpreter.cache);
+            }
+
+            //Loop counts are reported once every evaluation has finished, to System.err or as CSV to a file.
+            if (interpreter.getLoopProfile() != null) {
+
+                if (loopsFile != null) {
+                    interpreter.getLoopProfile().export(loopsFile);
+                } else {
+                    System.err.println(interpreter.getLoopProfile());
+                }
+            }
+
+            //The hot-spot report goes to System.err, or as JSON to a file.
+            if (interpreter.getProfile() != null) {
+
+                if (profileFile != null) {
+                    interpreter.getProfile().export(profileFile);
+                }
+                if (profileReport) {
+                    System.err.println(interpreter.getProfile());
+                }
+            }
         } catch (IOException e) {
             System.out.println(e.toString());
             e.printStackTrace();
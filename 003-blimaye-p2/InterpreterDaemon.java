@@ -0,0 +1,255 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class that keeps the Interpreter resident, so a program run pays neither JVM startup nor class loading, and a
+ * program file run again is answered from the shared ProgramCache. Requests are read one per line, from stdin or
+ * from each connection to a Unix domain socket:
+ * <pre>
+ * RUN path        runs a program file, text or binary
+ * TEXT n          runs the program held in the next n lines
+ * STATS           reports the requests served and the cache counters
+ * QUIT            ends the session
+ * </pre>
+ * Every request is answered with a single line, "OK " followed by everything the program printed, or "ERR "
+ * followed by the reason it failed. Each request runs on an Interpreter borrowed from a fixed pool.
+ *
+ * @author Brian Limaye
+ */
+public class InterpreterDaemon {
+
+    /**
+     * The idle Interpreters, one per request that may run at once.
+     */
+    private final ArrayBlockingQueue<Interpreter> pool;
+    /**
+     * The number of requests served.
+     */
+    private final AtomicLong requests = new AtomicLong();
+    /**
+     * The total time spent serving requests, in nanoseconds.
+     */
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    /**
+     * Four-argument constructor used to create a daemon with a pool of identically configured Interpreters.
+     *
+     * @param threads  The number of Interpreters, and so of requests that may run at once.
+     * @param jit      Whether hot programs are compiled to JVM bytecode.
+     * @param optimize Whether programs are optimized when prepared.
+     * @param engine   The engine used for programs that have not been compiled.
+     */
+    public InterpreterDaemon(int threads, boolean jit, boolean optimize, Interpreter.Engine engine) {
+
+        pool = new ArrayBlockingQueue<>(threads);
+
+        for (int i = 0; i < threads; i++) {
+
+            Interpreter interpreter = new Interpreter();
+            interpreter.setJitEnabled(jit);
+            interpreter.setOptimize(optimize);
+            interpreter.setEngine(engine);
+            interpreter.setCache(ProgramCache.getShared());
+            pool.add(interpreter);
+        }
+    }
+
+    /**
+     * Serves requests until QUIT or the end of the input.
+     *
+     * @param in  The requests.
+     * @param out The stream each response line is written to.
+     * @throws IOException Thrown when the input is unable to be read.
+     */
+    public void serve(BufferedReader in, PrintStream out) throws IOException {
+
+        String line;
+
+        while ((line = in.readLine()) != null) {
+
+            line = line.trim();
+
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.equals("QUIT")) {
+                break;
+            }
+
+            out.println(handle(line, in));
+            out.flush();
+        }
+    }
+
+    /**
+     * Helper method responsible for answering a single request.
+     *
+     * @param line The request line.
+     * @param in   The requests, from which the program of a TEXT request is read.
+     * @return Returns the response line.
+     * @throws IOException Thrown when the program of a TEXT request is unable to be read.
+     */
+    private String handle(String line, BufferedReader in) throws IOException {
+
+        if (line.equals("STATS")) {
+
+            long served = requests.get();
+            return "OK " + served + " requests, " + ((served == 0) ? 0 : busyNanos.get() / served / 1000)
+                    + " us average; " + ProgramCache.getShared();
+        }
+
+        byte[] text = null;
+
+        if (line.startsWith("TEXT ")) {
+
+            //The program is read in full, even if it later fails, so the next request starts on its own line.
+            int count;
+            try {
+                count = Integer.parseInt(line.substring("TEXT ".length()).trim());
+            } catch (NumberFormatException e) {
+                return "ERR Illegal line count: " + line;
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+
+                String programLine = in.readLine();
+                if (programLine == null) {
+                    return "ERR Unexpected end of input";
+                }
+                sb.append(programLine).append('\n');
+            }
+            text = sb.toString().getBytes(StandardCharsets.UTF_8);
+        } else if (!line.startsWith("RUN ")) {
+            return "ERR Unknown request: " + line;
+        }
+
+        long start = System.nanoTime();
+        Interpreter interpreter;
+
+        try {
+            interpreter = pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERR Interrupted";
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (PrintStream output = new PrintStream(bytes, false, StandardCharsets.UTF_8)) {
+
+            interpreter.setOutput(output);
+
+            DecodedProgram program = (text != null) ? interpreter.prepare(ProgramLoader.load(ByteBuffer.wrap(text)))
+                    : interpreter.load(line.substring("RUN ".length()).trim());
+            interpreter.evaluateProgram(program);
+
+            output.flush();
+            return "OK " + bytes.toString(StandardCharsets.UTF_8);
+        } catch (IOException | RuntimeException e) {
+            return "ERR " + String.valueOf(e.getMessage()).replace('\n', ' ');
+        } finally {
+
+            interpreter.setOutput(null);
+            pool.add(interpreter);
+
+            requests.incrementAndGet();
+            busyNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Accepts connections to a Unix domain socket forever, serving each on its own thread.
+     *
+     * @param path    The path of the socket, replaced if it already exists.
+     * @param threads The number of connections served at once.
+     * @throws IOException Thrown when the socket is unable to be bound.
+     */
+    public void listen(Path path, int threads) throws IOException {
+
+        Files.deleteIfExists(path);
+        ExecutorService connections = Executors.newFixedThreadPool(threads);
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+
+            server.bind(UnixDomainSocketAddress.of(path));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> path.toFile().delete()));
+
+            while (true) {
+
+                SocketChannel client = server.accept();
+
+                connections.execute(() -> {
+
+                    try (SocketChannel channel = client) {
+
+                        BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                                StandardCharsets.UTF_8));
+                        serve(in, new PrintStream(Channels.newOutputStream(channel), false, StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        System.err.println("connection failed: " + e);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * The main method used to start the daemon, serving stdin unless a socket is given.
+     *
+     * @param args The command-line arguments: [-jit | -nojit] [-O] [-engine=...] [-threads=N] [-socket=PATH].
+     * @throws IOException Thrown when stdin or the socket is unable to be used.
+     */
+    public static void main(String[] args) throws IOException {
+
+        boolean jit = true;
+        boolean optimize = false;
+        Interpreter.Engine engine = Interpreter.Engine.SWITCH;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String socket = null;
+
+        for (String arg : args) {
+
+            if (arg.equals("-jit")) {
+                jit = true;
+            } else if (arg.equals("-nojit")) {
+                jit = false;
+            } else if (arg.equals("-O")) {
+                optimize = true;
+            } else if (arg.startsWith("-engine=")) {
+                engine = Interpreter.Engine.valueOf(arg.substring("-engine=".length()).toUpperCase());
+            } else if (arg.startsWith("-threads=")) {
+                threads = Integer.parseInt(arg.substring("-threads=".length()));
+            } else if (arg.startsWith("-socket=")) {
+                socket = arg.substring("-socket=".length());
+            } else {
+                System.out.println("Usage: java InterpreterDaemon [-jit | -nojit] [-O] [-engine=switch|closure|register] [-threads=N] [-socket=PATH]");
+                System.exit(0);
+            }
+        }
+
+        InterpreterDaemon daemon = new InterpreterDaemon(threads, jit, optimize, engine);
+
+        if (socket != null) {
+            daemon.listen(Path.of(socket), threads);
+        } else {
+            daemon.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), System.out);
+        }
+    }
+}
@@ -0,0 +1,728 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A class that compiles a DecodedProgram into the bytes of a JVM class file and loads it as a hidden class,
+ * letting the JVM's own JIT optimize the program's loops.
+ * <p>
+ * The generated class has a single method, static void run(OutputSink out, int[] locals, int entry), where every
+ * local variable slot of the program becomes a JVM local variable and the operand Stack becomes the JVM operand
+ * stack. The class file uses version 49 so that no StackMapTable is required. Programs that the compiler cannot
+ * prove to behave identically (inconsistent Stack depths, underflow, or a possibly unset local variable) are
+ * rejected, leaving them to the Interpreter.
+ *
+ * @author Brian Limaye
+ */
+public class JitCompiler {
+
+    /**
+     * The name given to every generated class, the JVM making each hidden class name unique.
+     */
+    private static final String CLASS_NAME = "JitProgram";
+
+    /**
+     * The JVM local variable holding slot 0 of the program, after out, locals and entry.
+     */
+    private static final int FIRST_LOCAL = 3;
+
+    /**
+     * The largest number of bytes of code, and of local variables, a JVM method may have.
+     */
+    private static final int MAX_METHOD_SIZE = 65535;
+
+    /**
+     * The type of the generated run method.
+     */
+    private static final MethodType RUN_TYPE = MethodType.methodType(void.class, OutputSink.class, int[].class, int.class);
+
+    /**
+     * Private constructor, as the class only holds static methods.
+     */
+    private JitCompiler() {
+    }
+
+    /**
+     * Compiles a program into a hidden class, if possible.
+     *
+     * @param program The decoded program to be compiled.
+     * @return Returns the compiled program, null if the program cannot be compiled.
+     */
+    public static CompiledProgram compile(DecodedProgram program) {
+
+        //A program that cannot fit in one method is given up on before any analysis or code is produced.
+        if (!fits(program)) {
+            return null;
+        }
+
+        int[] depths = ProgramAnalysis.stackDepths(program);
+
+        if ((depths == null) || (!ProgramAnalysis.localsAssigned(program, depths))) {
+            return null;
+        }
+
+        //Execution may enter at the start, or at any reachable loop header with an empty operand Stack.
+        int length = program.length();
+        boolean[] entries = new boolean[length];
+        int[] targets = program.getTargets();
+
+        if (length > 0) {
+            entries[0] = true;
+        }
+        for (int i = 0; i < length; i++) {
+
+            if ((depths[i] >= 0) && (targets[i] >= 0) && (targets[i] <= i) && (depths[targets[i]] == 0)) {
+                entries[targets[i]] = true;
+            }
+        }
+
+        byte[] bytes = emitClass(program, depths, entries);
+
+        if (bytes == null) {
+            return null;
+        }
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            MethodHandle run = lookup.findStatic(lookup.lookupClass(), "run", RUN_TYPE);
+            return new CompiledProgram(run, entries, bytes.length);
+        } catch (IllegalAccessException | NoSuchMethodException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Helper method responsible for checking that a program could fit in a single JVM method: its locals within
+     * the 65535 local variables of a method, and the fewest bytes its code can take within the 65535 of a method.
+     *
+     * @param program The decoded program being compiled.
+     * @return Returns true if the program may fit, false if it certainly does not.
+     */
+    private static boolean fits(DecodedProgram program) {
+
+        int localCount = program.getLocalCount();
+        if (FIRST_LOCAL + (long) localCount > MAX_METHOD_SIZE) {
+            return false;
+        }
+
+        //The prologue takes at least 4 bytes a slot (aload_1, push, iaload, istore), and every Instruction other
+        //than nop and return at least one more.
+        long minimum = 4L * localCount;
+        for (int opcode : program.getOpcodes()) {
+            minimum += ((opcode == Opcodes.NOP) || (opcode == Opcodes.RETURN)) ? 0 : 1;
+        }
+        return minimum <= MAX_METHOD_SIZE;
+    }
+
+    /**
+     * Helper method responsible for emitting the class file bytes of a program.
+     *
+     * @param program The decoded program being compiled.
+     * @param depths  The Stack depth before every Instruction.
+     * @param entries The Instruction indexes at which the run method may be entered.
+     * @return Returns the class file bytes, null if the program is too large for a single method.
+     */
+    private static byte[] emitClass(DecodedProgram program, int[] depths, boolean[] entries) {
+
+        int[] opcodes = program.getOpcodes();
+        int[] params1 = program.getParams1();
+        int[] params2 = program.getParams2();
+        int[] targets = program.getTargets();
+        int length = opcodes.length;
+        int localCount = program.getLocalCount();
+
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int runName = pool.utf8("run");
+        int runType = pool.utf8(RUN_TYPE.toMethodDescriptorString());
+        int codeName = pool.utf8("Code");
+        int print = pool.methodRef("CompiledProgram", "print", "(ILOutputSink;)V");
+
+        Code code = new Code(pool);
+        int[] positions = new int[length + 1];
+        int maxDepth = 0;
+
+        //Prologue: copies every slot from the locals array into its JVM local variable.
+        for (int slot = 0; slot < localCount; slot++) {
+
+            code.u1(0x2b);      //aload_1
+            code.pushInt(slot);
+            code.u1(0x2e);      //iaload
+            code.local(0x36, FIRST_LOCAL + slot);
+        }
+
+        //Jumps to the requested entry point, defaulting to the first Instruction.
+        code.u1(0x1c);          //iload_2
+        int switchStart = code.length();
+        code.u1(0xab);          //lookupswitch
+        while (code.length() % 4 != 0) {
+            code.u1(0);
+        }
+        code.jump(switchStart, 0, 4);
+
+        int pairs = 0;
+        for (boolean entry : entries) {
+            pairs += entry ? 1 : 0;
+        }
+        code.u4(pairs);
+        for (int i = 0; i < length; i++) {
+
+            if (entries[i]) {
+                code.u4(i);
+                code.jump(switchStart, i, 4);
+            }
+        }
+
+        for (int pc = 0; pc < length; pc++) {
+
+            positions[pc] = code.length();
+
+            if (depths[pc] < 0) {
+                continue;       //Unreachable Instructions are never emitted.
+            }
+
+            int opcode = opcodes[pc];
+            int target = Math.min(targets[pc], length);
+            maxDepth = Math.max(maxDepth, depths[pc] + Opcodes.pushes(opcode));
+
+            switch (opcode) {
+
+                case Opcodes.ICONST:
+                case Opcodes.BIPUSH:
+                    code.pushInt(params1[pc]);
+                    break;
+                case Opcodes.IADD:
+                    code.u1(0x60);
+                    break;
+                case Opcodes.ISUB:
+                    code.u1(0x64);
+                    break;
+                case Opcodes.IMUL:
+                    code.u1(0x68);
+                    break;
+                case Opcodes.IDIV:
+                    code.u1(0x6c);
+                    break;
+                case Opcodes.IREM:
+                    code.u1(0x70);
+                    break;
+                case Opcodes.PRINT:
+                    code.u1(0x2a);      //aload_0
+                    code.u1(0xb8);      //invokestatic
+                    code.u2(print);
+                    break;
+                case Opcodes.ILOAD:
+                    code.local(0x15, FIRST_LOCAL + params1[pc]);
+                    break;
+                case Opcodes.ISTORE:
+                    code.local(0x36, FIRST_LOCAL + params1[pc]);
+                    break;
+                case Opcodes.IINC:
+                    code.increment(FIRST_LOCAL + params1[pc], params2[pc]);
+                    break;
+                case Opcodes.GOTO:
+                    code.branch(0xa7, target);
+                    break;
+                case Opcodes.IF_ICMPEQ:
+                    code.branch(0x9f, target);
+                    break;
+                case Opcodes.IF_ICMPNE:
+                    code.branch(0xa0, target);
+                    break;
+                case Opcodes.IF_ICMPLT:
+                    code.branch(0xa1, target);
+                    break;
+                case Opcodes.IF_ICMPGE:
+                    code.branch(0xa2, target);
+                    break;
+                case Opcodes.IF_ICMPGT:
+                    code.branch(0xa3, target);
+                    break;
+                case Opcodes.IF_ICMPLE:
+                    code.branch(0xa4, target);
+                    break;
+                case Opcodes.IFNE:
+                    code.branch(0x9a, target);
+                    break;
+                default:
+                    break;      //nop and return emit nothing.
+            }
+        }
+
+        positions[length] = code.length();
+        code.u1(0xb1);          //return
+
+        int maxLocals = FIRST_LOCAL + localCount;
+
+        if ((!code.resolve(positions)) || (code.length() > MAX_METHOD_SIZE) || (maxLocals > MAX_METHOD_SIZE)) {
+            return null;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            pool.writeTo(out);
+            out.writeShort(0x0031);         //public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);              //interfaces
+            out.writeShort(0);              //fields
+            out.writeShort(1);              //methods
+            out.writeShort(0x0009);         //public static
+            out.writeShort(runName);
+            out.writeShort(runType);
+            out.writeShort(1);              //attributes
+            out.writeShort(codeName);
+            out.writeInt(12 + code.length());
+            out.writeShort(maxDepth + 2);   //print and a wide iinc each need up to two extra slots
+            out.writeShort(maxLocals);
+            out.writeInt(code.length());
+            out.write(code.bytes(), 0, code.length());
+            out.writeShort(0);              //exception table
+            out.writeShort(0);              //code attributes
+            out.writeShort(0);              //class attributes
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A class representing the constant pool of the generated class file.
+     */
+    private static class ConstantPool {
+
+        /**
+         * The encoded entries of the pool.
+         */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        /**
+         * A stream used to encode the entries.
+         */
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        /**
+         * The index of every Integer entry, keyed by its value.
+         */
+        private final IntIntMap integers = new IntIntMap();
+        /**
+         * The index the next entry will receive (the pool is 1-based).
+         */
+        private int next = 1;
+
+        /**
+         * Adds a Utf8 entry.
+         *
+         * @param value The string being added.
+         * @return Returns the index of the entry.
+         */
+        int utf8(String value) {
+
+            try {
+                out.writeByte(1);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return next++;
+        }
+
+        /**
+         * Adds a Class entry.
+         *
+         * @param name The internal name of the class.
+         * @return Returns the index of the entry.
+         */
+        int classRef(String name) {
+            return pair(7, utf8(name), -1);
+        }
+
+        /**
+         * Adds a Methodref entry.
+         *
+         * @param owner      The internal name of the class declaring the method.
+         * @param name       The name of the method.
+         * @param descriptor The descriptor of the method.
+         * @return Returns the index of the entry.
+         */
+        int methodRef(String owner, String name, String descriptor) {
+
+            int ownerIndex = classRef(owner);
+            int nameAndType = pair(12, utf8(name), utf8(descriptor));
+            return pair(10, ownerIndex, nameAndType);
+        }
+
+        /**
+         * Adds (or reuses) an Integer entry.
+         *
+         * @param value The int being added.
+         * @return Returns the index of the entry.
+         */
+        int integer(int value) {
+
+            int index = integers.get(value, 0);
+
+            //Pool indexes start at 1, so 0 means the value has no entry yet.
+            if (index == 0) {
+                try {
+                    out.writeByte(3);
+                    out.writeInt(value);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                index = next++;
+                integers.put(value, index);
+            }
+            return index;
+        }
+
+        /**
+         * Helper method responsible for adding an entry made of a tag and one or two indexes.
+         *
+         * @param tag    The tag of the entry.
+         * @param first  The first index.
+         * @param second The second index, -1 if the entry only has one.
+         * @return Returns the index of the entry.
+         */
+        private int pair(int tag, int first, int second) {
+
+            try {
+                out.writeByte(tag);
+                out.writeShort(first);
+                if (second != -1) {
+                    out.writeShort(second);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return next++;
+        }
+
+        /**
+         * Writes the pool count and entries to a class file.
+         *
+         * @param dest The stream of the class file.
+         * @throws IOException Thrown when the stream cannot be written.
+         */
+        void writeTo(DataOutputStream dest) throws IOException {
+
+            dest.writeShort(next);
+            bytes.writeTo(dest);
+        }
+    }
+
+    /**
+     * A class representing the bytecode of the run method, with jumps patched once every position is known.
+     */
+    private static class Code {
+
+        /**
+         * The constant pool, used for int constants outside the short range.
+         */
+        private final ConstantPool pool;
+        /**
+         * The emitted bytes.
+         */
+        private byte[] bytes = new byte[256];
+        /**
+         * The number of emitted bytes.
+         */
+        private int length;
+        /**
+         * Every jump to patch, as {position of the jumping opcode, position of the offset, Instruction index, width}.
+         */
+        private final ArrayList<int[]> jumps = new ArrayList<>();
+
+        /**
+         * One-argument constructor used to create a Code instance.
+         *
+         * @param pool The constant pool of the class.
+         */
+        Code(ConstantPool pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * Gets the number of emitted bytes.
+         *
+         * @return Returns the number of emitted bytes.
+         */
+        int length() {
+            return length;
+        }
+
+        /**
+         * Gets the emitted bytes.
+         *
+         * @return Returns the emitted bytes, valid up to length().
+         */
+        byte[] bytes() {
+            return bytes;
+        }
+
+        /**
+         * Emits a single byte.
+         *
+         * @param value The byte to be emitted.
+         */
+        void u1(int value) {
+
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        /**
+         * Emits a big-endian short.
+         *
+         * @param value The short to be emitted.
+         */
+        void u2(int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        /**
+         * Emits a big-endian int.
+         *
+         * @param value The int to be emitted.
+         */
+        void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        /**
+         * Emits the shortest Instruction pushing an int constant.
+         *
+         * @param value The constant to be pushed.
+         */
+        void pushInt(int value) {
+
+            if ((value >= -1) && (value <= 5)) {
+                u1(0x03 + value);               //iconst_m1 .. iconst_5
+            } else if ((value >= Byte.MIN_VALUE) && (value <= Byte.MAX_VALUE)) {
+                u1(0x10);                       //bipush
+                u1(value);
+            } else if ((value >= Short.MIN_VALUE) && (value <= Short.MAX_VALUE)) {
+                u1(0x11);                       //sipush
+                u2(value);
+            } else {
+                u1(0x13);                       //ldc_w
+                u2(pool.integer(value));
+            }
+        }
+
+        /**
+         * Emits iload/istore for a JVM local variable, using the wide form when necessary.
+         *
+         * @param opcode The iload (0x15) or istore (0x36) opcode.
+         * @param index  The JVM local variable index.
+         */
+        void local(int opcode, int index) {
+
+            if (index <= 255) {
+                u1(opcode);
+                u1(index);
+            } else {
+                u1(0xc4);                       //wide
+                u1(opcode);
+                u2(index);
+            }
+        }
+
+        /**
+         * Emits iinc for a JVM local variable, falling back to iload/iadd/istore for large increments.
+         *
+         * @param index The JVM local variable index.
+         * @param delta The increment.
+         */
+        void increment(int index, int delta) {
+
+            if ((index <= 255) && (delta >= Byte.MIN_VALUE) && (delta <= Byte.MAX_VALUE)) {
+                u1(0x84);
+                u1(index);
+                u1(delta);
+            } else if ((delta >= Short.MIN_VALUE) && (delta <= Short.MAX_VALUE)) {
+                u1(0xc4);
+                u1(0x84);
+                u2(index);
+                u2(delta);
+            } else {
+                local(0x15, index);
+                pushInt(delta);
+                u1(0x60);
+                local(0x36, index);
+            }
+        }
+
+        /**
+         * Emits a branch to an Instruction index.
+         *
+         * @param opcode The JVM branch opcode.
+         * @param target The Instruction index jumped to, the program length meaning the end.
+         */
+        void branch(int opcode, int target) {
+
+            int start = length;
+            u1(opcode);
+            jump(start, target, 2);
+        }
+
+        /**
+         * Reserves room for a jump offset, to be patched by resolve().
+         *
+         * @param start  The position of the jumping opcode, which offsets are relative to.
+         * @param target The Instruction index jumped to.
+         * @param width  The width of the offset, 2 or 4 bytes.
+         */
+        void jump(int start, int target, int width) {
+
+            jumps.add(new int[]{start, length, target, width});
+            for (int i = 0; i < width; i++) {
+                u1(0);
+            }
+        }
+
+        /**
+         * Patches every jump offset once the position of every Instruction is known.
+         *
+         * @param positions The bytecode position of every Instruction index.
+         * @return Returns true if every offset fits its width, false otherwise.
+         */
+        boolean resolve(int[] positions) {
+
+            for (int[] jump : jumps) {
+
+                int offset = positions[jump[2]] - jump[0];
+
+                if (jump[3] == 2) {
+                    if ((offset < Short.MIN_VALUE) || (offset > Short.MAX_VALUE)) {
+                        return false;
+                    }
+                    bytes[jump[1]] = (byte) (offset >>> 8);
+                    bytes[jump[1] + 1] = (byte) offset;
+                } else {
+                    for (int i = 0; i < 4; i++) {
+                        bytes[jump[1] + i] = (byte) (offset >>> (24 - 8 * i));
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Helper method responsible for evaluating a program, capturing what it prints and how it fails.
+     *
+     * @param interpreter The Interpreter evaluating the program.
+     * @param program     The prepared program.
+     * @return Returns the output, followed by the failure message if the evaluation failed.
+     */
+    private static String evaluate(Interpreter interpreter, DecodedProgram program) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        interpreter.setSink(new BufferedSink(bytes));
+
+        try {
+            interpreter.evaluateProgram(program);
+        } catch (RuntimeException e) {
+            return bytes + "failed: " + e.getMessage();
+        }
+        return bytes.toString();
+    }
+
+    /**
+     * Helper method responsible for evaluating a program with and without the JIT.
+     *
+     * @param text        The text of the program.
+     * @param invocations The number of evaluations before the program is compiled.
+     * @param backEdges   The number of backward jumps within an evaluation before its loop is compiled.
+     * @return Returns the output without the JIT, the output with it, and "compiled" if the JIT compiled it.
+     */
+    private static String[] compare(String text, int invocations, int backEdges) {
+
+        Interpreter interpreted = new Interpreter();
+        interpreted.setJitEnabled(false);
+        Interpreter compiled = new Interpreter();
+        compiled.setJitThresholds(invocations, backEdges);
+
+        DecodedProgram program = compiled.prepare(ProgramLoader.load(ByteBuffer.wrap(text.getBytes())));
+        String expected = evaluate(interpreted, interpreted.prepare(ProgramLoader.load(ByteBuffer.wrap(text.getBytes()))));
+        String actual = evaluate(compiled, program);
+
+        return new String[]{expected, actual, (program.getCompiled() != null) ? "compiled" : ""};
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the JitCompiler class, every program
+     * printing and failing exactly as it does without the JIT.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     */
+    public static void main(String[] args) {
+
+        //A loop compiled on its first evaluation.
+        String sum = "0: iconst_0\n1: istore_1\n2: iconst_0\n3: istore_2\n4: iload_2\n5: bipush 100\n"
+                + "7: if_icmpge 20\n10: iload_1\n11: iload_2\n12: iadd\n13: istore_1\n14: iinc 2, 1\n"
+                + "17: goto 4\n20: iload_1\n21: print\n22: return\n";
+        String[] result = compare(sum, 0, 1);
+        if ((result[0].equals("4950 ")) && (result[1].equals(result[0])) && (result[2].equals("compiled"))) {
+            System.out.println("Yay1");
+        }
+
+        //A loop compiled partway through its first evaluation, entered at its header on a back edge.
+        result = compare(sum.replace("bipush 100", "bipush 100000"), 1000, 50);
+        if ((result[0].equals("704982704 ")) && (result[1].equals(result[0])) && (result[2].equals("compiled"))) {
+            System.out.println("Yay2");
+        }
+
+        //Dividing by zero fails in compiled code with the same message, after the same output.
+        result = compare("0: bipush 7\n2: print\n3: iconst_1\n4: iconst_0\n5: idiv\n6: print\n", 0, 1);
+        if ((result[0].equals("7 failed: / by zero")) && (result[1].equals(result[0])) && (result[2].equals("compiled"))) {
+            System.out.println("Yay3");
+        }
+
+        //A program reading a local before storing it is left to the switch engine, which reports it.
+        result = compare("0: bipush 7\n2: print\n3: iload_1\n4: print\n5: return\n", 0, 1);
+        if ((result[0].equals("7 failed: local variable 1 is read before it is stored")) && (result[1].equals(result[0]))
+                && (result[2].isEmpty())) {
+            System.out.println("Yay4");
+        }
+
+        //A program too large for one method falls back to the switch engine.
+        StringBuilder wide = new StringBuilder();
+        for (int slot = 0; slot < 20000; slot++) {
+            wide.append(4 * slot).append(": bipush ").append(slot).append("\n").append(4 * slot + 2).append(": istore ")
+                    .append(slot).append("\n");
+        }
+        wide.append("80000: iload 19999\n80002: print\n");
+        result = compare(wide.toString(), 0, 1);
+        if ((result[0].equals("19999 ")) && (result[1].equals(result[0])) && (result[2].isEmpty())) {
+            System.out.println("Yay5");
+        }
+
+        //Generated programs print the same compiled as interpreted.
+        boolean agrees = true;
+        for (long seed = 0; seed < 50; seed++) {
+
+            result = compare((seed % 2 == 0) ? ProgramGenerator.loop(500, 24, seed) : ProgramGenerator.arithmetic(200, seed), 0, 1);
+            agrees &= (result[1].equals(result[0])) && (result[2].equals("compiled"));
+        }
+        if (agrees) {
+            System.out.println("Yay6");
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * A class representing the local variables of a single execution, stored in an array indexed by slot.
+ *
+ * @author Brian Limaye
+ */
+public class LocalFrame {
+
+    /**
+     * The value held by each local variable slot.
+     */
+    private final int[] values;
+
+    /**
+     * Whether each local variable slot has been stored to, so reads of unset slots can be reported.
+     */
+    private final boolean[] stored;
+
+    /**
+     * The slot named by the program for each slot of the frame, null when they are the same.
+     */
+    private final int[] names;
+
+    /**
+     * One-argument constructor used to initialize a LocalFrame instance.
+     *
+     * @param size The number of slots, one more than the highest slot used by the program.
+     */
+    public LocalFrame(int size) {
+        this(size, null);
+    }
+
+    /**
+     * Two-argument constructor used to initialize a LocalFrame whose slots the program numbers differently.
+     *
+     * @param size  The number of slots.
+     * @param names The slot named by the program for each slot, null when they are the same.
+     */
+    LocalFrame(int size, int[] names) {
+
+        this.values = new int[size];
+        this.stored = new boolean[size];
+        this.names = names;
+    }
+
+    /**
+     * Helper method responsible for naming a slot in an error, as the program names it.
+     *
+     * @param slot The slot of the frame.
+     * @return Returns the slot as written in the program.
+     */
+    private int name(int slot) {
+        return (names == null) ? slot : names[slot];
+    }
+
+    /**
+     * Gets the number of slots in the frame.
+     *
+     * @return Returns the number of slots.
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Gets the array holding the value of every slot, used when handing a running frame to compiled code.
+     *
+     * @return Returns the values of every slot, 0 for slots that were never stored to.
+     */
+    int[] getValues() {
+        return values;
+    }
+
+    /**
+     * Determines whether a slot has been stored to.
+     *
+     * @param slot The slot being examined.
+     * @return Returns true if the slot holds a value, false otherwise.
+     */
+    public boolean isStored(int slot) {
+        return stored[slot];
+    }
+
+    /**
+     * Gets the value held by a slot.
+     *
+     * @param slot The slot being read.
+     * @return Returns the value held by the slot.
+     * @throws RuntimeException Thrown when the slot has never been stored to.
+     */
+    public int load(int slot) {
+
+        if (!stored[slot]) {
+            throw new RuntimeException("local variable " + name(slot) + " is read before it is stored");
+        }
+
+        return values[slot];
+    }
+
+    /**
+     * Stores a value into a slot.
+     *
+     * @param slot  The slot being written.
+     * @param value The value to be stored.
+     */
+    public void store(int slot, int value) {
+
+        values[slot] = value;
+        stored[slot] = true;
+    }
+
+    /**
+     * Increments the value held by a slot, as done by iinc.
+     *
+     * @param slot  The slot being incremented.
+     * @param delta The amount to be added.
+     * @throws RuntimeException Thrown when the slot has never been stored to.
+     */
+    public void increment(int slot, int delta) {
+
+        if (!stored[slot]) {
+            throw new RuntimeException("local variable " + name(slot) + " is incremented before it is stored");
+        }
+
+        values[slot] += delta;
+    }
+
+    /**
+     * Gets the human interpreted representation of the frame, "-" marking slots that were never stored to.
+     *
+     * @return Returns the human interpreted representation of the frame.
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder("[");
+
+        for (int i = 0; i < values.length; i++) {
+
+            sb.append(stored[i] ? String.valueOf(values[i]) : "-");
+
+            if (i < values.length - 1) {
+                sb.append(", ");
+            }
+        }
+
+        return sb.append("]").toString();
+    }
+
+    /**
+     * Main method primarily used for testing the functionality of the LocalFrame class.
+     *
+     * @param args Command-line arguments primarily used for testing functionality at runtime.
+     */
+    public static void main(String[] args) {
+
+        LocalFrame frame = new LocalFrame(4);
+        frame.store(1, 10);
+        frame.store(3, -2);
+
+        if ((frame.load(1) == 10) && (frame.load(3) == -2)) {
+            System.out.println("Yay1");
+        }
+
+        frame.increment(1, 5);
+        if (frame.toString().equals("[-, 15, -, -2]")) {
+            System.out.println("Yay2");
+        }
+
+        try {
+            frame.load(2);
+        } catch (RuntimeException e) {
+            if (e.getMessage().contains("local variable 2")) {
+                System.out.println("Yay3");
+            }
+        }
+
+        //A frame of densely numbered slots reports the slot the program named.
+        frame = new LocalFrame(1, new int[]{2000000000});
+        try {
+            frame.increment(0, 1);
+        } catch (RuntimeException e) {
+            if (e.getMessage().equals("local variable 2000000000 is incremented before it is stored")) {
+                System.out.println("Yay4");
+            }
+        }
+    }
+}
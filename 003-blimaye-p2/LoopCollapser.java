@@ -0,0 +1,565 @@
+import java.util.BitSet;
+
+/**
+ * A class representing a static optimization pass over a DecodedProgram that collapses counted loops into closed
+ * forms, run after the PeepholeOptimizer. A loop is collapsed when it has the shape
+ * <pre>
+ * header: iload i; (iconst|bipush N | iload n); if_icmp* exit
+ *         body
+ *         goto header
+ * </pre>
+ * where:
+ * <ul>
+ * <li>nothing jumps into the loop other than to its header, and the body holds no jump, print, return, idiv or
+ * irem, so it is a single block that cannot fail or be observed;</li>
+ * <li>the body steps the counter i by a constant, and never changes n;</li>
+ * <li>every other local variable the body writes ends each iteration as a linear function of i and of local
+ * variables the body never writes, either added to its own previous value or replacing it.</li>
+ * </ul>
+ * Like a superinstruction, only the opcode dispatched on by the switch engine at the header changes, to
+ * counted_loop; every other engine still runs the loop as written.
+ *
+ * @author Brian Limaye
+ */
+public class LoopCollapser {
+
+    /**
+     * The number of loops collapsed.
+     */
+    private int collapsed;
+    /**
+     * The number of loops with a counted header whose body has no closed form.
+     */
+    private int rejected;
+
+    /**
+     * Collapses every counted loop of a program.
+     *
+     * @param program The decoded program to be optimized.
+     * @return Returns a program sharing the arrays of the original, or the original program if nothing changed.
+     */
+    public DecodedProgram optimize(DecodedProgram program) {
+
+        int[] opcodes = program.getOpcodes();
+        int[] targets = program.getTargets();
+        int length = opcodes.length;
+
+        //Every Instruction some jump leads to, so a loop entered anywhere but its header is left alone.
+        boolean[] targeted = new boolean[length + 1];
+        for (int i = 0; i < length; i++) {
+
+            if (Opcodes.isBranch(opcodes[i])) {
+                targeted[Math.min(targets[i], length)] = true;
+            }
+        }
+
+        int[] dispatch = null;
+        CountedLoop[] loops = null;
+
+        for (int end = 0; end < length; end++) {
+
+            if ((opcodes[end] != Opcodes.GOTO) || (targets[end] >= end)) {
+                continue;
+            }
+
+            int header = targets[end];
+            CountedLoop loop = analyze(program, header, end, targeted);
+
+            if (loop != null) {
+
+                if (dispatch == null) {
+                    dispatch = program.getDispatchOpcodes().clone();
+                    loops = (program.getCountedLoops() != null) ? program.getCountedLoops().clone() : new CountedLoop[length];
+                }
+                dispatch[header] = Opcodes.COUNTED_LOOP;
+                loops[header] = loop;
+                ++collapsed;
+            }
+        }
+
+        if (dispatch == null) {
+            return program;
+        }
+
+        return new DecodedProgram(opcodes, dispatch, program.getParams1(), program.getParams2(), targets,
+                program.getOffsets(), loops).withSlotNamesOf(program);
+    }
+
+    /**
+     * Helper method responsible for deriving the closed form of a loop, if it has the recognized shape.
+     *
+     * @param program  The decoded program being optimized.
+     * @param header   The index of the loop header, the target of the backward goto.
+     * @param end      The index of the backward goto.
+     * @param targeted Whether some jump leads to each Instruction.
+     * @return Returns the counted loop, null if the loop has no closed form.
+     */
+    private CountedLoop analyze(DecodedProgram program, int header, int end, boolean[] targeted) {
+
+        int[] opcodes = program.getOpcodes();
+        int[] params1 = program.getParams1();
+        int[] params2 = program.getParams2();
+        int[] targets = program.getTargets();
+        int locals = program.getLocalCount();
+
+        //Validation for the header: load the counter, push the bound, compare and leave the loop.
+        if ((end - header < 3) || (opcodes[header] != Opcodes.ILOAD)
+                || ((opcodes[header + 1] != Opcodes.ICONST) && (opcodes[header + 1] != Opcodes.BIPUSH) && (opcodes[header + 1] != Opcodes.ILOAD))
+                || (!Opcodes.isConditional(opcodes[header + 2])) || (opcodes[header + 2] == Opcodes.IFNE)) {
+            return null;
+        }
+
+        int exit = targets[header + 2];
+        if ((exit >= header) && (exit <= end)) {
+            return null;
+        }
+        for (int i = header + 1; i <= end; i++) {
+
+            if (targeted[i]) {
+                return null;
+            }
+        }
+
+        int counter = params1[header];
+        int boundSlot = (opcodes[header + 1] == Opcodes.ILOAD) ? params1[header + 1] : -1;
+
+        //Symbolic values: coefficients of the value each local variable held at the start of the iteration, then a
+        //constant term.
+        int[][] values = new int[locals][];
+        for (int slot = 0; slot < locals; slot++) {
+            values[slot] = new int[locals + 1];
+            values[slot][slot] = 1;
+        }
+
+        int[][] stack = new int[end - header][];
+        int sp = 0;
+        BitSet written = new BitSet();
+        BitSet reads = new BitSet();
+
+        reads.set(counter);
+        for (int i = header + 3; i < end; i++) {
+
+            int[] value;
+
+            switch (opcodes[i]) {
+
+                case Opcodes.ICONST:
+                case Opcodes.BIPUSH:
+                    value = new int[locals + 1];
+                    value[locals] = params1[i];
+                    stack[sp++] = value;
+                    break;
+                case Opcodes.ILOAD:
+                    if (!written.get(params1[i])) {
+                        reads.set(params1[i]);
+                    }
+                    stack[sp++] = values[params1[i]].clone();
+                    break;
+                case Opcodes.ISTORE:
+                    if (sp == 0) {
+                        return reject();
+                    }
+                    values[params1[i]] = stack[--sp];
+                    written.set(params1[i]);
+                    break;
+                case Opcodes.IINC:
+                    if (!written.get(params1[i])) {
+                        reads.set(params1[i]);
+                    }
+                    values[params1[i]] = values[params1[i]].clone();
+                    values[params1[i]][locals] += params2[i];
+                    written.set(params1[i]);
+                    break;
+                case Opcodes.IADD:
+                case Opcodes.ISUB:
+                case Opcodes.IMUL:
+                    if (sp < 2) {
+                        return reject();
+                    }
+                    value = combine(opcodes[i], stack[sp - 2], stack[sp - 1]);
+                    if (value == null) {
+                        return reject();
+                    }
+                    stack[(--sp) - 1] = value;
+                    break;
+                case Opcodes.NOP:
+                    break;
+                default:
+                    return reject();
+            }
+        }
+
+        //Validation for the counter, stepped by a constant, and the bound, never written.
+        int[] next = values[counter];
+        int step = next[locals];
+        next[counter] -= 1;
+        boolean stepped = isConstant(next) && (step != 0);
+        next[counter] += 1;
+
+        if ((sp != 0) || (!stepped) || (!CountedLoop.isCountable(opcodes[header + 2], step))
+                || ((boundSlot >= 0) && (written.get(boundSlot)))) {
+            return reject();
+        }
+
+        int count = written.cardinality() - 1;
+        int[] slots = new int[count];
+        boolean[] accumulates = new boolean[count];
+        int[] constants = new int[count];
+        int[] counterCoefficients = new int[count];
+        int[][] invariantSlots = new int[count][];
+        int[][] invariantCoefficients = new int[count][];
+        int u = 0;
+
+        for (int slot = written.nextSetBit(0); slot >= 0; slot = written.nextSetBit(slot + 1)) {
+
+            if (slot == counter) {
+                continue;
+            }
+
+            int[] value = values[slot];
+            if ((value[slot] != 0) && (value[slot] != 1)) {
+                return reject();
+            }
+
+            int invariants = 0;
+            for (int other = 0; other < locals; other++) {
+
+                if ((other != slot) && (other != counter) && (value[other] != 0)) {
+
+                    //A local variable written by the body would carry its value over from the previous iteration.
+                    if (written.get(other)) {
+                        return reject();
+                    }
+                    ++invariants;
+                }
+            }
+
+            slots[u] = slot;
+            accumulates[u] = value[slot] == 1;
+            constants[u] = value[locals];
+            counterCoefficients[u] = value[counter];
+            invariantSlots[u] = new int[invariants];
+            invariantCoefficients[u] = new int[invariants];
+
+            int j = 0;
+            for (int other = 0; other < locals; other++) {
+
+                if ((other != slot) && (other != counter) && (value[other] != 0)) {
+
+                    invariantSlots[u][j] = other;
+                    invariantCoefficients[u][j++] = value[other];
+                }
+            }
+            ++u;
+        }
+
+        return new CountedLoop(counter, step, opcodes[header + 2], boundSlot, params1[header + 1], header + 3, exit,
+                reads.stream().toArray(), slots, accumulates, constants, counterCoefficients, invariantSlots,
+                invariantCoefficients);
+    }
+
+    /**
+     * Helper method responsible for counting a counted loop whose body has no closed form.
+     *
+     * @return Returns null, as the loop is left alone.
+     */
+    private CountedLoop reject() {
+
+        ++rejected;
+        return null;
+    }
+
+    /**
+     * Helper method responsible for determining whether a symbolic value is a constant.
+     *
+     * @param value The coefficients of every local variable, then the constant term.
+     * @return Returns true if every coefficient is 0, false otherwise.
+     */
+    private static boolean isConstant(int[] value) {
+
+        for (int i = 0; i < value.length - 1; i++) {
+
+            if (value[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method responsible for combining two symbolic values with iadd, isub or imul.
+     *
+     * @param opcode The arithmetic opcode.
+     * @param value1 The first operand (pushed first).
+     * @param value2 The second operand (on top of the Stack).
+     * @return Returns the symbolic result, null if a product of two non-constant values is not linear.
+     */
+    private static int[] combine(int opcode, int[] value1, int[] value2) {
+
+        int[] result = new int[value1.length];
+
+        if (opcode == Opcodes.IMUL) {
+
+            boolean constant1 = isConstant(value1);
+            if ((!constant1) && (!isConstant(value2))) {
+                return null;
+            }
+
+            int factor = (constant1) ? value1[value1.length - 1] : value2[value2.length - 1];
+            int[] scaled = (constant1) ? value2 : value1;
+            for (int i = 0; i < result.length; i++) {
+                result[i] = factor * scaled[i];
+            }
+            return result;
+        }
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (opcode == Opcodes.IADD) ? value1[i] + value2[i] : value1[i] - value2[i];
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of loops collapsed.
+     *
+     * @return Returns the number of counted loops replaced by their closed form.
+     */
+    public int getCollapsed() {
+        return collapsed;
+    }
+
+    /**
+     * Gets the human interpreted report of the pass.
+     *
+     * @return Returns the report of the pass.
+     */
+    @Override
+    public String toString() {
+        return "loop collapsing: " + collapsed + " counted loops collapsed, " + rejected + " left without a closed form";
+    }
+
+    /**
+     * Helper method responsible for generating a random counted loop, with its counter, bound and accumulators set
+     * up before it and every local variable printed after it.
+     *
+     * @param random The source of randomness.
+     * @return Returns the program text.
+     */
+    private static String randomLoop(java.util.Random random) {
+
+        StringBuilder text = new StringBuilder();
+        int[] offset = {0};
+        java.util.function.BiConsumer<Integer, String> emit = (size, line) -> {
+            text.append(offset[0]).append(": ").append(line).append("\n");
+            offset[0] += size;
+        };
+
+        //Counters start anywhere, including next to the ends of the int range, with small and large bounds.
+        int[] edges = {0, 1, -1, 100, -100, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE - 5, Integer.MIN_VALUE + 5};
+        int start = (random.nextBoolean()) ? edges[random.nextInt(edges.length)] : random.nextInt(401) - 200;
+        int bound = (random.nextInt(4) == 0) ? edges[random.nextInt(edges.length)] : start + random.nextInt(301) - 150;
+        int[] comparisons = {Opcodes.IF_ICMPGE, Opcodes.IF_ICMPGT, Opcodes.IF_ICMPLE, Opcodes.IF_ICMPLT, Opcodes.IF_ICMPEQ};
+        int comparison = comparisons[random.nextInt(comparisons.length)];
+        int step = (comparison == Opcodes.IF_ICMPEQ) ? ((random.nextBoolean()) ? 1 : -1) : random.nextInt(7) - 3;
+        step = (step == 0) ? 1 : step;
+        if (comparison == Opcodes.IF_ICMPEQ) {
+            bound = start + step * random.nextInt(300);
+        }
+
+        emit.accept(2, "bipush " + start);
+        emit.accept(1, "istore_0");
+        emit.accept(2, "bipush " + bound);
+        emit.accept(1, "istore_1");
+        for (int slot = 2; slot <= 4; slot++) {
+            emit.accept(2, "bipush " + (random.nextInt(2001) - 1000));
+            emit.accept(2, "istore " + slot);
+        }
+
+        int header = offset[0];
+        StringBuilder body = new StringBuilder();
+        emit.accept(1, "iload_0");
+        emit.accept(1, "iload_1");
+        int branch = offset[0];
+        emit.accept(3, "EXIT");
+
+        //Statements over the counter, the invariant bound and three other locals: accumulations and assignments.
+        boolean stepped = false;
+        for (int statement = random.nextInt(5); statement >= 0; statement--) {
+
+            int target = 2 + random.nextInt(3);
+            switch (random.nextInt(5)) {
+                case 0:
+                    emit.accept(3, "iinc " + target + ", " + (random.nextInt(201) - 100));
+                    break;
+                case 1:
+                    emit.accept(2, "iload " + target);
+                    emit.accept(1, "iload_0");
+                    emit.accept(2, "bipush " + (random.nextInt(2001) - 1000));
+                    emit.accept(1, "imul");
+                    emit.accept(1, "iadd");
+                    emit.accept(2, "istore " + target);
+                    break;
+                case 2:
+                    emit.accept(1, "iload_0");
+                    emit.accept(1, "iload_1");
+                    emit.accept(1, (random.nextBoolean()) ? "isub" : "iadd");
+                    emit.accept(2, "bipush " + random.nextInt(50));
+                    emit.accept(1, "imul");
+                    emit.accept(2, "istore " + target);
+                    break;
+                case 3:
+                    if (!stepped) {
+                        emit.accept(3, "iinc 0, " + step);
+                        stepped = true;
+                    }
+                    break;
+                default:
+                    emit.accept(2, "iload " + target);
+                    emit.accept(1, "iload_1");
+                    emit.accept(1, "isub");
+                    emit.accept(1, "nop");
+                    emit.accept(2, "istore " + target);
+                    break;
+            }
+        }
+        if (!stepped) {
+            emit.accept(3, "iinc 0, " + step);
+        }
+        emit.accept(3, "goto " + header);
+
+        int exit = offset[0];
+        for (int slot = 0; slot <= 4; slot++) {
+            emit.accept(2, "iload " + slot);
+            emit.accept(1, "print");
+        }
+        emit.accept(1, "return");
+
+        return text.toString().replace(branch + ": EXIT", branch + ": " + Opcodes.name(comparison) + " " + exit);
+    }
+
+    /**
+     * Helper method responsible for evaluating a program, with or without load-time optimization.
+     *
+     * @param text     The program text.
+     * @param optimize Whether the program is optimized, collapsing its counted loops.
+     * @param budget   The number of Instructions the program may run, so a loop too long to run as written stops.
+     * @return Returns the output, or the failure message, null if the budget ran out.
+     */
+    private static String evaluate(String text, boolean optimize, long budget) {
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setJitEnabled(false);
+        interpreter.setOptimize(optimize);
+
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        BufferedSink sink = new BufferedSink(bytes);
+        DecodedProgram program = interpreter.prepare(ProgramLoader.load(java.nio.ByteBuffer.wrap(text.getBytes())));
+
+        try {
+            if (!interpreter.resume(new ExecutionFrame(program), sink, budget)) {
+                return null;
+            }
+        } catch (RuntimeException e) {
+            return e.getMessage();
+        }
+        sink.flush();
+        return bytes.toString();
+    }
+
+    /**
+     * Helper method responsible for profiling a program on the switch engine.
+     *
+     * @param text     The text of the program.
+     * @param optimize Whether the program is optimized (-O) first.
+     * @return Returns the number of Instructions executed, then the number of back edges taken.
+     */
+    private static long[] profile(String text, boolean optimize) {
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setJitEnabled(false);
+        interpreter.setOptimize(optimize);
+        interpreter.setProfiling(true);
+        interpreter.setLoopProfiling(true);
+        interpreter.setSink(new BufferedSink(new java.io.ByteArrayOutputStream()));
+        interpreter.evaluateProgram(interpreter.prepare(ProgramLoader.load(java.nio.ByteBuffer.wrap(text.getBytes()))));
+
+        LoopProfile loops = interpreter.getLoopProfile();
+        long backEdges = 0;
+        for (ControlFlowGraph.Loop loop : new ControlFlowGraph(loops.getProgram()).getLoops()) {
+            backEdges += loops.getBackEdges(loop);
+        }
+        return new long[]{interpreter.getProfile().getTotal(), backEdges};
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the LoopCollapser class.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     */
+    public static void main(String[] args) {
+
+        //The sum of 0..99 collapses, and prints what the loop prints.
+        String sum = "0: iconst_0\n1: istore_1\n2: iconst_0\n3: istore_2\n4: iload_2\n5: bipush 100\n"
+                + "7: if_icmpge 20\n10: iload_1\n11: iload_2\n12: iadd\n13: istore_1\n14: iinc 2, 1\n"
+                + "17: goto 4\n20: iload_1\n21: print\n22: return\n";
+        LoopCollapser collapser = new LoopCollapser();
+        collapser.optimize(ProgramLoader.load(java.nio.ByteBuffer.wrap(sum.getBytes())));
+
+        if ((collapser.getCollapsed() == 1) && ("4950 ".equals(evaluate(sum, true, 100)))) {
+            System.out.println("Yay1");
+        }
+
+        //A loop that prints is left alone.
+        collapser = new LoopCollapser();
+        collapser.optimize(ProgramLoader.load(java.nio.ByteBuffer.wrap(sum.replace("13: istore_1", "13: print").getBytes())));
+        if (collapser.getCollapsed() == 0) {
+            System.out.println("Yay2");
+        }
+
+        //Random counted loops print the same collapsed as run, including when their sums and counters wrap around;
+        //those stepping away from their bound are rejected, as they only end by wrapping around.
+        java.util.Random random = new java.util.Random(1);
+        boolean agrees = true;
+        int compared = 0;
+        collapser = new LoopCollapser();
+
+        for (int i = 0; i < 5000; i++) {
+
+            String text = randomLoop(random);
+            String expected = evaluate(text, false, 200000);
+
+            if (expected != null) {
+                agrees &= expected.equals(evaluate(text, true, 200000));
+                collapser.optimize(ProgramLoader.load(java.nio.ByteBuffer.wrap(text.getBytes())));
+                ++compared;
+            }
+        }
+        if ((agrees) && (compared > 2500) && (collapser.getCollapsed() > compared / 2)) {
+            System.out.println("Yay3");
+        }
+
+        //A loop whose counter wraps past the end of the int range is run as written, rather than collapsed wrongly.
+        String wrapping = "0: bipush 2147483646\n2: istore_0\n3: iconst_0\n4: istore_1\n5: iload_0\n"
+                + "6: bipush 2147483647\n8: if_icmpge 20\n11: iinc 1, 1\n14: iinc 0, 2\n17: goto 5\n20: iload_1\n"
+                + "21: print\n22: return\n";
+        if (evaluate(wrapping, true, 1000) == null) {
+            System.out.println("Yay4");
+        }
+
+        //A billion iterations run as written take seconds; collapsed, they take no time at all.
+        String billion = sum.replace("bipush 100", "bipush 1000000000");
+        long start = System.nanoTime();
+        String collapsed = evaluate(billion, true, 100);
+        long elapsed = System.nanoTime() - start;
+        if ((String.valueOf((int) (999999999L * 1000000000L / 2) + " ").equals(collapsed)) && (elapsed < 1000000000L)) {
+            System.out.println("Yay5");
+        }
+
+        //Profiles count every iteration of a collapsible loop, the same with and without -O.
+        long[] plain = profile(sum, false);
+        long[] optimized = profile(sum, true);
+        if ((plain[0] == 910) && (plain[1] == 100) && (java.util.Arrays.equals(plain, optimized))) {
+            System.out.println("Yay6");
+        }
+    }
+}
@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * A class recording how often the natural loops of a DecodedProgram run, counting the edges into every loop
+ * header as the switch engine executes them. An edge taken from outside the loop enters it, while an edge taken
+ * from a latch is a back edge, starting one more iteration. Counts accumulate over every evaluation of the program.
+ *
+ * @author Brian Limaye
+ */
+public class LoopProfile {
+
+    /**
+     * The control-flow graph whose loops are being counted.
+     */
+    private final ControlFlowGraph cfg;
+    /**
+     * Whether each Instruction index starts a loop header, with one extra entry for the end of the program.
+     */
+    private final boolean[] headers;
+    /**
+     * The number of times control left each Instruction for a loop header: index 2i counting the fall through to
+     * i + 1, index 2i + 1 counting the jump to the target of i.
+     */
+    private final long[] edgeCounts;
+    /**
+     * The number of evaluations of the program, each entering a loop whose header is the first Instruction.
+     */
+    private int runs;
+
+    /**
+     * One-argument constructor used to create an empty profile of the loops of a graph.
+     *
+     * @param cfg The control-flow graph of the program being profiled.
+     */
+    public LoopProfile(ControlFlowGraph cfg) {
+
+        int length = cfg.getProgram().length();
+
+        this.cfg = cfg;
+        this.headers = new boolean[length + 1];
+        this.edgeCounts = new long[2 * length];
+
+        for (ControlFlowGraph.Loop loop : cfg.getLoops()) {
+            headers[loop.getHeader().getStart()] = true;
+        }
+    }
+
+    /**
+     * Gets the program being profiled.
+     *
+     * @return Returns the decoded program.
+     */
+    public DecodedProgram getProgram() {
+        return cfg.getProgram();
+    }
+
+    /**
+     * Gets whether each Instruction index starts a loop header, read by the switch engine.
+     *
+     * @return Returns the loop header flags, one past the program length.
+     */
+    boolean[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Gets the counts of edges into loop headers, updated by the switch engine.
+     *
+     * @return Returns the edge counts, two per Instruction.
+     */
+    long[] getEdgeCounts() {
+        return edgeCounts;
+    }
+
+    /**
+     * Records the start of one evaluation of the program.
+     */
+    void recordRun() {
+        ++runs;
+    }
+
+    /**
+     * Helper method responsible for counting how often control went from one Instruction to another.
+     *
+     * @param from The index of the Instruction control left.
+     * @param to   The index of the Instruction control continued at.
+     * @return Returns the number of times the edge was taken.
+     */
+    private long edge(int from, int to) {
+
+        DecodedProgram program = cfg.getProgram();
+        long count = (to == from + 1) ? edgeCounts[2 * from] : 0;
+
+        if ((to != from + 1) && (Opcodes.isBranch(program.getOpcodes()[from])) && (program.getTargets()[from] == to)) {
+            count += edgeCounts[2 * from + 1];
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the number of times a loop was entered from outside it.
+     *
+     * @param loop The loop being examined.
+     * @return Returns the number of entries into the loop.
+     */
+    public long getEntries(ControlFlowGraph.Loop loop) {
+
+        ControlFlowGraph.Block header = loop.getHeader();
+        long entries = (header.getStart() == 0) ? runs : 0;
+
+        for (ControlFlowGraph.Block pred : header.getPredecessors()) {
+
+            if (!loop.contains(pred)) {
+                entries += edge(pred.getEnd() - 1, header.getStart());
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Gets the number of back edges of a loop taken, one per iteration after the first of each entry.
+     *
+     * @param loop The loop being examined.
+     * @return Returns the number of back edges taken.
+     */
+    public long getBackEdges(ControlFlowGraph.Loop loop) {
+
+        long backEdges = 0;
+
+        for (ControlFlowGraph.Block latch : loop.getLatches()) {
+            backEdges += edge(latch.getEnd() - 1, loop.getHeader().getStart());
+        }
+
+        return backEdges;
+    }
+
+    /**
+     * Gets the average number of iterations of a loop per entry.
+     *
+     * @param loop The loop being examined.
+     * @return Returns the average trip count, 0 if the loop was never entered.
+     */
+    public double getTripCount(ControlFlowGraph.Loop loop) {
+
+        long entries = getEntries(loop);
+        return (entries == 0) ? 0 : (double) (entries + getBackEdges(loop)) / entries;
+    }
+
+    /**
+     * Writes the counts of every loop as comma-separated values, one loop per line after a header line.
+     *
+     * @param filename The file to be written.
+     * @throws IOException Thrown when the file is unable to be written.
+     */
+    public void export(String filename) throws IOException {
+
+        int[] offsets = cfg.getProgram().getOffsets();
+
+        try (PrintWriter writer = new PrintWriter(filename, "UTF-8")) {
+
+            writer.println("header_offset,blocks,instructions,entries,back_edges,trip_count");
+
+            for (ControlFlowGraph.Loop loop : cfg.getLoops()) {
+
+                writer.println(offsets[loop.getHeader().getStart()] + "," + loop.getBlocks().size() + "," + loop.size()
+                        + "," + getEntries(loop) + "," + getBackEdges(loop) + "," + getTripCount(loop));
+            }
+        }
+    }
+
+    /**
+     * Gets the human interpreted report of the profile, one loop per line.
+     *
+     * @return Returns the report of the profile.
+     */
+    @Override
+    public String toString() {
+
+        ArrayList<ControlFlowGraph.Loop> loops = cfg.getLoops();
+        int[] offsets = cfg.getProgram().getOffsets();
+        StringBuilder sb = new StringBuilder("loops: " + loops.size() + " found over " + runs + " runs");
+
+        for (ControlFlowGraph.Loop loop : loops) {
+
+            sb.append("\n  loop at offset ").append(offsets[loop.getHeader().getStart()]).append(": ")
+                    .append(loop.getBlocks().size()).append(" blocks, ").append(loop.size()).append(" Instructions, entered ")
+                    .append(getEntries(loop)).append(" times, ").append(getBackEdges(loop)).append(" back edges taken, ")
+                    .append(String.format("%.1f", getTripCount(loop))).append(" iterations per entry");
+        }
+
+        return sb.toString();
+    }
+}
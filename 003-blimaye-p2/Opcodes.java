@@ -0,0 +1,325 @@
+/**
+ * A class holding the integer opcodes used by a decoded program, along with helpers for describing them.
+ *
+ * @author Brian Limaye
+ */
+public final class Opcodes {
+
+    /**
+     * An Instruction that performs no work (unknown names, malformed suffixes and blank lines).
+     */
+    public static final int NOP = 0;
+    /**
+     * Pushes a constant in the range 0-5 (iconst_n).
+     */
+    public static final int ICONST = 1;
+    /**
+     * Pushes the first parameter of the Instruction.
+     */
+    public static final int BIPUSH = 2;
+    /**
+     * Pops two values, pushing their sum.
+     */
+    public static final int IADD = 3;
+    /**
+     * Pops two values, pushing their difference.
+     */
+    public static final int ISUB = 4;
+    /**
+     * Pops two values, pushing their product.
+     */
+    public static final int IMUL = 5;
+    /**
+     * Pops two values, pushing their quotient.
+     */
+    public static final int IDIV = 6;
+    /**
+     * Pops two values, pushing their remainder.
+     */
+    public static final int IREM = 7;
+    /**
+     * Pops a value, printing it followed by a space.
+     */
+    public static final int PRINT = 8;
+    /**
+     * Performs no work and continues with the next Instruction, exactly as the original interpreter did.
+     */
+    public static final int RETURN = 9;
+    /**
+     * Pushes the value of a local variable.
+     */
+    public static final int ILOAD = 10;
+    /**
+     * Pops a value into a local variable.
+     */
+    public static final int ISTORE = 11;
+    /**
+     * Increments a local variable by a constant.
+     */
+    public static final int IINC = 12;
+    /**
+     * Unconditional jump.
+     */
+    public static final int GOTO = 13;
+    /**
+     * Jumps if value1 == value2.
+     */
+    public static final int IF_ICMPEQ = 14;
+    /**
+     * Jumps if value1 != value2.
+     */
+    public static final int IF_ICMPNE = 15;
+    /**
+     * Jumps if value1 >= value2.
+     */
+    public static final int IF_ICMPGE = 16;
+    /**
+     * Jumps if value1 > value2.
+     */
+    public static final int IF_ICMPGT = 17;
+    /**
+     * Jumps if value1 <= value2.
+     */
+    public static final int IF_ICMPLE = 18;
+    /**
+     * Jumps if value1 < value2.
+     */
+    public static final int IF_ICMPLT = 19;
+    /**
+     * Jumps if the popped value != 0.
+     */
+    public static final int IFNE = 20;
+
+    /**
+     * Superinstruction for iload a; iload b; (arithmetic); istore c, never touching the operand Stack.
+     */
+    public static final int ILOAD_ILOAD_ARITH_ISTORE = 21;
+    /**
+     * Superinstruction for iload a; iconst/bipush k; if_icmp*, never touching the operand Stack.
+     */
+    public static final int ILOAD_PUSH_IF_ICMP = 22;
+    /**
+     * Superinstruction for iinc a, k; goto.
+     */
+    public static final int IINC_GOTO = 23;
+    /**
+     * Header of a counted loop collapsed by the LoopCollapser, running every iteration at once.
+     */
+    public static final int COUNTED_LOOP = 24;
+
+    /**
+     * The printable names of every opcode, indexed by the opcode itself.
+     */
+    private static final String[] NAMES = {
+            "nop", "iconst", "bipush", "iadd", "isub", "imul", "idiv", "irem", "print", "return",
+            "iload", "istore", "iinc", "goto", "if_icmpeq", "if_icmpne", "if_icmpge", "if_icmpgt",
+            "if_icmple", "if_icmplt", "ifne", "iload_iload_arith_istore", "iload_push_if_icmp", "iinc_goto",
+            "counted_loop"
+    };
+
+    /**
+     * Private constructor, as the class only holds constants.
+     */
+    private Opcodes() {
+    }
+
+    /**
+     * Gets the number of opcodes currently defined.
+     *
+     * @return Returns the number of defined opcodes.
+     */
+    public static int count() {
+        return NAMES.length;
+    }
+
+    /**
+     * Gets the opcode of an Instruction name, without any suffix.
+     *
+     * @param name The Instruction name, such as "iadd" or "if_icmplt".
+     * @return Returns the opcode named, nop if the name is unknown.
+     */
+    public static int lookup(String name) {
+
+        for (int opcode = ICONST; opcode <= IFNE; opcode++) {
+
+            if (NAMES[opcode].equals(name)) {
+                return opcode;
+            }
+        }
+        return NOP;
+    }
+
+    /**
+     * Gets the printable name of an opcode.
+     *
+     * @param opcode The opcode to be described.
+     * @return Returns the name of the opcode, "unknown" if it is out of range.
+     */
+    public static String name(int opcode) {
+        return ((opcode >= 0) && (opcode < NAMES.length)) ? NAMES[opcode] : "unknown";
+    }
+
+    /**
+     * Determines whether an opcode may transfer control to its resolved target.
+     *
+     * @param opcode The opcode being examined.
+     * @return Returns true if the opcode is a conditional/unconditional jump, false otherwise.
+     */
+    public static boolean isBranch(int opcode) {
+        return (opcode >= GOTO) && (opcode <= IFNE);
+    }
+
+    /**
+     * Determines whether an opcode may either jump or continue with the next Instruction.
+     *
+     * @param opcode The opcode being examined.
+     * @return Returns true for the if_icmp* and ifne opcodes, false otherwise.
+     */
+    public static boolean isConditional(int opcode) {
+        return (opcode > GOTO) && (opcode <= IFNE);
+    }
+
+    /**
+     * Gets the number of values an opcode pops from the operand Stack.
+     *
+     * @param opcode The opcode being examined.
+     * @return Returns the number of popped values.
+     */
+    public static int pops(int opcode) {
+
+        switch (opcode) {
+
+            case IADD:
+            case ISUB:
+            case IMUL:
+            case IDIV:
+            case IREM:
+            case IF_ICMPEQ:
+            case IF_ICMPNE:
+            case IF_ICMPGE:
+            case IF_ICMPGT:
+            case IF_ICMPLE:
+            case IF_ICMPLT:
+                return 2;
+            case PRINT:
+            case ISTORE:
+            case IFNE:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Gets the number of values an opcode pushes onto the operand Stack.
+     *
+     * @param opcode The opcode being examined.
+     * @return Returns the number of pushed values.
+     */
+    public static int pushes(int opcode) {
+
+        switch (opcode) {
+
+            case ICONST:
+            case BIPUSH:
+            case ILOAD:
+            case IADD:
+            case ISUB:
+            case IMUL:
+            case IDIV:
+            case IREM:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Gets the number of original Instructions executed by one dispatch of an opcode.
+     *
+     * @param opcode The opcode being examined.
+     * @return Returns the number of Instructions a superinstruction covers, 1 for every other opcode.
+     */
+    public static int width(int opcode) {
+
+        switch (opcode) {
+
+            case ILOAD_ILOAD_ARITH_ISTORE:
+                return 4;
+            case ILOAD_PUSH_IF_ICMP:
+            case COUNTED_LOOP:
+                return 3;
+            case IINC_GOTO:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Evaluates an arithmetic opcode.
+     *
+     * @param opcode The arithmetic opcode.
+     * @param value1 The first operand (pushed first).
+     * @param value2 The second operand (on top of the Stack).
+     * @return Returns the result of the operation.
+     * @throws ArithmeticException Thrown when idiv/irem divide by zero.
+     */
+    public static int arithmetic(int opcode, int value1, int value2) {
+
+        switch (opcode) {
+
+            case IADD:
+                return value1 + value2;
+            case ISUB:
+                return value1 - value2;
+            case IMUL:
+                return value1 * value2;
+            case IDIV:
+                return value1 / value2;
+            case IREM:
+                return value1 % value2;
+            default:
+                throw new IllegalArgumentException("not an arithmetic opcode: " + name(opcode));
+        }
+    }
+
+    /**
+     * Evaluates the condition of an if_icmp* opcode.
+     *
+     * @param opcode The comparison opcode.
+     * @param value1 The first operand (pushed first).
+     * @param value2 The second operand (on top of the Stack).
+     * @return Returns true if the jump is taken, false otherwise.
+     */
+    public static boolean compare(int opcode, int value1, int value2) {
+
+        switch (opcode) {
+
+            case IF_ICMPEQ:
+                return value1 == value2;
+            case IF_ICMPNE:
+                return value1 != value2;
+            case IF_ICMPGE:
+                return value1 >= value2;
+            case IF_ICMPGT:
+                return value1 > value2;
+            case IF_ICMPLE:
+                return value1 <= value2;
+            case IF_ICMPLT:
+                return value1 < value2;
+            default:
+                throw new IllegalArgumentException("not a comparison opcode: " + name(opcode));
+        }
+    }
+
+    /**
+     * Determines whether an opcode is one of the five arithmetic operations.
+     *
+     * @param opcode The opcode being examined.
+     * @return Returns true if the opcode is arithmetic, false otherwise.
+     */
+    public static boolean isArithmetic(int opcode) {
+        return (opcode >= IADD) && (opcode <= IREM);
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * An interface for the destination of everything a program prints, letting an engine write int values without
+ * formatting Strings or locking a PrintStream per print.
+ *
+ * @author Brian Limaye
+ */
+public interface OutputSink {
+
+    /**
+     * Prints a value followed by a space, exactly as the print Instruction always has.
+     *
+     * @param value The value to be printed.
+     */
+    void print(int value);
+
+    /**
+     * Writes out anything buffered so far.
+     */
+    void flush();
+}
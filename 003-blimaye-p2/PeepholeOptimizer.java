@@ -0,0 +1,186 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A class that fuses common Instruction sequences of a DecodedProgram into superinstructions, each executed by the
+ * switch engine in a single dispatch without touching the operand Stack:
+ * <ul>
+ * <li>iload a; iload b; (iadd|isub|imul|idiv|irem); istore c</li>
+ * <li>iload a; (iconst|bipush) k; if_icmp*</li>
+ * <li>iinc a, k; goto</li>
+ * </ul>
+ * Only the opcode dispatched on for the first Instruction of a sequence changes. Every other array, including
+ * the resolved jump indexes, is shared with the original program, so a jump into the middle of a fused sequence
+ * still executes the remaining Instructions one at a time.
+ *
+ * @author Brian Limaye
+ */
+public class PeepholeOptimizer {
+
+    /**
+     * The number of iload/iload/arithmetic/istore sequences fused.
+     */
+    private int arithmeticFused;
+    /**
+     * The number of iload/push/if_icmp* sequences fused.
+     */
+    private int compareFused;
+    /**
+     * The number of iinc/goto sequences fused.
+     */
+    private int incrementFused;
+
+    /**
+     * Fuses every recognized sequence of a program.
+     *
+     * @param program The decoded program to be optimized.
+     * @return Returns a program sharing the arrays of the original, dispatching on superinstructions.
+     */
+    public DecodedProgram optimize(DecodedProgram program) {
+
+        int[] opcodes = program.getOpcodes();
+        int[] dispatch = program.getDispatchOpcodes().clone();
+        int length = opcodes.length;
+        int i = 0;
+
+        while (i < length) {
+
+            int fused = fuse(opcodes, i);
+
+            if (fused != -1) {
+
+                dispatch[i] = fused;
+                i += Opcodes.width(fused);
+            } else {
+                i++;
+            }
+        }
+
+        return new DecodedProgram(opcodes, dispatch, program.getParams1(), program.getParams2(),
+                program.getTargets(), program.getOffsets(), program.getCountedLoops()).withSlotNamesOf(program);
+    }
+
+    /**
+     * Helper method responsible for recognizing a fusable sequence starting at an Instruction.
+     *
+     * @param opcodes The original opcodes of the program.
+     * @param i       The index of the first Instruction of the sequence.
+     * @return Returns the superinstruction, -1 if no sequence starts at the index.
+     */
+    private int fuse(int[] opcodes, int i) {
+
+        int remaining = opcodes.length - i;
+
+        if ((remaining >= 4) && (opcodes[i] == Opcodes.ILOAD) && (opcodes[i + 1] == Opcodes.ILOAD)
+                && (Opcodes.isArithmetic(opcodes[i + 2])) && (opcodes[i + 3] == Opcodes.ISTORE)) {
+
+            ++arithmeticFused;
+            return Opcodes.ILOAD_ILOAD_ARITH_ISTORE;
+        }
+
+        if ((remaining >= 3) && (opcodes[i] == Opcodes.ILOAD)
+                && ((opcodes[i + 1] == Opcodes.ICONST) || (opcodes[i + 1] == Opcodes.BIPUSH))
+                && (Opcodes.isConditional(opcodes[i + 2])) && (opcodes[i + 2] != Opcodes.IFNE)) {
+
+            ++compareFused;
+            return Opcodes.ILOAD_PUSH_IF_ICMP;
+        }
+
+        if ((remaining >= 2) && (opcodes[i] == Opcodes.IINC) && (opcodes[i + 1] == Opcodes.GOTO)) {
+
+            ++incrementFused;
+            return Opcodes.IINC_GOTO;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Gets the number of dispatches removed from a single pass over every fused sequence.
+     *
+     * @return Returns the number of Instructions no longer dispatched on individually.
+     */
+    public int getDispatchesRemoved() {
+        return 3 * arithmeticFused + 2 * compareFused + incrementFused;
+    }
+
+    /**
+     * Gets the human interpreted report of the sequences fused.
+     *
+     * @return Returns the report of the sequences fused.
+     */
+    @Override
+    public String toString() {
+        return "peephole: " + arithmeticFused + " iload/iload/arith/istore, " + compareFused + " iload/push/if_icmp, "
+                + incrementFused + " iinc/goto fused; " + getDispatchesRemoved() + " dispatches removed per pass";
+    }
+
+    /**
+     * Helper method responsible for evaluating a program on the switch engine, capturing what it prints.
+     *
+     * @param program The decoded program to be evaluated.
+     * @return Returns the output, followed by the failure message if the evaluation failed.
+     */
+    private static String evaluate(DecodedProgram program) {
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setJitEnabled(false);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        interpreter.setSink(new BufferedSink(bytes));
+
+        try {
+            interpreter.evaluateProgram(program);
+        } catch (RuntimeException e) {
+            return bytes + "failed: " + e.getMessage();
+        }
+        return bytes.toString();
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the PeepholeOptimizer class.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     */
+    public static void main(String[] args) {
+
+        //A counted loop holds one sequence of every kind.
+        DecodedProgram sum = ProgramLoader.load(ByteBuffer.wrap(("0: iconst_0\n1: istore_1\n2: iconst_0\n3: istore_2\n"
+                + "4: iload_2\n5: bipush 100\n7: if_icmpge 20\n10: iload_1\n11: iload_2\n12: iadd\n13: istore_1\n"
+                + "14: iinc 2, 1\n17: goto 4\n20: iload_1\n21: print\n22: return\n").getBytes()));
+        PeepholeOptimizer peephole = new PeepholeOptimizer();
+        DecodedProgram fused = peephole.optimize(sum);
+        int[] dispatch = fused.getDispatchOpcodes();
+
+        if ((peephole.toString().equals("peephole: 1 iload/iload/arith/istore, 1 iload/push/if_icmp, 1 iinc/goto fused; "
+                + "6 dispatches removed per pass")) && (dispatch[4] == Opcodes.ILOAD_PUSH_IF_ICMP)
+                && (dispatch[7] == Opcodes.ILOAD_ILOAD_ARITH_ISTORE) && (dispatch[11] == Opcodes.IINC_GOTO)
+                && (dispatch[8] == Opcodes.ILOAD) && (fused.getOpcodes() == sum.getOpcodes())) {
+            System.out.println("Yay1");
+        }
+
+        if ((evaluate(fused).equals("4950 ")) && (evaluate(sum).equals("4950 "))) {
+            System.out.println("Yay2");
+        }
+
+        //ifne compares against zero itself, so a push before it is left alone.
+        peephole = new PeepholeOptimizer();
+        String text = "0: iconst_1\n1: istore_1\n2: iload_1\n3: iconst_0\n4: ifne 2\n";
+        peephole.optimize(ProgramLoader.load(ByteBuffer.wrap(text.getBytes())));
+        if (peephole.getDispatchesRemoved() == 0) {
+            System.out.println("Yay3");
+        }
+
+        //The first pass jumps to the second iload of a fused sequence, with the first value already on the Stack.
+        DecodedProgram middle = ProgramLoader.load(ByteBuffer.wrap(("0: iconst_3\n1: istore_2\n2: iconst_0\n3: istore_1\n"
+                + "4: bipush 10\n6: goto 10\n9: iload_1\n10: iload_2\n11: iadd\n12: istore_1\n13: iload_1\n"
+                + "14: print\n15: iload_1\n16: bipush 20\n18: if_icmplt 9\n21: return\n").getBytes()));
+        peephole = new PeepholeOptimizer();
+        fused = peephole.optimize(middle);
+
+        if ((peephole.getDispatchesRemoved() == 5) && (evaluate(fused).equals("13 16 19 22 "))
+                && (evaluate(middle).equals("13 16 19 22 "))) {
+            System.out.println("Yay4");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+/**
+ * A class holding the dataflow analyses shared by the compilers, which only translate programs these analyses
+ * prove will behave exactly as they do on the Interpreter.
+ *
+ * @author Brian Limaye
+ */
+final class ProgramAnalysis {
+
+    /**
+     * Private constructor, as the class only holds static methods.
+     */
+    private ProgramAnalysis() {
+    }
+
+    /**
+     * Gets the operand Stack depth before every Instruction, as computed by the StackVerifier.
+     *
+     * @param program The decoded program being analyzed.
+     * @return Returns the depth before each Instruction (-1 if unreachable), null if the verifier rejects it.
+     */
+    static int[] stackDepths(DecodedProgram program) {
+
+        try {
+            return program.getStackDepths();
+        } catch (RuntimeException e) {
+            return null;        //Interpreter.prepare() has already rejected it, naming the offset.
+        }
+    }
+
+    /**
+     * Proves that every reachable iload/iinc reads a local variable that has
+     * definitely been stored on every path reaching it.
+     *
+     * @param program The decoded program being analyzed.
+     * @param depths  The Stack depths, used to skip unreachable Instructions.
+     * @return Returns true if no local variable can be read before it is stored, false otherwise.
+     */
+    static boolean localsAssigned(DecodedProgram program, int[] depths) {
+        return localsAssigned(program, depths, new BitSet());
+    }
+
+    /**
+     * Proves that every reachable iload/iinc reads a local variable that has
+     * definitely been stored on every path reaching it, some variables holding a value from the start.
+     *
+     * @param program The decoded program being analyzed.
+     * @param depths  The Stack depths, used to skip unreachable Instructions.
+     * @param initial The local variables stored before the first Instruction.
+     * @return Returns true if no local variable can be read before it is stored, false otherwise.
+     */
+    static boolean localsAssigned(DecodedProgram program, int[] depths, BitSet initial) {
+
+        int[] opcodes = program.getOpcodes();
+        int[] params1 = program.getParams1();
+        int[] targets = program.getTargets();
+        int length = opcodes.length;
+        BitSet[] assigned = new BitSet[length];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+
+        if (length > 0) {
+            assigned[0] = (BitSet) initial.clone();
+            work.push(0);
+        }
+
+        while (!work.isEmpty()) {
+
+            int pc = work.pop();
+            int opcode = opcodes[pc];
+            BitSet after = (BitSet) assigned[pc].clone();
+
+            if (((opcode == Opcodes.ILOAD) || (opcode == Opcodes.IINC)) && (!assigned[pc].get(params1[pc]))) {
+                return false;
+            }
+            if (opcode == Opcodes.ISTORE) {
+                after.set(params1[pc]);
+            }
+
+            int[] next = {(opcode == Opcodes.GOTO) ? -1 : pc + 1, Opcodes.isBranch(opcode) ? targets[pc] : -1};
+
+            for (int succ : next) {
+
+                if ((succ < 0) || (succ >= length) || (depths[succ] < 0)) {
+                    continue;
+                }
+
+                //A variable is only definitely stored if it is stored along every incoming path.
+                BitSet merged = (BitSet) after.clone();
+                if (assigned[succ] != null) {
+                    merged.and(assigned[succ]);
+                }
+                if (!merged.equals(assigned[succ])) {
+                    assigned[succ] = merged;
+                    work.push(succ);
+                }
+            }
+        }
+
+        return true;
+    }
+}
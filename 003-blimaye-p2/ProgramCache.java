@@ -0,0 +1,381 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A class caching prepared programs in memory, so a program file evaluated again skips loading, verification and
+ * every load-time pass. A program is keyed by the canonical path, size and modification time of its file along
+ * with the options it was prepared under, so an edited file is loaded afresh. The least recently used programs are
+ * evicted once their estimated memory exceeds the budget. The estimate covers every form built for a program after
+ * it was cached (its compiled class, closures, register program and Stack depths), each program being charged again
+ * whenever it is looked up, so a form built during an evaluation counts from the next lookup of its program.
+ *
+ * @author Brian Limaye
+ */
+public class ProgramCache {
+
+    /**
+     * A loader preparing a program from its file on a cache miss.
+     */
+    public interface Loader {
+
+        /**
+         * Loads and prepares a program file.
+         *
+         * @param filename The file to be loaded.
+         * @return Returns the prepared program.
+         * @throws IOException Thrown when the file is unable to be read/processed.
+         */
+        DecodedProgram load(String filename) throws IOException;
+    }
+
+    /**
+     * A class representing a cached program along with the memory it was charged for, so the used memory is always
+     * the sum of the charges even while programs grow between lookups.
+     */
+    private static class Entry {
+
+        /**
+         * The prepared program.
+         */
+        private final DecodedProgram program;
+        /**
+         * The estimated memory of the program when it was last charged.
+         */
+        private long bytes;
+
+        /**
+         * Two-argument constructor used to create an Entry instance.
+         *
+         * @param program The prepared program.
+         * @param bytes   The estimated memory of the program.
+         */
+        Entry(DecodedProgram program, long bytes) {
+            this.program = program;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * The default memory budget of the shared cache, 64 MB.
+     */
+    final static private long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    /**
+     * The cache shared by every Interpreter of the process that enables caching.
+     */
+    private static final ProgramCache SHARED = new ProgramCache(DEFAULT_BUDGET);
+
+    /**
+     * The cached programs in access order, the least recently used first.
+     */
+    private final LinkedHashMap<String, Entry> programs = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The largest estimated memory the cached programs may hold, in bytes.
+     */
+    private long budget;
+    /**
+     * The estimated memory of the cached programs, in bytes.
+     */
+    private long usedBytes;
+    /**
+     * The number of lookups answered from the cache.
+     */
+    private long hits;
+    /**
+     * The number of lookups that loaded the program.
+     */
+    private long misses;
+    /**
+     * The number of programs evicted to stay within the budget.
+     */
+    private long evictions;
+
+    /**
+     * One-argument constructor used to create an empty cache.
+     *
+     * @param budget The largest estimated memory the cached programs may hold, in bytes.
+     */
+    public ProgramCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Gets the cache shared by the whole process.
+     *
+     * @return Returns the shared cache.
+     */
+    public static ProgramCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Gets a prepared program, loading it on a miss.
+     *
+     * @param filename The program file.
+     * @param options  The options the program is prepared under, part of the key.
+     * @param loader   The loader used on a miss.
+     * @return Returns the prepared program.
+     * @throws IOException Thrown when the file is unable to be read/processed.
+     */
+    public DecodedProgram get(String filename, String options, Loader loader) throws IOException {
+
+        String key = key(filename, options);
+        Entry entry;
+
+        synchronized (this) {
+
+            entry = programs.get(key);
+            if (entry != null) {
+                ++hits;
+            } else {
+                ++misses;
+            }
+        }
+
+        //Estimating happens outside the lock, as it waits for any compilation of the program in progress.
+        if (entry != null) {
+            charge(key, entry, entry.program.estimateBytes());
+            return entry.program;
+        }
+
+        //Loading happens outside the lock, so one slow file never blocks lookups of others.
+        DecodedProgram program = loader.load(filename);
+        put(key, program, program.estimateBytes());
+        return program;
+    }
+
+    /**
+     * Helper method responsible for building the key of a program file.
+     *
+     * @param filename The program file.
+     * @param options  The options the program is prepared under.
+     * @return Returns the key, which changes whenever the file is modified.
+     * @throws IOException Thrown when the file does not exist.
+     */
+    private static String key(String filename, String options) throws IOException {
+
+        File file = new File(filename);
+
+        //Validation that the file exists and/or is a legitimate file.
+        if ((!file.isFile()) || (!file.exists())) {
+            throw new IOException("File not Found...");
+        }
+
+        return file.getCanonicalPath() + "|" + file.length() + "|" + file.lastModified() + "|" + options;
+    }
+
+    /**
+     * Helper method responsible for charging a cached program again for the forms built for it since, evicting the
+     * least recently used programs over the budget.
+     *
+     * @param key   The key of the program.
+     * @param entry The entry of the program.
+     * @param bytes The estimated memory the program now holds.
+     */
+    private synchronized void charge(String key, Entry entry, long bytes) {
+
+        //A program evicted meanwhile is no longer charged for anything.
+        if (programs.get(key) != entry) {
+            return;
+        }
+
+        usedBytes += bytes - entry.bytes;
+        entry.bytes = bytes;
+
+        //A program grown larger than the whole budget is no longer cached.
+        if (bytes > budget) {
+            programs.remove(key);
+            usedBytes -= bytes;
+            ++evictions;
+        }
+        evict();
+    }
+
+    /**
+     * Helper method responsible for caching a program, evicting the least recently used programs over the budget.
+     *
+     * @param key     The key of the program.
+     * @param program The prepared program.
+     * @param bytes   The estimated memory of the program.
+     */
+    private synchronized void put(String key, DecodedProgram program, long bytes) {
+
+        //A program larger than the whole budget is never cached.
+        if (bytes > budget) {
+            return;
+        }
+
+        Entry previous = programs.put(key, new Entry(program, bytes));
+        if (previous != null) {
+            usedBytes -= previous.bytes;
+        }
+        usedBytes += bytes;
+
+        evict();
+    }
+
+    /**
+     * Helper method responsible for evicting the least recently used programs until the budget is met.
+     */
+    private void evict() {
+
+        Iterator<Map.Entry<String, Entry>> eldest = programs.entrySet().iterator();
+
+        while ((usedBytes > budget) && (eldest.hasNext())) {
+
+            usedBytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+            ++evictions;
+        }
+    }
+
+    /**
+     * Sets the largest estimated memory the cached programs may hold, evicting programs over the new budget.
+     *
+     * @param budget The budget, in bytes.
+     */
+    public synchronized void setBudget(long budget) {
+
+        this.budget = budget;
+        evict();
+    }
+
+    /**
+     * Removes every cached program, keeping the counters.
+     */
+    public synchronized void clear() {
+
+        programs.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Gets the number of cached programs.
+     *
+     * @return Returns the number of cached programs.
+     */
+    public synchronized int size() {
+        return programs.size();
+    }
+
+    /**
+     * Gets the estimated memory of the cached programs.
+     *
+     * @return Returns the estimated number of bytes.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return Returns the number of hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that loaded the program.
+     *
+     * @return Returns the number of misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of programs evicted to stay within the budget.
+     *
+     * @return Returns the number of evictions.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the human interpreted report of the cache.
+     *
+     * @return Returns the counters and memory of the cache.
+     */
+    @Override
+    public synchronized String toString() {
+        return "cache: " + hits + " hits, " + misses + " misses, " + evictions + " evictions, " + programs.size()
+                + " programs (" + usedBytes + " of " + budget + " bytes)";
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the ProgramCache class.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     * @throws IOException Thrown when a temporary program file is unable to be written.
+     */
+    public static void main(String[] args) throws IOException {
+
+        File[] files = new File[3];
+
+        for (int i = 0; i < files.length; i++) {
+
+            files[i] = File.createTempFile("cache", ".txt");
+            files[i].deleteOnExit();
+
+            try (PrintWriter writer = new PrintWriter(new FileWriter(files[i]))) {
+                writer.print("0: bipush " + i + "\n2: print\n3: return\n");
+            }
+        }
+
+        long each = ProgramLoader.load(files[0].getPath()).estimateBytes();
+        ProgramCache cache = new ProgramCache(2 * each);
+        Loader loader = ProgramLoader::load;
+
+        DecodedProgram first = cache.get(files[0].getPath(), "", loader);
+        if ((cache.get(files[0].getPath(), "", loader) == first) && (cache.getHits() == 1) && (cache.getMisses() == 1)) {
+            System.out.println("Yay1");
+        }
+
+        //Different options prepare a different program.
+        if (cache.get(files[0].getPath(), "-O", loader) != first) {
+            System.out.println("Yay2");
+        }
+
+        //Touching files[0] makes it the most recently used, so loading files[1] evicts the -O entry.
+        cache.get(files[0].getPath(), "", loader);
+        cache.get(files[1].getPath(), "", loader);
+        if ((cache.getEvictions() == 1) && (cache.get(files[0].getPath(), "", loader) == first) && (cache.size() == 2)) {
+            System.out.println("Yay3");
+        }
+
+        //A modified file no longer matches its key.
+        try (PrintWriter writer = new PrintWriter(new FileWriter(files[0]))) {
+            writer.print("0: bipush 42\n2: print\n3: return\n4: nop\n");
+        }
+        if (cache.get(files[0].getPath(), "", loader).length() == 4) {
+            System.out.println("Yay4");
+        }
+
+        cache.setBudget(0);
+        if ((cache.size() == 0) && (cache.getUsedBytes() == 0)) {
+            System.out.println("Yay5");
+        }
+
+        //A program compiled after it was cached is charged for its compiled class on its next lookup, and evicted
+        //once that no longer fits the budget.
+        cache.setBudget(1024 * 1024);
+        DecodedProgram compiled = cache.get(files[1].getPath(), "", loader);
+        long decoded = cache.getUsedBytes();
+        compiled.compile();
+        cache.get(files[1].getPath(), "", loader);
+        long charged = cache.getUsedBytes();
+        cache.setBudget(decoded);
+
+        if ((compiled.getCompiled() != null) && (charged > decoded + 1024) && (cache.size() == 0)) {
+            System.out.println("Yay6");
+        }
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * A class that generates synthetic programs of any size, so the benchmarks can sweep program sizes and loop trip
+ * counts. Every program generated is valid: it never underflows the Stack, never divides by zero, always ends, and
+ * prints a single value once it is done. The same seed always generates the same program.
+ *
+ * @author Brian Limaye
+ */
+public class ProgramGenerator {
+
+    /**
+     * The program text generated so far.
+     */
+    private final StringBuilder text = new StringBuilder();
+    /**
+     * The source of every constant and choice of statement.
+     */
+    private final Random random;
+    /**
+     * The offset of the next Instruction.
+     */
+    private int offset;
+
+    /**
+     * One-argument constructor used to create an empty program.
+     *
+     * @param seed The seed of every random choice.
+     */
+    private ProgramGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Helper method responsible for appending one Instruction.
+     *
+     * @param width       The number of bytes the Instruction takes, which the offset advances by.
+     * @param instruction The Instruction, without its offset.
+     */
+    private void emit(int width, String instruction) {
+
+        text.append(offset).append(": ").append(instruction).append('\n');
+        offset += width;
+    }
+
+    /**
+     * Helper method responsible for appending one random statement over locals 2 and 3, reading local 1 but never
+     * writing it.
+     *
+     * @return Returns the number of Instructions appended.
+     */
+    private int statement() {
+
+        switch (random.nextInt(5)) {
+
+            case 0:
+                emit(1, "iload_2");
+                emit(1, "iload_1");
+                emit(1, "iadd");
+                emit(1, "istore_3");
+                return 4;
+            case 1:
+                emit(1, "iload_3");
+                emit(2, "bipush " + (random.nextInt(9) + 2));
+                emit(1, "imul");
+                emit(1, "istore_2");
+                return 4;
+            case 2:
+                //The divisor is a non-zero constant, so the program never fails.
+                emit(1, "iload_2");
+                emit(2, "bipush " + (random.nextInt(100) + 1));
+                emit(1, (random.nextBoolean()) ? "irem" : "idiv");
+                emit(1, "istore_3");
+                return 4;
+            case 3:
+                emit(1, "iload_3");
+                emit(1, "iload_2");
+                emit(1, "isub");
+                emit(1, "istore_2");
+                return 4;
+            default:
+                emit(3, "iinc 3, " + (random.nextInt(21) - 10));
+                return 1;
+        }
+    }
+
+    /**
+     * Helper method responsible for appending the prologue shared by every program, initializing locals 1 to 3.
+     *
+     * @param counter The initial value of local 1.
+     */
+    private void prologue(int counter) {
+
+        emit(2, "bipush " + counter);
+        emit(1, "istore_1");
+        emit(1, "iconst_1");
+        emit(1, "istore_2");
+        emit(1, "iconst_2");
+        emit(1, "istore_3");
+    }
+
+    /**
+     * Helper method responsible for appending the epilogue shared by every program, printing local 2.
+     */
+    private void epilogue() {
+
+        emit(1, "iload_2");
+        emit(1, "print");
+        emit(1, "return");
+    }
+
+    /**
+     * Generates an arithmetic-heavy program: straight-line arithmetic with no jumps, every Instruction executing
+     * exactly once.
+     *
+     * @param instructions The approximate number of Instructions.
+     * @param seed         The seed of every random choice.
+     * @return Returns the program text.
+     */
+    public static String arithmetic(int instructions, long seed) {
+
+        ProgramGenerator generator = new ProgramGenerator(seed);
+        generator.prologue(7);
+
+        for (int count = 9; count < instructions; ) {
+            count += generator.statement();
+        }
+
+        generator.epilogue();
+        return generator.text.toString();
+    }
+
+    /**
+     * Generates a loop-heavy program: a single counted loop whose body is random arithmetic.
+     *
+     * @param iterations The number of times the loop body executes, at least 1.
+     * @param body       The approximate number of Instructions in the loop body.
+     * @param seed       The seed of every random choice.
+     * @return Returns the program text.
+     */
+    public static String loop(int iterations, int body, long seed) {
+
+        ProgramGenerator generator = new ProgramGenerator(seed);
+        generator.prologue(Math.max(iterations, 1));
+
+        int header = generator.offset;
+        for (int count = 0; count < body; ) {
+            count += generator.statement();
+        }
+
+        generator.emit(3, "iinc 1, -1");
+        generator.emit(1, "iload_1");
+        generator.emit(3, "ifne " + header);
+
+        generator.epilogue();
+        return generator.text.toString();
+    }
+
+    /**
+     * Splits a program into its lines.
+     *
+     * @param program The program text.
+     * @return Returns every line of the program.
+     */
+    public static String[] lines(String program) {
+        return program.split("\n");
+    }
+
+    /**
+     * Writes a program to a temporary file, deleted when the JVM exits.
+     *
+     * @param program The program text.
+     * @return Returns the file written.
+     * @throws IOException Thrown when the file is unable to be written.
+     */
+    public static File write(String program) throws IOException {
+
+        File file = File.createTempFile("generated", ".txt");
+        file.deleteOnExit();
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            writer.print(program);
+        }
+        return file;
+    }
+
+    /**
+     * The main method used to print a generated program, or to test the ProgramGenerator class when no kind is given.
+     *
+     * @param args The command-line arguments: arithmetic INSTRUCTIONS [SEED] | loop ITERATIONS BODY [SEED].
+     * @throws IOException Thrown when a generated program is unable to be written.
+     */
+    public static void main(String[] args) throws IOException {
+
+        if ((args.length >= 2) && (args[0].equals("arithmetic"))) {
+            System.out.print(arithmetic(Integer.parseInt(args[1]), (args.length > 2) ? Long.parseLong(args[2]) : 1));
+            return;
+        }
+        if ((args.length >= 3) && (args[0].equals("loop"))) {
+            System.out.print(loop(Integer.parseInt(args[1]), Integer.parseInt(args[2]), (args.length > 3) ? Long.parseLong(args[3]) : 1));
+            return;
+        }
+        if (args.length != 0) {
+            System.out.println("Usage: java ProgramGenerator [arithmetic INSTRUCTIONS [SEED] | loop ITERATIONS BODY [SEED]]");
+            System.exit(0);
+        }
+
+        String program = arithmetic(1000, 1);
+        if ((program.equals(arithmetic(1000, 1))) && (Math.abs(lines(program).length - 1000) < 5)) {
+            System.out.println("Yay1");
+        }
+
+        //Both programs pass verification and print the same with and without optimization.
+        String[] outputs = new String[2];
+        for (int i = 0; i < outputs.length; i++) {
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Interpreter interpreter = new Interpreter();
+            interpreter.setJitEnabled(false);
+            interpreter.setOptimize(i == 1);
+            interpreter.setOutput(new PrintStream(bytes));
+
+            interpreter.evaluateProgram(interpreter.load(write(program).getPath()));
+            interpreter.evaluateProgram(interpreter.load(write(loop(100000, 20, 2)).getPath()));
+            outputs[i] = bytes.toString();
+        }
+        if ((outputs[0].equals(outputs[1])) && (outputs[0].split(" ").length == 2)) {
+            System.out.println("Yay2");
+        }
+    }
+}
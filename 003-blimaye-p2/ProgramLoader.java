@@ -0,0 +1,476 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A class that loads a program file straight into a DecodedProgram, tokenizing the bytes of a memory-mapped file by
+ * hand instead of building a Linked List of Instructions with a Scanner and a regular expression per line. Offsets,
+ * Instruction names and parameters are parsed in place, so no String is created for a well-formed line.
+ * <p>
+ * Lines are tokenized exactly as an Instruction splits them (on ':', '|', ',' and whitespace) and decoded by the
+ * same rules as DecodedProgram.decode(), the one difference being that a line with no tokens is ignored, rather
+ * than printing "blank item" and becoming a nop at offset 0. A file in the binary format written by BinaryProgram is
+ * recognized from its magic number and read directly from the mapping, skipping tokenizing altogether.
+ *
+ * @author Brian Limaye
+ */
+public final class ProgramLoader {
+
+    /**
+     * The bytes of the name of every opcode from iconst to ifne, indexed by opcode.
+     */
+    private static final byte[][] NAMES = new byte[Opcodes.IFNE + 1][];
+
+    static {
+        for (int opcode = Opcodes.ICONST; opcode <= Opcodes.IFNE; opcode++) {
+            NAMES[opcode] = Opcodes.name(opcode).getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * The opcode of each Instruction loaded so far.
+     */
+    private int[] opcodes;
+    /**
+     * The first operand of each Instruction, a jump holding its target offset.
+     */
+    private int[] params1;
+    /**
+     * The second operand of each Instruction.
+     */
+    private int[] params2;
+    /**
+     * The offset of each Instruction.
+     */
+    private int[] offsets;
+    /**
+     * The number of Instructions loaded so far.
+     */
+    private int size;
+    /**
+     * The index of the first byte of each token of the current line.
+     */
+    private final int[] tokenStarts = new int[4];
+    /**
+     * The index one past the last byte of each token of the current line.
+     */
+    private final int[] tokenEnds = new int[4];
+
+    /**
+     * One-argument constructor used to create a ProgramLoader instance.
+     *
+     * @param capacity The number of Instructions expected.
+     */
+    private ProgramLoader(int capacity) {
+
+        opcodes = new int[capacity];
+        params1 = new int[capacity];
+        params2 = new int[capacity];
+        offsets = new int[capacity];
+    }
+
+    /**
+     * Loads a program file, text or binary, into a DecodedProgram.
+     *
+     * @param filename The filename to be read from, if possible.
+     * @return Returns the decoded program represented by the file.
+     * @throws IOException Thrown when the file is unable to be read/processed.
+     */
+    public static DecodedProgram load(String filename) throws IOException {
+
+        File file = new File(filename);
+
+        //Validation that the file exists and/or is a legitimate file.
+        if ((!file.isFile()) || (!file.exists())) {
+            throw new IOException("File not Found...");
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large to be mapped: " + filename);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return (BinaryProgram.isBinary(buffer)) ? BinaryProgram.read(buffer) : load(buffer);
+        }
+    }
+
+    /**
+     * Loads the program held in a buffer, from its position to its limit.
+     *
+     * @param buffer The bytes of the program, in UTF-8.
+     * @return Returns the decoded program represented by the bytes.
+     */
+    static DecodedProgram load(ByteBuffer buffer) {
+
+        int start = buffer.position();
+        int limit = buffer.limit();
+
+        //Generated programs average well over 8 bytes a line, so the arrays rarely grow.
+        ProgramLoader loader = new ProgramLoader(Math.max((limit - start) / 8, 16));
+
+        while (start < limit) {
+
+            int end = start;
+            byte b;
+
+            while ((end < limit) && ((b = buffer.get(end)) != '\n') && (b != '\r')) {
+                end++;
+            }
+
+            loader.parseLine(buffer, start, end);
+            start = end + 1;
+        }
+
+        return loader.build();
+    }
+
+    /**
+     * Helper method responsible for decoding one line into the next Instruction, if it has any tokens.
+     *
+     * @param buffer The bytes of the program.
+     * @param start  The index of the first byte of the line.
+     * @param end    The index one past the last byte of the line, excluding the line terminator.
+     */
+    private void parseLine(ByteBuffer buffer, int start, int end) {
+
+        //Trims the line as String.trim() does.
+        while ((start < end) && ((buffer.get(start) & 0xFF) <= ' ')) {
+            start++;
+        }
+        while ((end > start) && ((buffer.get(end - 1) & 0xFF) <= ' ')) {
+            end--;
+        }
+
+        int count = 0;
+        int pos = start;
+
+        while (pos < end) {
+
+            while ((pos < end) && (isSeparator(buffer.get(pos)))) {
+                pos++;
+            }
+            if (pos == end) {
+                break;
+            }
+
+            int tokenStart = pos;
+            while ((pos < end) && (!isSeparator(buffer.get(pos)))) {
+                pos++;
+            }
+
+            if (count == 4) {
+                throw new RuntimeException("Illegal format: " + text(buffer, tokenStart, pos));
+            }
+            tokenStarts[count] = tokenStart;
+            tokenEnds[count++] = pos;
+        }
+
+        if (count == 0) {
+            return;
+        }
+
+        if (size == opcodes.length) {
+            grow();
+        }
+
+        int i = size++;
+        offsets[i] = parseInt(buffer, tokenStarts[0], tokenEnds[0]);
+
+        if (count == 1) {
+            opcodes[i] = Opcodes.NOP;     //An offset with no name executes nothing.
+            return;
+        }
+
+        int nameStart = tokenStarts[1];
+        int nameEnd = tokenEnds[1];
+        int numParams = count - 2;
+        int param1 = (numParams >= 1) ? parseInt(buffer, tokenStarts[2], tokenEnds[2]) : 0;
+        int param2 = (numParams >= 2) ? parseInt(buffer, tokenStarts[3], tokenEnds[3]) : 0;
+
+        //A name starting with "if" never has a suffix, while any other name is split at its first underscore.
+        int underscore = -1;
+        boolean isIf = (nameEnd - nameStart >= 2) && (buffer.get(nameStart) == 'i') && (buffer.get(nameStart + 1) == 'f');
+
+        for (int k = nameStart; (!isIf) && (k < nameEnd); k++) {
+
+            if (buffer.get(k) == '_') {
+                underscore = k;
+                break;
+            }
+        }
+
+        boolean hasSuffix = (underscore >= 0);
+        int suffix = hasSuffix ? parseSuffix(buffer, underscore + 1, nameEnd) : 0;
+        int opcode = lookup(buffer, nameStart, hasSuffix ? underscore : nameEnd);
+
+        opcodes[i] = DecodedProgram.decodeOperands(opcode, suffix, hasSuffix, numParams, param1, param2, i, params1, params2);
+
+        if ((DecodedProgram.usesLocal(opcodes[i])) && (params1[i] < 0)) {
+
+            StringBuilder inst = new StringBuilder().append(offsets[i]).append(": ").append(text(buffer, nameStart, nameEnd)).append(" ");
+            for (int k = 2; k < count; k++) {
+                inst.append(parseInt(buffer, tokenStarts[k], tokenEnds[k])).append(" ");
+            }
+            throw new RuntimeException("Illegal variable index at offset " + offsets[i] + ": " + inst);
+        }
+    }
+
+    /**
+     * Helper method responsible for doubling the capacity of every array.
+     */
+    private void grow() {
+
+        int capacity = opcodes.length * 2;
+        opcodes = Arrays.copyOf(opcodes, capacity);
+        params1 = Arrays.copyOf(params1, capacity);
+        params2 = Arrays.copyOf(params2, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+    }
+
+    /**
+     * Helper method responsible for creating the program once every line has been loaded.
+     *
+     * @return Returns the decoded program, its jumps resolved.
+     */
+    private DecodedProgram build() {
+
+        int[] ops = Arrays.copyOf(opcodes, size);
+        int[] firsts = Arrays.copyOf(params1, size);
+        int[] lines = Arrays.copyOf(offsets, size);
+
+        return new DecodedProgram(ops, firsts, Arrays.copyOf(params2, size), DecodedProgram.resolveJumps(ops, firsts, lines), lines);
+    }
+
+    /**
+     * Determines whether a byte separates two tokens, matching the expression "[:|,|\\s]+".
+     *
+     * @param b The byte being examined.
+     * @return Returns true if the byte is a separator, false otherwise.
+     */
+    private static boolean isSeparator(byte b) {
+        return (b == ':') || (b == ',') || (b == '|') || (b == ' ') || (b == '\t') || (b == 0x0B) || (b == '\f');
+    }
+
+    /**
+     * Helper method responsible for finding the opcode named by a run of bytes.
+     *
+     * @param buffer The bytes of the program.
+     * @param start  The index of the first byte of the name.
+     * @param end    The index one past the last byte of the name.
+     * @return Returns the opcode named, nop if the name is unknown.
+     */
+    private static int lookup(ByteBuffer buffer, int start, int end) {
+
+        for (int opcode = Opcodes.ICONST; opcode <= Opcodes.IFNE; opcode++) {
+
+            byte[] name = NAMES[opcode];
+
+            if (name.length == end - start) {
+
+                int k = 0;
+                while ((k < name.length) && (name[k] == buffer.get(start + k))) {
+                    k++;
+                }
+                if (k == name.length) {
+                    return opcode;
+                }
+            }
+        }
+
+        return Opcodes.NOP;
+    }
+
+    /**
+     * Helper method responsible for parsing a decimal integer, accepting what Integer.parseInt() accepts from ASCII.
+     *
+     * @param buffer The bytes of the program.
+     * @param start  The index of the first byte of the integer.
+     * @param end    The index one past the last byte of the integer.
+     * @return Returns the parsed integer.
+     * @throws NumberFormatException Thrown when the bytes are not an integer, or it overflows.
+     */
+    private static int parseInt(ByteBuffer buffer, int start, int end) {
+
+        long value = parseLong(buffer, start, end);
+
+        if (value == Long.MIN_VALUE) {
+            throw new NumberFormatException("For input string: \"" + text(buffer, start, end) + "\"");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Helper method responsible for parsing the value following the underscore of an Instruction name.
+     *
+     * @param buffer The bytes of the program.
+     * @param start  The index of the first byte after the underscore.
+     * @param end    The index one past the last byte of the name.
+     * @return Returns the parsed value, -1 if it is malformed or not between 0 and 5, inclusive.
+     */
+    private static int parseSuffix(ByteBuffer buffer, int start, int end) {
+
+        long value = parseLong(buffer, start, end);
+        return ((value >= 0) && (value <= 5)) ? (int) value : -1;
+    }
+
+    /**
+     * Helper method responsible for parsing an optionally signed run of ASCII digits that fits in an int.
+     *
+     * @param buffer The bytes of the program.
+     * @param start  The index of the first byte.
+     * @param end    The index one past the last byte.
+     * @return Returns the parsed value, Long.MIN_VALUE if the bytes are malformed or out of range.
+     */
+    private static long parseLong(ByteBuffer buffer, int start, int end) {
+
+        boolean negative = false;
+
+        if ((start < end) && ((buffer.get(start) == '-') || (buffer.get(start) == '+'))) {
+            negative = (buffer.get(start++) == '-');
+        }
+
+        if (start == end) {
+            return Long.MIN_VALUE;
+        }
+
+        long value = 0;
+
+        for (int k = start; k < end; k++) {
+
+            int digit = buffer.get(k) - '0';
+
+            if ((digit < 0) || (digit > 9)) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+
+            //Stops before the value could overflow a long, as it is already out of range.
+            if (value > Integer.MAX_VALUE + 1L) {
+                return Long.MIN_VALUE;
+            }
+        }
+
+        value = negative ? -value : value;
+        return ((value < Integer.MIN_VALUE) || (value > Integer.MAX_VALUE)) ? Long.MIN_VALUE : value;
+    }
+
+    /**
+     * Helper method responsible for decoding a run of bytes, only used to describe malformed lines.
+     *
+     * @param buffer The bytes of the program.
+     * @param start  The index of the first byte.
+     * @param end    The index one past the last byte.
+     * @return Returns the bytes as a String.
+     */
+    private static String text(ByteBuffer buffer, int start, int end) {
+
+        byte[] bytes = new byte[end - start];
+        for (int k = start; k < end; k++) {
+            bytes[k - start] = buffer.get(k);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Helper method responsible for loading a program through the Scanner-based path, for comparison.
+     *
+     * @param filename The filename to be read from.
+     * @return Returns the decoded program.
+     * @throws IOException Thrown when the file is unable to be read/processed.
+     */
+    private static DecodedProgram loadWithScanner(String filename) throws IOException {
+        return DecodedProgram.decode(Interpreter.readFile(filename));
+    }
+
+    /**
+     * The main method used to test the ProgramLoader against the Scanner-based path, then to measure how many lines
+     * per second each loads from a program file (generated if none is given).
+     *
+     * @param args The command-line arguments, optionally the program file to be measured.
+     * @throws IOException Thrown when a file is unable to be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+
+        File sample = File.createTempFile("loader", ".txt");
+        sample.deleteOnExit();
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter(sample))) {
+            writer.print("0: iconst_2\r\n1: istore_1\r\n21 : bipush         6\n23:istore 2\n24: iload_1\n25:iload 2\n"
+                    + "26: if_icmpge 40\n29: iconst_m1\n30: iinc 1, -1\n33: goto 24\n40: iconst\n41: print\n42: return\n");
+        }
+
+        if (loadWithScanner(sample.getPath()).toString().equals(load(sample.getPath()).toString())) {
+            System.out.println("Yay1");
+        }
+
+        DecodedProgram blank = load(ByteBuffer.wrap("\n  \n0: iconst_1\n\n1: print\n\n".getBytes(StandardCharsets.UTF_8)));
+        if ((blank.length() == 2) && (blank.getOpcodes()[1] == Opcodes.PRINT)) {
+            System.out.println("Yay2");
+        }
+
+        try {
+            load(ByteBuffer.wrap("0: iinc 1, 2, 3".getBytes(StandardCharsets.UTF_8)));
+        } catch (RuntimeException e) {
+            if (e.getMessage().equals("Illegal format: 3")) {
+                System.out.println("Yay3");
+            }
+        }
+
+        try {
+            load(ByteBuffer.wrap("0: bipush 99999999999".getBytes(StandardCharsets.UTF_8)));
+        } catch (NumberFormatException e) {
+            System.out.println("Yay4");
+        }
+
+        String filename = (args.length > 0) ? args[0] : null;
+        int lines = 200000;
+
+        if (filename == null) {
+
+            File generated = File.createTempFile("loader-bench", ".txt");
+            generated.deleteOnExit();
+            filename = generated.getPath();
+
+            try (PrintWriter writer = new PrintWriter(new FileWriter(generated))) {
+
+                for (int i = 0; i < lines; i++) {
+                    writer.println((3 * i) + ": " + ((i % 4 == 0) ? "bipush " + (i % 100) : (i % 4 == 1) ? "istore_1"
+                            : (i % 4 == 2) ? "iinc 1, 1" : "iload_1"));
+                }
+            }
+        } else {
+            lines = load(filename).length();
+        }
+
+        //Each path is warmed up before it is timed.
+        for (int round = 0; round < 2; round++) {
+
+            long start = System.nanoTime();
+            int runs = (round == 0) ? 3 : 5;
+            for (int i = 0; i < runs; i++) {
+                loadWithScanner(filename);
+            }
+            double scanner = (double) lines * runs / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                load(filename);
+            }
+            double mapped = (double) lines * runs / ((System.nanoTime() - start) / 1e9);
+
+            if (round == 1) {
+                System.out.printf("Scanner + decode: %,.0f lines/sec%n", scanner);
+                System.out.printf("ProgramLoader:    %,.0f lines/sec (%.1fx)%n", mapped, mapped / scanner);
+            }
+        }
+    }
+}
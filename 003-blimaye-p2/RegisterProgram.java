@@ -0,0 +1,306 @@
+/**
+ * A class representing a program translated into register-based Instructions, along with the register VM that
+ * executes it. Every local variable slot, operand Stack position and constant has its own virtual register, so
+ * an Instruction such as ADD r3, r1, r2 replaces the iload/iload/iadd/istore round trip through the Stack.
+ *
+ * @author Brian Limaye
+ */
+public class RegisterProgram {
+
+    /**
+     * Copies src1 into dst.
+     */
+    static final int MOV = 0;
+    /**
+     * Stores src1 + src2 into dst.
+     */
+    static final int ADD = 1;
+    /**
+     * Stores src1 - src2 into dst.
+     */
+    static final int SUB = 2;
+    /**
+     * Stores src1 * src2 into dst.
+     */
+    static final int MUL = 3;
+    /**
+     * Stores src1 / src2 into dst.
+     */
+    static final int DIV = 4;
+    /**
+     * Stores src1 % src2 into dst.
+     */
+    static final int REM = 5;
+    /**
+     * Adds the immediate src1 to dst.
+     */
+    static final int INC = 6;
+    /**
+     * Prints src1 followed by a space.
+     */
+    static final int PRINT = 7;
+    /**
+     * Jumps unconditionally.
+     */
+    static final int JMP = 8;
+    /**
+     * Jumps if src1 == src2.
+     */
+    static final int JEQ = 9;
+    /**
+     * Jumps if src1 != src2.
+     */
+    static final int JNE = 10;
+    /**
+     * Jumps if src1 >= src2.
+     */
+    static final int JGE = 11;
+    /**
+     * Jumps if src1 > src2.
+     */
+    static final int JGT = 12;
+    /**
+     * Jumps if src1 <= src2.
+     */
+    static final int JLE = 13;
+    /**
+     * Jumps if src1 < src2.
+     */
+    static final int JLT = 14;
+    /**
+     * Jumps if src1 != 0.
+     */
+    static final int JNZ = 15;
+
+    /**
+     * The printable names of every register opcode.
+     */
+    private static final String[] NAMES = {
+            "mov", "add", "sub", "mul", "div", "rem", "inc", "print", "jmp", "jeq", "jne", "jge", "jgt", "jle", "jlt", "jnz"
+    };
+
+    /**
+     * The opcode of each register Instruction.
+     */
+    private final int[] opcodes;
+    /**
+     * The destination register of each Instruction.
+     */
+    private final int[] dsts;
+    /**
+     * The first source register (or the immediate of INC) of each Instruction.
+     */
+    private final int[] srcs1;
+    /**
+     * The second source register of each Instruction.
+     */
+    private final int[] srcs2;
+    /**
+     * The Instruction index each jump transfers control to, the program length meaning the end.
+     */
+    private final int[] targets;
+    /**
+     * The total number of registers: locals, then Stack positions, then constants.
+     */
+    private final int registerCount;
+    /**
+     * The index of the first constant register.
+     */
+    private final int constantBase;
+    /**
+     * The value preloaded into each constant register.
+     */
+    private final int[] constants;
+    /**
+     * The number of reachable stack Instructions the program was translated from.
+     */
+    private final int sourceLength;
+
+    /**
+     * Nine-argument constructor used to create a RegisterProgram from translated arrays.
+     *
+     * @param opcodes       The register opcodes.
+     * @param dsts          The destination registers.
+     * @param srcs1         The first source registers or immediates.
+     * @param srcs2         The second source registers.
+     * @param targets       The jump targets.
+     * @param registerCount The total number of registers.
+     * @param constantBase  The index of the first constant register.
+     * @param constants     The values of the constant registers.
+     * @param sourceLength  The number of reachable stack Instructions translated.
+     */
+    RegisterProgram(int[] opcodes, int[] dsts, int[] srcs1, int[] srcs2, int[] targets, int registerCount,
+                    int constantBase, int[] constants, int sourceLength) {
+        this.opcodes = opcodes;
+        this.dsts = dsts;
+        this.srcs1 = srcs1;
+        this.srcs2 = srcs2;
+        this.targets = targets;
+        this.registerCount = registerCount;
+        this.constantBase = constantBase;
+        this.constants = constants;
+        this.sourceLength = sourceLength;
+    }
+
+    /**
+     * Estimates the heap memory held by the translated arrays.
+     *
+     * @return Returns the estimated number of bytes.
+     */
+    long estimateBytes() {
+
+        //Each int array costs a 16-byte header plus 4 bytes an element.
+        return 48 + 5 * (16 + 4L * opcodes.length) + 16 + 4L * constants.length;
+    }
+
+    /**
+     * Gets the number of register Instructions.
+     *
+     * @return Returns the number of register Instructions.
+     */
+    public int length() {
+        return opcodes.length;
+    }
+
+    /**
+     * Runs the program until it ends.
+     *
+     * @param out The sink that print writes to.
+     */
+    public void execute(OutputSink out) {
+
+        int[] opcodes = this.opcodes;
+        int[] dsts = this.dsts;
+        int[] srcs1 = this.srcs1;
+        int[] srcs2 = this.srcs2;
+        int[] targets = this.targets;
+        int length = opcodes.length;
+        int[] r = new int[registerCount];
+
+        System.arraycopy(constants, 0, r, constantBase, constants.length);
+
+        int ip = 0;
+
+        while (ip < length) {
+
+            switch (opcodes[ip]) {
+
+                case MOV:
+                    r[dsts[ip]] = r[srcs1[ip]];
+                    ip++;
+                    break;
+                case ADD:
+                    r[dsts[ip]] = r[srcs1[ip]] + r[srcs2[ip]];
+                    ip++;
+                    break;
+                case SUB:
+                    r[dsts[ip]] = r[srcs1[ip]] - r[srcs2[ip]];
+                    ip++;
+                    break;
+                case MUL:
+                    r[dsts[ip]] = r[srcs1[ip]] * r[srcs2[ip]];
+                    ip++;
+                    break;
+                case DIV:
+                    r[dsts[ip]] = r[srcs1[ip]] / r[srcs2[ip]];
+                    ip++;
+                    break;
+                case REM:
+                    r[dsts[ip]] = r[srcs1[ip]] % r[srcs2[ip]];
+                    ip++;
+                    break;
+                case INC:
+                    r[dsts[ip]] += srcs1[ip];
+                    ip++;
+                    break;
+                case PRINT:
+                    out.print(r[srcs1[ip]]);
+                    ip++;
+                    break;
+                case JMP:
+                    ip = targets[ip];
+                    break;
+                case JEQ:
+                    ip = (r[srcs1[ip]] == r[srcs2[ip]]) ? targets[ip] : ip + 1;
+                    break;
+                case JNE:
+                    ip = (r[srcs1[ip]] != r[srcs2[ip]]) ? targets[ip] : ip + 1;
+                    break;
+                case JGE:
+                    ip = (r[srcs1[ip]] >= r[srcs2[ip]]) ? targets[ip] : ip + 1;
+                    break;
+                case JGT:
+                    ip = (r[srcs1[ip]] > r[srcs2[ip]]) ? targets[ip] : ip + 1;
+                    break;
+                case JLE:
+                    ip = (r[srcs1[ip]] <= r[srcs2[ip]]) ? targets[ip] : ip + 1;
+                    break;
+                case JLT:
+                    ip = (r[srcs1[ip]] < r[srcs2[ip]]) ? targets[ip] : ip + 1;
+                    break;
+                case JNZ:
+                    ip = (r[srcs1[ip]] != 0) ? targets[ip] : ip + 1;
+                    break;
+                default:
+                    throw new IllegalStateException("unknown register opcode " + opcodes[ip]);
+            }
+        }
+    }
+
+    /**
+     * Helper method responsible for naming a register.
+     *
+     * @param register The register being named.
+     * @return Returns the register number, or its constant value in brackets.
+     */
+    private String register(int register) {
+        return (register >= constantBase) ? "#" + constants[register - constantBase] : "r" + register;
+    }
+
+    /**
+     * Gets the human interpreted form of the program, one register Instruction per line.
+     *
+     * @return Returns the human interpreted form of the program.
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < opcodes.length; i++) {
+
+            int opcode = opcodes[i];
+            sb.append(i).append(": ").append(NAMES[opcode]);
+
+            if (opcode == INC) {
+                sb.append(" ").append(register(dsts[i])).append(", ").append(srcs1[i]);
+            } else if (opcode == MOV) {
+                sb.append(" ").append(register(dsts[i])).append(", ").append(register(srcs1[i]));
+            } else if (opcode < INC) {
+                sb.append(" ").append(register(dsts[i])).append(", ").append(register(srcs1[i])).append(", ")
+                        .append(register(srcs2[i]));
+            } else if ((opcode == PRINT) || (opcode == JNZ)) {
+                sb.append(" ").append(register(srcs1[i]));
+            } else if (opcode != JMP) {
+                sb.append(" ").append(register(srcs1[i])).append(", ").append(register(srcs2[i]));
+            }
+
+            if (opcode >= JMP) {
+                sb.append(" -> ").append(targets[i]);
+            }
+            sb.append("\n");
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Gets the human interpreted report of the translation.
+     *
+     * @return Returns the number of stack and register Instructions.
+     */
+    public String report() {
+        return "register: " + sourceLength + " stack Instructions -> " + opcodes.length + " register Instructions, "
+                + registerCount + " registers";
+    }
+}
@@ -0,0 +1,411 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A class that translates a DecodedProgram from stack Instructions into a RegisterProgram.
+ * <p>
+ * Within a basic block the translator keeps a symbolic operand Stack recording which register currently holds
+ * each value, so iload and constant pushes emit nothing and an arithmetic result stored straight into a local
+ * variable is computed directly into that variable's register. At the end of every block, and before every
+ * jump, values are moved into the register of their Stack position, so all paths into a block agree.
+ *
+ * @author Brian Limaye
+ */
+public class RegisterTranslator {
+
+    /**
+     * The opcode of each emitted register Instruction.
+     */
+    private int[] opcodes = new int[16];
+    /**
+     * The destination register of each emitted Instruction.
+     */
+    private int[] dsts = new int[16];
+    /**
+     * The first source register (or immediate) of each emitted Instruction.
+     */
+    private int[] srcs1 = new int[16];
+    /**
+     * The second source register of each emitted Instruction.
+     */
+    private int[] srcs2 = new int[16];
+    /**
+     * The stack Instruction index each emitted jump targets, until resolved to a register Instruction index.
+     */
+    private int[] targets = new int[16];
+    /**
+     * The number of emitted Instructions.
+     */
+    private int size;
+
+    /**
+     * The register currently holding each symbolic Stack value.
+     */
+    private int[] symbols;
+    /**
+     * The number of symbolic Stack values.
+     */
+    private int sp;
+    /**
+     * The register of Stack position 0.
+     */
+    private int stackBase;
+    /**
+     * The register of the first constant, following every Stack position.
+     */
+    private int constantBase;
+
+    /**
+     * The values of the constant registers, in order of first use.
+     */
+    private int[] constants = new int[8];
+    /**
+     * The number of constant registers.
+     */
+    private int constantCount;
+    /**
+     * The index of each constant among the constant registers, keyed by its value.
+     */
+    private final IntIntMap constantIndex = new IntIntMap();
+
+    /**
+     * Private constructor, as translators are only created by translate().
+     */
+    private RegisterTranslator() {
+    }
+
+    /**
+     * Translates a program into register Instructions, if possible.
+     *
+     * @param program The decoded program to be translated.
+     * @return Returns the register program, null if the program has inconsistent Stack depths or may read a local
+     * variable before it is stored (the Interpreter being the only engine reporting that exactly).
+     */
+    public static RegisterProgram translate(DecodedProgram program) {
+
+        int[] depths = ProgramAnalysis.stackDepths(program);
+
+        if ((depths == null) || (!ProgramAnalysis.localsAssigned(program, depths))) {
+            return null;
+        }
+
+        return new RegisterTranslator().emitProgram(program, depths);
+    }
+
+    /**
+     * Helper method responsible for translating a verified program.
+     *
+     * @param program The decoded program being translated.
+     * @param depths  The Stack depth before every Instruction.
+     * @return Returns the register program.
+     */
+    private RegisterProgram emitProgram(DecodedProgram program, int[] depths) {
+
+        int[] ops = program.getOpcodes();
+        int[] params1 = program.getParams1();
+        int[] params2 = program.getParams2();
+        int[] jumps = program.getTargets();
+        int length = ops.length;
+        int localCount = program.getLocalCount();
+        ControlFlowGraph cfg = new ControlFlowGraph(program);
+
+        int maxDepth = 0;
+        int reachable = 0;
+        for (int i = 0; i < length; i++) {
+
+            if (depths[i] >= 0) {
+                maxDepth = Math.max(maxDepth, depths[i] + Opcodes.pushes(ops[i]));
+                ++reachable;
+            }
+        }
+
+        stackBase = localCount;
+        constantBase = stackBase + maxDepth;
+        symbols = new int[maxDepth + 1];
+
+        int[] positions = new int[length + 1];
+        int lastArithmetic = -1;
+
+        for (int pc = 0; pc < length; pc++) {
+
+            if (depths[pc] < 0) {
+                positions[pc] = size;
+                continue;
+            }
+
+            //A new block starts with every value in the register of its Stack position.
+            if (cfg.blockAt(pc).getStart() == pc) {
+
+                if ((pc > 0) && (depths[pc - 1] >= 0) && (ops[pc - 1] != Opcodes.GOTO)) {
+                    materializeAll();       //Control falls through from the previous block.
+                }
+                sp = depths[pc];
+                for (int k = 0; k < sp; k++) {
+                    symbols[k] = stackBase + k;
+                }
+                lastArithmetic = -1;
+            }
+
+            positions[pc] = size;
+            int opcode = ops[pc];
+
+            switch (opcode) {
+
+                case Opcodes.ICONST:
+                case Opcodes.BIPUSH:
+                    symbols[sp++] = constant(params1[pc]);
+                    break;
+                case Opcodes.ILOAD:
+                    symbols[sp++] = params1[pc];
+                    break;
+                case Opcodes.IADD:
+                case Opcodes.ISUB:
+                case Opcodes.IMUL:
+                case Opcodes.IDIV:
+                case Opcodes.IREM:
+                    sp -= 2;
+                    lastArithmetic = size;
+                    emit(RegisterProgram.ADD + (opcode - Opcodes.IADD), stackBase + sp, symbols[sp], symbols[sp + 1], -1);
+                    symbols[sp] = stackBase + sp;
+                    sp++;
+                    break;
+                case Opcodes.PRINT:
+                    emit(RegisterProgram.PRINT, -1, symbols[--sp], -1, -1);
+                    break;
+                case Opcodes.ISTORE:
+                    int src = symbols[--sp];
+                    materializeSlot(params1[pc]);
+
+                    if ((lastArithmetic == size - 1) && (src == stackBase + sp) && (dsts[lastArithmetic] == src)) {
+                        dsts[lastArithmetic] = params1[pc];     //Computes the result straight into the local.
+                    } else if (src != params1[pc]) {
+                        emit(RegisterProgram.MOV, params1[pc], src, -1, -1);
+                    }
+                    break;
+                case Opcodes.IINC:
+                    materializeSlot(params1[pc]);
+                    emit(RegisterProgram.INC, params1[pc], params2[pc], -1, -1);
+                    break;
+                case Opcodes.GOTO:
+                    materializeAll();
+                    emit(RegisterProgram.JMP, -1, -1, -1, jumps[pc]);
+                    break;
+                case Opcodes.IFNE:
+                    int value = symbols[--sp];
+                    materializeAll();
+                    emit(RegisterProgram.JNZ, -1, value, -1, jumps[pc]);
+                    break;
+                case Opcodes.IF_ICMPEQ:
+                case Opcodes.IF_ICMPNE:
+                case Opcodes.IF_ICMPGE:
+                case Opcodes.IF_ICMPGT:
+                case Opcodes.IF_ICMPLE:
+                case Opcodes.IF_ICMPLT:
+                    sp -= 2;
+                    int value1 = symbols[sp];
+                    int value2 = symbols[sp + 1];
+                    materializeAll();
+                    emit(RegisterProgram.JEQ + (opcode - Opcodes.IF_ICMPEQ), -1, value1, value2, jumps[pc]);
+                    break;
+                default:
+                    break;      //nop and return translate to nothing.
+            }
+        }
+
+        positions[length] = size;
+
+        //Resolves every jump from a stack Instruction index to a register Instruction index.
+        for (int i = 0; i < size; i++) {
+
+            if (opcodes[i] >= RegisterProgram.JMP) {
+                targets[i] = positions[Math.min(targets[i], length)];
+            }
+        }
+
+        int registerCount = constantBase + constantCount;
+
+        return new RegisterProgram(Arrays.copyOf(opcodes, size), Arrays.copyOf(dsts, size), Arrays.copyOf(srcs1, size),
+                Arrays.copyOf(srcs2, size), Arrays.copyOf(targets, size), registerCount, constantBase,
+                Arrays.copyOf(constants, constantCount), reachable);
+    }
+
+    /**
+     * Helper method responsible for getting the register holding a constant, creating it on first use.
+     *
+     * @param value The constant.
+     * @return Returns the register holding the constant.
+     */
+    private int constant(int value) {
+
+        int index = constantIndex.get(value, -1);
+
+        if (index == -1) {
+
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            index = constantCount++;
+            constantIndex.put(value, index);
+        }
+
+        return constantBase + index;
+    }
+
+    /**
+     * Helper method responsible for moving every symbolic Stack value into the register of its Stack position.
+     */
+    private void materializeAll() {
+
+        for (int k = 0; k < sp; k++) {
+
+            if (symbols[k] != stackBase + k) {
+                emit(RegisterProgram.MOV, stackBase + k, symbols[k], -1, -1);
+                symbols[k] = stackBase + k;
+            }
+        }
+    }
+
+    /**
+     * Helper method responsible for moving every symbolic Stack value still read from a local variable into the
+     * register of its Stack position, before that local variable is overwritten.
+     *
+     * @param slot The local variable about to be written.
+     */
+    private void materializeSlot(int slot) {
+
+        for (int k = 0; k < sp; k++) {
+
+            if (symbols[k] == slot) {
+                emit(RegisterProgram.MOV, stackBase + k, slot, -1, -1);
+                symbols[k] = stackBase + k;
+            }
+        }
+    }
+
+    /**
+     * Helper method responsible for emitting a register Instruction.
+     *
+     * @param opcode The register opcode.
+     * @param dst    The destination register.
+     * @param src1   The first source register or immediate.
+     * @param src2   The second source register.
+     * @param target The stack Instruction index jumped to.
+     */
+    private void emit(int opcode, int dst, int src1, int src2, int target) {
+
+        if (size == opcodes.length) {
+
+            opcodes = Arrays.copyOf(opcodes, size * 2);
+            dsts = Arrays.copyOf(dsts, size * 2);
+            srcs1 = Arrays.copyOf(srcs1, size * 2);
+            srcs2 = Arrays.copyOf(srcs2, size * 2);
+            targets = Arrays.copyOf(targets, size * 2);
+        }
+
+        opcodes[size] = opcode;
+        dsts[size] = dst;
+        srcs1[size] = src1;
+        srcs2[size] = src2;
+        targets[size] = target;
+        ++size;
+    }
+
+    /**
+     * Helper method responsible for evaluating a program on one engine, capturing what it prints and how it fails.
+     *
+     * @param engine The engine evaluating the program.
+     * @param text   The text of the program.
+     * @return Returns the output, followed by the failure message if the evaluation failed.
+     */
+    private static String evaluate(Interpreter.Engine engine, String text) {
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setJitEnabled(false);
+        interpreter.setEngine(engine);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        interpreter.setSink(new BufferedSink(bytes));
+
+        try {
+            interpreter.evaluateProgram(interpreter.prepare(ProgramLoader.load(ByteBuffer.wrap(text.getBytes()))));
+        } catch (RuntimeException e) {
+            return bytes + "failed: " + e.getMessage();
+        }
+        return bytes.toString();
+    }
+
+    /**
+     * Helper method responsible for checking that the register engine evaluates a program as the switch engine does.
+     *
+     * @param text     The text of the program.
+     * @param expected The output (and failure) both engines should produce.
+     * @return Returns whether both engines produced the expected result.
+     */
+    private static boolean agrees(String text, String expected) {
+        return (evaluate(Interpreter.Engine.SWITCH, text).equals(expected))
+                && (evaluate(Interpreter.Engine.REGISTER, text).equals(expected));
+    }
+
+    /**
+     * Helper method responsible for translating the text of a program.
+     *
+     * @param text The text of the program.
+     * @return Returns the register program, null if the program cannot be translated.
+     */
+    private static RegisterProgram translate(String text) {
+        return translate(ProgramLoader.load(ByteBuffer.wrap(text.getBytes())));
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the RegisterTranslator class, every
+     * translated program printing and failing exactly as it does on the switch engine.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     */
+    public static void main(String[] args) {
+
+        //The 5 pushed before the jump is moved into its Stack register, where both paths into 12 expect it.
+        String merge = "0: iconst_0\n1: istore_1\n2: bipush 5\n4: iload_1\n5: iconst_1\n6: if_icmpeq 12\n"
+                + "9: bipush 7\n11: iadd\n12: print\n13: iinc 1, 1\n16: iload_1\n17: iconst_2\n18: if_icmplt 2\n"
+                + "21: return\n";
+        if ((translate(merge).toString().contains("1: mov r2, #5\n2: jeq r1, #1 -> 4\n")) && (agrees(merge, "12 5 "))) {
+            System.out.println("Yay1");
+        }
+
+        //A pending iload is moved out of its local variable before istore, iinc or the next block overwrites it.
+        String overwrite = "0: bipush 3\n2: istore_1\n3: iload_1\n4: bipush 9\n6: istore_1\n7: print\n8: iload_1\n"
+                + "9: iinc 1, 1\n12: print\n13: iload_1\n14: print\n15: iload_1\n16: goto 19\n19: bipush 4\n"
+                + "21: istore_1\n22: print\n";
+        if ((translate(overwrite).toString().equals("0: mov r1, #3\n1: mov r2, r1\n2: mov r1, #9\n3: print r2\n"
+                + "4: mov r2, r1\n5: inc r1, 1\n6: print r2\n7: print r1\n8: mov r2, r1\n9: jmp -> 10\n"
+                + "10: mov r1, #4\n11: print r2\n")) && (agrees(overwrite, "3 9 10 10 "))) {
+            System.out.println("Yay2");
+        }
+
+        //Dividing by zero fails after the same output.
+        if (agrees("0: bipush 7\n2: print\n3: iconst_1\n4: iconst_0\n5: idiv\n6: print\n", "7 failed: / by zero")) {
+            System.out.println("Yay3");
+        }
+
+        //A program that may read a local before storing it is not translated, and falls back to the switch engine.
+        String unstored = "0: bipush 7\n2: print\n3: iload_1\n4: print\n5: return\n";
+        if ((translate(unstored) == null)
+                && (agrees(unstored, "7 failed: local variable 1 is read before it is stored"))) {
+            System.out.println("Yay4");
+        }
+
+        //Generated programs print the same on both engines.
+        boolean agrees = true;
+        for (long seed = 0; seed < 50; seed++) {
+
+            String text = (seed % 2 == 0) ? ProgramGenerator.loop(500, 24, seed) : ProgramGenerator.arithmetic(200, seed);
+            agrees &= (translate(text) != null)
+                    && (evaluate(Interpreter.Engine.REGISTER, text).equals(evaluate(Interpreter.Engine.SWITCH, text)));
+        }
+        if (agrees) {
+            System.out.println("Yay5");
+        }
+    }
+}
@@ -0,0 +1,456 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class that time-slices many evaluations across a fixed pool of worker threads, so a runaway loop occupies a
+ * worker for a single quantum at a time rather than forever. Each evaluation keeps its state in an ExecutionFrame;
+ * a worker takes the next evaluation from a shared FIFO queue, resumes it for one quantum of Instructions, and
+ * requeues it at the back if it has not finished, so every evaluation waits behind at most one quantum of every
+ * other before running again.
+ * <p>
+ * The quantum is only charged on backward jumps (see Interpreter.resume), so straight-line code runs unchecked.
+ * Suspended evaluations are never compiled to JVM bytecode, as compiled code cannot be suspended.
+ *
+ * @author Brian Limaye
+ */
+public class Scheduler {
+
+    /**
+     * A class representing one evaluation submitted to the scheduler.
+     */
+    public static class Execution {
+
+        /**
+         * The state of the evaluation, resumed by whichever worker takes it.
+         */
+        private final ExecutionFrame frame;
+        /**
+         * The bytes printed by the evaluation.
+         */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        /**
+         * The sink the evaluation prints to.
+         */
+        private final BufferedSink out = new BufferedSink(bytes);
+        /**
+         * Released once the evaluation finishes, fails or is cancelled.
+         */
+        private final CountDownLatch done = new CountDownLatch(1);
+        /**
+         * The time the evaluation was submitted, in nanoseconds.
+         */
+        private final long submitted = System.nanoTime();
+        /**
+         * The time the evaluation completed, in nanoseconds.
+         */
+        private volatile long completed;
+        /**
+         * The reason the evaluation failed, null if it has not.
+         */
+        private volatile String error;
+        /**
+         * Whether the evaluation was cancelled.
+         */
+        private volatile boolean cancelled;
+        /**
+         * The number of quanta the evaluation has run for.
+         */
+        private int slices;
+
+        /**
+         * One-argument constructor used to create an Execution instance.
+         *
+         * @param program The prepared program to be evaluated.
+         */
+        Execution(DecodedProgram program) {
+            this.frame = new ExecutionFrame(program);
+        }
+
+        /**
+         * Cancels the evaluation, which stops before its next quantum.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Determines whether the evaluation has completed, by finishing, failing or being cancelled.
+         *
+         * @return Returns true if the evaluation has completed, false otherwise.
+         */
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /**
+         * Waits for the evaluation to complete.
+         *
+         * @throws InterruptedException Thrown when the waiting thread is interrupted.
+         */
+        public void await() throws InterruptedException {
+            done.await();
+        }
+
+        /**
+         * Gets everything the evaluation printed, once it has completed.
+         *
+         * @return Returns the output of the evaluation.
+         */
+        public String getOutput() {
+            return bytes.toString(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Gets the reason the evaluation failed.
+         *
+         * @return Returns the failure message, null if the evaluation has not failed.
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Gets the number of quanta the evaluation has run for.
+         *
+         * @return Returns the number of slices.
+         */
+        public int getSlices() {
+            return slices;
+        }
+
+        /**
+         * Gets the time from submission to completion.
+         *
+         * @return Returns the latency in nanoseconds, 0 if the evaluation has not completed.
+         */
+        public long getLatencyNanos() {
+            return (isDone()) ? completed - submitted : 0;
+        }
+
+        /**
+         * Helper method responsible for marking the evaluation complete, writing out what it printed.
+         *
+         * @param error The reason the evaluation failed, null if it finished.
+         */
+        private void complete(String error) {
+
+            try {
+                out.flush();
+            } catch (RuntimeException e) {
+                error = (error != null) ? error : e.getMessage();
+            }
+
+            this.error = error;
+            this.completed = System.nanoTime();
+            done.countDown();
+        }
+    }
+
+    /**
+     * The default number of Instructions an evaluation runs before yielding its worker.
+     */
+    final static public long DEFAULT_QUANTUM = 100000;
+
+    /**
+     * The evaluations waiting for a worker, in the order they will run.
+     */
+    private final LinkedBlockingQueue<Execution> ready = new LinkedBlockingQueue<>();
+    /**
+     * The worker threads.
+     */
+    private final ArrayList<Thread> workers = new ArrayList<>();
+    /**
+     * The number of Instructions an evaluation runs before yielding its worker.
+     */
+    private final long quantum;
+    /**
+     * The Interpreter preparing submitted programs.
+     */
+    private final Interpreter preparer = new Interpreter();
+    /**
+     * The number of quanta run by every worker.
+     */
+    private final AtomicLong slices = new AtomicLong();
+    /**
+     * Whether the scheduler has been shut down.
+     */
+    private volatile boolean shutdown;
+
+    /**
+     * Two-argument constructor used to create a scheduler and start its workers.
+     *
+     * @param workers The number of worker threads.
+     * @param quantum The number of Instructions an evaluation runs before yielding its worker.
+     */
+    public Scheduler(int workers, long quantum) {
+
+        this.quantum = Math.max(quantum, 1);
+
+        for (int i = 0; i < Math.max(workers, 1); i++) {
+
+            Thread worker = new Thread(this::work, "scheduler-worker-" + i);
+            worker.setDaemon(true);
+            this.workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Submits a program to be evaluated.
+     *
+     * @param program The decoded program, prepared (and so verified) here if it has not been already.
+     * @return Returns the handle of the evaluation.
+     * @throws RuntimeException Thrown when the program fails verification or the scheduler was shut down.
+     */
+    public Execution submit(DecodedProgram program) {
+
+        if (shutdown) {
+            throw new RuntimeException("Scheduler is shut down");
+        }
+
+        Execution execution;
+        synchronized (preparer) {
+            execution = new Execution(preparer.prepare(program));
+        }
+        ready.add(execution);
+
+        //A submission racing a shutdown may be queued after the queue was drained, so it is drained again.
+        if (shutdown) {
+            drain();
+        }
+        return execution;
+    }
+
+    /**
+     * Helper method responsible for the loop of a worker: take the next evaluation, run it for one quantum, then
+     * requeue or complete it.
+     */
+    private void work() {
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setJitEnabled(false);
+
+        while (!shutdown) {
+
+            Execution execution;
+            try {
+                execution = ready.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            if (execution.cancelled) {
+                execution.complete("Cancelled");
+                continue;
+            }
+
+            try {
+                ++execution.slices;
+                slices.incrementAndGet();
+
+                if (interpreter.resume(execution.frame, execution.out, quantum)) {
+                    execution.complete(null);
+                } else {
+                    ready.add(execution);
+                }
+            } catch (RuntimeException e) {
+                execution.complete(String.valueOf(e.getMessage()));
+            }
+        }
+
+        //An evaluation requeued by this worker after the shutdown drained the queue is completed here.
+        drain();
+    }
+
+    /**
+     * Helper method responsible for completing every evaluation still waiting, once the scheduler is shut down.
+     */
+    private void drain() {
+
+        Execution execution;
+        while ((execution = ready.poll()) != null) {
+            execution.complete("Shut down");
+        }
+    }
+
+    /**
+     * Stops every worker, completing every evaluation still waiting with the error "Shut down". An evaluation in
+     * the middle of a quantum finishes its quantum first.
+     */
+    public void shutdown() {
+
+        shutdown = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        drain();
+    }
+
+    /**
+     * Gets the number of evaluations waiting for a worker.
+     *
+     * @return Returns the length of the ready queue.
+     */
+    public int getWaiting() {
+        return ready.size();
+    }
+
+    /**
+     * Gets the number of quanta run so far.
+     *
+     * @return Returns the number of slices.
+     */
+    public long getSlices() {
+        return slices.get();
+    }
+
+    /**
+     * Helper method responsible for decoding a program from its text.
+     *
+     * @param text The program text.
+     * @return Returns the decoded program.
+     */
+    private static DecodedProgram parse(String text) {
+        return ProgramLoader.load(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the Scheduler class.
+     *
+     * @param args Command-line arguments: [-workers=N] [-quantum=N] [-tenants=N].
+     * @throws InterruptedException Thrown when the main thread is interrupted while waiting.
+     */
+    public static void main(String[] args) throws InterruptedException {
+
+        int workers = 2;
+        long quantum = DEFAULT_QUANTUM;
+        int tenants = 2000;
+
+        for (String arg : args) {
+
+            if (arg.startsWith("-workers=")) {
+                workers = Integer.parseInt(arg.substring("-workers=".length()));
+            } else if (arg.startsWith("-quantum=")) {
+                quantum = Long.parseLong(arg.substring("-quantum=".length()));
+            } else if (arg.startsWith("-tenants=")) {
+                tenants = Integer.parseInt(arg.substring("-tenants=".length()));
+            } else {
+                System.out.println("Usage: java Scheduler [-workers=N] [-quantum=N] [-tenants=N]");
+                System.exit(0);
+            }
+        }
+
+        Scheduler scheduler = new Scheduler(workers, quantum);
+
+        //A runaway loop for every worker would have pinned them all; here every other tenant still finishes.
+        ArrayList<Execution> runaways = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            runaways.add(scheduler.submit(parse("0: goto 0\n")));
+        }
+
+        long start = System.nanoTime();
+        ArrayList<Execution> executions = new ArrayList<>();
+
+        for (int i = 0; i < tenants; i++) {
+            executions.add(scheduler.submit(parse(ProgramGenerator.loop(1000 + i, 8, i))));
+        }
+
+        boolean finished = true;
+        for (Execution execution : executions) {
+            execution.await();
+            finished &= (execution.getError() == null) && (execution.getOutput().endsWith(" "));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        if ((finished) && (!runaways.get(0).isDone())) {
+            System.out.println("Yay1");
+        }
+
+        //Outputs match evaluating the same programs directly.
+        Interpreter interpreter = new Interpreter();
+        interpreter.setJitEnabled(false);
+        boolean matches = true;
+
+        for (int i = 0; i < tenants; i += 97) {
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            interpreter.setSink(new BufferedSink(bytes));
+            interpreter.evaluateProgram(interpreter.prepare(parse(ProgramGenerator.loop(1000 + i, 8, i))));
+            matches &= bytes.toString(StandardCharsets.UTF_8).equals(executions.get(i).getOutput());
+        }
+        if (matches) {
+            System.out.println("Yay2");
+        }
+
+        //A short program submitted behind long ones waits for one quantum of each rather than all of them.
+        ArrayList<Execution> longs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            longs.add(scheduler.submit(parse(ProgramGenerator.loop(5000000, 8, i))));
+        }
+        Execution quick = scheduler.submit(parse("0: bipush 42\n2: print\n3: return\n"));
+        quick.await();
+
+        boolean waitedForNone = true;
+        for (Execution execution : longs) {
+            waitedForNone &= !execution.isDone();
+        }
+        if ((waitedForNone) && (quick.getOutput().equals("42 "))) {
+            System.out.println("Yay3");
+        }
+
+        for (Execution execution : longs) {
+            execution.await();
+        }
+
+        //Cancelling a runaway frees its worker.
+        for (Execution runaway : runaways) {
+            runaway.cancel();
+            runaway.await();
+        }
+        if ((runaways.get(0).getError().equals("Cancelled")) && (runaways.get(0).getSlices() > 1)) {
+            System.out.println("Yay4");
+        }
+
+        //A failing program is reported rather than taking down its worker.
+        Execution failing = scheduler.submit(parse("0: iconst_1\n1: iconst_0\n2: idiv\n3: print\n"));
+        failing.await();
+        if ("/ by zero".equals(failing.getError())) {
+            System.out.println("Yay5");
+        }
+
+        long worst = 0;
+        for (Execution execution : executions) {
+            worst = Math.max(worst, execution.getLatencyNanos());
+        }
+        System.out.printf("%d tenants on %d workers: %.0f executions/sec, %d slices, worst latency %.1f ms, quick program %.2f ms%n",
+                tenants, workers, tenants / seconds, scheduler.getSlices(), worst / 1e6, quick.getLatencyNanos() / 1e6);
+
+        scheduler.shutdown();
+
+        //Shutting down completes whatever is still waiting or running, so nothing awaiting it hangs.
+        scheduler = new Scheduler(1, quantum);
+        ArrayList<Execution> stranded = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            stranded.add(scheduler.submit(parse("0: goto 0\n")));
+        }
+        scheduler.shutdown();
+
+        boolean shutDown = true;
+        for (Execution execution : stranded) {
+            execution.await();
+            shutDown &= "Shut down".equals(execution.getError());
+        }
+        try {
+            scheduler.submit(parse("0: return\n"));
+        } catch (RuntimeException e) {
+            if (shutDown) {
+                System.out.println("Yay6");
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A class that verifies, before a DecodedProgram is evaluated, that its operand Stack can never underflow and has
+ * the same depth on every path reaching an Instruction. The depth before every reachable Instruction is found with
+ * a dataflow pass following both the fall through and the jump of every Instruction, so a verified program can run
+ * on a Stack preallocated to its maximum depth without any bounds checks.
+ *
+ * @author Brian Limaye
+ */
+public final class StackVerifier {
+
+    /**
+     * Private constructor, as the class only holds static methods.
+     */
+    private StackVerifier() {
+    }
+
+    /**
+     * Computes the operand Stack depth before every Instruction of a program.
+     *
+     * @param program The decoded program being verified.
+     * @return Returns the depth before each Instruction, -1 if the Instruction is unreachable.
+     * @throws RuntimeException Thrown when an Instruction may pop more values than the Stack holds, or is reached
+     *                          with different Stack depths.
+     */
+    public static int[] verify(DecodedProgram program) {
+
+        int[] opcodes = program.getOpcodes();
+        int[] targets = program.getTargets();
+        int[] offsets = program.getOffsets();
+        int length = opcodes.length;
+        int[] depths = new int[length];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+
+        Arrays.fill(depths, -1);
+
+        if (length > 0) {
+            depths[0] = 0;
+            work.push(0);
+        }
+
+        while (!work.isEmpty()) {
+
+            int pc = work.pop();
+            int opcode = opcodes[pc];
+
+            if (depths[pc] < Opcodes.pops(opcode)) {
+                throw new RuntimeException("Stack underflow at offset " + offsets[pc] + ": " + Opcodes.name(opcode)
+                        + " pops " + Opcodes.pops(opcode) + " values, but the Stack holds " + depths[pc]);
+            }
+
+            int after = depths[pc] - Opcodes.pops(opcode) + Opcodes.pushes(opcode);
+            int[] next = {(opcode == Opcodes.GOTO) ? -1 : pc + 1, Opcodes.isBranch(opcode) ? targets[pc] : -1};
+
+            for (int succ : next) {
+
+                if ((succ < 0) || (succ >= length)) {
+                    continue;
+                }
+
+                if (depths[succ] == -1) {
+                    depths[succ] = after;
+                    work.push(succ);
+                } else if (depths[succ] != after) {
+                    throw new RuntimeException("Inconsistent Stack depth at offset " + offsets[succ] + ": "
+                            + depths[succ] + " on one path, " + after + " on another");
+                }
+            }
+        }
+
+        return depths;
+    }
+
+    /**
+     * Gets the largest number of values a verified program may hold on its operand Stack.
+     *
+     * @param program The decoded program being examined.
+     * @param depths  The depth before each Instruction, as returned by verify().
+     * @return Returns the maximum Stack depth of the program.
+     */
+    public static int maxDepth(DecodedProgram program, int[] depths) {
+
+        int[] opcodes = program.getOpcodes();
+        int maxDepth = 0;
+
+        for (int i = 0; i < depths.length; i++) {
+
+            if (depths[i] >= 0) {
+                maxDepth = Math.max(maxDepth, depths[i] - Opcodes.pops(opcodes[i]) + Opcodes.pushes(opcodes[i]));
+            }
+        }
+
+        return maxDepth;
+    }
+
+    /**
+     * Helper method responsible for preparing and evaluating a program, capturing what it prints and how it fails.
+     *
+     * @param text The text of the program.
+     * @return Returns the output, followed by the failure message if the program was rejected or failed.
+     */
+    private static String evaluate(String text) {
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setJitEnabled(false);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        interpreter.setSink(new BufferedSink(bytes));
+
+        try {
+            interpreter.evaluateProgram(interpreter.prepare(ProgramLoader.load(ByteBuffer.wrap(text.getBytes()))));
+        } catch (RuntimeException e) {
+            return bytes + "failed: " + e.getMessage();
+        }
+        return bytes.toString();
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the StackVerifier class.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     */
+    public static void main(String[] args) {
+
+        //A loop whose back edge arrives with the same depth as the fall through.
+        String sum = "0: iconst_0\n1: istore_1\n2: iconst_0\n3: istore_2\n4: iload_2\n5: bipush 100\n"
+                + "7: if_icmpge 20\n10: iload_1\n11: iload_2\n12: iadd\n13: istore_1\n14: iinc 2, 1\n"
+                + "17: goto 4\n20: iload_1\n21: print\n22: return\n";
+        DecodedProgram program = ProgramLoader.load(ByteBuffer.wrap(sum.getBytes()));
+        int[] depths = verify(program);
+
+        if ((Arrays.toString(depths).equals("[0, 1, 0, 1, 0, 1, 2, 0, 1, 2, 1, 0, 0, 0, 1, 0]"))
+                && (maxDepth(program, depths) == 2) && (evaluate(sum).equals("4950 "))) {
+            System.out.println("Yay1");
+        }
+
+        //The goto jumps over the iadd, so its underflow can never happen.
+        if (evaluate("0: bipush 7\n2: print\n3: goto 7\n6: iadd\n7: return\n").equals("7 ")) {
+            System.out.println("Yay2");
+        }
+
+        //The underflow is rejected before the print preceding it runs.
+        if (evaluate("0: bipush 7\n2: print\n3: iadd\n4: print\n")
+                .equals("failed: Stack underflow at offset 3: iadd pops 2 values, but the Stack holds 0")) {
+            System.out.println("Yay3");
+        }
+
+        //The jump reaches 10 with an empty Stack, the fall through with a value on it.
+        if (evaluate("0: bipush 7\n2: print\n3: iconst_0\n4: istore_1\n5: iload_1\n6: ifne 10\n9: iconst_1\n"
+                + "10: iconst_2\n11: print\n12: return\n")
+                .equals("failed: Inconsistent Stack depth at offset 10: 0 on one path, 1 on another")) {
+            System.out.println("Yay4");
+        }
+    }
+}
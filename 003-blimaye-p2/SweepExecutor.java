@@ -0,0 +1,794 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A class that evaluates one program across many input frames in lockstep, as a parameter sweep would. Every lane
+ * (one input frame) keeps its operand Stack and local variables in structure-of-arrays form: slot s of every lane
+ * sits in one int array, so each Instruction runs as a single loop over the lanes executing it, a loop simple
+ * enough for the JIT compiler to turn into SIMD code.
+ * <p>
+ * Lanes executing the same Instruction form a group. A conditional branch that sends the lanes of a group different
+ * ways parks them at their next Instruction, and execution always continues with the parked lanes at the lowest
+ * program counter, so lanes that took the short way wait for the others where the paths meet and run on together.
+ * A group left with too small a share of the lanes still running is run to completion on the scalar Interpreter,
+ * one lane at a time, rather than paying the cost of a lockstep step for a handful of lanes.
+ * <p>
+ * Lockstep execution keeps no per-lane record of which local variables were stored, so it is used only when the
+ * program provably reads no local variable before storing it, the slots given by every input frame counting as
+ * stored. Any other program runs every lane on the scalar Interpreter.
+ *
+ * @author Brian Limaye
+ */
+public class SweepExecutor {
+
+    /**
+     * A class representing what every lane of one sweep printed, or why it failed.
+     */
+    public static class Result {
+
+        /**
+         * What each lane printed, null for a lane that printed nothing.
+         */
+        private final StringBuilder[] outputs;
+        /**
+         * The reason each lane failed, null for a lane that finished.
+         */
+        private final String[] errors;
+        /**
+         * The number of Instructions run for a whole group of lanes at once.
+         */
+        private long steps;
+        /**
+         * The number of Instructions run across every lane in lockstep.
+         */
+        private long laneSteps;
+        /**
+         * The number of lanes finished on the scalar Interpreter.
+         */
+        private int scalarLanes;
+
+        /**
+         * One-argument constructor used to create the Result of a sweep.
+         *
+         * @param lanes The number of lanes.
+         */
+        Result(int lanes) {
+
+            this.outputs = new StringBuilder[lanes];
+            this.errors = new String[lanes];
+        }
+
+        /**
+         * Gets the number of lanes.
+         *
+         * @return Returns the number of input frames swept.
+         */
+        public int lanes() {
+            return errors.length;
+        }
+
+        /**
+         * Gets everything a lane printed.
+         *
+         * @param lane The index of the lane.
+         * @return Returns the output of the lane, each value followed by a space.
+         */
+        public String getOutput(int lane) {
+            return (outputs[lane] == null) ? "" : outputs[lane].toString();
+        }
+
+        /**
+         * Gets the reason a lane failed.
+         *
+         * @param lane The index of the lane.
+         * @return Returns the failure message, null if the lane finished.
+         */
+        public String getError(int lane) {
+            return errors[lane];
+        }
+
+        /**
+         * Gets the number of lanes finished on the scalar Interpreter rather than in lockstep.
+         *
+         * @return Returns the number of scalar lanes.
+         */
+        public int getScalarLanes() {
+            return scalarLanes;
+        }
+
+        /**
+         * Gets the average number of lanes each lockstep Instruction ran for.
+         *
+         * @return Returns the mean group size, 0 if nothing ran in lockstep.
+         */
+        public double getOccupancy() {
+            return (steps == 0) ? 0 : (double) laneSteps / steps;
+        }
+
+        /**
+         * Helper method responsible for the sink of a lane, creating its output on the first print.
+         *
+         * @param lane The index of the lane.
+         * @return Returns the sink appending to the output of the lane.
+         */
+        private OutputSink sink(int lane) {
+
+            return new OutputSink() {
+
+                /**
+                 * Prints a value followed by a space.
+                 *
+                 * @param value The value to be printed.
+                 */
+                @Override
+                public void print(int value) {
+                    Result.this.print(lane, value);
+                }
+
+                /**
+                 * Writes out nothing, as the output is kept in memory.
+                 */
+                @Override
+                public void flush() {
+                }
+            };
+        }
+
+        /**
+         * Helper method responsible for appending a printed value to the output of a lane.
+         *
+         * @param lane  The index of the lane.
+         * @param value The value printed.
+         */
+        private void print(int lane, int value) {
+
+            if (outputs[lane] == null) {
+                outputs[lane] = new StringBuilder();
+            }
+            outputs[lane].append(value).append(' ');
+        }
+
+        /**
+         * Gets the human interpreted form of the Result.
+         *
+         * @return Returns a summary of how the lanes ran.
+         */
+        @Override
+        public String toString() {
+
+            int failed = 0;
+            for (String error : errors) {
+                failed += (error != null) ? 1 : 0;
+            }
+            return String.format("%d lanes, %d failed, %d scalar, %d lockstep steps, %.1f lanes per step",
+                    lanes(), failed, scalarLanes, steps, getOccupancy());
+        }
+    }
+
+    /**
+     * The divisor of the lanes still running below which a group runs on the scalar Interpreter.
+     */
+    final static private int DIVERGENCE_LIMIT = 32;
+
+    /**
+     * The program evaluated by every lane.
+     */
+    private final DecodedProgram program;
+    /**
+     * The unfused opcode of every Instruction.
+     */
+    private final int[] opcodes;
+    /**
+     * The first parameter of every Instruction.
+     */
+    private final int[] params1;
+    /**
+     * The second parameter of every Instruction.
+     */
+    private final int[] params2;
+    /**
+     * The index each jump leads to.
+     */
+    private final int[] targets;
+    /**
+     * The operand Stack depth before every Instruction.
+     */
+    private final int[] depths;
+    /**
+     * The Interpreter running lanes that leave lockstep.
+     */
+    private final Interpreter scalar = new Interpreter();
+
+    /**
+     * One-argument constructor used to create a SweepExecutor instance.
+     *
+     * @param program The decoded program evaluated by every lane.
+     * @throws RuntimeException Thrown when the program fails verification.
+     */
+    public SweepExecutor(DecodedProgram program) {
+
+        this.program = scalar.prepare(program);
+        this.opcodes = this.program.getOpcodes();
+        this.params1 = this.program.getParams1();
+        this.params2 = this.program.getParams2();
+        this.targets = this.program.getTargets();
+        this.depths = this.program.getStackDepths();
+    }
+
+    /**
+     * Evaluates the program once per input frame.
+     *
+     * @param frames The starting local variables of every lane, slot by slot; slots not given start unstored.
+     * @return Returns what every lane printed.
+     */
+    public Result run(int[][] frames) {
+
+        int lanes = frames.length;
+        int localCount = program.getLocalCount();
+        Result result = new Result(lanes);
+
+        //The locals of every lane, slot by slot, with the slots given by every frame counting as stored.
+        int[][] locals = new int[localCount][lanes];
+        int common = (lanes == 0) ? 0 : localCount;
+
+        for (int lane = 0; lane < lanes; lane++) {
+
+            int given = Math.min(frames[lane].length, localCount);
+            for (int slot = 0; slot < given; slot++) {
+                locals[slot][lane] = frames[lane][slot];
+            }
+            common = Math.min(common, given);
+        }
+
+        BitSet stored = new BitSet();
+        stored.set(0, common);
+        int[][] stack = new int[program.getMaxStackDepth()][lanes];
+
+        if (!ProgramAnalysis.localsAssigned(program, depths, stored)) {
+
+            for (int lane = 0; lane < lanes; lane++) {
+                runScalar(result, lane, 0, stack, locals, frames[lane].length);
+            }
+            return result;
+        }
+
+        //The lanes of the current group, lanes[0..size) in order while the group holds every lane.
+        int[] group = new int[lanes];
+        int size = lanes;
+        for (int lane = 0; lane < lanes; lane++) {
+            group[lane] = lane;
+        }
+
+        //The lanes waiting at another Instruction, and the lowest program counter among them.
+        int[] parked = new int[lanes];
+        int[] parkedPc = new int[lanes];
+        int parkedCount = 0;
+        int minParked = Integer.MAX_VALUE;
+
+        boolean[] taken = new boolean[lanes];
+        int running = lanes;
+        int length = opcodes.length;
+        int pc = 0;
+
+        while (true) {
+
+            if ((size == 0) || (pc >= length)) {
+
+                //The group finished (or every lane of it failed); the lowest parked lanes run next.
+                running -= size;
+                size = 0;
+
+                if (parkedCount == 0) {
+                    break;
+                }
+
+                pc = minParked;
+                minParked = Integer.MAX_VALUE;
+                int kept = 0;
+
+                for (int i = 0; i < parkedCount; i++) {
+
+                    if (parkedPc[parked[i]] == pc) {
+                        group[size++] = parked[i];
+                    } else {
+                        minParked = Math.min(minParked, parkedPc[parked[i]]);
+                        parked[kept++] = parked[i];
+                    }
+                }
+                parkedCount = kept;
+
+                //Too few lanes to be worth a lockstep step each, so they finish one at a time.
+                if ((size * DIVERGENCE_LIMIT < running) && (pc < length)) {
+
+                    for (int i = 0; i < size; i++) {
+                        runScalar(result, group[i], pc, stack, locals, localCount);
+                    }
+                    result.scalarLanes += size;
+                    running -= size;
+                    size = 0;
+                }
+                continue;
+            }
+
+            int opcode = opcodes[pc];
+            int depth = depths[pc];
+            int next = pc + 1;
+            boolean full = size == lanes;
+
+            ++result.steps;
+            result.laneSteps += size;
+
+            switch (opcode) {
+
+                case Opcodes.ICONST:
+                case Opcodes.BIPUSH:
+                    fill(stack[depth], params1[pc], group, size, full);
+                    break;
+                case Opcodes.IDIV:
+                case Opcodes.IREM:
+                    //Lanes dividing by zero fail alone, leaving the rest of the group to divide.
+                    int before = size;
+                    size = dropZeroDivisors(result, stack[depth - 1], group, size);
+                    running -= before - size;
+                    arithmetic(opcode, stack[depth - 2], stack[depth - 1], group, size, size == lanes);
+                    break;
+                case Opcodes.IADD:
+                case Opcodes.ISUB:
+                case Opcodes.IMUL:
+                    arithmetic(opcode, stack[depth - 2], stack[depth - 1], group, size, full);
+                    break;
+                case Opcodes.PRINT:
+                    for (int i = 0; i < size; i++) {
+                        result.print(group[i], stack[depth - 1][group[i]]);
+                    }
+                    break;
+                case Opcodes.ILOAD:
+                    copy(locals[params1[pc]], stack[depth], group, size, full);
+                    break;
+                case Opcodes.ISTORE:
+                    copy(stack[depth - 1], locals[params1[pc]], group, size, full);
+                    break;
+                case Opcodes.IINC:
+                    add(locals[params1[pc]], params2[pc], group, size, full);
+                    break;
+                case Opcodes.GOTO:
+                    next = targets[pc];
+                    break;
+                case Opcodes.IF_ICMPEQ:
+                case Opcodes.IF_ICMPNE:
+                case Opcodes.IF_ICMPGE:
+                case Opcodes.IF_ICMPGT:
+                case Opcodes.IF_ICMPLE:
+                case Opcodes.IF_ICMPLT:
+                case Opcodes.IFNE:
+                    int count = (opcode == Opcodes.IFNE)
+                            ? nonZero(stack[depth - 1], taken, group, size, full)
+                            : compare(opcode, stack[depth - 2], stack[depth - 1], taken, group, size, full);
+
+                    if (count == size) {
+                        next = targets[pc];
+                    } else if (count > 0) {
+
+                        //The group splits: every lane waits at its own next Instruction.
+                        for (int i = 0; i < size; i++) {
+
+                            int lane = group[i];
+                            parkedPc[lane] = (taken[lane]) ? targets[pc] : next;
+                            parked[parkedCount++] = lane;
+                        }
+                        minParked = Math.min(minParked, Math.min(targets[pc], next));
+                        size = 0;
+                        continue;
+                    }
+                    break;
+                default:
+                    //nop and return continue with the next Instruction.
+                    break;
+            }
+
+            //Lanes parked at or before where the group goes next run first, joining the group if they meet.
+            if ((parkedCount > 0) && (next >= minParked) && (size > 0)) {
+
+                for (int i = 0; i < size; i++) {
+
+                    parkedPc[group[i]] = next;
+                    parked[parkedCount++] = group[i];
+                }
+                size = 0;
+                continue;
+            }
+
+            pc = next;
+        }
+
+        return result;
+    }
+
+    /**
+     * Helper method responsible for removing the lanes of a group whose divisor is zero, failing each of them.
+     *
+     * @param result   The Result recording the failures.
+     * @param divisors The divisor of every lane.
+     * @param group    The lanes of the group, compacted in place.
+     * @param size     The number of lanes in the group.
+     * @return Returns the number of lanes left in the group.
+     */
+    private static int dropZeroDivisors(Result result, int[] divisors, int[] group, int size) {
+
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+
+            if (divisors[group[i]] == 0) {
+                result.errors[group[i]] = "/ by zero";
+            } else {
+                group[kept++] = group[i];
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Helper method responsible for setting a Stack slot of every lane of a group to a constant.
+     *
+     * @param slot  The Stack slot of every lane.
+     * @param value The constant.
+     * @param group The lanes of the group.
+     * @param size  The number of lanes in the group.
+     * @param full  Whether the group holds every lane.
+     */
+    private static void fill(int[] slot, int value, int[] group, int size, boolean full) {
+
+        if (full) {
+            Arrays.fill(slot, value);
+        } else {
+            for (int i = 0; i < size; i++) {
+                slot[group[i]] = value;
+            }
+        }
+    }
+
+    /**
+     * Helper method responsible for copying a value of every lane of a group between the Stack and the locals.
+     *
+     * @param from  The slot copied from, for every lane.
+     * @param to    The slot copied to, for every lane.
+     * @param group The lanes of the group.
+     * @param size  The number of lanes in the group.
+     * @param full  Whether the group holds every lane.
+     */
+    private static void copy(int[] from, int[] to, int[] group, int size, boolean full) {
+
+        if (full) {
+            System.arraycopy(from, 0, to, 0, size);
+        } else {
+            for (int i = 0; i < size; i++) {
+                to[group[i]] = from[group[i]];
+            }
+        }
+    }
+
+    /**
+     * Helper method responsible for adding a constant to a local variable of every lane of a group.
+     *
+     * @param slot      The local variable of every lane.
+     * @param increment The constant.
+     * @param group     The lanes of the group.
+     * @param size      The number of lanes in the group.
+     * @param full      Whether the group holds every lane.
+     */
+    private static void add(int[] slot, int increment, int[] group, int size, boolean full) {
+
+        if (full) {
+            for (int lane = 0; lane < size; lane++) {
+                slot[lane] += increment;
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                slot[group[i]] += increment;
+            }
+        }
+    }
+
+    /**
+     * Helper method responsible for an arithmetic Instruction on every lane of a group, leaving the result in place
+     * of the first operand. Each loop over every lane is branch-free, so the JIT compiler can vectorize it.
+     *
+     * @param opcode The arithmetic opcode.
+     * @param value1 The first operand of every lane, replaced by the result.
+     * @param value2 The second operand of every lane, never zero for a division.
+     * @param group  The lanes of the group.
+     * @param size   The number of lanes in the group.
+     * @param full   Whether the group holds every lane.
+     */
+    private static void arithmetic(int opcode, int[] value1, int[] value2, int[] group, int size, boolean full) {
+
+        if (!full) {
+
+            for (int i = 0; i < size; i++) {
+                value1[group[i]] = Opcodes.arithmetic(opcode, value1[group[i]], value2[group[i]]);
+            }
+            return;
+        }
+
+        switch (opcode) {
+
+            case Opcodes.IADD:
+                for (int lane = 0; lane < size; lane++) {
+                    value1[lane] += value2[lane];
+                }
+                break;
+            case Opcodes.ISUB:
+                for (int lane = 0; lane < size; lane++) {
+                    value1[lane] -= value2[lane];
+                }
+                break;
+            case Opcodes.IMUL:
+                for (int lane = 0; lane < size; lane++) {
+                    value1[lane] *= value2[lane];
+                }
+                break;
+            case Opcodes.IDIV:
+                for (int lane = 0; lane < size; lane++) {
+                    value1[lane] /= value2[lane];
+                }
+                break;
+            default:
+                for (int lane = 0; lane < size; lane++) {
+                    value1[lane] %= value2[lane];
+                }
+                break;
+        }
+    }
+
+    /**
+     * Helper method responsible for the condition of an if_icmp* Instruction on every lane of a group.
+     *
+     * @param opcode The comparison opcode.
+     * @param value1 The first operand of every lane.
+     * @param value2 The second operand of every lane.
+     * @param taken  Set for every lane of the group to whether its jump is taken.
+     * @param group  The lanes of the group.
+     * @param size   The number of lanes in the group.
+     * @param full   Whether the group holds every lane.
+     * @return Returns the number of lanes taking the jump.
+     */
+    private static int compare(int opcode, int[] value1, int[] value2, boolean[] taken, int[] group, int size, boolean full) {
+
+        int count = 0;
+
+        if (full) {
+            for (int lane = 0; lane < size; lane++) {
+
+                boolean jumps = Opcodes.compare(opcode, value1[lane], value2[lane]);
+                taken[lane] = jumps;
+                count += (jumps) ? 1 : 0;
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+
+                int lane = group[i];
+                boolean jumps = Opcodes.compare(opcode, value1[lane], value2[lane]);
+                taken[lane] = jumps;
+                count += (jumps) ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Helper method responsible for the condition of an ifne Instruction on every lane of a group.
+     *
+     * @param values The value tested, for every lane.
+     * @param taken  Set for every lane of the group to whether its jump is taken.
+     * @param group  The lanes of the group.
+     * @param size   The number of lanes in the group.
+     * @param full   Whether the group holds every lane.
+     * @return Returns the number of lanes taking the jump.
+     */
+    private static int nonZero(int[] values, boolean[] taken, int[] group, int size, boolean full) {
+
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+
+            int lane = (full) ? i : group[i];
+            taken[lane] = values[lane] != 0;
+            count += (taken[lane]) ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Helper method responsible for finishing one lane on the scalar Interpreter, from where it stands.
+     *
+     * @param result The Result receiving what the lane prints.
+     * @param lane   The index of the lane.
+     * @param pc     The index of the next Instruction of the lane.
+     * @param stack  The operand Stack of every lane, slot by slot.
+     * @param locals The local variables of every lane, slot by slot.
+     * @param stored The number of leading local variables holding a value.
+     */
+    private void runScalar(Result result, int lane, int pc, int[][] stack, int[][] locals, int stored) {
+
+        int depth = (pc < depths.length) ? depths[pc] : 0;
+        int[] values = new int[stack.length];
+        for (int slot = 0; slot < depth; slot++) {
+            values[slot] = stack[slot][lane];
+        }
+
+        LocalFrame frame = program.newLocalFrame();
+        for (int slot = 0; slot < Math.min(stored, locals.length); slot++) {
+            frame.store(slot, locals[slot][lane]);
+        }
+
+        ExecutionFrame execution = new ExecutionFrame(program, values, frame);
+        execution.suspend(pc, depth);
+
+        try {
+            scalar.resume(execution, result.sink(lane), Long.MAX_VALUE);
+        } catch (RuntimeException e) {
+            result.errors[lane] = String.valueOf(e.getMessage());
+        }
+    }
+
+    /**
+     * Helper method responsible for decoding a program from its text.
+     *
+     * @param text The program text.
+     * @return Returns the decoded program.
+     */
+    private static DecodedProgram parse(String text) {
+        return ProgramLoader.load(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Helper method responsible for evaluating every lane on its own, as a sweep without lockstep execution would.
+     *
+     * @param executor The SweepExecutor whose program is evaluated.
+     * @param frames   The starting local variables of every lane.
+     * @return Returns what every lane printed.
+     */
+    private static Result runEach(SweepExecutor executor, int[][] frames) {
+
+        Result result = new Result(frames.length);
+        int localCount = executor.program.getLocalCount();
+
+        for (int lane = 0; lane < frames.length; lane++) {
+
+            int[][] locals = new int[localCount][1];
+            for (int slot = 0; slot < Math.min(frames[lane].length, localCount); slot++) {
+                locals[slot][0] = frames[lane][slot];
+            }
+
+            Result single = new Result(1);
+            executor.runScalar(single, 0, 0, new int[executor.program.getMaxStackDepth()][1], locals, frames[lane].length);
+            result.outputs[lane] = single.outputs[0];
+            result.errors[lane] = single.errors[0];
+        }
+        return result;
+    }
+
+    /**
+     * Helper method responsible for comparing two Results lane by lane.
+     *
+     * @param expected The Result of evaluating every lane on its own.
+     * @param actual   The Result of the sweep.
+     * @return Returns true if every lane printed the same and failed the same way.
+     */
+    private static boolean same(Result expected, Result actual) {
+
+        boolean same = expected.lanes() == actual.lanes();
+        for (int lane = 0; (same) && (lane < expected.lanes()); lane++) {
+            same = expected.getOutput(lane).equals(actual.getOutput(lane))
+                    && String.valueOf(expected.getError(lane)).equals(String.valueOf(actual.getError(lane)));
+        }
+        return same;
+    }
+
+    /**
+     * Helper method responsible for building input frames holding one parameter in local variable 1.
+     *
+     * @param lanes The number of lanes.
+     * @param first The parameter of the first lane, each later lane adding one.
+     * @return Returns the input frames.
+     */
+    private static int[][] sweep(int lanes, int first) {
+
+        int[][] frames = new int[lanes][2];
+        for (int lane = 0; lane < lanes; lane++) {
+            frames[lane][1] = first + lane;
+        }
+        return frames;
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the SweepExecutor class.
+     *
+     * @param args Command-line arguments: [-lanes=N].
+     */
+    public static void main(String[] args) {
+
+        int lanes = 4096;
+        for (String arg : args) {
+
+            if (arg.startsWith("-lanes=")) {
+                lanes = Integer.parseInt(arg.substring("-lanes=".length()));
+            } else {
+                System.out.println("Usage: java SweepExecutor [-lanes=N]");
+                System.exit(0);
+            }
+        }
+
+        //A fixed-length loop over a parameter: every lane runs in lockstep from start to finish.
+        SweepExecutor uniform = new SweepExecutor(parse("0: bipush 100\n2: bipush 10\n4: imul\n5: istore_0\n"
+                + "6: iconst_0\n7: istore_2\n8: iconst_0\n9: istore_3\n10: iload_3\n11: iload_0\n12: if_icmpge 27\n"
+                + "15: iload_2\n16: iload_1\n17: iload_3\n18: imul\n19: iadd\n20: istore_2\n21: iinc 3, 1\n"
+                + "24: goto 10\n27: iload_2\n28: print\n29: return\n"));
+        int[][] frames = sweep(lanes, -lanes / 2);
+        Result swept = uniform.run(frames);
+
+        if ((same(runEach(uniform, frames), swept)) && (swept.getScalarLanes() == 0) && (swept.getOccupancy() == lanes)) {
+            System.out.println("Yay1");
+        }
+
+        //Loop counts that depend on the parameter: lanes leave the loop one by one and wait for the rest.
+        SweepExecutor divergent = new SweepExecutor(parse("0: iconst_0\n1: istore_2\n2: iload_2\n3: iload_1\n"
+                + "4: bipush 64\n6: irem\n7: if_icmpge 16\n10: iinc 2, 1\n13: goto 2\n16: iload_2\n17: print\n"
+                + "18: iload_1\n19: iconst_2\n20: irem\n21: ifne 27\n24: iconst_0\n25: print\n26: return\n"
+                + "27: iconst_1\n28: print\n29: return\n"));
+        frames = sweep(lanes, 0);
+        swept = divergent.run(frames);
+
+        if (same(runEach(divergent, frames), swept)) {
+            System.out.println("Yay2");
+        }
+
+        //Collatz trajectories diverge completely, so most lanes finish on the scalar Interpreter.
+        SweepExecutor collatz = new SweepExecutor(parse("0: iconst_0\n1: istore_2\n2: iload_1\n3: iconst_1\n"
+                + "4: if_icmple 32\n7: iinc 2, 1\n10: iload_1\n11: iconst_2\n12: irem\n13: ifne 23\n16: iload_1\n"
+                + "17: iconst_2\n18: idiv\n19: istore_1\n20: goto 2\n23: iload_1\n24: iconst_3\n25: imul\n"
+                + "26: iconst_1\n27: iadd\n28: istore_1\n29: goto 2\n32: iload_2\n33: print\n34: return\n"));
+        frames = sweep(lanes, 1);
+        swept = collatz.run(frames);
+
+        if ((same(runEach(collatz, frames), swept)) && (swept.getScalarLanes() > 0)) {
+            System.out.println("Yay3");
+        }
+
+        //A lane dividing by zero fails alone; a lane missing its parameter sends the whole sweep to the scalar path.
+        SweepExecutor division = new SweepExecutor(parse("0: bipush 100\n2: iload_1\n3: idiv\n4: print\n5: return\n"));
+        frames = sweep(8, -4);
+        swept = division.run(frames);
+
+        if ((same(runEach(division, frames), swept)) && ("/ by zero".equals(swept.getError(4)))
+                && (swept.getOutput(0).equals("-25 ")) && (swept.getScalarLanes() == 0)) {
+            System.out.println("Yay4");
+        }
+
+        frames[7] = new int[0];
+        swept = division.run(frames);
+        if ((same(runEach(division, frames), swept)) && (swept.getError(7).contains("read before it is stored"))) {
+            System.out.println("Yay5");
+        }
+
+        //Throughput of the fixed-length loop, in lockstep and lane by lane.
+        frames = sweep(lanes, 0);
+        double lockstep = 0;
+        double each = 0;
+
+        for (int round = 0; round < 5; round++) {
+
+            long start = System.nanoTime();
+            uniform.run(frames);
+            lockstep = lanes / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            runEach(uniform, frames);
+            each = lanes / ((System.nanoTime() - start) / 1e9);
+        }
+        System.out.printf("%d lanes: %.0f lanes/sec in lockstep, %.0f lanes/sec one at a time (%.1fx)%n",
+                lanes, lockstep, each, lockstep / each);
+        System.out.println(collatz.run(sweep(lanes, 1)));
+    }
+}
@@ -0,0 +1,528 @@
+import java.io.IOException;
+
+/**
+ * A class rebuilding the operand Stack and local variables of an evaluation at any step from its ExecutionTrace.
+ * The trace holds only the jumps taken, so the replayer runs the program again between them: every Instruction
+ * between two jumps runs in order, and a conditional branch jumps exactly when it is the next jump recorded.
+ * <p>
+ * A trace that still holds its first record replays from the start of the program, where every value is known.
+ * Once the ring has wrapped around, the replay starts at the oldest jump retained, with the Stack depth the program
+ * has there but none of its values, and learns values as it goes: from constants, from the top of the Stack each
+ * jump recorded, and from the local variable an iload copied that top from. A value computed from an unknown one is
+ * unknown, and is shown as "?".
+ *
+ * @author Brian Limaye
+ */
+public class TraceReplayer {
+
+    /**
+     * The decoded program the trace was recorded from.
+     */
+    private final DecodedProgram program;
+    /**
+     * The trace being replayed.
+     */
+    private final ExecutionTrace trace;
+    /**
+     * The index of the Instruction at each offset of the program.
+     */
+    private final IntIntMap indices;
+    /**
+     * The number of steps the trace covers, -1 until it has been replayed once.
+     */
+    private long steps = -1;
+
+    /**
+     * A class representing the operand Stack and local variables before one step of the replay.
+     */
+    public static final class State {
+
+        /**
+         * The number of Instructions run before this step, counted from where the replay started.
+         */
+        private final long step;
+        /**
+         * The index of the Instruction about to run, the length of the program once the evaluation finished.
+         */
+        private final int index;
+        /**
+         * The offset of the Instruction about to run, -1 once the evaluation finished.
+         */
+        private final int offset;
+        /**
+         * Whether the Instruction about to run is the one that failed.
+         */
+        private final boolean failed;
+        /**
+         * The values on the operand Stack, bottom first.
+         */
+        private final int[] stack;
+        /**
+         * Whether each value on the operand Stack is known.
+         */
+        private final boolean[] stackKnown;
+        /**
+         * The value of each local variable.
+         */
+        private final int[] locals;
+        /**
+         * Whether the value of each local variable is known.
+         */
+        private final boolean[] localsKnown;
+
+        /**
+         * Constructor used to create a State from a copy of the values of the replay.
+         *
+         * @param step        The number of Instructions run before this step.
+         * @param index       The index of the Instruction about to run.
+         * @param offset      The offset of the Instruction about to run, -1 once finished.
+         * @param failed      Whether the Instruction about to run is the one that failed.
+         * @param stack       The values on the operand Stack, bottom first.
+         * @param stackKnown  Whether each value on the operand Stack is known.
+         * @param locals      The value of each local variable.
+         * @param localsKnown Whether the value of each local variable is known.
+         */
+        private State(long step, int index, int offset, boolean failed, int[] stack, boolean[] stackKnown, int[] locals,
+                      boolean[] localsKnown) {
+
+            this.step = step;
+            this.index = index;
+            this.offset = offset;
+            this.failed = failed;
+            this.stack = stack;
+            this.stackKnown = stackKnown;
+            this.locals = locals;
+            this.localsKnown = localsKnown;
+        }
+
+        /**
+         * Gets the number of Instructions run before this step.
+         *
+         * @return Returns the step, counted from where the replay started.
+         */
+        public long getStep() {
+            return step;
+        }
+
+        /**
+         * Gets the index of the Instruction about to run.
+         *
+         * @return Returns the index, the length of the program once the evaluation finished.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Gets the offset of the Instruction about to run.
+         *
+         * @return Returns the offset, -1 once the evaluation finished.
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Determines whether the Instruction about to run is the one the evaluation failed at.
+         *
+         * @return Returns true if the evaluation failed here, false otherwise.
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * Gets the number of values on the operand Stack.
+         *
+         * @return Returns the Stack depth.
+         */
+        public int getDepth() {
+            return stack.length;
+        }
+
+        /**
+         * Determines whether a value on the operand Stack is known.
+         *
+         * @param position The position of the value, 0 being the bottom of the Stack.
+         * @return Returns true if the value is known, false otherwise.
+         */
+        public boolean isStackKnown(int position) {
+            return stackKnown[position];
+        }
+
+        /**
+         * Gets a value on the operand Stack.
+         *
+         * @param position The position of the value, 0 being the bottom of the Stack.
+         * @return Returns the value, 0 when it is unknown.
+         */
+        public int getStack(int position) {
+            return stack[position];
+        }
+
+        /**
+         * Determines whether the value of a local variable is known.
+         *
+         * @param slot The slot of the local variable.
+         * @return Returns true if the value is known, false otherwise.
+         */
+        public boolean isLocalKnown(int slot) {
+            return localsKnown[slot];
+        }
+
+        /**
+         * Gets the value of a local variable.
+         *
+         * @param slot The slot of the local variable.
+         * @return Returns the value, 0 when it is unknown.
+         */
+        public int getLocal(int slot) {
+            return locals[slot];
+        }
+
+        /**
+         * Helper method responsible for writing values, with "?" for those unknown.
+         *
+         * @param sb     The builder the values are appended to.
+         * @param values The values.
+         * @param known  Whether each value is known.
+         */
+        private static void append(StringBuilder sb, int[] values, boolean[] known) {
+
+            sb.append("[");
+            for (int i = 0; i < values.length; i++) {
+                sb.append((i == 0) ? "" : ", ").append((known[i]) ? String.valueOf(values[i]) : "?");
+            }
+            sb.append("]");
+        }
+
+        /**
+         * Gets the human interpreted form of the State.
+         *
+         * @return Returns the step, the Instruction about to run, the operand Stack and the local variables.
+         */
+        @Override
+        public String toString() {
+
+            StringBuilder sb = new StringBuilder("step ").append(step);
+            sb.append((offset < 0) ? " (finished)" : " at " + offset + ((failed) ? " (failed)" : ""));
+            sb.append(": stack ");
+            append(sb, stack, stackKnown);
+            sb.append(" locals ");
+            append(sb, locals, localsKnown);
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Constructor used to create a TraceReplayer for a trace of a program.
+     *
+     * @param program The decoded program the trace was recorded from, as it was evaluated (optimized or not).
+     * @param trace   The trace of its evaluation.
+     */
+    public TraceReplayer(DecodedProgram program, ExecutionTrace trace) {
+
+        this.program = program;
+        this.trace = trace;
+
+        int[] offsets = program.getOffsets();
+        this.indices = new IntIntMap(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            indices.put(offsets[i], i);
+        }
+    }
+
+    /**
+     * Gets the number of steps the trace covers, the failed Instruction counting as one that never completed.
+     *
+     * @return Returns the number of Instructions run from where the replay starts.
+     * @throws RuntimeException Thrown when the trace does not match the program.
+     */
+    public long getSteps() {
+
+        if (steps < 0) {
+            steps = replay(Long.MAX_VALUE).getStep();
+        }
+        return steps;
+    }
+
+    /**
+     * Rebuilds the operand Stack and local variables before a step.
+     *
+     * @param step The step, from 0 to getSteps(); the last is the state the evaluation ended in.
+     * @return Returns the State before the step runs.
+     * @throws RuntimeException Thrown when the step is outside the trace, or the trace does not match the program.
+     */
+    public State stateAt(long step) {
+
+        if (step < 0) {
+            throw new RuntimeException("step " + step + " is outside the trace");
+        }
+
+        State state = replay(step);
+        if (state.getStep() != step) {
+            throw new RuntimeException("step " + step + " is outside the trace, which covers " + state.getStep() + " steps");
+        }
+        return state;
+    }
+
+    /**
+     * Helper method responsible for running the program along the trace up to a step, or to its end.
+     *
+     * @param target The step to stop before.
+     * @return Returns the State before the target step, or the State the evaluation ended in if it is reached first.
+     * @throws RuntimeException Thrown when the trace does not match the program.
+     */
+    private State replay(long target) {
+
+        int[] opcodes = program.getOpcodes();
+        int[] params1 = program.getParams1();
+        int[] params2 = program.getParams2();
+        int[] targets = program.getTargets();
+        int[] offsets = program.getOffsets();
+
+        int[] stack = new int[program.getMaxStackDepth()];
+        boolean[] stackKnown = new boolean[stack.length];
+        int[] locals = new int[program.getLocalCount()];
+        boolean[] localsKnown = new boolean[locals.length];
+
+        long record = trace.getFirst();
+        long end = trace.getCount();
+        int pc = 0;
+        int sp = 0;
+        int loaded = -1;    //The local variable the top of the Stack was just loaded from, -1 if it was not.
+
+        //A ring that has wrapped around is replayed from its oldest jump, with none of the values known.
+        if (record > 0) {
+            pc = indices.get(trace.getOffset(record), -1);
+            if (pc < 0) {
+                throw new RuntimeException("trace does not match the program: no Instruction at " + trace.getOffset(record));
+            }
+            sp = program.getStackDepths()[pc];
+        }
+
+        for (long step = 0; ; step++) {
+
+            boolean recorded = (record < end) && (pc < opcodes.length) && (trace.getOffset(record) == offsets[pc]);
+            boolean failed = (recorded) && (!Opcodes.isBranch(trace.getOpcode(record)));
+
+            //The top of the Stack before a recorded Instruction is known, and so is the local it was loaded from.
+            if ((recorded) && (sp > 0)) {
+
+                stack[sp - 1] = trace.getTop(record);
+                stackKnown[sp - 1] = true;
+                if (loaded >= 0) {
+                    locals[loaded] = stack[sp - 1];
+                    localsKnown[loaded] = true;
+                }
+            }
+
+            if ((step == target) || (pc >= opcodes.length) || (failed)) {
+
+                if ((pc >= opcodes.length) && (record < end)) {
+                    throw new RuntimeException("trace does not match the program: it continues past the end at "
+                            + trace.getOffset(record));
+                }
+                return new State(step, pc, (pc < opcodes.length) ? offsets[pc] : -1, failed,
+                        java.util.Arrays.copyOf(stack, sp), java.util.Arrays.copyOf(stackKnown, sp), locals.clone(),
+                        localsKnown.clone());
+            }
+
+            if ((recorded) && (trace.getOpcode(record) != opcodes[pc])) {
+                throw new RuntimeException("trace does not match the program: " + Opcodes.name(trace.getOpcode(record))
+                        + " recorded at " + offsets[pc] + ", which holds " + Opcodes.name(opcodes[pc]));
+            }
+
+            int next = pc + 1;
+            loaded = -1;
+
+            switch (opcodes[pc]) {
+
+                case Opcodes.ICONST:
+                case Opcodes.BIPUSH:
+                    stack[sp] = params1[pc];
+                    stackKnown[sp++] = true;
+                    break;
+                case Opcodes.IADD:
+                case Opcodes.ISUB:
+                case Opcodes.IMUL:
+                case Opcodes.IDIV:
+                case Opcodes.IREM:
+                    //A division that completed had a divisor other than 0, known or not.
+                    sp--;
+                    stackKnown[sp - 1] &= (stackKnown[sp])
+                            && ((stack[sp] != 0) || (opcodes[pc] != Opcodes.IDIV) && (opcodes[pc] != Opcodes.IREM));
+                    stack[sp - 1] = (stackKnown[sp - 1]) ? Opcodes.arithmetic(opcodes[pc], stack[sp - 1], stack[sp]) : 0;
+                    break;
+                case Opcodes.PRINT:
+                    sp--;
+                    break;
+                case Opcodes.ILOAD:
+                    stack[sp] = locals[params1[pc]];
+                    stackKnown[sp++] = localsKnown[params1[pc]];
+                    loaded = params1[pc];
+                    break;
+                case Opcodes.ISTORE:
+                    sp--;
+                    locals[params1[pc]] = stack[sp];
+                    localsKnown[params1[pc]] = stackKnown[sp];
+                    break;
+                case Opcodes.IINC:
+                    locals[params1[pc]] += params2[pc];
+                    break;
+                case Opcodes.GOTO:
+                    next = targets[pc];
+                    break;
+                case Opcodes.IFNE:
+                    sp--;
+                    next = (recorded) ? targets[pc] : next;
+                    break;
+                case Opcodes.IF_ICMPEQ:
+                case Opcodes.IF_ICMPNE:
+                case Opcodes.IF_ICMPGE:
+                case Opcodes.IF_ICMPGT:
+                case Opcodes.IF_ICMPLE:
+                case Opcodes.IF_ICMPLT:
+                    //Whether a branch jumped is known only from the trace, its operands perhaps not being known.
+                    sp -= 2;
+                    next = (recorded) ? targets[pc] : next;
+                    break;
+                default:
+                    //nop and return continue with the next Instruction.
+                    break;
+            }
+
+            //A jump to the next Instruction is never recorded, and every other one must be.
+            if ((recorded) != (next != pc + 1)) {
+                throw new RuntimeException("trace does not match the program at " + offsets[pc]);
+            }
+            if (recorded) {
+                record++;
+            }
+            pc = next;
+        }
+    }
+
+    /**
+     * Helper method responsible for evaluating a program on the switch engine with a trace.
+     *
+     * @param text     The text of the program.
+     * @param capacity The number of records the trace retains.
+     * @return Returns the program as it was evaluated, and its trace.
+     */
+    private static Object[] traced(String text, int capacity) {
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setJitEnabled(false);
+        interpreter.setTrace(new ExecutionTrace(capacity));
+        interpreter.setSink(new BufferedSink(new java.io.ByteArrayOutputStream()));
+
+        DecodedProgram program = interpreter.prepare(ProgramLoader.load(java.nio.ByteBuffer.wrap(text.getBytes())));
+        try {
+            interpreter.evaluateProgram(program);
+        } catch (RuntimeException e) {
+            //The failure is what the trace is examined for.
+        }
+        return new Object[]{program, interpreter.getTrace()};
+    }
+
+    /**
+     * Helper method responsible for replaying a trace file from the command line.
+     *
+     * @param args The program file, the trace file and optionally a step, with -O if the program was optimized.
+     * @throws IOException Thrown when either file cannot be read.
+     */
+    private static void replay(String[] args) throws IOException {
+
+        Interpreter interpreter = new Interpreter();
+        int first = 0;
+
+        if ((args.length > 0) && (args[0].equals("-O"))) {
+            interpreter.setOptimize(true);
+            first = 1;
+        }
+        if ((args.length - first < 2) || (args.length - first > 3)) {
+            System.out.println("Usage: java TraceReplayer [-O] PROGRAM TRACE [STEP]");
+            return;
+        }
+
+        ExecutionTrace trace = ExecutionTrace.load(args[first + 1]);
+        TraceReplayer replayer = new TraceReplayer(interpreter.load(args[first]), trace);
+        long step = (args.length - first == 3) ? Long.parseLong(args[first + 2]) : replayer.getSteps();
+
+        System.out.println(trace.getCount() + " jumps recorded, " + (trace.getCount() - trace.getFirst())
+                + " retained, covering " + replayer.getSteps() + " steps");
+        System.out.println(replayer.stateAt(step));
+    }
+
+    /**
+     * The main method solely responsible for testing the functionality of the TraceReplayer class, or replaying a
+     * trace file given on the command line.
+     *
+     * @param args Command-line arguments used for testing on the fly at runtime.
+     * @throws IOException Thrown when a file given on the command line cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length > 0) {
+            replay(args);
+            return;
+        }
+
+        //The sum of 0..99, replayed from the start, ends with every value known.
+        String sum = "0: iconst_0\n1: istore_1\n2: iconst_0\n3: istore_2\n4: bipush 100\n6: iload_2\n"
+                + "7: if_icmple 20\n10: iload_1\n11: iload_2\n12: iadd\n13: istore_1\n14: iinc 2, 1\n"
+                + "17: goto 4\n20: iload_1\n21: print\n22: return\n";
+        Object[] run = traced(sum, 1024);
+        TraceReplayer replayer = new TraceReplayer((DecodedProgram) run[0], (ExecutionTrace) run[1]);
+        State state = replayer.stateAt(replayer.getSteps() - 2);
+
+        if ((replayer.getSteps() == 4 + 100 * 9 + 3 + 3) && (state.getOffset() == 21) && (state.getDepth() == 1)
+                && (state.getStack(0) == 4950) && (state.getLocal(1) == 4950) && (state.getLocal(2) == 100)
+                && (replayer.stateAt(replayer.getSteps()).getOffset() == -1)) {
+            System.out.println("Yay1");
+        }
+
+        //Partway through, the State is that of the loop at that iteration.
+        state = replayer.stateAt(4 + 10 * 9);
+        if ((state.getOffset() == 4) && (state.getLocal(1) == 45) && (state.getLocal(2) == 10) && (state.getDepth() == 0)) {
+            System.out.println("Yay2");
+        }
+
+        //Once the ring has wrapped around, the counter is learned from the last comparison, but not the sum.
+        run = traced(sum, 8);
+        replayer = new TraceReplayer((DecodedProgram) run[0], (ExecutionTrace) run[1]);
+        state = replayer.stateAt(replayer.getSteps() - 2);
+        if ((((ExecutionTrace) run[1]).getFirst() > 0) && (state.isLocalKnown(2)) && (state.getLocal(2) == 100)
+                && (!state.isLocalKnown(1)) && (state.toString().endsWith("stack [?] locals [?, ?, 100]"))) {
+            System.out.println("Yay3");
+        }
+
+        //A division by zero ends the trace at the idiv, with both of its operands on the Stack.
+        String divide = "0: bipush 100\n2: istore_1\n3: iconst_3\n4: istore_2\n5: iload_1\n6: iload_2\n7: idiv\n"
+                + "8: print\n9: iinc 2, -1\n12: iload_2\n13: bipush -1\n15: if_icmpne 5\n18: return\n";
+        run = traced(divide, 1024);
+        replayer = new TraceReplayer((DecodedProgram) run[0], (ExecutionTrace) run[1]);
+        state = replayer.stateAt(replayer.getSteps());
+        if ((state.isFailed()) && (state.getOffset() == 7) && (state.getDepth() == 2) && (state.getStack(0) == 100)
+                && (state.getStack(1) == 0) && (state.getLocal(2) == 0)) {
+            System.out.println("Yay4");
+        }
+
+        //A dump replays the same as the trace it was written from.
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        ((ExecutionTrace) run[1]).dump(bytes);
+        TraceReplayer loaded = new TraceReplayer((DecodedProgram) run[0],
+                ExecutionTrace.load(new java.io.ByteArrayInputStream(bytes.toByteArray())));
+        if (loaded.stateAt(loaded.getSteps()).toString().equals(state.toString())) {
+            System.out.println("Yay5");
+        }
+
+        //A trace of another program is rejected.
+        try {
+            new TraceReplayer((DecodedProgram) traced(sum, 1024)[0], (ExecutionTrace) run[1]).getSteps();
+        } catch (RuntimeException e) {
+            System.out.println("Yay6");
+        }
+    }
+}